@@ -0,0 +1,58 @@
+package com.marsh.exec.benchmark;
+
+import com.marsh.exec.callback.SimpleStateCallback;
+import com.marsh.exec.executor.CommandLineExecutor;
+import com.marsh.exec.stream.DiscardLineRetention;
+import com.marsh.exec.stream.LineOutputStream;
+import com.marsh.exec.stream.LineStreamHandler;
+import com.marsh.exec.stream.SharedPumpStreamHandler;
+import org.apache.commons.exec.CommandLine;
+
+/**
+ * 基准测试中创建执行器的工具类，输出只解码不打印也不保留
+ * @author marsh
+ * @date 2022年04月25日 9:30
+ */
+public final class BenchmarkExecutors {
+
+    /**
+     * 每个子进程独立搬运线程
+     */
+    public static final String PUMP = "pump";
+
+    /**
+     * 共享搬运引擎
+     */
+    public static final String SHARED = "shared";
+
+    private BenchmarkExecutors() {
+    }
+
+    public static LineOutputStream discardingStream() {
+        LineOutputStream stream = new LineOutputStream(line -> { });
+        stream.setLineRetention(new DiscardLineRetention());
+        return stream;
+    }
+
+    public static CommandLineExecutor executor(String handler) {
+        CommandLineExecutor executor = new CommandLineExecutor();
+        executor.setCallback(new SimpleStateCallback());
+        if (SHARED.equals(handler)) {
+            executor.setStreamHandler(new SharedPumpStreamHandler(discardingStream(), discardingStream()));
+        } else {
+            executor.setStreamHandler(new LineStreamHandler(discardingStream(), discardingStream()));
+        }
+        return executor;
+    }
+
+    /**
+     * 在当前线程中同步运行命令直到进程结束
+     */
+    public static void run(CommandLine commandLine, String handler) {
+        executor(handler).createRunnable(commandLine).run();
+    }
+
+    public static CommandLine shell(String script) {
+        return new CommandLine("sh").addArgument("-c").addArgument(script, false);
+    }
+}
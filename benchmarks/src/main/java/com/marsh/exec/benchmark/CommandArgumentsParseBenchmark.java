@@ -0,0 +1,144 @@
+package com.marsh.exec.benchmark;
+
+import com.marsh.exec.annotations.Arguments;
+import com.marsh.exec.interfaces.CommandArguments;
+import com.marsh.exec.parse.CommandArgumentsParse;
+import org.apache.commons.exec.CommandLine;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 不同字段数量的@Arguments类解析为CommandLine的耗时
+ * @author marsh
+ * @date 2022年04月25日 9:45
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CommandArgumentsParseBenchmark {
+
+    @Param({"narrow", "medium", "wide"})
+    public String width;
+
+    private CommandArguments arguments;
+
+    @Setup
+    public void setup() {
+        switch (width) {
+            case "narrow":
+                arguments = new NarrowArguments();
+                break;
+            case "medium":
+                arguments = new MediumArguments();
+                break;
+            default:
+                arguments = new WideArguments();
+        }
+    }
+
+    @Benchmark
+    public CommandLine parse() {
+        return CommandArgumentsParse.parse(arguments);
+    }
+
+    /**
+     * 4个字段
+     */
+    public static class NarrowArguments implements CommandArguments {
+        @Arguments(defaultValue = "4", args = {"-n"})
+        private Long number;
+        @Arguments(required = false, args = {"-w"})
+        private Long timeout = 200L;
+        @Arguments(defaultValue = "false", args = {"-4"})
+        private boolean ipv4 = true;
+        @Arguments
+        private String ip = "192.168.1.91";
+
+        @Override
+        public String command() {
+            return "ping";
+        }
+    }
+
+    /**
+     * 12个字段
+     */
+    public static class MediumArguments implements CommandArguments {
+        @Arguments(args = {"-i"})
+        private String input = "/data/input/video.mp4";
+        @Arguments(args = {"-c:v"})
+        private String videoCodec = "libx264";
+        @Arguments(args = {"-preset"})
+        private String preset = "veryfast";
+        @Arguments(args = {"-crf"})
+        private Integer crf = 23;
+        @Arguments(args = {"-c:a"})
+        private String audioCodec = "aac";
+        @Arguments(args = {"-b:a"})
+        private String audioBitrate = "128k";
+        @Arguments(required = false, args = {"-ss"})
+        private String start;
+        @Arguments(required = false, args = {"-t"})
+        private String duration = "00:01:00";
+        @Arguments(defaultValue = "false", args = {"-y"})
+        private boolean overwrite = true;
+        @Arguments(defaultValue = "false", args = {"-an"})
+        private Boolean noAudio = false;
+        @Arguments(defaultValue = "2", args = {"-threads"})
+        private Integer threads;
+        @Arguments
+        private String output = "/data/output/video.mp4";
+
+        @Override
+        public String command() {
+            return "ffmpeg";
+        }
+    }
+
+    /**
+     * 32个字段
+     */
+    public static class WideArguments implements CommandArguments {
+        @Arguments(args = {"--a00"}) private String a00 = "value-00";
+        @Arguments(args = {"--a01"}) private String a01 = "value-01";
+        @Arguments(args = {"--a02"}) private String a02 = "value-02";
+        @Arguments(args = {"--a03"}) private String a03 = "value-03";
+        @Arguments(args = {"--a04"}) private Integer a04 = 4;
+        @Arguments(args = {"--a05"}) private Integer a05 = 5;
+        @Arguments(args = {"--a06"}) private Long a06 = 6L;
+        @Arguments(args = {"--a07"}) private Long a07 = 7L;
+        @Arguments(defaultValue = "false", args = {"--f08"}) private boolean f08 = true;
+        @Arguments(defaultValue = "false", args = {"--f09"}) private boolean f09;
+        @Arguments(defaultValue = "false", args = {"--f10"}) private Boolean f10 = true;
+        @Arguments(defaultValue = "false", args = {"--f11"}) private Boolean f11;
+        @Arguments(required = false, args = {"--o12"}) private String o12;
+        @Arguments(required = false, args = {"--o13"}) private String o13 = "value-13";
+        @Arguments(defaultValue = "d14", args = {"--d14"}) private String d14;
+        @Arguments(defaultValue = "d15", args = {"--d15"}) private String d15;
+        @Arguments(args = {"--a16"}) private String a16 = "value-16";
+        @Arguments(args = {"--a17"}) private String a17 = "value-17";
+        @Arguments(args = {"--a18"}) private String a18 = "value-18";
+        @Arguments(args = {"--a19"}) private String a19 = "value-19";
+        @Arguments(args = {"--a20"}) private Integer a20 = 20;
+        @Arguments(args = {"--a21"}) private Integer a21 = 21;
+        @Arguments(args = {"--a22"}) private Long a22 = 22L;
+        @Arguments(args = {"--a23"}) private Long a23 = 23L;
+        @Arguments(defaultValue = "false", args = {"--f24"}) private boolean f24 = true;
+        @Arguments(defaultValue = "false", args = {"--f25"}) private boolean f25;
+        @Arguments(defaultValue = "false", args = {"--f26"}) private Boolean f26 = true;
+        @Arguments(defaultValue = "false", args = {"--f27"}) private Boolean f27;
+        @Arguments(required = false, args = {"--o28"}) private String o28;
+        @Arguments(required = false, args = {"--o29"}) private String o29 = "value-29";
+        @Arguments(defaultValue = "d30", args = {"--d30"}) private String d30;
+        @Arguments private String a31 = "value-31";
+
+        @Override
+        public String command() {
+            return "tool";
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.marsh.exec.benchmark;
+
+import org.apache.commons.exec.CommandLine;
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 同时运行大量子进程时两种输出流搬运方式的耗时及线程峰值
+ *
+ * 每次调用启动children个子进程，每个进程休眠200ms后输出少量内容，peakThreads为本次调用期间JVM线程数峰值
+ * @author marsh
+ * @date 2022年04月25日 11:05
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ConcurrentChildrenBenchmark {
+
+    @Param({"200"})
+    public int children;
+
+    @Param({BenchmarkExecutors.PUMP, BenchmarkExecutors.SHARED})
+    public String handler;
+
+    private final CommandLine commandLine = BenchmarkExecutors.shell("sleep 0.2; seq 1 100");
+
+    private final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Threads {
+        public long peakThreads;
+    }
+
+    @Benchmark
+    public void concurrent(Threads threads) throws InterruptedException {
+        threadMXBean.resetPeakThreadCount();
+        CountDownLatch latch = new CountDownLatch(children);
+        for (int i = 0; i < children; i++) {
+            Runnable task = BenchmarkExecutors.executor(handler).createRunnable(commandLine);
+            new Thread(() -> {
+                try {
+                    task.run();
+                } finally {
+                    latch.countDown();
+                }
+            }).start();
+        }
+        latch.await();
+        threads.peakThreads = threadMXBean.getPeakThreadCount();
+    }
+}
@@ -0,0 +1,88 @@
+package com.marsh.exec.benchmark;
+
+import com.marsh.exec.extract.DelimitedExtractor;
+import com.marsh.exec.extract.JsonLinesExtractor;
+import com.marsh.exec.extract.KeyValueExtractor;
+import com.marsh.exec.extract.LineFields;
+import com.marsh.exec.stream.DiscardLineRetention;
+import com.marsh.exec.stream.LineOutputStream;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * 结构化输出解析：字符串监听器+正则切分与视图监听器+字段提取器的对比，每次调用处理1000行
+ * @author marsh
+ * @date 2022年05月09日 16:10
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class FieldExtractorBenchmark {
+
+    private static final int LINES = 1000;
+
+    @Param({"delimited", "keyValue", "json"})
+    public String format;
+
+    @Param({"string", "view"})
+    public String listener;
+
+    private byte[] data;
+
+    private LineOutputStream stream;
+
+    private Blackhole blackhole;
+
+    @Setup
+    public void setup(Blackhole blackhole) {
+        this.blackhole = blackhole;
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < LINES; i++) {
+            switch (format) {
+                case "delimited":
+                    text.append(i).append(',').append(i * 0.25).append(",GET,/api/items/").append(i).append('\n');
+                    break;
+                case "keyValue":
+                    text.append("id=").append(i).append(" took=").append(i * 0.25).append(" method=GET path=/api/items/").append(i).append('\n');
+                    break;
+                default:
+                    text.append("{\"id\":").append(i).append(",\"took\":").append(i * 0.25)
+                            .append(",\"method\":\"GET\",\"path\":\"/api/items/").append(i).append("\"}\n");
+            }
+        }
+        data = text.toString().getBytes(StandardCharsets.UTF_8);
+        stream = new LineOutputStream("UTF-8", null, new DiscardLineRetention());
+        if ("string".equals(listener)) {
+            Pattern split = "delimited".equals(format) ? Pattern.compile(",") : Pattern.compile("[\\s,:={}\"]+");
+            stream.setLineOutputListener(line -> {
+                String[] parts = split.split(line);
+                blackhole.consume(parts.length);
+            });
+        } else if ("delimited".equals(format)) {
+            stream.setLineViewListener(new DelimitedExtractor<>(',', this::consume, record -> { }));
+        } else if ("keyValue".equals(format)) {
+            stream.setLineViewListener(new KeyValueExtractor<>(this::consume, record -> { }));
+        } else {
+            stream.setLineViewListener(new JsonLinesExtractor<>(this::consume, record -> { }));
+        }
+    }
+
+    private Object consume(LineFields fields) {
+        blackhole.consume(fields.getLong(0) + fields.getDouble(1));
+        blackhole.consume(fields.valueEquals(2, "GET"));
+        return null;
+    }
+
+    @Benchmark
+    public void parse() throws IOException {
+        stream.write(data, 0, data.length);
+    }
+}
@@ -0,0 +1,70 @@
+package com.marsh.exec.benchmark;
+
+import com.marsh.exec.executor.CommandLineExecutor;
+import com.marsh.exec.launcher.SpawnServerLauncher;
+import org.apache.commons.exec.CommandLine;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 不同堆内存占用下直接启动与通过启动服务启动子进程的耗时
+ *
+ * 启动耗时与父进程的页表大小有关，retainedHeapMb为基准测试进程中常驻并已写入的堆内存。
+ * JDK默认的启动方式(vfork/posix_spawn)不复制页表，可通过-jvmArgsAppend -Djdk.lang.Process.launchMechanism=FORK
+ * 对比使用fork的情况
+ * @author marsh
+ * @date 2022年05月05日 14:10
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g", "-XX:+AlwaysPreTouch"})
+@State(Scope.Benchmark)
+public class LauncherBenchmark {
+
+    public static final String DIRECT = "direct";
+
+    public static final String SPAWN_SERVER = "spawnServer";
+
+    @Param({DIRECT, SPAWN_SERVER})
+    public String launcher;
+
+    @Param({"0", "1024"})
+    public int retainedHeapMb;
+
+    private long[][] retained;
+
+    private SpawnServerLauncher spawnServer;
+
+    private CommandLine commandLine;
+
+    @Setup
+    public void setup() {
+        retained = new long[retainedHeapMb][];
+        for (int i = 0; i < retainedHeapMb; i++) {
+            // 每块1MB，分配时清零即写入了所有页
+            retained[i] = new long[128 * 1024];
+        }
+        if (SPAWN_SERVER.equals(launcher)) {
+            spawnServer = new SpawnServerLauncher();
+        }
+        commandLine = new CommandLine("true");
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (spawnServer != null) {
+            spawnServer.close();
+        }
+    }
+
+    @Benchmark
+    public long[][] spawn() {
+        CommandLineExecutor executor = BenchmarkExecutors.executor(BenchmarkExecutors.SHARED);
+        executor.setLauncher(spawnServer);
+        executor.createRunnable(commandLine).run();
+        return retained;
+    }
+}
@@ -0,0 +1,82 @@
+package com.marsh.exec.benchmark;
+
+import com.marsh.exec.stream.LineOutputListener;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * 改为可复用解码器之前的LineOutputStream按行拆分及解码逻辑，只用于对比吞吐量
+ *
+ * 行数据写入ByteArrayOutputStream，每行通过toString(charset)按名称查找字符集后解码
+ * @author marsh
+ * @date 2022年05月13日 10:00
+ */
+public class LegacyLineOutputStream extends OutputStream {
+
+    private static final int CR = 0x0d;
+
+    private static final int LF = 0x0a;
+
+    private final ByteArrayOutputStream buffer = new ByteArrayOutputStream(132);
+
+    private final String charset;
+
+    private final LineOutputListener lineOutputListener;
+
+    private boolean skip;
+
+    public LegacyLineOutputStream(String charset, LineOutputListener lineOutputListener) {
+        this.charset = charset;
+        this.lineOutputListener = lineOutputListener;
+    }
+
+    @Override
+    public void write(final int cc) throws IOException {
+        final byte c = (byte) cc;
+        if (c == '\n' || c == '\r') {
+            if (!skip) {
+                processBuffer();
+            }
+        } else {
+            buffer.write(cc);
+        }
+        skip = c == '\r';
+    }
+
+    @Override
+    public void write(final byte[] b, final int off, final int len) throws IOException {
+        int offset = off;
+        int blockStartOffset = offset;
+        int remaining = len;
+        while (remaining > 0) {
+            while (remaining > 0 && b[offset] != LF && b[offset] != CR) {
+                offset++;
+                remaining--;
+            }
+            final int blockLength = offset - blockStartOffset;
+            if (blockLength > 0) {
+                buffer.write(b, blockStartOffset, blockLength);
+            }
+            while (remaining > 0 && (b[offset] == LF || b[offset] == CR)) {
+                write(b[offset]);
+                offset++;
+                remaining--;
+            }
+            blockStartOffset = offset;
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (buffer.size() > 0) {
+            processBuffer();
+        }
+    }
+
+    private void processBuffer() throws IOException {
+        lineOutputListener.processLine(buffer.toString(charset));
+        buffer.reset();
+    }
+}
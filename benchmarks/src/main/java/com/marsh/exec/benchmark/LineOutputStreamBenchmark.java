@@ -0,0 +1,90 @@
+package com.marsh.exec.benchmark;
+
+import com.marsh.exec.stream.LineOutputStream;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * LineOutputStream按行拆分及解码的吞吐量，每次调用写入1MB数据，每次写入8KB
+ *
+ * impl=legacy为改为可复用解码器之前的实现({@link LegacyLineOutputStream})，用于对比
+ * @author marsh
+ * @date 2022年04月25日 10:10
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class LineOutputStreamBenchmark {
+
+    private static final int DATA_SIZE = 1024 * 1024;
+
+    private static final int CHUNK_SIZE = 8192;
+
+    @Param({"16", "128", "1024"})
+    public int lineLength;
+
+    @Param({"UTF-8", "GBK", "ISO-8859-1"})
+    public String charset;
+
+    /**
+     * ascii为纯ASCII内容，cjk为中文内容(ISO-8859-1下按单字节处理)
+     */
+    @Param({"ascii", "cjk"})
+    public String content;
+
+    @Param({"current", "legacy"})
+    public String impl;
+
+    private byte[] data;
+
+    private OutputStream stream;
+
+    /**
+     * 累计行的字符数，避免行字符串被优化掉
+     */
+    private long chars;
+
+    @Setup
+    public void setup() {
+        String alphabet = "cjk".equals(content) ? "命令行执行状态回调输出流解析工具" : "abcdefghijklmnopqrstuvwxyz0123456789";
+        Random random = new Random(42);
+        StringBuilder line = new StringBuilder();
+        StringBuilder text = new StringBuilder();
+        Charset cs = Charset.forName(charset);
+        while (text.toString().getBytes(cs).length < DATA_SIZE) {
+            line.setLength(0);
+            while (line.toString().getBytes(cs).length < lineLength) {
+                line.append(alphabet.charAt(random.nextInt(alphabet.length())));
+            }
+            text.append(line).append('\n');
+        }
+        data = text.toString().getBytes(cs);
+        if ("legacy".equals(impl)) {
+            stream = new LegacyLineOutputStream(charset, l -> chars += l.length());
+        } else {
+            LineOutputStream lineOutputStream = new LineOutputStream(charset, l -> chars += l.length());
+            lineOutputStream.setLineRetention(new com.marsh.exec.stream.DiscardLineRetention());
+            stream = lineOutputStream;
+        }
+    }
+
+    /**
+     * 每秒处理的MB数
+     */
+    @Benchmark
+    public long write() throws IOException {
+        for (int offset = 0; offset < data.length; offset += CHUNK_SIZE) {
+            stream.write(data, offset, Math.min(CHUNK_SIZE, data.length - offset));
+        }
+        stream.flush();
+        return chars;
+    }
+}
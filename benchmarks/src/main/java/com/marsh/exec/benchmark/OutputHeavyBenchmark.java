@@ -0,0 +1,38 @@
+package com.marsh.exec.benchmark;
+
+import org.apache.commons.exec.CommandLine;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 输出量较大的命令(yes | head -c)从启动到输出处理完毕的耗时
+ * @author marsh
+ * @date 2022年04月25日 10:42
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class OutputHeavyBenchmark {
+
+    @Param({"1048576", "16777216"})
+    public long bytes;
+
+    @Param({BenchmarkExecutors.PUMP, BenchmarkExecutors.SHARED})
+    public String handler;
+
+    private CommandLine commandLine;
+
+    @Setup
+    public void setup() {
+        commandLine = BenchmarkExecutors.shell("yes | head -c " + bytes);
+    }
+
+    @Benchmark
+    public void output() {
+        BenchmarkExecutors.run(commandLine, handler);
+    }
+}
@@ -0,0 +1,38 @@
+package com.marsh.exec.benchmark;
+
+import org.apache.commons.exec.CommandLine;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 简单命令从启动到进程结束的耗时，同时对比两种输出流搬运方式
+ * @author marsh
+ * @date 2022年04月25日 10:30
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class SpawnLatencyBenchmark {
+
+    @Param({"true", "echo"})
+    public String command;
+
+    @Param({BenchmarkExecutors.PUMP, BenchmarkExecutors.SHARED})
+    public String handler;
+
+    private CommandLine commandLine;
+
+    @Setup
+    public void setup() {
+        commandLine = "echo".equals(command) ? new CommandLine("echo").addArgument("hello") : new CommandLine("true");
+    }
+
+    @Benchmark
+    public void spawn() {
+        BenchmarkExecutors.run(commandLine, handler);
+    }
+}
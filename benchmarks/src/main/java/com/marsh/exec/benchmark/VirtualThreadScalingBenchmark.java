@@ -0,0 +1,138 @@
+package com.marsh.exec.benchmark;
+
+import com.marsh.exec.callback.SimpleStateCallback;
+import com.marsh.exec.executor.CommandLineExecutor;
+import com.marsh.exec.executor.VirtualThreads;
+import org.apache.commons.exec.CommandLine;
+import org.apache.commons.exec.ExecuteException;
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 同时运行大量休眠的子进程时平台线程数与并发数的关系
+ *
+ * 每次调用启动children个休眠sleepSeconds秒的子进程，输出由共享搬运引擎读取，
+ * mode=platform时每个子进程一个平台执行线程，mode=virtual时执行线程及等待进程结束都在虚拟线程中(需要JDK21及以上)。
+ * peakPlatformThreads为调用期间每10ms采样的平台线程数峰值，不包括JDK为每个子进程创建的process reaper线程，
+ * peakReaperThreads为其中process reaper线程数的峰值
+ * @author marsh
+ * @date 2022年05月17日 14:30
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+@State(Scope.Benchmark)
+public class VirtualThreadScalingBenchmark {
+
+    public static final String PLATFORM = "platform";
+
+    public static final String VIRTUAL = "virtual";
+
+    private static final String REAPER_THREAD = "process reaper";
+
+    @Param({"1000", "10000"})
+    public int children;
+
+    @Param({"2"})
+    public int sleepSeconds;
+
+    @Param({VIRTUAL})
+    public String mode;
+
+    private CommandLine commandLine;
+
+    private final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Threads {
+        public long peakPlatformThreads;
+        public long peakReaperThreads;
+    }
+
+    @Setup
+    public void setup() {
+        if (VIRTUAL.equals(mode) && !VirtualThreads.isSupported()) {
+            throw new IllegalStateException("mode=virtual需要JDK21及以上运行");
+        }
+        commandLine = new CommandLine("sleep").addArgument(String.valueOf(sleepSeconds));
+    }
+
+    @Benchmark
+    public void concurrent(Threads threads) throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(children);
+        Sampler sampler = new Sampler();
+        sampler.start();
+        try {
+            for (int i = 0; i < children; i++) {
+                CommandLineExecutor executor = BenchmarkExecutors.executor(BenchmarkExecutors.SHARED);
+                executor.setVirtualThreads(VIRTUAL.equals(mode));
+                executor.setCallback(new SimpleStateCallback() {
+                    @Override
+                    public void onProcessComplete(int exitValue) {
+                        latch.countDown();
+                    }
+
+                    @Override
+                    public void onProcessFailed(ExecuteException e) {
+                        latch.countDown();
+                    }
+                });
+                executor.createThread(commandLine).start();
+            }
+            latch.await();
+        } finally {
+            sampler.interrupt();
+            sampler.join();
+        }
+        threads.peakPlatformThreads = sampler.peakPlatform;
+        threads.peakReaperThreads = sampler.peakReaper;
+    }
+
+    /**
+     * 按名称统计平台线程数，虚拟线程不会出现在ThreadMXBean中
+     */
+    private class Sampler extends Thread {
+
+        private volatile long peakPlatform;
+
+        private volatile long peakReaper;
+
+        private Sampler() {
+            super("Scaling Sampler");
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            while (!isInterrupted()) {
+                long platform = 0;
+                long reaper = 0;
+                for (ThreadInfo info : threadMXBean.getThreadInfo(threadMXBean.getAllThreadIds(), 0)) {
+                    if (info == null) {
+                        continue;
+                    }
+                    if (info.getThreadName().startsWith(REAPER_THREAD)) {
+                        reaper++;
+                    } else {
+                        platform++;
+                    }
+                }
+                peakPlatform = Math.max(peakPlatform, platform);
+                peakReaper = Math.max(peakReaper, reaper);
+                try {
+                    Thread.sleep(10);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+    }
+}
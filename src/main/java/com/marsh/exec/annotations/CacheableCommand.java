@@ -0,0 +1,40 @@
+package com.marsh.exec.annotations;
+
+import java.lang.annotation.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 标记一个CommandArguments实现类的执行结果可以缓存，适用于只做查询的幂等命令，例如git rev-parse、ffprobe、dig
+ *
+ * 需要调度器设置了ResultCache才会生效，相同参数、环境变量及工作目录的任务在有效期内直接返回缓存的结果，
+ * 同时提交的相同任务只会启动一个进程
+ *
+ *     @CacheableCommand(ttl = 30)
+ *     public class GitRevParse implements CommandArguments {
+ *         @Arguments
+ *         private String rev;
+ *
+ *         @Override
+ *         public String command() {
+ *             return "git";
+ *         }
+ *     }
+ * @see com.marsh.exec.scheduler.ResultCache
+ * @author marsh
+ * @date 2022年04月27日 10:20
+ */
+@Target({ElementType.TYPE})
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface CacheableCommand {
+
+    /**
+     * 缓存有效期
+     */
+    long ttl() default 60;
+
+    /**
+     * 有效期单位
+     */
+    TimeUnit unit() default TimeUnit.SECONDS;
+}
@@ -0,0 +1,143 @@
+package com.marsh.exec.build;
+
+import com.marsh.exec.executor.CommandLineExecutor;
+import com.marsh.exec.executor.FileRedirect;
+import com.marsh.exec.launcher.PipelineLauncher;
+import lombok.SneakyThrows;
+import org.apache.commons.exec.CommandLine;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 管道命令构建工具类，相当于shell中的 cmd1 | cmd2 | cmd3
+ *
+ * 各阶段之间由操作系统管道直接连接(JDK21及以上)，只有最后一个阶段的输出经过JVM。
+ * 各阶段只使用其命令行、工作目录、环境变量及错误输出重定向，超时、回调、输出处理等配置在管道对象上设置，
+ * 对整个管道生效：超时或取消时结束所有阶段，所有阶段结束后回调一次StateCallback。
+ *
+ * CommandLinePipelineBuild pipeline = CommandLinePipelineBuild.pipe(
+ *         CommandLineThreadBuild.commandLine(new CommandLine("cat").addArgument("access.log")),
+ *         CommandLineThreadBuild.commandLine(new CommandLine("grep").addArgument("ERROR")),
+ *         CommandLineThreadBuild.commandLine(new CommandLine("wc").addArgument("-l")));
+ * pipeline.timeout(6000L).stateCallback(callback);
+ * CommandLineExecutor executor = pipeline.buildExecutor();
+ * executor.createRunnable(pipeline.getCommandLine()).run();
+ * int[] exitValues = ((PipelineLauncher) executor.getLauncher()).getStageExitValues();
+ * @see PipelineLauncher
+ * @author marsh
+ * @date 2022年05月11日 14:10
+ */
+public class CommandLinePipelineBuild extends CommandLineThreadBuild {
+
+    private final List<CommandLineThreadBuild> stages = new ArrayList<>();
+
+    /**
+     * 为true时任一阶段失败则整个管道失败(退出码为最后一个非0的退出码)，为false时只看最后一个阶段
+     */
+    private boolean pipefail = true;
+
+    private CommandLinePipelineBuild() {
+        super(null);
+    }
+
+    /**
+     * 通过静态方法构建管道
+     *
+     * @param first 第一个阶段
+     * @param next 后续阶段，至少一个
+     * @return
+     */
+    public static CommandLinePipelineBuild pipe(CommandLineThreadBuild first, CommandLineThreadBuild... next) {
+        CommandLinePipelineBuild pipeline = new CommandLinePipelineBuild();
+        pipeline.pipe(first);
+        for (CommandLineThreadBuild stage : next) {
+            pipeline.pipe(stage);
+        }
+        return pipeline;
+    }
+
+    /**
+     * 在管道末尾追加一个阶段
+     *
+     * @param next
+     * @return
+     */
+    public CommandLinePipelineBuild pipe(CommandLineThreadBuild next) {
+        if (next instanceof CommandLinePipelineBuild) {
+            stages.addAll(((CommandLinePipelineBuild) next).stages);
+        } else {
+            stages.add(next);
+        }
+        return this;
+    }
+
+    /**
+     * 设置管道的失败判定方式，默认为true
+     *
+     * @param pipefail
+     * @return
+     */
+    public CommandLinePipelineBuild pipefail(boolean pipefail) {
+        this.pipefail = pipefail;
+        return this;
+    }
+
+    /**
+     * 以 | 连接各阶段的命令行，用于日志及调度分组
+     * @return
+     */
+    @Override
+    public CommandLine getCommandLine() {
+        CommandLine commandLine = null;
+        for (CommandLineThreadBuild stage : stages) {
+            String[] arguments = stage.getCommandLine().toStrings();
+            if (commandLine == null) {
+                commandLine = new CommandLine(arguments[0]);
+            } else {
+                commandLine.addArgument("|", false).addArgument(arguments[0], false);
+            }
+            for (int i = 1; i < arguments.length; i++) {
+                commandLine.addArgument(arguments[i], false);
+            }
+        }
+        return commandLine;
+    }
+
+    /**
+     * 管道不经过结果缓存：拼接的命令行与参数中含有"|"的普通命令相同，并且不包含各阶段的环境变量及工作目录
+     * @return
+     */
+    @Override
+    public boolean isCacheable() {
+        return false;
+    }
+
+    @Override
+    public Thread build() {
+        return buildExecutor().createThread(getCommandLine());
+    }
+
+    @Override
+    public Runnable buildRunnable() {
+        return buildExecutor().createRunnable(getCommandLine());
+    }
+
+    @Override
+    @SneakyThrows
+    public CommandLineExecutor buildExecutor() {
+        if (stages.size() < 2) {
+            throw new IllegalStateException("管道至少需要两个命令");
+        }
+        CommandLineExecutor executor = super.buildExecutor();
+        List<PipelineLauncher.Stage> launchStages = new ArrayList<>(stages.size());
+        for (CommandLineThreadBuild stage : stages) {
+            FileRedirect stderr = stage.getStderrRedirect();
+            launchStages.add(new PipelineLauncher.Stage(Arrays.asList(stage.getCommandLine().toStrings()),
+                    stage.resolveEnvironment(), stage.getWorkingDirectory(), stderr == null ? null : stderr.prepare()));
+        }
+        executor.setLauncher(new PipelineLauncher(launchStages, pipefail));
+        return executor;
+    }
+}
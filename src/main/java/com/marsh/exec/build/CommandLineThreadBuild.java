@@ -1,15 +1,48 @@
 package com.marsh.exec.build;
 
+import com.marsh.exec.annotations.CacheableCommand;
 import com.marsh.exec.callback.StateCallback;
 import com.marsh.exec.executor.CommandLineExecutor;
+import com.marsh.exec.executor.FileRedirect;
+import com.marsh.exec.executor.VirtualThreads;
+import com.marsh.exec.hedge.HedgeConfig;
+import com.marsh.exec.hedge.HedgeOutputBuffer;
+import com.marsh.exec.input.StdinSource;
 import com.marsh.exec.interfaces.CommandArguments;
+import com.marsh.exec.launcher.LaunchTemplate;
+import com.marsh.exec.launcher.ProcessLauncher;
+import com.marsh.exec.launcher.ProcessReaper;
+import com.marsh.exec.metrics.HistogramRegistry;
+import com.marsh.exec.metrics.MetricsListener;
+import com.marsh.exec.metrics.ResourceSampler;
 import com.marsh.exec.parse.CommandArgumentsParse;
+import com.marsh.exec.stream.AsyncLineOutputListener;
+import com.marsh.exec.stream.LineDeliveryConfig;
 import com.marsh.exec.stream.LineOutputListener;
 import com.marsh.exec.stream.LineOutputStream;
+import com.marsh.exec.stream.LineRetentionPolicy;
+import com.marsh.exec.stream.LineStreamHandler;
+import com.marsh.exec.stream.LineViewListener;
+import com.marsh.exec.stream.NullStreamHandler;
+import com.marsh.exec.stream.OutputShapingConfig;
+import com.marsh.exec.stream.SharedPumpStreamHandler;
+import com.marsh.exec.stream.StreamPumpEngine;
+import com.marsh.exec.timeout.ProcessTimeout;
+import lombok.Getter;
+import lombok.SneakyThrows;
 import org.apache.commons.exec.CommandLine;
 import org.apache.commons.exec.ExecuteStreamHandler;
-import org.apache.commons.exec.ExecuteWatchdog;
-import org.apache.commons.exec.PumpStreamHandler;
+import org.apache.commons.exec.environment.EnvironmentUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 /**
  * 命令行线程构建工具类可配合线程池进行任务限流操作
@@ -21,36 +54,143 @@ import org.apache.commons.exec.PumpStreamHandler;
  * thread1.start();
  * thread2.start();
  *
- * 方式2：
+ * 方式2(线程池中运行，使用buildRunnable()，开启virtualThreads()时build()返回的虚拟线程交给线程池不会执行)：
  * LinkedBlockingQueue queue = new LinkedBlockingQueue();
  * ExecutorService executorService = new ThreadPoolExecutor(1, 3, 0, TimeUnit.SECONDS, queue);
- * executorService.execute(thread1);
- * executorService.execute(thread2);
+ * executorService.execute(CommandLineThreadBuild.commandLine(CommandArguments接口对象).timeout(100L).buildRunnable());
+ *
+ * 固定大小的线程池无法适应CPU密集的命令，可以改用CommandLineScheduler并设置AdaptiveConcurrencyLimiter，
+ * 按照运行时间及系统负载自动调整每个命令的并发数
  * @see com.marsh.exec.annotations.Arguments 关于命令行构建可参考这个注解
  * @author Marsh
  * @date 2022-04-12日 10:45
  */
 public class CommandLineThreadBuild {
 
+    private static final LineRetentionPolicy DEFAULT_LINE_RETENTION = LineRetentionPolicy.all();
+
     /**
      * 命令行
      */
+    @Getter
     private CommandLine commandLine;
     /**
      * 任务超时时间
      */
     private Long timeout;
+    /**
+     * 超时后等待进程自行退出的时间，超过后强制结束
+     */
+    private long killAfter = ProcessTimeout.DEFAULT_KILL_AFTER;
     /**
      * 任务执行过程回调
      */
+    @Getter
     private StateCallback stateCallback;
     /**
      * 任务执行过程中输入输出流处理器
      */
     private ExecuteStreamHandler streamHandler;
+    /**
+     * 共享的输出流搬运引擎，为空时每个子进程使用独立的搬运线程
+     */
+    private StreamPumpEngine pumpEngine;
+    /**
+     * 控制台输出行的保留策略，默认保留所有行
+     */
+    private LineRetentionPolicy lineRetention = DEFAULT_LINE_RETENTION;
+    /**
+     * 没有设置行监听器时是否打印到控制台
+     */
+    private boolean consoleOutput = true;
+    /**
+     * 以视图方式接收标准输出的监听器，设置后标准输出不再打印到控制台
+     */
+    private LineViewListener stdoutViewListener;
+    /**
+     * 标准输出的行监听器，为空时打印到控制台
+     */
+    private LineOutputListener stdoutLineListener;
+    /**
+     * 错误输出的行监听器，为空时打印到控制台
+     */
+    private LineOutputListener stderrLineListener;
+    /**
+     * 异步投递配置，为空时在输出流搬运线程中同步回调行监听器
+     */
+    private LineDeliveryConfig lineDelivery;
+    /**
+     * 输出整形配置，为空时所有行都交给行监听器
+     */
+    private OutputShapingConfig outputShaping;
+    /**
+     * 子进程启动策略，为空时由当前JVM直接启动
+     */
+    private ProcessLauncher launcher;
+    /**
+     * 启动模板，不为空时工作目录及基础环境变量取自模板
+     */
+    @Getter
+    private LaunchTemplate launchTemplate;
+    /**
+     * 标准输入的来源，为空时子进程的标准输入直接关闭
+     */
+    @Getter
+    private StdinSource stdinSource;
+    /**
+     * 标准输出重定向的文件
+     */
+    @Getter
+    private FileRedirect stdoutRedirect;
+    /**
+     * 错误输出重定向的文件
+     */
+    @Getter
+    private FileRedirect stderrRedirect;
+    /**
+     * 执行指标监听器
+     */
+    private MetricsListener metricsListener;
+    /**
+     * 子进程资源采样器，为空时不统计资源占用
+     */
+    private ResourceSampler resourceSampler;
+    /**
+     * 对冲执行配置，为空时不对冲
+     */
+    @Getter
+    private HedgeConfig hedgeConfig;
+    /**
+     * 子进程回收器，为空时执行线程阻塞等待子进程结束
+     */
+    @Getter
+    private ProcessReaper processReaper;
+    /**
+     * 异步等待子进程结束时停止输出流搬运的最长等待时间(毫秒)
+     */
+    private long asyncStreamStopTimeout = CommandLineExecutor.DEFAULT_ASYNC_STREAM_STOP_TIMEOUT;
+    /**
+     * 是否在虚拟线程中运行执行线程及输出流搬运线程
+     */
+    private boolean virtualThreads;
+    /**
+     * 工作目录
+     */
+    @Getter
+    private File workingDirectory;
+    /**
+     * 额外的环境变量，会合并到当前进程的环境变量中
+     */
+    @Getter
+    private Map<String, String> environment = Collections.emptyMap();
+    /**
+     * 执行结果缓存有效期(毫秒)，大于0时才会使用调度器的结果缓存
+     */
+    @Getter
+    private long cacheTtlMillis;
 
 
-    private CommandLineThreadBuild(CommandLine commandLine) {
+    CommandLineThreadBuild(CommandLine commandLine) {
         this.commandLine = commandLine;
     }
 
@@ -72,7 +212,12 @@ public class CommandLineThreadBuild {
      * @return
      */
     public static CommandLineThreadBuild commandLine(CommandArguments commandArguments) {
-        return new CommandLineThreadBuild(CommandArgumentsParse.parse(commandArguments));
+        CommandLineThreadBuild build = new CommandLineThreadBuild(CommandArgumentsParse.parse(commandArguments));
+        CacheableCommand cacheable = commandArguments.getClass().getAnnotation(CacheableCommand.class);
+        if (cacheable != null) {
+            build.cacheTtl(cacheable.ttl(), cacheable.unit());
+        }
+        return build;
     }
 
     /**
@@ -86,6 +231,19 @@ public class CommandLineThreadBuild {
         return this;
     }
 
+    /**
+     * 设置超时时间，超时后先结束进程(SIGTERM)，进程在killAfter毫秒内仍未退出时强制结束(SIGKILL)
+     *
+     * @param timeout
+     * @param killAfter 小于等于0时超时后直接强制结束
+     * @return
+     */
+    public CommandLineThreadBuild timeout(Long timeout, long killAfter) {
+        this.timeout = timeout;
+        this.killAfter = killAfter;
+        return this;
+    }
+
     /**
      * 设置输入输出流
      *
@@ -97,6 +255,377 @@ public class CommandLineThreadBuild {
         return this;
     }
 
+    /**
+     * 使用全局共享的搬运引擎处理输出流，不再为每个子进程创建搬运线程，设置了streamHandler时该配置无效
+     *
+     * @return
+     * @see StreamPumpEngine#getDefault()
+     */
+    public CommandLineThreadBuild sharedPump() {
+        return sharedPump(StreamPumpEngine.getDefault());
+    }
+
+    /**
+     * 使用指定的搬运引擎处理输出流，设置了streamHandler时该配置无效
+     *
+     * @param pumpEngine
+     * @return
+     */
+    public CommandLineThreadBuild sharedPump(StreamPumpEngine pumpEngine) {
+        this.pumpEngine = pumpEngine;
+        return this;
+    }
+
+    /**
+     * 设置标准输出及错误输出的行保留策略，设置了streamHandler时该配置无效
+     *
+     * @param lineRetention
+     * @return
+     * @see LineRetentionPolicy
+     */
+    public CommandLineThreadBuild lineRetention(LineRetentionPolicy lineRetention) {
+        this.lineRetention = lineRetention;
+        return this;
+    }
+
+    /**
+     * 将标准输出及错误输出的原始字节保存到directory下内存映射的分段文件中，没有设置行监听器时不再打印到控制台。
+     * 输出很大时行内容不占用堆内存，getLines()(以及ExecutionResult中的输出)返回按需解码的列表，
+     * 也可以通过LineOutputStream.getLineRetention()取得MappedCaptureStore按行随机访问或流式读取。
+     * 每次执行创建两个MappedCaptureStore，由调用方在读取完成后关闭(关闭后上述输出不能再读取)，
+     * 未关闭时映射要等到GC回收后才释放
+     *
+     * @param directory 分段文件所在目录
+     * @return
+     * @see com.marsh.exec.stream.MappedCaptureStore
+     */
+    public CommandLineThreadBuild captureTo(Path directory) {
+        this.lineRetention = LineRetentionPolicy.mapped(directory);
+        this.consoleOutput = false;
+        return this;
+    }
+
+    /**
+     * 以视图方式接收标准输出，每行不再创建String对象，设置后标准输出不再打印到控制台。
+     * 只需要视图时可以配合lineRetention(LineRetentionPolicy.none())使用
+     *
+     * @param stdoutViewListener
+     * @return
+     * @see com.marsh.exec.extract.FieldExtractor
+     */
+    public CommandLineThreadBuild stdoutListener(LineViewListener stdoutViewListener) {
+        this.stdoutViewListener = stdoutViewListener;
+        return this;
+    }
+
+    /**
+     * 设置标准输出的行监听器，替换默认的打印到控制台
+     *
+     * @param stdoutLineListener
+     * @return
+     */
+    public CommandLineThreadBuild stdoutLineListener(LineOutputListener stdoutLineListener) {
+        this.stdoutLineListener = stdoutLineListener;
+        return this;
+    }
+
+    /**
+     * 设置错误输出的行监听器，替换默认的打印到控制台
+     *
+     * @param stderrLineListener
+     * @return
+     */
+    public CommandLineThreadBuild stderrLineListener(LineOutputListener stderrLineListener) {
+        this.stderrLineListener = stderrLineListener;
+        return this;
+    }
+
+    /**
+     * 行监听器改为异步批量投递，慢的监听器不再阻塞输出流搬运线程
+     *
+     * @param lineDelivery
+     * @return
+     * @see AsyncLineOutputListener
+     */
+    public CommandLineThreadBuild asyncDelivery(LineDeliveryConfig lineDelivery) {
+        this.lineDelivery = lineDelivery;
+        return this;
+    }
+
+    /**
+     * 对标准输出及错误输出分别整形：合并回车刷新的进度行、折叠连续重复的行并按每秒行数限流，
+     * 被丢弃的行不解码，也不会交给行监听器及行保留策略，适合进度条、ping及详细编译日志等大量相似输出的命令
+     *
+     * @param outputShaping
+     * @return
+     * @see OutputShapingConfig
+     */
+    public CommandLineThreadBuild outputShaping(OutputShapingConfig outputShaping) {
+        this.outputShaping = outputShaping;
+        return this;
+    }
+
+    /**
+     * 以文件作为标准输入，直接启动进程时由操作系统重定向，数据不经过JVM
+     *
+     * @param path
+     * @return
+     */
+    public CommandLineThreadBuild stdin(Path path) {
+        return stdin(StdinSource.of(path));
+    }
+
+    /**
+     * 以输入流作为标准输入，输入流由调用方关闭，只能执行一次
+     *
+     * @param inputStream
+     * @return
+     */
+    public CommandLineThreadBuild stdin(InputStream inputStream) {
+        return stdin(StdinSource.of(inputStream));
+    }
+
+    /**
+     * 以ByteBuffer(包括MappedByteBuffer)中position到limit之间的数据作为标准输入
+     *
+     * @param buffer
+     * @return
+     */
+    public CommandLineThreadBuild stdin(ByteBuffer buffer) {
+        return stdin(StdinSource.of(buffer));
+    }
+
+    /**
+     * 设置标准输入的来源，边生成边写入时使用StdinWriter，设置了streamHandler时同样生效
+     *
+     * @param stdinSource
+     * @return
+     * @see com.marsh.exec.input.StdinWriter
+     */
+    public CommandLineThreadBuild stdin(StdinSource stdinSource) {
+        this.stdinSource = stdinSource;
+        return this;
+    }
+
+    /**
+     * 将标准输出直接重定向到文件(覆盖写入)，输出不再经过JVM
+     *
+     * @param path
+     * @return
+     */
+    public CommandLineThreadBuild redirectStdoutTo(Path path) {
+        return redirectStdoutTo(path, false);
+    }
+
+    public CommandLineThreadBuild redirectStdoutTo(Path path, boolean append) {
+        return redirectStdoutTo(path, append, null);
+    }
+
+    /**
+     * 将标准输出直接重定向到文件，输出不再经过JVM
+     *
+     * @param path 重定向的文件
+     * @param append 是否追加写入
+     * @param lineOutputListener 进程结束后按行读取本次写入文件内容的监听器，可以为null
+     * @return
+     */
+    public CommandLineThreadBuild redirectStdoutTo(Path path, boolean append, LineOutputListener lineOutputListener) {
+        this.stdoutRedirect = new FileRedirect(path, append, lineOutputListener);
+        return this;
+    }
+
+    /**
+     * 将错误输出直接重定向到文件(覆盖写入)，输出不再经过JVM
+     *
+     * @param path
+     * @return
+     */
+    public CommandLineThreadBuild redirectStderrTo(Path path) {
+        return redirectStderrTo(path, false);
+    }
+
+    public CommandLineThreadBuild redirectStderrTo(Path path, boolean append) {
+        return redirectStderrTo(path, append, null);
+    }
+
+    /**
+     * 将错误输出直接重定向到文件，输出不再经过JVM
+     *
+     * @param path 重定向的文件
+     * @param append 是否追加写入
+     * @param lineOutputListener 进程结束后按行读取本次写入文件内容的监听器，可以为null
+     * @return
+     */
+    public CommandLineThreadBuild redirectStderrTo(Path path, boolean append, LineOutputListener lineOutputListener) {
+        this.stderrRedirect = new FileRedirect(path, append, lineOutputListener);
+        return this;
+    }
+
+    /**
+     * 设置执行指标监听器，每次执行结束后接收各阶段耗时及输出量
+     *
+     * @param metricsListener
+     * @return
+     * @see com.marsh.exec.metrics.HistogramRegistry
+     */
+    public CommandLineThreadBuild metricsListener(MetricsListener metricsListener) {
+        this.metricsListener = metricsListener;
+        return this;
+    }
+
+    /**
+     * 通过/proc统计子进程的CPU时间、峰值内存、IO及上下文切换，只支持Linux，
+     * 结果通过StateCallback.onProcessComplete(int, ResourceUsage)及ExecutionResult获取
+     *
+     * @return
+     * @see ResourceSampler#getDefault()
+     */
+    public CommandLineThreadBuild resourceAccounting() {
+        return resourceAccounting(ResourceSampler.getDefault());
+    }
+
+    /**
+     * 使用指定的采样器统计子进程的资源占用
+     *
+     * @param resourceSampler
+     * @return
+     */
+    public CommandLineThreadBuild resourceAccounting(ResourceSampler resourceSampler) {
+        this.resourceSampler = resourceSampler;
+        return this;
+    }
+
+    /**
+     * 开启对冲执行：运行时间超过历史运行时间的指定百分位仍未结束时再启动一个相同的进程，取先结束的一个并结束另一个，
+     * 对冲进程失败时忽略它继续等待主进程，回调只触发一次。历史运行时间来自HedgeConfig中的HistogramRegistry，未指定时使用metricsListener。
+     * 对冲执行时行监听器在命令结束后一次性收到胜出进程的输出，不支持自定义streamHandler、视图监听器、
+     * 输出重定向及只能读取一次的标准输入
+     *
+     * @param hedgeConfig
+     * @return
+     * @see HedgeConfig
+     */
+    public CommandLineThreadBuild hedge(HedgeConfig hedgeConfig) {
+        this.hedgeConfig = hedgeConfig;
+        return this;
+    }
+
+    /**
+     * 异步等待子进程结束：执行线程启动进程后立即返回，由共享的回收器等待进程结束，
+     * 在完成线程池中读完输出并触发回调。大量长时间运行的子进程不再各占用一个等待线程，
+     * 配合sharedPump()时每个子进程不占用任何专属线程
+     *
+     * @return
+     * @see ProcessReaper#getDefault()
+     */
+    public CommandLineThreadBuild asyncCompletion() {
+        return asyncCompletion(ProcessReaper.getDefault());
+    }
+
+    /**
+     * 使用指定的回收器异步等待子进程结束
+     *
+     * @param processReaper
+     * @return
+     */
+    public CommandLineThreadBuild asyncCompletion(ProcessReaper processReaper) {
+        this.processReaper = processReaper;
+        return this;
+    }
+
+    /**
+     * 异步等待子进程结束时停止输出流搬运的最长等待时间，子进程启动的后台进程持有输出管道时避免一直得不到回调，
+     * 超时后按执行失败回调
+     *
+     * @param millis 毫秒，0表示一直等待，默认{@link CommandLineExecutor#DEFAULT_ASYNC_STREAM_STOP_TIMEOUT}
+     * @return
+     */
+    public CommandLineThreadBuild asyncStreamStopTimeout(long millis) {
+        if (millis < 0) {
+            throw new IllegalArgumentException("millis不能小于0");
+        }
+        this.asyncStreamStopTimeout = millis;
+        return this;
+    }
+
+    /**
+     * 在虚拟线程中运行执行线程、每个子进程独立的输出流搬运线程以及等待进程结束，需要JDK21及以上运行多版本jar，
+     * 不支持时抛出IllegalStateException。build()返回未启动的虚拟线程，只能通过start()运行(虚拟线程的run()不会执行任何操作)，
+     * 交给线程池时使用buildRunnable()，此时执行任务在线程池的线程中运行；
+     * 大量并发的子进程应同时使用sharedPump()，阻塞读取管道的搬运线程仍会占用载体线程
+     *
+     * @return
+     * @see VirtualThreads
+     */
+    public CommandLineThreadBuild virtualThreads() {
+        if (!VirtualThreads.isSupported()) {
+            throw new IllegalStateException("当前运行环境不支持虚拟线程，需要JDK21及以上");
+        }
+        this.virtualThreads = true;
+        return this;
+    }
+
+    /**
+     * 设置子进程启动策略，堆内存很大或启动频繁时可以使用SpawnServerLauncher.getDefault()
+     *
+     * @param launcher
+     * @return
+     * @see com.marsh.exec.launcher.SpawnServerLauncher
+     */
+    public CommandLineThreadBuild launcher(ProcessLauncher launcher) {
+        this.launcher = launcher;
+        return this;
+    }
+
+    /**
+     * 使用启动模板：工作目录、环境变量及命令路径只在创建模板时校验、合并及查找一次，
+     * environment()设置的环境变量作为本次执行的覆盖层，不能再设置workingDirectory
+     *
+     * @param launchTemplate
+     * @return
+     * @see LaunchTemplate
+     */
+    public CommandLineThreadBuild launchTemplate(LaunchTemplate launchTemplate) {
+        this.launchTemplate = launchTemplate;
+        return this;
+    }
+
+    /**
+     * 设置工作目录
+     *
+     * @param workingDirectory
+     * @return
+     */
+    public CommandLineThreadBuild workingDirectory(File workingDirectory) {
+        this.workingDirectory = workingDirectory;
+        return this;
+    }
+
+    /**
+     * 设置额外的环境变量，运行时合并到当前进程的环境变量中
+     *
+     * @param environment
+     * @return
+     */
+    public CommandLineThreadBuild environment(Map<String, String> environment) {
+        this.environment = environment == null ? Collections.emptyMap() : new HashMap<>(environment);
+        return this;
+    }
+
+    /**
+     * 设置执行结果缓存有效期，只有通过设置了ResultCache的调度器运行时生效，
+     * CommandArguments实现类标记了@CacheableCommand时默认使用注解中的有效期。
+     * 设置了标准输入时结果取决于输入的内容，不会缓存也不会与相同的任务合并
+     *
+     * @param ttl
+     * @param unit
+     * @return
+     * @see com.marsh.exec.scheduler.ResultCache
+     */
+    public CommandLineThreadBuild cacheTtl(long ttl, TimeUnit unit) {
+        this.cacheTtlMillis = unit.toMillis(ttl);
+        return this;
+    }
 
     /**
      * 设置自定义事件回调
@@ -112,34 +641,169 @@ public class CommandLineThreadBuild {
     }
 
     /**
-     * 构建一个命令行线程任务,后续通过start()运行或者线程池来进行运行
+     * 构建一个命令行线程任务,后续通过start()运行，交给线程池运行时使用{@link #buildRunnable()}
      * @return
      */
     public Thread build() {
+        return buildExecutor().createThread(commandLine);
+    }
+
+    /**
+     * 构建一个命令行执行任务，交给线程池或在当前线程中运行，开启virtualThreads()时同样可用
+     * @return
+     */
+    public Runnable buildRunnable() {
+        return buildExecutor().createRunnable(commandLine);
+    }
+
+    /**
+     * 按照当前配置构建一个命令行执行器，每次调用都会返回一个新的执行器
+     * @return
+     * @see com.marsh.exec.scheduler.CommandLineScheduler 调度器通过该方法获取执行器
+     */
+    @SneakyThrows
+    public CommandLineExecutor buildExecutor() {
+        if (hedgeConfig != null) {
+            checkHedge();
+        }
         CommandLineExecutor executor = new CommandLineExecutor();
+        if (launchTemplate != null) {
+            if (workingDirectory != null) {
+                throw new IllegalStateException("启动模板已经包含工作目录，不能再设置workingDirectory");
+            }
+            executor.setLaunchTemplate(launchTemplate.withEnvironment(environment));
+        } else {
+            if (workingDirectory != null) {
+                executor.setWorkingDirectory(workingDirectory);
+            }
+            executor.setEnvironment(resolveEnvironment());
+        }
         if (stateCallback != null) {
             executor.setCallback(stateCallback);
         }
         if (timeout != null && timeout > 0) {
-            executor.setWatchdog(new ExecuteWatchdog(timeout));
+            executor.setTimeout(new ProcessTimeout(timeout, killAfter));
+        }
+        executor.setMetricsListener(metricsListener != null || hedgeConfig == null ? metricsListener : hedgeConfig.getRegistry());
+        executor.setResourceSampler(resourceSampler);
+        executor.setProcessReaper(processReaper);
+        executor.setAsyncStreamStopTimeout(asyncStreamStopTimeout);
+        executor.setVirtualThreads(virtualThreads);
+        executor.setLauncher(launcher);
+        executor.setStdinSource(stdinSource);
+        executor.setStdoutRedirect(stdoutRedirect);
+        executor.setStderrRedirect(stderrRedirect);
+        if (hedgeConfig != null) {
+            executor.setHedgeConfig(hedgeConfig);
+            executor.setHedgeFactory(this::buildExecutor);
         }
         if (streamHandler != null) {
             executor.setStreamHandler(streamHandler);
+        } else if (stdoutRedirect != null && stderrRedirect != null) {
+            // 输出全部由操作系统写入文件，不需要搬运线程
+            executor.setStreamHandler(new NullStreamHandler());
         } else {
             // 替换默认的PumpStreamHandler对象出现字符串乱码问题
-            executor.setStreamHandler(new PumpStreamHandler(new LineOutputStream(new LineOutputListener() {
-                @Override
-                public void processLine(String line) {
-                    System.out.println(line);
-                }
-            }), new LineOutputStream(new LineOutputListener() {
-                @Override
-                public void processLine(String line) {
-                    System.err.println(line);
-                }
-            })));
+            LineOutputListener stdoutListener = resolveStdoutLineListener();
+            LineOutputListener stderrListener = resolveStderrLineListener();
+            if (hedgeConfig != null) {
+                HedgeOutputBuffer hedgeOutput = new HedgeOutputBuffer();
+                stdoutListener = stdoutListener == null ? null : hedgeOutput.wrap(stdoutListener);
+                stderrListener = stderrListener == null ? null : hedgeOutput.wrap(stderrListener);
+                executor.setHedgeOutput(hedgeOutput);
+            }
+            if (lineDelivery != null) {
+                stdoutListener = stdoutListener == null ? null : new AsyncLineOutputListener(stdoutListener, lineDelivery);
+                stderrListener = stderrListener == null ? null : new AsyncLineOutputListener(stderrListener, lineDelivery);
+            }
+            LineOutputStream stdout = new LineOutputStream(stdoutListener);
+            stdout.setLineRetention(lineRetention.create());
+            if (stdoutViewListener != null) {
+                stdout.setLineViewListener(stdoutViewListener);
+            }
+            LineOutputStream stderr = new LineOutputStream(stderrListener);
+            stderr.setLineRetention(lineRetention.create());
+            stdout.setOutputShaping(outputShaping);
+            stderr.setOutputShaping(outputShaping);
+            if (pumpEngine != null) {
+                executor.setStreamHandler(new SharedPumpStreamHandler(pumpEngine, stdout, stderr));
+            } else {
+                LineStreamHandler lineStreamHandler = new LineStreamHandler(stdout, stderr);
+                lineStreamHandler.setVirtualThreads(virtualThreads);
+                executor.setStreamHandler(lineStreamHandler);
+            }
+        }
+        return executor;
+    }
+
+    /**
+     * 执行时接收标准输出行的监听器：设置了视图监听器时为null，没有设置行监听器时为打印到控制台的监听器(关闭控制台输出时为null)
+     * @return
+     */
+    public LineOutputListener resolveStdoutLineListener() {
+        if (stdoutViewListener != null) {
+            return null;
+        }
+        return stdoutLineListener != null || !consoleOutput ? stdoutLineListener : new LineOutputListener() {
+            @Override
+            public void processLine(String line) {
+                System.out.println(line);
+            }
+        };
+    }
+
+    /**
+     * 执行时接收错误输出行的监听器，没有设置行监听器时为打印到控制台的监听器(关闭控制台输出时为null)
+     * @return
+     */
+    public LineOutputListener resolveStderrLineListener() {
+        return stderrLineListener != null || !consoleOutput ? stderrLineListener : new LineOutputListener() {
+            @Override
+            public void processLine(String line) {
+                System.err.println(line);
+            }
+        };
+    }
+
+    /**
+     * 执行结果能否经过结果缓存。缓存的键只包含命令行参数、环境变量及工作目录，
+     * 标准输入、输出重定向、自定义streamHandler、非默认的行保留策略(包括captureTo)、输出整形及对冲执行
+     * 会改变执行方式或结果中保存的输出，设置了这些配置的任务直接执行
+     * @return
+     */
+    public boolean isCacheable() {
+        return stdinSource == null && stdoutRedirect == null && stderrRedirect == null && streamHandler == null
+                && lineRetention == DEFAULT_LINE_RETENTION && outputShaping == null && hedgeConfig == null;
+    }
+
+    /**
+     * 对冲执行会同时运行两个相同的进程，输出及输入必须能够被两个进程分别使用
+     */
+    private void checkHedge() {
+        if (streamHandler != null || stdoutViewListener != null) {
+            throw new IllegalStateException("对冲执行不支持自定义streamHandler及视图监听器");
+        }
+        if (stdoutRedirect != null || stderrRedirect != null) {
+            throw new IllegalStateException("对冲执行不支持输出重定向");
+        }
+        if (stdinSource != null && !stdinSource.isRepeatable()) {
+            throw new IllegalStateException("对冲执行的标准输入必须能够重复读取(文件或ByteBuffer)");
+        }
+        if (hedgeConfig.getRegistry() == null && !(metricsListener instanceof HistogramRegistry)) {
+            throw new IllegalStateException("对冲执行需要HistogramRegistry提供历史运行时间，请在HedgeConfig或metricsListener中设置");
+        }
+    }
+
+    /**
+     * 合并额外的环境变量后的完整环境变量，没有额外的环境变量时返回null表示继承当前进程的环境变量
+     */
+    Map<String, String> resolveEnvironment() throws IOException {
+        if (environment.isEmpty()) {
+            return null;
         }
-        return executor.createThread(commandLine);
+        Map<String, String> procEnvironment = EnvironmentUtils.getProcEnvironment();
+        procEnvironment.putAll(environment);
+        return procEnvironment;
     }
 
     /**
@@ -1,5 +1,6 @@
 package com.marsh.exec.callback;
 
+import com.marsh.exec.metrics.ResourceUsage;
 import org.apache.commons.exec.ExecuteException;
 import org.apache.commons.exec.ExecuteResultHandler;
 
@@ -23,4 +24,13 @@ public interface StateCallback extends ExecuteResultHandler {
      * @param e
      */
     void onProcessTimeout(ExecuteException e);
+
+    /**
+     * 开启了资源统计的任务正常结束时代替{@link #onProcessComplete(int)}回调，默认转发给onProcessComplete(int)
+     * @param exitValue 进程退出码
+     * @param resourceUsage 子进程的资源占用
+     */
+    default void onProcessComplete(int exitValue, ResourceUsage resourceUsage) {
+        onProcessComplete(exitValue);
+    }
 }
@@ -1,8 +1,24 @@
 package com.marsh.exec.executor;
 
-import cn.hutool.core.util.ReflectUtil;
+import cn.hutool.core.thread.NamedThreadFactory;
 import com.marsh.exec.callback.SimpleStateCallback;
 import com.marsh.exec.callback.StateCallback;
+import com.marsh.exec.hedge.HedgeConfig;
+import com.marsh.exec.hedge.HedgeOutputBuffer;
+import com.marsh.exec.input.StdinFeeder;
+import com.marsh.exec.input.StdinSource;
+import com.marsh.exec.launcher.LaunchTemplate;
+import com.marsh.exec.launcher.ProcessLauncher;
+import com.marsh.exec.launcher.ProcessReaper;
+import com.marsh.exec.metrics.ExecutionMetrics;
+import com.marsh.exec.metrics.MetricsListener;
+import com.marsh.exec.metrics.ResourceSampler;
+import com.marsh.exec.metrics.ResourceUsage;
+import com.marsh.exec.stream.LineOutputProvider;
+import com.marsh.exec.stream.LineOutputStream;
+import com.marsh.exec.timeout.ProcessTimeout;
+import com.marsh.exec.timeout.Timeout;
+import com.marsh.exec.timeout.TimingWheel;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.SneakyThrows;
@@ -10,8 +26,17 @@ import org.apache.commons.exec.*;
 
 import java.io.File;
 import java.io.IOException;
-import java.lang.reflect.Method;
+import java.lang.ProcessBuilder.Redirect;
 import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
 /**
  * 自定义了一个命令行的实现类，主要扩展了回调事件及增加了创建线程已达到配合线程池使用
@@ -20,14 +45,179 @@ import java.util.Map;
  */
 public class CommandLineExecutor extends DefaultExecutor {
 
+    /**
+     * 异步执行时停止输出流搬运的默认最长等待时间(毫秒)
+     */
+    public static final long DEFAULT_ASYNC_STREAM_STOP_TIMEOUT = 10000;
+
+    /** 异步执行时在这里停止输出流搬运，可能阻塞到孙进程关闭输出管道，不占用回收器的完成线程 */
+    private static volatile ExecutorService streamStopExecutor;
+
     @Getter
     @Setter
     private StateCallback callback  = new SimpleStateCallback();
+    /**
+     * 超时控制，为空时不限制执行时间
+     */
     @Getter
     @Setter
+    private ProcessTimeout timeout;
+    /**
+     * 兼容原有的超时设置，每个进程一个计时线程
+     * @deprecated 使用{@link #setTimeout(ProcessTimeout)}，由共享的时间轮计时
+     */
+    @Deprecated
     private ExecuteWatchdog watchdog;
-    private static Method setProcessNotStartedMethod = ReflectUtil.getMethod(ExecuteWatchdog.class, "setProcessNotStarted");
+    /**
+     * 标准输出重定向到文件，不为空时通过ProcessBuilder启动进程
+     */
+    @Getter
+    @Setter
+    private FileRedirect stdoutRedirect;
+    /**
+     * 错误输出重定向到文件，不为空时通过ProcessBuilder启动进程
+     */
+    @Getter
+    @Setter
+    private FileRedirect stderrRedirect;
+    /**
+     * 标准输入的来源，为空时直接关闭子进程的标准输入(自定义的streamHandler可以自行写入)
+     */
+    @Getter
+    @Setter
+    private StdinSource stdinSource;
+    /**
+     * 进程的环境变量，为空时继承当前进程的环境变量
+     */
+    @Getter
+    @Setter
+    private Map<String, String> environment;
+    /**
+     * 启动模板，不为空时使用模板中已经校验的工作目录、合并好的环境变量及缓存的命令路径，
+     * 忽略workingDirectory及environment
+     */
+    @Getter
+    @Setter
+    private LaunchTemplate launchTemplate;
+    /**
+     * 子进程启动策略，为空时由当前JVM直接启动，设置了输出重定向且启动策略不支持重定向时不生效
+     */
+    @Getter
+    @Setter
+    private ProcessLauncher launcher;
+    /**
+     * 执行指标监听器，为空时不统计监听器耗时
+     */
+    @Getter
+    @Setter
+    private MetricsListener metricsListener;
+    /**
+     * 子进程资源采样器，为空时不统计资源占用
+     */
+    @Getter
+    @Setter
+    private ResourceSampler resourceSampler;
+    /**
+     * 最近一次执行中子进程的资源占用，未开启资源统计或进程未启动时为null
+     */
+    @Getter
+    private volatile ResourceUsage resourceUsage;
+    /**
+     * 子进程回收器，不为空时启动进程后线程立即返回，进程结束后由回收器的完成线程池读完输出并触发回调，
+     * 对冲执行时不生效
+     */
+    @Getter
+    @Setter
+    private ProcessReaper processReaper;
+    /**
+     * 异步执行时停止输出流搬运的最长等待时间(毫秒)，0表示一直等待。
+     * 子进程退出后，它启动的后台进程(孙进程)可能继续持有输出管道，搬运线程会一直读不到流结束，
+     * 等待在停止线程池中进行，不占用回收器的完成线程，但无限等待时该子进程一直得不到回调。
+     * 超时后按执行失败处理(ExecuteException，退出码为INVALID_EXITVALUE)，已经读到的输出保留，
+     * 搬运线程在后台继续读取直到管道关闭，之后读到的行仍会交给行监听器。
+     * PumpStreamHandler每个搬运线程额外等待2秒(commons-exec的STOP_TIMEOUT_ADDITION)
+     */
+    @Getter
+    @Setter
+    private long asyncStreamStopTimeout = DEFAULT_ASYNC_STREAM_STOP_TIMEOUT;
+    /**
+     * 是否在虚拟线程中运行执行线程，需要JDK21及以上
+     */
+    @Getter
+    @Setter
+    private boolean virtualThreads;
+    /**
+     * 对冲执行配置，与hedgeFactory同时设置时才会对冲
+     */
+    @Getter
+    @Setter
+    private HedgeConfig hedgeConfig;
+    /**
+     * 创建对冲进程执行器的工厂，创建的执行器不会再次对冲
+     */
+    @Getter
+    @Setter
+    private Supplier<CommandLineExecutor> hedgeFactory;
+    /**
+     * 对冲执行时本执行器的输出缓冲，胜出后才交给行监听器
+     */
+    @Setter
+    private HedgeOutputBuffer hedgeOutput;
+    /**
+     * 最近一次执行中胜出的对冲进程的执行器，主进程胜出或没有对冲时为null，
+     * 此时输出、指标及资源占用应从该执行器获取
+     */
+    @Getter
+    private volatile CommandLineExecutor hedgeWinner;
+    /** 本次执行的对冲状态，只在主执行器执行期间不为空 */
+    private volatile HedgeRace hedgeRace;
+    /**
+     * 最近一次执行的指标，进程未启动时为null
+     */
+    @Getter
+    private volatile ExecutionMetrics metrics;
+    /**
+     * 任务进入等待队列的时间(System.nanoTime())，为0时以createThread的时间为准
+     */
+    @Setter
+    private long queuedAtNanos;
+    private long launchStartNanos;
+    private long launchEndNanos;
+    private long exitNanos;
+    private long drainEndNanos;
     private IOException exceptionCaught;
+    /** 本次执行的标准输入是否已经由操作系统重定向 */
+    private boolean stdinRedirected;
+    /** 本次执行写入重定向文件的起始位置 */
+    private long stdoutRedirectStart;
+    private long stderrRedirectStart;
+    /** 本次执行向子进程写入标准输入的任务 */
+    private Future<?> stdinFeed;
+    /** 本次执行的资源采样 */
+    private ResourceSampler.Tracker resourceTracker;
+    /** 异步执行的进程已经启动，尚未完成回调 */
+    private volatile boolean completionPending;
+    /** 当前正在运行的子进程，用于外部取消任务时结束进程 */
+    private volatile Process process;
+
+    /**
+     * @deprecated 使用{@link #getTimeout()}
+     */
+    @Deprecated
+    @Override
+    public ExecuteWatchdog getWatchdog() {
+        return watchdog;
+    }
+
+    /**
+     * 仍然可用，但每个进程会占用一个计时线程，与{@link #setTimeout(ProcessTimeout)}同时设置时两者都生效
+     * @deprecated 使用{@link #setTimeout(ProcessTimeout)}
+     */
+    @Deprecated
+    @Override
+    public void setWatchdog(final ExecuteWatchdog watchdog) {
+        this.watchdog = watchdog;
+    }
 
     /** worker thread for asynchronous execution */
     @Getter
@@ -45,7 +235,7 @@ public class CommandLineExecutor extends DefaultExecutor {
      * @return
      */
     public Thread createThread(final CommandLine command){
-        return createThread(command,null,callback);
+        return createThread(command,environment,callback);
     }
 
     /**
@@ -55,47 +245,72 @@ public class CommandLineExecutor extends DefaultExecutor {
      * @param handler
      * @return
      */
-    @SneakyThrows
     public Thread createThread(final CommandLine command, final Map<String, String> environment, final ExecuteResultHandler handler){
-        if (getWorkingDirectory() != null && !getWorkingDirectory().exists()) {
-            throw new IOException(getWorkingDirectory() + " doesn't exist.");
-        }
+        return createThread(createRunnable(command, environment, handler), "Exec Default Executor");
+    }
 
-        if (watchdog != null) {
-            ReflectUtil.invoke(watchdog,setProcessNotStartedMethod);
+    /**
+     * 创建执行任务，由调用方在自己的线程(例如线程池)中运行。
+     * 开启virtualThreads时createThread返回的虚拟线程只能通过start()运行，直接调用其run()不会执行任何操作，
+     * 需要在当前线程中执行时应使用该方法
+     * @param command
+     * @return
+     */
+    public Runnable createRunnable(final CommandLine command){
+        return createRunnable(command,environment,callback);
+    }
+
+    /**
+     * 方法线程不安全，该方法请保证不要重复调用
+     * @param command
+     * @param environment
+     * @param handler
+     * @return
+     * @see #createRunnable(CommandLine)
+     */
+    @SneakyThrows
+    public Runnable createRunnable(final CommandLine command, final Map<String, String> environment, final ExecuteResultHandler handler){
+        if (launchTemplate == null && getWorkingDirectory() != null && !getWorkingDirectory().exists()) {
+            throw new IOException(getWorkingDirectory() + " doesn't exist.");
         }
 
+        final long createdNanos = queuedAtNanos != 0 ? queuedAtNanos : System.nanoTime();
         final Runnable runnable = new Runnable()
         {
             public void run()
             {
                 int exitValue = Executor.INVALID_EXITVALUE;
+                final long queueNanos = System.nanoTime() - createdNanos;
                 try {
                     boolean flag = true;
                     if (handler instanceof StateCallback){
                         flag = ((StateCallback)handler).onProcessBefore();
                     }
-                    if (flag){
+                    if (flag && hedgeConfig != null && hedgeFactory != null) {
+                        executeHedged(command, environment, handler, queueNanos);
+                    } else if (flag && processReaper != null) {
+                        executeAsync(command, environment, handler, queueNanos);
+                    } else if (flag){
                         exitValue = executeInternal(command, environment, getWorkingDirectory(), getStreamHandler());
-                        handler.onProcessComplete(exitValue);
+                        completed(command, handler, exitValue, queueNanos);
                     }
                 } catch (final ExecuteException e) {
-                    if (handler instanceof StateCallback){
-                        if (watchdog != null && watchdog.killedProcess()) {
-                            // it was killed on purpose by the watchdog
-                            ((StateCallback)handler).onProcessTimeout(e);
-                        } else {
-                            handler.onProcessFailed(e);
-                        }
-                    } else {
-                        handler.onProcessFailed(e);
-                    }
+                    failed(command, handler, e, queueNanos);
                 } catch (final Exception e) {
+                    recordMetrics(command, exitValue, true, queueNanos);
                     handler.onProcessFailed(new ExecuteException("Execution failed", exitValue, e));
                 }
             }
         };
-        return createThread(runnable, "Exec Default Executor");
+        return runnable;
+    }
+
+    /**
+     * 开启virtualThreads时创建虚拟线程
+     */
+    @Override
+    protected Thread createThread(final Runnable runnable, final String name) {
+        return virtualThreads ? VirtualThreads.newThread(runnable, name) : super.createThread(runnable, name);
     }
 
 
@@ -113,61 +328,151 @@ public class CommandLineExecutor extends DefaultExecutor {
     private int executeInternal(final CommandLine command, final Map<String, String> environment,
                                 final File dir, final ExecuteStreamHandler streams) throws IOException {
 
-        setExceptionCaught(null);
+        final Process process = startProcess(command, environment, dir, streams);
 
-        final Process process = this.launch(command, environment, dir);
+        int exitValue = Executor.INVALID_EXITVALUE;
 
         try {
-            streams.setProcessInputStream(process.getOutputStream());
-            streams.setProcessOutputStream(process.getInputStream());
-            streams.setProcessErrorStream(process.getErrorStream());
-        } catch (final IOException e) {
+            exitValue = VirtualThreads.waitFor(process);
+        } catch (final InterruptedException e) {
             process.destroy();
-            throw e;
+        }
+        finally {
+            // see http://bugs.sun.com/view_bug.do?bug_id=6420270
+            // see https://issues.apache.org/jira/browse/EXEC-46
+            // Process.waitFor should clear interrupt status when throwing InterruptedException
+            // but we have to do that manually
+            Thread.interrupted();
         }
 
-        streams.start();
+        return completeProcess(process, streams, exitValue);
+    }
 
+    /**
+     * 启动进程并开始搬运输入输出流、超时计时及资源采样
+     */
+    private Process startProcess(final CommandLine command, final Map<String, String> environment,
+                                 final File dir, final ExecuteStreamHandler streams) throws IOException {
+
+        // 执行器可能被重复使用，清除上一次执行的状态
+        exceptionCaught = null;
+        metrics = null;
+        resourceUsage = null;
+        stdinFeed = null;
+        resourceTracker = null;
+        launchEndNanos = 0;
+        exitNanos = 0;
+        drainEndNanos = 0;
+
+        launchStartNanos = System.nanoTime();
+        final Process process;
         try {
-
-            // add the process to the list of those to destroy if the VM exits
-            if (this.getProcessDestroyer() != null) {
-                this.getProcessDestroyer().add(process);
+            process = this.launch(command, environment, dir);
+        } catch (final IOException e) {
+            if (stdinSource != null) {
+                stdinSource.abandon();
             }
+            throw e;
+        }
+        launchEndNanos = System.nanoTime();
+        this.process = process;
+        HedgeRace race = hedgeRace;
+        if (race != null) {
+            race.primaryLaunched();
+        }
 
-            // associate the watchdog with the newly created process
-            if (watchdog != null) {
-                watchdog.start(process);
+        try {
+            if (stdinSource == null) {
+                streams.setProcessInputStream(process.getOutputStream());
+            } else if (!stdinRedirected) {
+                stdinFeed = StdinFeeder.start(stdinSource, process.getOutputStream());
             }
+            streams.setProcessOutputStream(process.getInputStream());
+            streams.setProcessErrorStream(process.getErrorStream());
+        } catch (final IOException e) {
+            process.destroy();
+            throw e;
+        }
 
-            int exitValue = Executor.INVALID_EXITVALUE;
+        if (metricsListener != null && streams instanceof LineOutputProvider) {
+            ((LineOutputProvider) streams).getStdout().setListenerTiming(true);
+            ((LineOutputProvider) streams).getStderr().setListenerTiming(true);
+        }
 
-            try {
-                exitValue = process.waitFor();
-            } catch (final InterruptedException e) {
-                process.destroy();
-            }
-            finally {
-                // see http://bugs.sun.com/view_bug.do?bug_id=6420270
-                // see https://issues.apache.org/jira/browse/EXEC-46
-                // Process.waitFor should clear interrupt status when throwing InterruptedException
-                // but we have to do that manually
-                Thread.interrupted();
-            }
+        streams.start();
 
-            if (watchdog != null) {
-                watchdog.stop();
-            }
+        // add the process to the list of those to destroy if the VM exits
+        if (this.getProcessDestroyer() != null) {
+            this.getProcessDestroyer().add(process);
+        }
+
+        // associate the timeout with the newly created process
+        if (timeout != null) {
+            timeout.start(process);
+        }
+        if (watchdog != null) {
+            watchdog.start(process);
+        }
+
+        resourceTracker = resourceSampler == null ? null : resourceSampler.track(process);
+        return process;
+    }
 
+    /**
+     * 进程结束后停止超时计时及资源采样，读完输出流并关闭进程的流
+     * @param exitValue 进程的退出码
+     */
+    private int completeProcess(final Process process, final ExecuteStreamHandler streams, final int exitValue)
+            throws IOException {
+        try {
+            processExited();
             try {
                 streams.stop();
             }
             catch (final IOException e) {
                 setExceptionCaught(e);
             }
+        } catch (final RuntimeException e) {
+            releaseProcess(process);
+            throw e;
+        }
+        return finishProcess(process, exitValue);
+    }
+
+    /**
+     * 停止超时计时及资源采样，不会阻塞
+     */
+    private void processExited() {
+        exitNanos = System.nanoTime();
+        if (resourceTracker != null) {
+            resourceUsage = resourceTracker.stop();
+        }
+
+        if (timeout != null) {
+            timeout.stop();
+        }
+        if (watchdog != null) {
+            watchdog.stop();
+        }
+    }
+
+    /**
+     * 输出流搬运停止后关闭进程的流并检查执行结果
+     * @param exitValue 进程的退出码
+     */
+    private int finishProcess(final Process process, final int exitValue) throws IOException {
+        try {
+            drainEndNanos = System.nanoTime();
+
+            if (stdinFeed != null) {
+                finishStdinFeed(stdinFeed);
+            }
 
             closeProcessStreams(process);
 
+            scanRedirect(stdoutRedirect, stdoutRedirectStart);
+            scanRedirect(stderrRedirect, stderrRedirectStart);
+
             if (getExceptionCaught() != null) {
                 throw getExceptionCaught();
             }
@@ -188,11 +493,357 @@ public class CommandLineExecutor extends DefaultExecutor {
 
             return exitValue;
         } finally {
-            // remove the process to the list of those to destroy if the VM exits
-            if (this.getProcessDestroyer() != null) {
-                this.getProcessDestroyer().remove(process);
+            releaseProcess(process);
+        }
+    }
+
+    private void releaseProcess(final Process process) {
+        this.process = null;
+        // remove the process to the list of those to destroy if the VM exits
+        if (this.getProcessDestroyer() != null) {
+            this.getProcessDestroyer().remove(process);
+        }
+    }
+
+    /**
+     * 在停止线程池中停止输出流搬运，不占用调用线程。PumpStreamHandler自带停止超时；
+     * 其他流处理器(例如共享搬运引擎)由时间轮在超时后让返回的future以超时异常结束，停止线程池的线程继续读取
+     * @param stopTimeout 最长等待时间(毫秒)，0表示一直等待
+     */
+    private CompletableFuture<Void> stopStreamsAsync(final ExecuteStreamHandler streams, final long stopTimeout) {
+        final CompletableFuture<Void> stopping = new CompletableFuture<>();
+        final boolean pump = streams instanceof PumpStreamHandler;
+        if (stopTimeout > 0 && pump) {
+            ((PumpStreamHandler) streams).setStopTimeout(stopTimeout);
+        }
+        getStreamStopExecutor().execute(() -> {
+            try {
+                streams.stop();
+                stopping.complete(null);
+            } catch (final IOException | RuntimeException e) {
+                stopping.completeExceptionally(e);
+            }
+        });
+        if (stopTimeout > 0 && !pump) {
+            final Timeout timer = TimingWheel.getDefault().schedule(() -> stopping.completeExceptionally(
+                    new ExecuteException("The stop timeout of " + stopTimeout + " ms was exceeded", Executor.INVALID_EXITVALUE)),
+                    stopTimeout, TimeUnit.MILLISECONDS);
+            stopping.whenComplete((ignored, e) -> timer.cancel());
+        }
+        return stopping;
+    }
+
+    private static ExecutorService getStreamStopExecutor() {
+        if (streamStopExecutor == null) {
+            synchronized (CommandLineExecutor.class) {
+                if (streamStopExecutor == null) {
+                    streamStopExecutor = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60, TimeUnit.SECONDS,
+                            new SynchronousQueue<>(), new NamedThreadFactory("Exec Stream Stop-", true));
+                }
+            }
+        }
+        return streamStopExecutor;
+    }
+
+    /**
+     * 异步执行：启动进程后立即返回，由回收器在进程结束后停止计时，在停止线程池中读完输出，
+     * 再回到完成线程池触发回调，等待期间不占用线程，完成线程池中的任务不会阻塞。
+     * 启动失败时抛出异常，由调用方按照同步执行的方式处理
+     */
+    private void executeAsync(final CommandLine command, final Map<String, String> environment,
+                              final ExecuteResultHandler handler, final long queueNanos) throws IOException {
+        final ExecuteStreamHandler streams = getStreamHandler();
+        final Process process = startProcess(command, environment, getWorkingDirectory(), streams);
+        completionPending = true;
+        processReaper.watch(process, () -> {
+            CompletableFuture<Void> stopping;
+            try {
+                processExited();
+                stopping = stopStreamsAsync(streams, asyncStreamStopTimeout);
+            } catch (final RuntimeException e) {
+                stopping = new CompletableFuture<>();
+                stopping.completeExceptionally(e);
+            }
+            stopping.whenComplete((ignored, e) -> processReaper.execute(() -> {
+                int exitValue = Executor.INVALID_EXITVALUE;
+                try {
+                    if (e instanceof IOException) {
+                        setExceptionCaught((IOException) e);
+                    } else if (e != null) {
+                        setExceptionCaught(new IOException(e));
+                    }
+                    exitValue = finishProcess(process, process.exitValue());
+                    completed(command, handler, exitValue, queueNanos);
+                } catch (final ExecuteException ex) {
+                    failed(command, handler, ex, queueNanos);
+                } catch (final Exception ex) {
+                    recordMetrics(command, exitValue, true, queueNanos);
+                    handler.onProcessFailed(new ExecuteException("Execution failed", exitValue, ex));
+                } finally {
+                    completionPending = false;
+                }
+            }));
+        });
+    }
+
+    /**
+     * 记录指标并触发执行成功的回调
+     */
+    private void completed(final CommandLine command, final ExecuteResultHandler handler, final int exitValue, final long queueNanos) {
+        recordMetrics(command, exitValue, false, queueNanos);
+        if (resourceUsage != null && handler instanceof StateCallback) {
+            ((StateCallback) handler).onProcessComplete(exitValue, resourceUsage);
+        } else {
+            handler.onProcessComplete(exitValue);
+        }
+    }
+
+    /**
+     * 记录指标并触发执行失败或超时的回调
+     */
+    private void failed(final CommandLine command, final ExecuteResultHandler handler, final ExecuteException e, final long queueNanos) {
+        recordMetrics(command, e.getExitValue(), true, queueNanos);
+        if (handler instanceof StateCallback){
+            if (killedByTimeout()) {
+                // it was killed on purpose by the timeout
+                ((StateCallback)handler).onProcessTimeout(e);
+            } else {
+                handler.onProcessFailed(e);
+            }
+        } else {
+            handler.onProcessFailed(e);
+        }
+    }
+
+    /**
+     * 最近一次执行的进程是否因为超时被结束
+     */
+    boolean killedByTimeout() {
+        return timeout != null && timeout.killedProcess() || watchdog != null && watchdog.killedProcess();
+    }
+
+    /**
+     * 对冲执行：主进程及按需启动的对冲进程由HedgeRace运行，当前线程等待胜出的进程，
+     * 只根据胜出的结果记录指标并触发一次回调，落败进程的输出及指标全部丢弃
+     */
+    private void executeHedged(final CommandLine command, final Map<String, String> environment,
+                               final ExecuteResultHandler handler, final long queueNanos) {
+        HedgeRace race = new HedgeRace(this, command, environment, hedgeConfig, hedgeFactory);
+        hedgeWinner = null;
+        hedgeRace = race;
+        HedgeRace.Outcome winner;
+        try {
+            winner = race.run();
+        } finally {
+            hedgeRace = null;
+        }
+        CommandLineExecutor source = winner.executor;
+        if (source != this) {
+            hedgeWinner = source;
+        }
+        if (source.hedgeOutput != null) {
+            source.hedgeOutput.release();
+        }
+        if (winner.failure == null) {
+            source.recordMetrics(command, winner.exitValue, false, queueNanos);
+            if (source.resourceUsage != null && handler instanceof StateCallback) {
+                ((StateCallback) handler).onProcessComplete(winner.exitValue, source.resourceUsage);
+            } else {
+                handler.onProcessComplete(winner.exitValue);
             }
+        } else if (winner.failure instanceof ExecuteException) {
+            ExecuteException e = (ExecuteException) winner.failure;
+            source.recordMetrics(command, e.getExitValue(), true, queueNanos);
+            if (winner.timedOut && handler instanceof StateCallback) {
+                ((StateCallback) handler).onProcessTimeout(e);
+            } else {
+                handler.onProcessFailed(e);
+            }
+        } else {
+            source.recordMetrics(command, winner.exitValue, true, queueNanos);
+            handler.onProcessFailed(new ExecuteException("Execution failed", winner.exitValue, winner.failure));
+        }
+    }
+
+    /**
+     * 执行一次，不触发回调，由HedgeRace在对冲线程中调用
+     */
+    int executeAttempt(final CommandLine command, final Map<String, String> environment) throws IOException {
+        return executeInternal(command, environment, getWorkingDirectory(), getStreamHandler());
+    }
+
+    /**
+     * 落败时丢弃缓冲的输出
+     */
+    void discardHedgeOutput() {
+        if (hedgeOutput != null) {
+            hedgeOutput.discard();
+        }
+    }
+
+    /**
+     * 进程结束后仍在写入的输入不再需要，已经结束的输入如果读取失败则记录异常
+     */
+    private void finishStdinFeed(final Future<?> stdinFeed) {
+        if (!stdinFeed.isDone()) {
+            stdinSource.abandon();
+            stdinFeed.cancel(true);
+            return;
+        }
+        try {
+            stdinFeed.get();
+        } catch (final ExecutionException e) {
+            Throwable cause = e.getCause();
+            setExceptionCaught(cause instanceof IOException ? (IOException) cause : new IOException(cause));
+        } catch (final InterruptedException | CancellationException e) {
+            // 已经结束，不会阻塞
+        }
+    }
+
+    /**
+     * 进程启动过的情况下生成本次执行的指标并通知监听器，在StateCallback回调之前调用
+     */
+    private void recordMetrics(final CommandLine command, final int exitValue, final boolean failed, final long queueNanos) {
+        if (launchEndNanos == 0) {
+            return;
+        }
+        long end = System.nanoTime();
+        long exit = exitNanos != 0 ? exitNanos : end;
+        long drainEnd = drainEndNanos != 0 ? drainEndNanos : end;
+        ExecutionMetrics.ExecutionMetricsBuilder builder = ExecutionMetrics.builder()
+                .command(command.getExecutable())
+                .exitValue(exitValue)
+                .failed(failed)
+                .queueNanos(queueNanos)
+                .launchNanos(launchEndNanos - launchStartNanos)
+                .runNanos(exit - launchEndNanos)
+                .drainNanos(Math.max(0, drainEnd - exit))
+                .firstOutputNanos(-1);
+        if (getStreamHandler() instanceof LineOutputProvider) {
+            LineOutputStream stdout = ((LineOutputProvider) getStreamHandler()).getStdout();
+            LineOutputStream stderr = ((LineOutputProvider) getStreamHandler()).getStderr();
+            long firstWrite = firstNonZero(stdout.getFirstWriteNanos(), stderr.getFirstWriteNanos());
+            builder.firstOutputNanos(firstWrite == 0 ? -1 : firstWrite - launchEndNanos)
+                    .listenerNanos(stdout.getListenerNanos() + stderr.getListenerNanos())
+                    .stdoutBytes(stdout.getByteCount())
+                    .stdoutLines(stdout.getLineCount())
+                    .stderrBytes(stderr.getByteCount())
+                    .stderrLines(stderr.getLineCount());
+        }
+        this.metrics = builder.build();
+        if (metricsListener != null) {
+            metricsListener.onExecution(this.metrics);
+        }
+    }
+
+    private static long firstNonZero(long a, long b) {
+        if (a == 0) {
+            return b;
+        }
+        return b == 0 ? a : Math.min(a, b);
+    }
+
+    /**
+     * 设置了输入输出重定向时通过ProcessBuilder(或支持重定向的启动策略)启动进程，由操作系统直接读写文件，
+     * 否则交给启动策略，未设置启动策略时使用默认的启动方式。
+     * 设置了启动模板时工作目录及环境变量取自模板，没有启动策略(或启动策略不支持重定向)时由模板创建ProcessBuilder
+     */
+    @Override
+    protected Process launch(final CommandLine command, final Map<String, String> env, final File dir) throws IOException {
+        boolean redirectable = launcher == null || launcher.supportsRedirect()
+                || stdoutRedirect != null || stderrRedirect != null;
+        Redirect stdinRedirect = stdinSource != null && redirectable ? stdinSource.getRedirect() : null;
+        stdinRedirected = stdinRedirect != null;
+        boolean redirected = stdinRedirect != null || stdoutRedirect != null || stderrRedirect != null;
+        if (launchTemplate != null && (launcher == null || redirected && !launcher.supportsRedirect())) {
+            return launchFromTemplate(command, stdinRedirect);
+        }
+        final Map<String, String> environment = launchTemplate == null ? env : launchTemplate.getEnvironment();
+        final File directory = launchTemplate == null ? dir : launchTemplate.getWorkingDirectory();
+        if (!redirected) {
+            return launcher == null ? super.launch(command, environment, directory) : launcher.launch(command, environment, directory);
+        }
+        if (launchTemplate == null && directory != null && !directory.exists()) {
+            throw new IOException(directory + " doesn't exist.");
+        }
+        recordRedirectStart();
+        if (launcher != null && launcher.supportsRedirect()) {
+            return launcher.launch(command, environment, directory, stdinRedirect,
+                    stdoutRedirect == null ? null : stdoutRedirect.prepare(),
+                    stderrRedirect == null ? null : stderrRedirect.prepare());
+        }
+        ProcessBuilder builder = new ProcessBuilder(command.toStrings()).directory(directory);
+        if (environment != null) {
+            builder.environment().clear();
+            builder.environment().putAll(environment);
+        }
+        return redirect(builder, stdinRedirect).start();
+    }
+
+    /**
+     * 通过启动模板启动进程，模板缓存的命令路径或工作目录已经失效导致启动失败时刷新缓存后重试一次
+     */
+    private Process launchFromTemplate(final CommandLine command, final Redirect stdinRedirect) throws IOException {
+        recordRedirectStart();
+        try {
+            return redirect(launchTemplate.newProcessBuilder(command), stdinRedirect).start();
+        } catch (final IOException e) {
+            launchTemplate.invalidate();
+            return redirect(launchTemplate.newProcessBuilder(command), stdinRedirect).start();
+        }
+    }
+
+    private ProcessBuilder redirect(final ProcessBuilder builder, final Redirect stdinRedirect) throws IOException {
+        if (stdinRedirect != null) {
+            builder.redirectInput(stdinRedirect);
+        }
+        if (stdoutRedirect != null) {
+            builder.redirectOutput(stdoutRedirect.prepare());
+        }
+        if (stderrRedirect != null) {
+            builder.redirectError(stderrRedirect.prepare());
+        }
+        return builder;
+    }
+
+    /**
+     * 重定向对象可能被多个执行器共享，本次写入的起始位置记录在执行器中
+     */
+    private void recordRedirectStart() throws IOException {
+        stdoutRedirectStart = stdoutRedirect == null ? 0 : stdoutRedirect.startPosition();
+        stderrRedirectStart = stderrRedirect == null ? 0 : stderrRedirect.startPosition();
+    }
+
+    private void scanRedirect(final FileRedirect redirect, final long startPosition) {
+        if (redirect == null) {
+            return;
+        }
+        try {
+            redirect.scan(startPosition);
+        } catch (final IOException e) {
+            setExceptionCaught(e);
+        }
+    }
+
+    /**
+     * 异步执行的进程已经启动且尚未完成回调
+     * @return
+     */
+    public boolean isCompletionPending() {
+        return completionPending;
+    }
+
+    /**
+     * 强制结束当前正在运行的子进程，进程结束后会按照执行失败触发回调
+     * @return 是否存在正在运行的子进程
+     */
+    public boolean destroyProcess() {
+        Process current = this.process;
+        if (current == null) {
+            return false;
         }
+        current.destroyForcibly();
+        return true;
     }
 
 
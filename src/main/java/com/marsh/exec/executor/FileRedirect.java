@@ -0,0 +1,99 @@
+package com.marsh.exec.executor;
+
+import com.marsh.exec.stream.DiscardLineRetention;
+import com.marsh.exec.stream.LineOutputListener;
+import com.marsh.exec.stream.LineOutputStream;
+import lombok.Getter;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * 将子进程的输出直接重定向到文件，数据由操作系统写入文件，不经过JVM中的搬运线程
+ *
+ * 如果设置了lineOutputListener，进程结束后会通过内存映射的方式扫描本次写入文件的内容，按行回调监听器。
+ * 对象不可变，可以被多个执行器共享(调度器重新提交、对冲及管道)，每次执行的起始位置由执行器各自记录；
+ * 多个执行同时追加写入同一个文件时，扫描的内容可能包含其他执行的输出
+ * @author marsh
+ * @date 2022年04月21日 14:10
+ */
+public class FileRedirect {
+
+    /**
+     * 每次映射的最大字节数，避免超大文件占用过多的地址空间
+     */
+    private static final long MAX_MAPPING_SIZE = 64L * 1024 * 1024;
+
+    private static final int SCAN_BUFFER_SIZE = 8192;
+
+    @Getter
+    private final Path path;
+
+    @Getter
+    private final boolean append;
+
+    @Getter
+    private final LineOutputListener lineOutputListener;
+
+    public FileRedirect(Path path, boolean append) {
+        this(path, append, null);
+    }
+
+    /**
+     * @param path 重定向的文件
+     * @param append 是否追加写入，为false时会清空文件
+     * @param lineOutputListener 进程结束后按行读取本次输出的监听器，可以为null
+     */
+    public FileRedirect(Path path, boolean append, LineOutputListener lineOutputListener) {
+        this.path = path;
+        this.append = append;
+        this.lineOutputListener = lineOutputListener;
+    }
+
+    /**
+     * 转换为ProcessBuilder的重定向对象
+     * @return
+     */
+    public ProcessBuilder.Redirect prepare() {
+        return append ? ProcessBuilder.Redirect.appendTo(path.toFile()) : ProcessBuilder.Redirect.to(path.toFile());
+    }
+
+    /**
+     * 本次写入的起始位置，需要在进程启动前获取
+     * @return 追加写入时为文件当前的长度，否则为0
+     * @throws IOException
+     */
+    public long startPosition() throws IOException {
+        return append && Files.exists(path) ? Files.size(path) : 0;
+    }
+
+    /**
+     * 进程结束后通过内存映射扫描本次写入的内容并按行回调监听器
+     * @param startPosition 进程启动前通过{@link #startPosition()}获取的起始位置
+     * @throws IOException
+     */
+    void scan(long startPosition) throws IOException {
+        if (lineOutputListener == null) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+             LineOutputStream lineOutputStream = new LineOutputStream(lineOutputListener)) {
+            lineOutputStream.setLineRetention(new DiscardLineRetention());
+            long end = channel.size();
+            byte[] buffer = new byte[SCAN_BUFFER_SIZE];
+            for (long position = startPosition; position < end; position += MAX_MAPPING_SIZE) {
+                MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, position,
+                        Math.min(MAX_MAPPING_SIZE, end - position));
+                while (mapped.hasRemaining()) {
+                    int length = Math.min(buffer.length, mapped.remaining());
+                    mapped.get(buffer, 0, length);
+                    lineOutputStream.write(buffer, 0, length);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,259 @@
+package com.marsh.exec.executor;
+
+import cn.hutool.core.thread.NamedThreadFactory;
+import com.marsh.exec.hedge.HedgeConfig;
+import com.marsh.exec.metrics.CommandMetrics;
+import com.marsh.exec.metrics.HistogramRegistry;
+import com.marsh.exec.timeout.Timeout;
+import com.marsh.exec.timeout.TimingWheel;
+import org.apache.commons.exec.CommandLine;
+import org.apache.commons.exec.Executor;
+
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * 一次对冲执行中主进程与对冲进程的竞争状态
+ *
+ * 主进程及对冲进程都在共享的对冲线程中运行，主进程启动后按历史运行时间的百分位设置定时，
+ * 到期时仍未结束且预算充足则启动一个相同的进程。主进程结束即胜出(无论成功还是失败)，对冲进程只有成功结束才胜出，
+ * 对冲进程启动失败或执行失败时丢弃它的结果并继续等待主进程；胜出后另一个进程被强制结束，
+ * 回调由主执行器的线程根据胜出的结果触发一次。落败的进程在对冲线程中等待输出流关闭，
+ * 不会因为被结束进程的子进程仍持有输出管道而拖慢胜出的结果
+ * @author marsh
+ * @date 2022年05月15日 10:10
+ */
+final class HedgeRace {
+
+    private static volatile ExecutorService defaultExecutor;
+
+    private final CommandLineExecutor primary;
+    private final CommandLine command;
+    private final Map<String, String> environment;
+    private final HedgeConfig config;
+    private final Supplier<CommandLineExecutor> factory;
+
+    private Timeout timer;
+    /** 对冲进程的执行器，尚未创建时为null */
+    private CommandLineExecutor hedge;
+    /** 正在运行主进程的线程 */
+    private Thread primaryThread;
+    /** 正在运行对冲进程的线程 */
+    private Thread hedgeThread;
+    private Outcome winner;
+    private boolean cancelled;
+
+    HedgeRace(CommandLineExecutor primary, CommandLine command, Map<String, String> environment,
+              HedgeConfig config, Supplier<CommandLineExecutor> factory) {
+        this.primary = primary;
+        this.command = command;
+        this.environment = environment;
+        this.config = config;
+        this.factory = factory;
+    }
+
+    /**
+     * 运行主进程及对冲进程的共享线程池，空闲线程60秒后退出
+     */
+    private static ExecutorService getDefaultExecutor() {
+        if (defaultExecutor == null) {
+            synchronized (HedgeRace.class) {
+                if (defaultExecutor == null) {
+                    defaultExecutor = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60, TimeUnit.SECONDS,
+                            new SynchronousQueue<>(), new NamedThreadFactory("Exec Hedge-", true));
+                }
+            }
+        }
+        return defaultExecutor;
+    }
+
+    /**
+     * 启动主进程并在当前线程中等待第一个结束的进程，等待期间被中断时结束所有进程
+     * @return 胜出的结果
+     */
+    Outcome run() {
+        getDefaultExecutor().execute(this::runPrimary);
+        synchronized (this) {
+            while (winner == null) {
+                try {
+                    wait();
+                } catch (final InterruptedException e) {
+                    cancel();
+                }
+            }
+            return winner;
+        }
+    }
+
+    /**
+     * 外部取消执行，与直接执行时一样结束进程后按照执行失败返回
+     */
+    private synchronized void cancel() {
+        cancelled = true;
+        if (timer != null) {
+            timer.cancel();
+        }
+        primary.destroyProcess();
+        if (primaryThread != null) {
+            // 进程尚未启动时通过中断让执行器在waitFor时结束进程
+            primaryThread.interrupt();
+        }
+        killHedge();
+    }
+
+    private void runPrimary() {
+        synchronized (this) {
+            primaryThread = Thread.currentThread();
+            if (cancelled) {
+                primaryThread.interrupt();
+            }
+        }
+        Outcome outcome;
+        try {
+            outcome = new Outcome(primary, primary.executeAttempt(command, environment), null);
+        } catch (final Exception e) {
+            outcome = new Outcome(primary, Executor.INVALID_EXITVALUE, e);
+        } finally {
+            synchronized (this) {
+                primaryThread = null;
+            }
+            Thread.interrupted();
+        }
+        finish(outcome);
+    }
+
+    /**
+     * 主进程已经启动，历史数据足够时设置启动对冲进程的定时
+     */
+    void primaryLaunched() {
+        config.getBudget().onExecution();
+        HistogramRegistry registry = config.getRegistry();
+        if (registry == null && primary.getMetricsListener() instanceof HistogramRegistry) {
+            registry = (HistogramRegistry) primary.getMetricsListener();
+        }
+        CommandMetrics metrics = registry == null ? null : registry.get(command.getExecutable());
+        if (metrics == null || metrics.getRun().getCount() < config.getMinSamples()) {
+            return;
+        }
+        long delayNanos = Math.max(TimeUnit.MILLISECONDS.toNanos(config.getMinDelayMillis()),
+                metrics.getRun().getValueAtPercentile(config.getPercentile()));
+        synchronized (this) {
+            if (winner == null && !cancelled) {
+                timer = TimingWheel.getDefault().schedule(this::launchHedge, delayNanos, TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+
+    /**
+     * 在时间轮的任务线程中执行，只检查状态及预算，进程在对冲线程中启动
+     */
+    private void launchHedge() {
+        synchronized (this) {
+            if (winner != null || cancelled || !config.getBudget().tryAcquire()) {
+                return;
+            }
+        }
+        getDefaultExecutor().execute(this::runHedge);
+    }
+
+    private void runHedge() {
+        synchronized (this) {
+            if (winner != null || cancelled) {
+                return;
+            }
+            hedgeThread = Thread.currentThread();
+        }
+        Outcome outcome;
+        CommandLineExecutor executor = null;
+        try {
+            executor = factory.get();
+            executor.setHedgeConfig(null);
+            synchronized (this) {
+                if (winner != null || cancelled) {
+                    executor.discardHedgeOutput();
+                    return;
+                }
+                hedge = executor;
+            }
+            outcome = new Outcome(executor, executor.executeAttempt(command, environment), null);
+        } catch (final Exception e) {
+            if (executor != null) {
+                // 对冲进程启动失败、执行失败或被结束，不影响主进程
+                hedgeFailed(executor);
+            }
+            return;
+        } finally {
+            synchronized (this) {
+                hedgeThread = null;
+            }
+            // 清除落败时的中断标记，避免影响线程池中的下一个任务
+            Thread.interrupted();
+        }
+        finish(outcome);
+    }
+
+    /**
+     * 对冲进程没有成功结束，丢弃它的输出，继续等待主进程
+     */
+    private synchronized void hedgeFailed(CommandLineExecutor executor) {
+        if (hedge == executor) {
+            hedge = null;
+        }
+        executor.discardHedgeOutput();
+    }
+
+    /**
+     * 一个进程已经结束，第一个结束的进程胜出并强制结束另一个进程
+     */
+    private synchronized void finish(Outcome outcome) {
+        if (winner != null) {
+            return;
+        }
+        winner = outcome;
+        if (timer != null) {
+            timer.cancel();
+        }
+        if (outcome.executor == primary) {
+            killHedge();
+        } else {
+            primary.destroyProcess();
+            primary.discardHedgeOutput();
+        }
+        notifyAll();
+    }
+
+    private void killHedge() {
+        if (hedge != null) {
+            hedge.destroyProcess();
+            hedge.discardHedgeOutput();
+        }
+        if (hedgeThread != null) {
+            // 进程尚未启动时通过中断让执行器在waitFor时结束进程
+            hedgeThread.interrupt();
+        }
+    }
+
+    /**
+     * 一个进程的执行结果
+     */
+    static final class Outcome {
+
+        final CommandLineExecutor executor;
+        final int exitValue;
+        /** 执行失败的异常，成功时为null */
+        final Exception failure;
+        /** 是否因为超时被结束 */
+        final boolean timedOut;
+
+        Outcome(CommandLineExecutor executor, int exitValue, Exception failure) {
+            this.executor = executor;
+            this.exitValue = exitValue;
+            this.failure = failure;
+            this.timedOut = failure != null && executor.killedByTimeout();
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.marsh.exec.executor;
+
+/**
+ * 虚拟线程的适配层，项目以Java 8编译，这里是不支持虚拟线程的实现
+ *
+ * 在JDK21及以上构建时，src/main/java21中的同名类会编译到多版本jar的META-INF/versions/21中，
+ * 在JDK21及以上运行时替换本类：创建虚拟线程，并在虚拟线程中通过Process.onExit()等待进程结束
+ * @author marsh
+ * @date 2022年05月17日 10:20
+ */
+public final class VirtualThreads {
+
+    private VirtualThreads() {
+    }
+
+    /**
+     * 当前运行环境是否支持虚拟线程
+     * @return
+     */
+    public static boolean isSupported() {
+        return false;
+    }
+
+    /**
+     * 创建一个未启动的虚拟线程
+     * @param task
+     * @param name 线程名称
+     * @return
+     */
+    public static Thread newThread(Runnable task, String name) {
+        throw new UnsupportedOperationException("当前运行环境不支持虚拟线程，需要JDK21及以上");
+    }
+
+    /**
+     * 等待进程结束，与Process.waitFor()相同
+     * @param process
+     * @return 进程的退出码
+     * @throws InterruptedException
+     */
+    public static int waitFor(Process process) throws InterruptedException {
+        return process.waitFor();
+    }
+}
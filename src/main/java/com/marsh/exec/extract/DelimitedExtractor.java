@@ -0,0 +1,226 @@
+package com.marsh.exec.extract;
+
+/**
+ * 按分隔符切分的输出，例如CSV、TSV及按空白对齐的表格输出
+ *
+ * 支持以引号包裹的字段(两个连续的引号表示一个引号)、首行作为列名以及跳过表头。
+ * 只支持UTF-8、US-ASCII及ISO-8859系列字符集的输出，见{@link FieldExtractor}
+ * @author marsh
+ * @date 2022年05月09日 11:30
+ */
+public class DelimitedExtractor<T> extends FieldExtractor<T> {
+
+    private final byte delimiter;
+
+    /** 空格与制表符都作为分隔符 */
+    private boolean whitespaceDelimited;
+
+    /** 连续的分隔符视为一个，忽略行首行尾的分隔符 */
+    private boolean collapseDelimiters;
+
+    private boolean trim;
+
+    private byte quote;
+
+    private boolean quoting;
+
+    private int skipLines;
+
+    private boolean header;
+
+    private boolean headerRead;
+
+    private String[] columns;
+
+    private long lineNumber;
+
+    public DelimitedExtractor(char delimiter, RecordMapper<T> mapper, RecordListener<T> listener) {
+        super(mapper, listener);
+        if (delimiter >= 0x80) {
+            throw new IllegalArgumentException("分隔符必须是ASCII字符");
+        }
+        this.delimiter = (byte) delimiter;
+    }
+
+    /**
+     * 以一个或多个空格及制表符切分，适用于ps、df等按列对齐的输出
+     * @param mapper
+     * @param listener
+     * @param <T>
+     * @return
+     */
+    public static <T> DelimitedExtractor<T> whitespace(RecordMapper<T> mapper, RecordListener<T> listener) {
+        DelimitedExtractor<T> extractor = new DelimitedExtractor<>(' ', mapper, listener).collapseDelimiters(true);
+        extractor.whitespaceDelimited = true;
+        return extractor;
+    }
+
+    /**
+     * 逗号分隔并支持双引号的CSV格式
+     * @param mapper
+     * @param listener
+     * @param <T>
+     * @return
+     */
+    public static <T> DelimitedExtractor<T> csv(RecordMapper<T> mapper, RecordListener<T> listener) {
+        return new DelimitedExtractor<>(',', mapper, listener).quote('"');
+    }
+
+    public DelimitedExtractor<T> collapseDelimiters(boolean collapseDelimiters) {
+        this.collapseDelimiters = collapseDelimiters;
+        return this;
+    }
+
+    /**
+     * 去掉字段两端的空格及制表符
+     * @param trim
+     * @return
+     */
+    public DelimitedExtractor<T> trim(boolean trim) {
+        this.trim = trim;
+        return this;
+    }
+
+    /**
+     * 设置字段引号
+     * @param quote
+     * @return
+     */
+    public DelimitedExtractor<T> quote(char quote) {
+        if (quote >= 0x80) {
+            throw new IllegalArgumentException("引号必须是ASCII字符");
+        }
+        this.quote = (byte) quote;
+        this.quoting = true;
+        fields.setQuote(quote);
+        return this;
+    }
+
+    /**
+     * 跳过开头的若干行，在读取表头之前生效
+     * @param skipLines
+     * @return
+     */
+    public DelimitedExtractor<T> skipLines(int skipLines) {
+        this.skipLines = skipLines;
+        return this;
+    }
+
+    /**
+     * 设置列名，之后可以通过名称读取字段
+     * @param columns
+     * @return
+     */
+    public DelimitedExtractor<T> columns(String... columns) {
+        this.columns = columns;
+        fields.setColumns(columns);
+        return this;
+    }
+
+    /**
+     * 第一行(跳过的行之后)为表头，该行不回调，未设置列名时使用表头作为列名
+     * @return
+     */
+    public DelimitedExtractor<T> header() {
+        this.header = true;
+        return this;
+    }
+
+    @Override
+    protected boolean parse(byte[] bytes, int length, LineFields fields) {
+        lineNumber++;
+        if (lineNumber <= skipLines) {
+            return true;
+        }
+        if (!split(bytes, length, fields)) {
+            return false;
+        }
+        if (header && !headerRead) {
+            headerRead = true;
+            if (columns == null) {
+                String[] names = new String[fields.size()];
+                for (int i = 0; i < names.length; i++) {
+                    names[i] = fields.getString(i);
+                }
+                columns(names);
+            }
+            fields.reset(fields.line());
+        }
+        return true;
+    }
+
+    private boolean split(byte[] bytes, int length, LineFields fields) {
+        int pos = 0;
+        if (collapseDelimiters) {
+            while (pos < length && isDelimiter(bytes[pos])) {
+                pos++;
+            }
+            if (pos == length) {
+                return true;
+            }
+        }
+        while (true) {
+            if (trim) {
+                while (pos < length && isWhitespace(bytes[pos]) && !isDelimiter(bytes[pos])) {
+                    pos++;
+                }
+            }
+            int start = pos;
+            int end;
+            byte escaping = LineFields.ESCAPE_NONE;
+            if (quoting && pos < length && bytes[pos] == quote) {
+                start = ++pos;
+                while (true) {
+                    if (pos >= length) {
+                        // 引号未闭合
+                        return false;
+                    }
+                    if (bytes[pos] == quote) {
+                        if (pos + 1 < length && bytes[pos + 1] == quote) {
+                            escaping = LineFields.ESCAPE_DOUBLED_QUOTE;
+                            pos += 2;
+                            continue;
+                        }
+                        break;
+                    }
+                    pos++;
+                }
+                end = pos++;
+                while (pos < length && !isDelimiter(bytes[pos]) && isWhitespace(bytes[pos])) {
+                    pos++;
+                }
+                if (pos < length && !isDelimiter(bytes[pos])) {
+                    return false;
+                }
+            } else {
+                while (pos < length && !isDelimiter(bytes[pos])) {
+                    pos++;
+                }
+                end = pos;
+                if (trim) {
+                    while (end > start && isWhitespace(bytes[end - 1])) {
+                        end--;
+                    }
+                }
+            }
+            fields.addValue(start, end, escaping);
+            if (pos >= length) {
+                return true;
+            }
+            // 跳过分隔符
+            pos++;
+            if (collapseDelimiters) {
+                while (pos < length && isDelimiter(bytes[pos])) {
+                    pos++;
+                }
+                if (pos == length) {
+                    return true;
+                }
+            }
+        }
+    }
+
+    private boolean isDelimiter(byte b) {
+        return b == delimiter || (whitespaceDelimited && b == '\t');
+    }
+}
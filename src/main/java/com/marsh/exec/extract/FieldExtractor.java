@@ -0,0 +1,97 @@
+package com.marsh.exec.extract;
+
+import com.marsh.exec.stream.LineView;
+import com.marsh.exec.stream.LineViewListener;
+import lombok.Getter;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 字段提取器基类，直接在行视图的字节上切分字段，只在读取字符串值时才解码
+ *
+ * 分隔符、引号等结构字符必须是ASCII字符，并且字符集中多字节字符的任何字节都不能与ASCII字符相同，
+ * 因此只支持UTF-8、US-ASCII及ISO-8859系列。GBK、Big5、Shift_JIS等字符集的第二个字节可能是0x5C(\)或0x7C(|)，
+ * 按字节切分会把汉字拆开，行视图为这些字符集时抛出IllegalStateException。
+ * 格式错误的行不会回调，只计入{@link #getMalformedLines()}
+ *
+ * LineOutputStream stdout = ...;
+ * stdout.setLineViewListener(new DelimitedExtractor&lt;&gt;(',', f -&gt; new Row(f.getLong(0), f.getString(1)), rows::add));
+ * @author marsh
+ * @date 2022年05月09日 10:40
+ */
+public abstract class FieldExtractor<T> implements LineViewListener {
+
+    protected final LineFields fields = new LineFields();
+
+    private final RecordMapper<T> mapper;
+
+    private final RecordListener<T> listener;
+
+    /**
+     * 成功解析的行数
+     */
+    @Getter
+    private long records;
+
+    /**
+     * 格式错误的行数
+     */
+    @Getter
+    private long malformedLines;
+
+    /**
+     * 已经检查过的行视图字符集
+     */
+    private Charset checkedCharset;
+
+    protected FieldExtractor(RecordMapper<T> mapper, RecordListener<T> listener) {
+        this.mapper = mapper;
+        this.listener = listener;
+    }
+
+    @Override
+    public void processLine(LineView line) {
+        if (line.charset() != checkedCharset) {
+            checkCharset(line.charset());
+            checkedCharset = line.charset();
+        }
+        fields.reset(line);
+        if (!parse(line.array(), line.byteLength(), fields)) {
+            malformedLines++;
+            return;
+        }
+        if (fields.size() == 0) {
+            return;
+        }
+        T record = mapper.map(fields);
+        records++;
+        if (record != null) {
+            listener.processRecord(record);
+        }
+    }
+
+    /**
+     * 将一行切分为字段
+     * @param bytes 行数据，有效范围为[0, length)
+     * @param length
+     * @param fields 已清空的字段表
+     * @return 格式错误时返回false
+     */
+    protected abstract boolean parse(byte[] bytes, int length, LineFields fields);
+
+    /**
+     * 多字节字符的每个字节都不在ASCII范围内的字符集才能按字节切分
+     */
+    private static void checkCharset(Charset charset) {
+        String name = charset.name();
+        if (!StandardCharsets.UTF_8.equals(charset) && !StandardCharsets.US_ASCII.equals(charset)
+                && !name.startsWith("ISO-8859-")) {
+            throw new IllegalStateException("字段提取器只支持UTF-8、US-ASCII及ISO-8859系列字符集，当前为" + name);
+        }
+    }
+
+    static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t';
+    }
+}
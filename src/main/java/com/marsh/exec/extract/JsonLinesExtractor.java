@@ -0,0 +1,149 @@
+package com.marsh.exec.extract;
+
+/**
+ * 每行一个JSON对象的输出(JSON Lines)，例如docker/kubectl的--format '{{json .}}'
+ *
+ * 只切分第一层的键值，字符串、数值、布尔及null值可以直接读取，嵌套的对象和数组按原始JSON文本作为字符串值。
+ * 字符串中的转义只在调用getString时处理，要求输出为UTF-8(JSON规定的编码)，字符集的限制见{@link FieldExtractor}
+ * @author marsh
+ * @date 2022年05月09日 14:20
+ */
+public class JsonLinesExtractor<T> extends FieldExtractor<T> {
+
+    /** 最近一次scanString扫描的字符串中是否包含转义 */
+    private boolean escaped;
+
+    public JsonLinesExtractor(RecordMapper<T> mapper, RecordListener<T> listener) {
+        super(mapper, listener);
+    }
+
+    @Override
+    protected boolean parse(byte[] bytes, int length, LineFields fields) {
+        int pos = skipWhitespace(bytes, 0, length);
+        if (pos == length) {
+            // 空行
+            return true;
+        }
+        if (bytes[pos] != '{') {
+            return false;
+        }
+        pos = skipWhitespace(bytes, pos + 1, length);
+        if (pos < length && bytes[pos] == '}') {
+            return skipWhitespace(bytes, pos + 1, length) == length;
+        }
+        while (true) {
+            if (pos >= length || bytes[pos] != '"') {
+                return false;
+            }
+            int nameStart = pos + 1;
+            int nameEnd = scanString(bytes, nameStart, length);
+            if (nameEnd < 0) {
+                return false;
+            }
+            byte nameEscaping = escaped ? LineFields.ESCAPE_JSON : LineFields.ESCAPE_NONE;
+            pos = skipWhitespace(bytes, nameEnd + 1, length);
+            if (pos >= length || bytes[pos] != ':') {
+                return false;
+            }
+            pos = skipWhitespace(bytes, pos + 1, length);
+            if (pos >= length) {
+                return false;
+            }
+            int valueStart;
+            int valueEnd;
+            byte valueEscaping = LineFields.ESCAPE_NONE;
+            boolean isNull = false;
+            byte b = bytes[pos];
+            if (b == '"') {
+                valueStart = pos + 1;
+                valueEnd = scanString(bytes, valueStart, length);
+                if (valueEnd < 0) {
+                    return false;
+                }
+                if (escaped) {
+                    valueEscaping = LineFields.ESCAPE_JSON;
+                }
+                pos = valueEnd + 1;
+            } else if (b == '{' || b == '[') {
+                valueStart = pos;
+                valueEnd = scanNested(bytes, pos, length);
+                if (valueEnd < 0) {
+                    return false;
+                }
+                pos = valueEnd;
+            } else {
+                valueStart = pos;
+                while (pos < length && bytes[pos] != ',' && bytes[pos] != '}' && !isWhitespace(bytes[pos])) {
+                    pos++;
+                }
+                valueEnd = pos;
+                isNull = valueEnd - valueStart == 4 && bytes[valueStart] == 'n' && bytes[valueStart + 1] == 'u'
+                        && bytes[valueStart + 2] == 'l' && bytes[valueStart + 3] == 'l';
+            }
+            fields.add(nameStart, nameEnd, nameEscaping, valueStart, valueEnd, valueEscaping, isNull);
+            pos = skipWhitespace(bytes, pos, length);
+            if (pos >= length) {
+                return false;
+            }
+            if (bytes[pos] == '}') {
+                return skipWhitespace(bytes, pos + 1, length) == length;
+            }
+            if (bytes[pos] != ',') {
+                return false;
+            }
+            pos = skipWhitespace(bytes, pos + 1, length);
+        }
+    }
+
+    /**
+     * 扫描字符串到结束的引号
+     * @return 结束引号的位置，未闭合时返回-1
+     */
+    private int scanString(byte[] bytes, int pos, int length) {
+        escaped = false;
+        while (pos < length) {
+            byte b = bytes[pos];
+            if (b == '"') {
+                return pos;
+            }
+            if (b == '\\') {
+                escaped = true;
+                pos++;
+            }
+            pos++;
+        }
+        return -1;
+    }
+
+    /**
+     * 扫描嵌套的对象或数组
+     * @return 结束括号之后的位置，未闭合时返回-1
+     */
+    private int scanNested(byte[] bytes, int pos, int length) {
+        int depth = 0;
+        while (pos < length) {
+            byte b = bytes[pos];
+            if (b == '"') {
+                pos = scanString(bytes, pos + 1, length);
+                if (pos < 0) {
+                    return -1;
+                }
+            } else if (b == '{' || b == '[') {
+                depth++;
+            } else if (b == '}' || b == ']') {
+                if (--depth == 0) {
+                    return pos + 1;
+                }
+            }
+            pos++;
+        }
+        return -1;
+    }
+
+    private static int skipWhitespace(byte[] bytes, int pos, int length) {
+        while (pos < length && (isWhitespace(bytes[pos]) || bytes[pos] == '\r')) {
+            pos++;
+        }
+        return pos;
+    }
+}
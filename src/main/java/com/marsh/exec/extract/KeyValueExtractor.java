@@ -0,0 +1,108 @@
+package com.marsh.exec.extract;
+
+/**
+ * key=value格式的输出，例如logfmt风格的日志：level=info msg="started server" port=8080
+ *
+ * 键值对之间以空格或制表符分隔(可以改为其他分隔符)，值可以使用双引号包裹并以反斜杠转义，
+ * 没有值的键按空值处理
+ * @author marsh
+ * @date 2022年05月09日 13:40
+ */
+public class KeyValueExtractor<T> extends FieldExtractor<T> {
+
+    private byte separator = '=';
+
+    /** 为0时以空格或制表符分隔键值对 */
+    private byte pairDelimiter;
+
+    public KeyValueExtractor(RecordMapper<T> mapper, RecordListener<T> listener) {
+        super(mapper, listener);
+    }
+
+    /**
+     * 设置键与值之间的分隔符，默认为=
+     * @param separator
+     * @return
+     */
+    public KeyValueExtractor<T> separator(char separator) {
+        if (separator >= 0x80) {
+            throw new IllegalArgumentException("分隔符必须是ASCII字符");
+        }
+        this.separator = (byte) separator;
+        return this;
+    }
+
+    /**
+     * 设置键值对之间的分隔符，例如a=1;b=2中的;，分隔符两侧的空白会被忽略
+     * @param pairDelimiter
+     * @return
+     */
+    public KeyValueExtractor<T> pairDelimiter(char pairDelimiter) {
+        if (pairDelimiter >= 0x80) {
+            throw new IllegalArgumentException("分隔符必须是ASCII字符");
+        }
+        this.pairDelimiter = (byte) pairDelimiter;
+        return this;
+    }
+
+    @Override
+    protected boolean parse(byte[] bytes, int length, LineFields fields) {
+        int pos = 0;
+        while (true) {
+            while (pos < length && (isPairDelimiter(bytes[pos]) || isWhitespace(bytes[pos]))) {
+                pos++;
+            }
+            if (pos >= length) {
+                return true;
+            }
+            int keyStart = pos;
+            while (pos < length && bytes[pos] != separator && !isPairDelimiter(bytes[pos])) {
+                pos++;
+            }
+            int keyEnd = pos;
+            while (keyEnd > keyStart && isWhitespace(bytes[keyEnd - 1])) {
+                keyEnd--;
+            }
+            if (pos >= length || bytes[pos] != separator) {
+                fields.add(keyStart, keyEnd, LineFields.ESCAPE_NONE, pos, pos, LineFields.ESCAPE_NONE, false);
+                continue;
+            }
+            // 跳过分隔符
+            pos++;
+            while (pairDelimiter != 0 && pos < length && isWhitespace(bytes[pos])) {
+                pos++;
+            }
+            int valueStart = pos;
+            int valueEnd;
+            byte escaping = LineFields.ESCAPE_NONE;
+            if (pos < length && bytes[pos] == '"') {
+                valueStart = ++pos;
+                while (pos < length && bytes[pos] != '"') {
+                    if (bytes[pos] == '\\') {
+                        escaping = LineFields.ESCAPE_BACKSLASH;
+                        pos++;
+                    }
+                    pos++;
+                }
+                if (pos >= length) {
+                    // 引号未闭合
+                    return false;
+                }
+                valueEnd = pos++;
+            } else {
+                while (pos < length && !isPairDelimiter(bytes[pos])) {
+                    pos++;
+                }
+                valueEnd = pos;
+                while (valueEnd > valueStart && isWhitespace(bytes[valueEnd - 1])) {
+                    valueEnd--;
+                }
+            }
+            fields.add(keyStart, keyEnd, LineFields.ESCAPE_NONE, valueStart, valueEnd, escaping, false);
+        }
+    }
+
+    private boolean isPairDelimiter(byte b) {
+        return pairDelimiter == 0 ? isWhitespace(b) : b == pairDelimiter;
+    }
+}
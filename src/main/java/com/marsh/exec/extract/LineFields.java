@@ -0,0 +1,461 @@
+package com.marsh.exec.extract;
+
+import com.marsh.exec.stream.LineView;
+
+import java.util.Arrays;
+
+/**
+ * 一行中提取出的字段，每个字段只记录在行数据中的字节范围
+ *
+ * 数值及布尔值直接从字节解析，不创建中间字符串；只有调用getString/name时才解码。
+ * 对象会被提取器复用，只在{@link RecordMapper#map(LineFields)}期间有效
+ * @author marsh
+ * @date 2022年05月09日 10:50
+ */
+public final class LineFields {
+
+    /** 值不需要转义处理 */
+    static final byte ESCAPE_NONE = 0;
+    /** CSV风格，引号内两个连续的引号表示一个引号 */
+    static final byte ESCAPE_DOUBLED_QUOTE = 1;
+    /** 反斜杠转义 */
+    static final byte ESCAPE_BACKSLASH = 2;
+    /** JSON字符串转义，包括\\uXXXX */
+    static final byte ESCAPE_JSON = 3;
+
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private LineView line;
+
+    private byte[] bytes;
+
+    private int size;
+
+    private int[] nameStart = new int[16];
+
+    private int[] nameEnd = new int[16];
+
+    private byte[] nameEscape = new byte[16];
+
+    private int[] valueStart = new int[16];
+
+    private int[] valueEnd = new int[16];
+
+    private byte[] valueEscape = new byte[16];
+
+    private boolean[] nullValue = new boolean[16];
+
+    /** 按列序号命名时的列名，为空时按字段自身的名称查找 */
+    private String[] columns;
+
+    private char quote = '"';
+
+    void reset(LineView line) {
+        this.line = line;
+        this.bytes = line.array();
+        this.size = 0;
+    }
+
+    void setColumns(String[] columns) {
+        this.columns = columns;
+    }
+
+    void setQuote(char quote) {
+        this.quote = quote;
+    }
+
+    void add(int nameFrom, int nameTo, byte nameEscaping, int valueFrom, int valueTo, byte valueEscaping, boolean isNull) {
+        if (size == valueStart.length) {
+            int capacity = size * 2;
+            nameStart = Arrays.copyOf(nameStart, capacity);
+            nameEnd = Arrays.copyOf(nameEnd, capacity);
+            nameEscape = Arrays.copyOf(nameEscape, capacity);
+            valueStart = Arrays.copyOf(valueStart, capacity);
+            valueEnd = Arrays.copyOf(valueEnd, capacity);
+            valueEscape = Arrays.copyOf(valueEscape, capacity);
+            nullValue = Arrays.copyOf(nullValue, capacity);
+        }
+        nameStart[size] = nameFrom;
+        nameEnd[size] = nameTo;
+        nameEscape[size] = nameEscaping;
+        valueStart[size] = valueFrom;
+        valueEnd[size] = valueTo;
+        valueEscape[size] = valueEscaping;
+        nullValue[size] = isNull;
+        size++;
+    }
+
+    void addValue(int valueFrom, int valueTo, byte valueEscaping) {
+        add(-1, -1, ESCAPE_NONE, valueFrom, valueTo, valueEscaping, false);
+    }
+
+    /**
+     * 字段数量
+     * @return
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * 当前行的视图
+     * @return
+     */
+    public LineView line() {
+        return line;
+    }
+
+    /**
+     * 字段值在{@link LineView#array()}中的起始位置，带引号的值不包含引号
+     * @param index
+     * @return
+     */
+    public int valueOffset(int index) {
+        checkIndex(index);
+        return valueStart[index];
+    }
+
+    /**
+     * 字段值的字节数
+     * @param index
+     * @return
+     */
+    public int valueLength(int index) {
+        checkIndex(index);
+        return valueEnd[index] - valueStart[index];
+    }
+
+    /**
+     * 字段名称，分隔符格式下为设置的列名
+     * @param index
+     * @return 没有名称时返回null
+     */
+    public String name(int index) {
+        checkIndex(index);
+        if (columns != null) {
+            return index < columns.length ? columns[index] : null;
+        }
+        if (nameStart[index] < 0) {
+            return null;
+        }
+        return decode(nameStart[index], nameEnd[index], nameEscape[index]);
+    }
+
+    /**
+     * 按名称查找字段序号，ASCII名称的比较不创建对象
+     * @param name
+     * @return 不存在时返回-1
+     */
+    public int indexOf(String name) {
+        if (columns != null) {
+            for (int i = 0; i < columns.length && i < size; i++) {
+                if (columns[i].equals(name)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+        for (int i = 0; i < size; i++) {
+            if (nameStart[i] >= 0 && nameEquals(i, name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * JSON中的null值
+     * @param index
+     * @return
+     */
+    public boolean isNull(int index) {
+        checkIndex(index);
+        return nullValue[index];
+    }
+
+    /**
+     * 解码字段值，会创建字符串
+     * @param index
+     * @return null值返回null
+     */
+    public String getString(int index) {
+        checkIndex(index);
+        if (nullValue[index]) {
+            return null;
+        }
+        return decode(valueStart[index], valueEnd[index], valueEscape[index]);
+    }
+
+    /**
+     * @param name
+     * @return 字段不存在或为null值时返回null
+     */
+    public String getString(String name) {
+        int index = indexOf(name);
+        return index < 0 ? null : getString(index);
+    }
+
+    /**
+     * 字段值与给定内容比较，ASCII内容且值中没有转义时不创建对象
+     * @param index
+     * @param value
+     * @return
+     */
+    public boolean valueEquals(int index, CharSequence value) {
+        checkIndex(index);
+        if (nullValue[index]) {
+            return value == null;
+        }
+        if (value == null) {
+            return false;
+        }
+        if (valueEscape[index] != ESCAPE_NONE || !isAscii(value)) {
+            return value.toString().equals(getString(index));
+        }
+        return asciiEquals(valueStart[index], valueEnd[index], value);
+    }
+
+    public long getLong(int index) {
+        checkIndex(index);
+        return parseLong(valueStart[index], valueEnd[index]);
+    }
+
+    /**
+     * @param name
+     * @param defaultValue 字段不存在、为null值或为空时返回
+     * @return
+     */
+    public long getLong(String name, long defaultValue) {
+        int index = indexOf(name);
+        return isAbsent(index) ? defaultValue : getLong(index);
+    }
+
+    public int getInt(int index) {
+        long value = getLong(index);
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+            throw new NumberFormatException("超出int范围：" + getString(index));
+        }
+        return (int) value;
+    }
+
+    public int getInt(String name, int defaultValue) {
+        int index = indexOf(name);
+        return isAbsent(index) ? defaultValue : getInt(index);
+    }
+
+    /**
+     * 不超过15位有效数字且没有指数部分的数值直接从字节计算，其余情况通过Double.parseDouble解析
+     * @param index
+     * @return
+     */
+    public double getDouble(int index) {
+        checkIndex(index);
+        int from = valueStart[index];
+        int to = valueEnd[index];
+        int i = from;
+        boolean negative = false;
+        if (i < to && (bytes[i] == '-' || bytes[i] == '+')) {
+            negative = bytes[i] == '-';
+            i++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int fractionDigits = -1;
+        boolean sawDigit = false;
+        boolean fast = true;
+        for (; i < to && fast; i++) {
+            byte b = bytes[i];
+            if (b >= '0' && b <= '9') {
+                mantissa = mantissa * 10 + (b - '0');
+                sawDigit = true;
+                if (mantissa != 0 || fractionDigits >= 0) {
+                    digits++;
+                }
+                if (fractionDigits >= 0) {
+                    fractionDigits++;
+                }
+            } else if (b == '.' && fractionDigits < 0) {
+                fractionDigits = 0;
+            } else {
+                fast = false;
+            }
+        }
+        if (fast && sawDigit && digits <= 15 && fractionDigits < POWERS_OF_TEN.length) {
+            double value = fractionDigits > 0 ? mantissa / POWERS_OF_TEN[fractionDigits] : mantissa;
+            return negative ? -value : value;
+        }
+        String text = getString(index);
+        if (text == null) {
+            throw new NumberFormatException("null");
+        }
+        return Double.parseDouble(text.trim());
+    }
+
+    public double getDouble(String name, double defaultValue) {
+        int index = indexOf(name);
+        return isAbsent(index) ? defaultValue : getDouble(index);
+    }
+
+    /**
+     * true、yes、1(忽略大小写)为true，其余为false
+     * @param index
+     * @return
+     */
+    public boolean getBoolean(int index) {
+        checkIndex(index);
+        int from = valueStart[index];
+        int length = valueEnd[index] - from;
+        if (length == 1) {
+            return bytes[from] == '1';
+        }
+        return asciiEqualsIgnoreCase(from, length, "true") || asciiEqualsIgnoreCase(from, length, "yes");
+    }
+
+    public boolean getBoolean(String name, boolean defaultValue) {
+        int index = indexOf(name);
+        return isAbsent(index) ? defaultValue : getBoolean(index);
+    }
+
+    private boolean isAbsent(int index) {
+        return index < 0 || nullValue[index] || valueEnd[index] == valueStart[index];
+    }
+
+    private long parseLong(int from, int to) {
+        int i = from;
+        if (i >= to) {
+            throw new NumberFormatException("空字段");
+        }
+        boolean negative = false;
+        if (bytes[i] == '-' || bytes[i] == '+') {
+            negative = bytes[i] == '-';
+            i++;
+            if (i >= to) {
+                throw new NumberFormatException(line.toString(from, to - from));
+            }
+        }
+        // 按负数累加，避免Long.MIN_VALUE溢出
+        long limit = negative ? Long.MIN_VALUE : -Long.MAX_VALUE;
+        long multiplyLimit = limit / 10;
+        long result = 0;
+        for (; i < to; i++) {
+            int digit = bytes[i] - '0';
+            if (digit < 0 || digit > 9 || result < multiplyLimit) {
+                throw new NumberFormatException(line.toString(from, to - from));
+            }
+            result *= 10;
+            if (result < limit + digit) {
+                throw new NumberFormatException(line.toString(from, to - from));
+            }
+            result -= digit;
+        }
+        return negative ? result : -result;
+    }
+
+    private boolean nameEquals(int index, String name) {
+        if (nameEscape[index] != ESCAPE_NONE || !isAscii(name)) {
+            return name.equals(name(index));
+        }
+        return asciiEquals(nameStart[index], nameEnd[index], name);
+    }
+
+    private boolean asciiEquals(int from, int to, CharSequence value) {
+        int length = to - from;
+        if (length != value.length()) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (bytes[from + i] != value.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean asciiEqualsIgnoreCase(int from, int length, String value) {
+        if (length != value.length()) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            int b = bytes[from + i];
+            if (b >= 'A' && b <= 'Z') {
+                b += 'a' - 'A';
+            }
+            if (b != value.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isAscii(CharSequence value) {
+        for (int i = 0; i < value.length(); i++) {
+            if (value.charAt(i) >= 0x80) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private String decode(int from, int to, byte escaping) {
+        String raw = line.toString(from, to - from);
+        switch (escaping) {
+            case ESCAPE_DOUBLED_QUOTE:
+                String single = String.valueOf(quote);
+                return raw.replace(single + single, single);
+            case ESCAPE_BACKSLASH:
+            case ESCAPE_JSON:
+                return unescape(raw, escaping == ESCAPE_JSON);
+            default:
+                return raw;
+        }
+    }
+
+    private static String unescape(String raw, boolean json) {
+        StringBuilder builder = new StringBuilder(raw.length());
+        for (int i = 0; i < raw.length(); i++) {
+            char c = raw.charAt(i);
+            if (c != '\\' || i + 1 == raw.length()) {
+                builder.append(c);
+                continue;
+            }
+            char next = raw.charAt(++i);
+            switch (next) {
+                case 'n':
+                    builder.append('\n');
+                    break;
+                case 't':
+                    builder.append('\t');
+                    break;
+                case 'r':
+                    builder.append('\r');
+                    break;
+                case 'b':
+                    builder.append('\b');
+                    break;
+                case 'f':
+                    builder.append('\f');
+                    break;
+                case 'u':
+                    if (json && i + 4 < raw.length()) {
+                        builder.append((char) Integer.parseInt(raw.substring(i + 1, i + 5), 16));
+                        i += 4;
+                        break;
+                    }
+                    builder.append(next);
+                    break;
+                default:
+                    builder.append(next);
+            }
+        }
+        return builder.toString();
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("字段序号" + index + "超出范围，字段数量：" + size);
+        }
+    }
+}
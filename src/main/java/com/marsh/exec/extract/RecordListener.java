@@ -0,0 +1,16 @@
+package com.marsh.exec.extract;
+
+/**
+ * 接收字段提取器生成的业务对象
+ * @author marsh
+ * @date 2022年05月09日 10:35
+ */
+@FunctionalInterface
+public interface RecordListener<T> {
+
+    /**
+     * 每解析出一条记录时触发该方法
+     * @param record
+     */
+    void processRecord(T record);
+}
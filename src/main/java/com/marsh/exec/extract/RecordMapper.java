@@ -0,0 +1,17 @@
+package com.marsh.exec.extract;
+
+/**
+ * 将一行提取出的字段转换为业务对象
+ * @author marsh
+ * @date 2022年05月09日 10:30
+ */
+@FunctionalInterface
+public interface RecordMapper<T> {
+
+    /**
+     * 字段只在本次调用期间有效，需要的值应在方法中读取出来
+     * @param fields
+     * @return 返回null时忽略该行
+     */
+    T map(LineFields fields);
+}
@@ -0,0 +1,79 @@
+package com.marsh.exec.hedge;
+
+/**
+ * 对冲次数的令牌桶，限制对冲带来的额外负载
+ *
+ * 每次执行存入ratio个令牌，每次对冲消耗一个令牌，令牌数不超过burst，
+ * 长期来看对冲次数不超过执行次数的ratio倍，命令整体变慢时也不会成倍增加负载
+ * @author marsh
+ * @date 2022年05月15日 9:40
+ */
+public class HedgeBudget {
+
+    private final double ratio;
+
+    private final double burst;
+
+    private double tokens;
+
+    private long executions;
+
+    private long hedges;
+
+    private long denied;
+
+    /**
+     * @param ratio 对冲次数占执行次数的最大比例，例如0.1表示最多额外启动10%的进程
+     * @param burst 最多可以连续对冲的次数
+     */
+    public HedgeBudget(double ratio, int burst) {
+        if (ratio < 0 || burst < 1) {
+            throw new IllegalArgumentException("ratio不能小于0，burst必须大于0");
+        }
+        this.ratio = ratio;
+        this.burst = burst;
+        this.tokens = burst;
+    }
+
+    /**
+     * 记录一次执行，存入令牌
+     */
+    public synchronized void onExecution() {
+        executions++;
+        tokens = Math.min(burst, tokens + ratio);
+    }
+
+    /**
+     * 尝试获取一次对冲的令牌
+     * @return 预算不足时返回false
+     */
+    public synchronized boolean tryAcquire() {
+        if (tokens < 1) {
+            denied++;
+            return false;
+        }
+        tokens--;
+        hedges++;
+        return true;
+    }
+
+    public synchronized long getExecutions() {
+        return executions;
+    }
+
+    /**
+     * 已经启动的对冲次数
+     * @return
+     */
+    public synchronized long getHedges() {
+        return hedges;
+    }
+
+    /**
+     * 因为预算不足而放弃的对冲次数
+     * @return
+     */
+    public synchronized long getDenied() {
+        return denied;
+    }
+}
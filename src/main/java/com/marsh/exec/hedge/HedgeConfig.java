@@ -0,0 +1,49 @@
+package com.marsh.exec.hedge;
+
+import com.marsh.exec.metrics.HistogramRegistry;
+import lombok.Builder;
+import lombok.Getter;
+
+/**
+ * 对冲执行配置：命令运行时间超过历史运行时间的某个百分位仍未结束时，再启动一个相同的进程，
+ * 取先结束的一个(对冲进程只有成功结束才会被采用)
+ *
+ * HistogramRegistry registry = new HistogramRegistry();
+ * CommandLineThreadBuild.commandLine(lookup).metricsListener(registry)
+ *         .hedge(HedgeConfig.builder().percentile(95).build()).exec();
+ * @author marsh
+ * @date 2022年05月15日 9:30
+ */
+@Getter
+@Builder
+public class HedgeConfig {
+
+    /**
+     * 启动对冲进程的时机，即运行时间直方图的百分位(0-100)
+     */
+    @Builder.Default
+    private final double percentile = 95;
+
+    /**
+     * 命令的执行次数少于该值时历史数据不可信，不进行对冲
+     */
+    @Builder.Default
+    private final int minSamples = 20;
+
+    /**
+     * 对冲延迟的下限(毫秒)，避免运行时间极短的命令频繁对冲
+     */
+    @Builder.Default
+    private final long minDelayMillis = 10;
+
+    /**
+     * 对冲次数的预算，同一个配置构建的所有执行共用
+     */
+    @Builder.Default
+    private final HedgeBudget budget = new HedgeBudget(0.1, 10);
+
+    /**
+     * 提供历史运行时间的直方图注册表，为空时使用执行器的metricsListener(必须是HistogramRegistry)
+     */
+    private final HistogramRegistry registry;
+}
@@ -0,0 +1,110 @@
+package com.marsh.exec.hedge;
+
+import com.marsh.exec.stream.LineOutputListener;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 对冲执行中一个进程的输出缓冲，进程胜出后才把输出交给行监听器，落败的进程的输出直接丢弃
+ *
+ * 对冲执行时行监听器在命令结束、回调之前一次性收到胜出进程的全部输出
+ * @author marsh
+ * @date 2022年05月15日 9:55
+ */
+public class HedgeOutputBuffer {
+
+    private final List<BufferedListener> listeners = new ArrayList<>(2);
+
+    private boolean released;
+
+    private boolean discarded;
+
+    /**
+     * 包装一个行监听器，输出先写入缓冲
+     * @param delegate
+     * @return
+     */
+    public synchronized LineOutputListener wrap(LineOutputListener delegate) {
+        BufferedListener listener = new BufferedListener(delegate);
+        listeners.add(listener);
+        return listener;
+    }
+
+    /**
+     * 进程胜出，按顺序把缓冲的输出交给行监听器，之后的输出直接转发
+     */
+    public void release() {
+        List<BufferedListener> snapshot;
+        synchronized (this) {
+            if (released || discarded) {
+                return;
+            }
+            released = true;
+            snapshot = new ArrayList<>(listeners);
+        }
+        for (BufferedListener listener : snapshot) {
+            listener.release();
+        }
+    }
+
+    /**
+     * 进程落败，丢弃缓冲的及之后的输出
+     */
+    public synchronized void discard() {
+        if (released) {
+            return;
+        }
+        discarded = true;
+        for (BufferedListener listener : listeners) {
+            listener.discard();
+        }
+    }
+
+    private static class BufferedListener implements LineOutputListener {
+
+        private final LineOutputListener delegate;
+
+        private List<String> lines = new ArrayList<>();
+
+        private boolean passThrough;
+
+        BufferedListener(LineOutputListener delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void processLine(String line) {
+            synchronized (this) {
+                if (!passThrough) {
+                    if (lines != null) {
+                        lines.add(line);
+                    }
+                    return;
+                }
+            }
+            delegate.processLine(line);
+        }
+
+        @Override
+        public void flush() {
+            synchronized (this) {
+                if (!passThrough) {
+                    return;
+                }
+            }
+            delegate.flush();
+        }
+
+        synchronized void release() {
+            delegate.processLines(lines);
+            delegate.flush();
+            lines = null;
+            passThrough = true;
+        }
+
+        synchronized void discard() {
+            lines = null;
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.marsh.exec.input;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * 以ByteBuffer作为标准输入，堆内buffer直接写出底层数组，堆外或内存映射的buffer分块复制后写出
+ *
+ * 每次执行使用buffer的副本，不修改原buffer的position，可以被多次执行共用
+ * @author marsh
+ * @date 2022年05月12日 9:55
+ */
+public class BufferStdinSource implements StdinSource {
+
+    private final ByteBuffer buffer;
+
+    public BufferStdinSource(ByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    @Override
+    public boolean isRepeatable() {
+        return true;
+    }
+
+    @Override
+    public void feed(OutputStream stdin) throws IOException {
+        ByteBuffer source = buffer.duplicate();
+        if (source.hasArray()) {
+            stdin.write(source.array(), source.arrayOffset() + source.position(), source.remaining());
+            return;
+        }
+        byte[] chunk = new byte[Math.min(StdinFeeder.BUFFER_SIZE, source.remaining())];
+        while (source.hasRemaining()) {
+            int length = Math.min(chunk.length, source.remaining());
+            source.get(chunk, 0, length);
+            stdin.write(chunk, 0, length);
+        }
+    }
+}
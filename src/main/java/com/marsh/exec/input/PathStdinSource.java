@@ -0,0 +1,46 @@
+package com.marsh.exec.input;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.ProcessBuilder.Redirect;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * 以文件作为标准输入，可以重定向时子进程直接读取文件，否则通过FileChannel分块读取后写入
+ * @author marsh
+ * @date 2022年05月12日 9:45
+ */
+public class PathStdinSource implements StdinSource {
+
+    private final Path path;
+
+    public PathStdinSource(Path path) {
+        this.path = path;
+    }
+
+    @Override
+    public Redirect getRedirect() {
+        return Redirect.from(path.toFile());
+    }
+
+    @Override
+    public boolean isRepeatable() {
+        return true;
+    }
+
+    @Override
+    public void feed(OutputStream stdin) throws IOException {
+        byte[] buffer = new byte[StdinFeeder.BUFFER_SIZE];
+        ByteBuffer wrapped = ByteBuffer.wrap(buffer);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            int length;
+            while ((length = channel.read(wrapped)) != -1) {
+                stdin.write(buffer, 0, length);
+                wrapped.clear();
+            }
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.marsh.exec.input;
+
+import cn.hutool.core.thread.NamedThreadFactory;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 在共享的输入线程中将StdinSource写入子进程，写完后关闭子进程的标准输入
+ *
+ * 子进程提前关闭标准输入(例如head)导致的写入失败视为正常结束，只有读取输入失败才会作为异常返回
+ * @author marsh
+ * @date 2022年05月12日 10:40
+ */
+public final class StdinFeeder {
+
+    /**
+     * 每次执行使用的缓冲区大小
+     */
+    static final int BUFFER_SIZE = 64 * 1024;
+
+    private static volatile ExecutorService defaultExecutor;
+
+    private StdinFeeder() {
+    }
+
+    /**
+     * 进程内共享的输入线程池，每个正在写入的子进程占用一个线程，空闲线程60秒后退出
+     * @return
+     */
+    public static ExecutorService getDefaultExecutor() {
+        if (defaultExecutor == null) {
+            synchronized (StdinFeeder.class) {
+                if (defaultExecutor == null) {
+                    defaultExecutor = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60, TimeUnit.SECONDS,
+                            new SynchronousQueue<>(), new NamedThreadFactory("Exec Stdin Feeder-", true));
+                }
+            }
+        }
+        return defaultExecutor;
+    }
+
+    /**
+     * 开始向子进程写入输入
+     * @param source 输入来源
+     * @param stdin 子进程的标准输入
+     * @return 写入完成或失败时结束，读取输入失败时Future.get()抛出对应的异常
+     */
+    public static Future<?> start(StdinSource source, OutputStream stdin) {
+        return getDefaultExecutor().submit(() -> {
+            ProcessStdin processStdin = new ProcessStdin(stdin);
+            try {
+                source.feed(processStdin);
+                processStdin.flush();
+            } catch (IOException e) {
+                if (!processStdin.failed) {
+                    throw e;
+                }
+                // 子进程已经关闭标准输入
+                source.abandon();
+            } finally {
+                try {
+                    stdin.close();
+                } catch (IOException ignored) {
+                    // 子进程已经关闭标准输入
+                }
+            }
+            return null;
+        });
+    }
+
+    /**
+     * 记录写入子进程是否失败，用于区分读取输入失败和子进程关闭标准输入
+     */
+    private static class ProcessStdin extends FilterOutputStream {
+
+        private boolean failed;
+
+        ProcessStdin(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            try {
+                out.write(b);
+            } catch (IOException e) {
+                failed = true;
+                throw e;
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            try {
+                out.write(b, off, len);
+            } catch (IOException e) {
+                failed = true;
+                throw e;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            try {
+                out.flush();
+            } catch (IOException e) {
+                failed = true;
+                throw e;
+            }
+        }
+
+        @Override
+        public void close() {
+            // 由StdinFeeder关闭
+        }
+    }
+}
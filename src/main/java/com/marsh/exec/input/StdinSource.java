@@ -0,0 +1,79 @@
+package com.marsh.exec.input;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.ProcessBuilder.Redirect;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+
+/**
+ * 子进程标准输入的数据来源
+ *
+ * CommandLineThreadBuild.commandLine(sort).stdin(Paths.get("data.csv")).exec();
+ *
+ * 能够由操作系统直接重定向的来源(文件)通过{@link #getRedirect()}交给ProcessBuilder，数据不经过JVM；
+ * 其他来源由共享的输入线程通过{@link #feed(OutputStream)}写入子进程，每次执行只使用一个固定大小的缓冲区
+ * @see StdinWriter 由调用方边生成边写入的输入
+ * @author marsh
+ * @date 2022年05月12日 9:30
+ */
+public interface StdinSource {
+
+    /**
+     * 由操作系统直接重定向的输入，返回null时通过{@link #feed(OutputStream)}写入
+     * @return
+     */
+    default Redirect getRedirect() {
+        return null;
+    }
+
+    /**
+     * 将所有输入写入子进程的标准输入，在输入线程中调用，不需要关闭stdin
+     * @param stdin 子进程的标准输入
+     * @throws IOException 读取输入或写入子进程失败
+     */
+    void feed(OutputStream stdin) throws IOException;
+
+    /**
+     * 是否可以多次读取，可以多次读取的来源才能被多次执行或对冲执行共用
+     * @return
+     */
+    default boolean isRepeatable() {
+        return false;
+    }
+
+    /**
+     * 子进程已经结束或者启动失败，不再需要剩余的输入
+     */
+    default void abandon() {
+    }
+
+    /**
+     * 从文件读取输入，直接启动进程时由操作系统重定向，否则通过FileChannel读取后写入
+     */
+    static StdinSource of(Path path) {
+        return new PathStdinSource(path);
+    }
+
+    /**
+     * 从输入流读取输入，输入流由调用方关闭，只能使用一次
+     */
+    static StdinSource of(InputStream inputStream) {
+        return new StreamStdinSource(inputStream);
+    }
+
+    /**
+     * 写入buffer中position到limit之间的数据，不修改buffer的position，可以是MappedByteBuffer
+     */
+    static StdinSource of(ByteBuffer buffer) {
+        return new BufferStdinSource(buffer);
+    }
+
+    /**
+     * 写入字节数组中的所有数据
+     */
+    static StdinSource of(byte[] bytes) {
+        return new BufferStdinSource(ByteBuffer.wrap(bytes));
+    }
+}
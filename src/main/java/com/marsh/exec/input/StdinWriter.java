@@ -0,0 +1,182 @@
+package com.marsh.exec.input;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 由调用方边生成边写入的标准输入，内部是固定容量的环形缓冲区，缓冲区满时写入方阻塞直到子进程读取
+ *
+ * StdinWriter writer = new StdinWriter(1024 * 1024);
+ * CommandLineThreadBuild.commandLine(psql).stdin(writer).exec();
+ * try (Writer out = new BufferedWriter(new OutputStreamWriter(writer, StandardCharsets.UTF_8))) {
+ *     out.write(...);
+ * }
+ *
+ * 写入完成后必须调用close()，子进程才会读到输入结束；子进程结束后继续写入会抛出IOException。
+ * 每次执行需要使用新的对象
+ * @author marsh
+ * @date 2022年05月12日 10:10
+ */
+public class StdinWriter extends OutputStream implements StdinSource {
+
+    private final byte[] ring;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final Condition notEmpty = lock.newCondition();
+
+    private final Condition notFull = lock.newCondition();
+
+    /**
+     * 下一个待写入子进程的位置
+     */
+    private int head;
+
+    private int count;
+
+    /**
+     * 写入方已经调用close()
+     */
+    private boolean closed;
+
+    /**
+     * 子进程已经不再读取输入
+     */
+    private boolean broken;
+
+    /**
+     * @param capacity 缓冲区的字节数
+     */
+    public StdinWriter(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity必须大于0");
+        }
+        this.ring = new byte[capacity];
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        lock.lock();
+        try {
+            awaitSpace();
+            ring[(head + count) % ring.length] = (byte) b;
+            count++;
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (off < 0 || len < 0 || off + len > b.length) {
+            throw new IndexOutOfBoundsException();
+        }
+        lock.lock();
+        try {
+            while (len > 0) {
+                awaitSpace();
+                int tail = (head + count) % ring.length;
+                int length = Math.min(len, Math.min(ring.length - count, ring.length - tail));
+                System.arraycopy(b, off, ring, tail, length);
+                count += length;
+                off += length;
+                len -= length;
+                notEmpty.signal();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void awaitSpace() throws IOException {
+        if (closed) {
+            throw new IOException("标准输入已经关闭");
+        }
+        while (count == ring.length && !broken) {
+            try {
+                notFull.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("写入标准输入时被中断", e);
+            }
+        }
+        if (broken) {
+            throw new IOException("子进程已经不再读取标准输入");
+        }
+    }
+
+    /**
+     * 结束输入，缓冲区中剩余的数据写完后关闭子进程的标准输入
+     */
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void feed(OutputStream stdin) throws IOException {
+        try {
+            while (true) {
+                int offset;
+                int length;
+                lock.lock();
+                try {
+                    while (count == 0 && !closed && !broken) {
+                        // 等待写入方时先把已经写出的数据交给子进程
+                        lock.unlock();
+                        try {
+                            stdin.flush();
+                        } finally {
+                            lock.lock();
+                        }
+                        if (count == 0 && !closed && !broken) {
+                            notEmpty.await();
+                        }
+                    }
+                    if (broken || count == 0) {
+                        return;
+                    }
+                    offset = head;
+                    length = Math.min(count, ring.length - head);
+                } finally {
+                    lock.unlock();
+                }
+                // 写入方只会写入空闲区域，这一段在释放前不会被覆盖
+                stdin.write(ring, offset, length);
+                lock.lock();
+                try {
+                    head = (head + length) % ring.length;
+                    count -= length;
+                    notFull.signal();
+                } finally {
+                    lock.unlock();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            abandon();
+        }
+    }
+
+    @Override
+    public void abandon() {
+        lock.lock();
+        try {
+            broken = true;
+            notFull.signalAll();
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
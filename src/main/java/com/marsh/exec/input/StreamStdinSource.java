@@ -0,0 +1,28 @@
+package com.marsh.exec.input;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * 以输入流作为标准输入，输入流由调用方关闭
+ * @author marsh
+ * @date 2022年05月12日 9:50
+ */
+public class StreamStdinSource implements StdinSource {
+
+    private final InputStream inputStream;
+
+    public StreamStdinSource(InputStream inputStream) {
+        this.inputStream = inputStream;
+    }
+
+    @Override
+    public void feed(OutputStream stdin) throws IOException {
+        byte[] buffer = new byte[StdinFeeder.BUFFER_SIZE];
+        int length;
+        while ((length = inputStream.read(buffer)) != -1) {
+            stdin.write(buffer, 0, length);
+        }
+    }
+}
@@ -0,0 +1,249 @@
+package com.marsh.exec.launcher;
+
+import org.apache.commons.exec.CommandLine;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 不可变的启动模板，预先校验工作目录、合并环境变量并缓存命令在PATH中的位置，
+ * 高频执行的短命令不需要每次都检查工作目录、复制整个环境变量及查找PATH
+ *
+ * 环境变量以相对当前JVM环境变量的差异保存，启动时只需在ProcessBuilder复制的环境变量上覆盖差异部分；
+ * {@link #withEnvironment(Map)}只合并差异，PATH不变时与原模板共享缓存。
+ * 命令路径按模板自身的PATH查找(Unix下ProcessBuilder总是按当前JVM的PATH查找)，找不到时交给操作系统处理；
+ * 在绝对路径的PATH项之前遇到空项或相对路径(例如"."、"bin")时，结果取决于子进程的工作目录，不解析也不缓存，同样交给操作系统处理。
+ * 缓存在revalidateMillis后失效，下一次启动时重新校验工作目录并重新查找命令；
+ * 通过模板启动失败时执行器会调用{@link #invalidate()}并重试一次，目录被删除或命令被移动时不需要等待过期
+ * <pre>
+ * LaunchTemplate template = LaunchTemplate.of(new File("/data/job"), Collections.singletonMap("LANG", "C"));
+ * CommandLineThreadBuild.commandLine(grep).launchTemplate(template).build();
+ * </pre>
+ * @author marsh
+ * @date 2022年05月18日 9:40
+ */
+public final class LaunchTemplate {
+
+    /**
+     * 默认的缓存有效期(毫秒)
+     */
+    public static final long DEFAULT_REVALIDATE_MILLIS = 5000;
+
+    private static final String PATH = "PATH";
+
+    /** Windows下还需要按PATHEXT补全扩展名，不缓存命令路径 */
+    private static final boolean RESOLVE_PATH = File.pathSeparatorChar == ':';
+
+    private final File workingDirectory;
+
+    /** 相对当前JVM环境变量的差异 */
+    private final Map<String, String> overrides;
+
+    private final long revalidateNanos;
+
+    private final Cache cache;
+
+    /** 合并后的完整环境变量，只在交给自定义启动策略时创建 */
+    private volatile Map<String, String> environment;
+
+    private LaunchTemplate(File workingDirectory, Map<String, String> overrides, long revalidateNanos, Cache cache) {
+        this.workingDirectory = workingDirectory;
+        this.overrides = overrides;
+        this.revalidateNanos = revalidateNanos;
+        this.cache = cache;
+    }
+
+    /**
+     * 使用默认的缓存有效期创建模板
+     * @param workingDirectory 工作目录，为空时使用当前目录
+     * @param environment 额外的环境变量，合并到当前进程的环境变量中，可以为空
+     * @return
+     * @throws IOException 工作目录不存在或不是目录
+     */
+    public static LaunchTemplate of(File workingDirectory, Map<String, String> environment) throws IOException {
+        return of(workingDirectory, environment, DEFAULT_REVALIDATE_MILLIS);
+    }
+
+    /**
+     * @param workingDirectory 工作目录，为空时使用当前目录
+     * @param environment 额外的环境变量，合并到当前进程的环境变量中，可以为空
+     * @param revalidateMillis 缓存有效期(毫秒)，过期后重新校验工作目录并重新查找命令
+     * @return
+     * @throws IOException 工作目录不存在或不是目录
+     */
+    public static LaunchTemplate of(File workingDirectory, Map<String, String> environment, long revalidateMillis) throws IOException {
+        if (revalidateMillis <= 0) {
+            throw new IllegalArgumentException("revalidateMillis必须大于0");
+        }
+        checkDirectory(workingDirectory);
+        Map<String, String> overrides = environment == null || environment.isEmpty()
+                ? Collections.<String, String>emptyMap() : Collections.unmodifiableMap(new HashMap<>(environment));
+        long revalidateNanos = TimeUnit.MILLISECONDS.toNanos(revalidateMillis);
+        return new LaunchTemplate(workingDirectory, overrides, revalidateNanos, new Cache(pathOf(overrides), revalidateNanos));
+    }
+
+    /**
+     * 在当前模板的环境变量上覆盖额外的环境变量，只复制差异部分，不会重新校验工作目录，PATH不变时共享命令路径缓存
+     * @param overlay
+     * @return
+     */
+    public LaunchTemplate withEnvironment(Map<String, String> overlay) {
+        if (overlay == null || overlay.isEmpty()) {
+            return this;
+        }
+        Map<String, String> merged = new HashMap<>(overrides);
+        merged.putAll(overlay);
+        String path = pathOf(merged);
+        Cache shared = path.equals(cache.path) ? cache : new Cache(path, revalidateNanos);
+        return new LaunchTemplate(workingDirectory, Collections.unmodifiableMap(merged), revalidateNanos, shared);
+    }
+
+    /**
+     * 工作目录，为空时使用当前目录
+     * @return
+     */
+    public File getWorkingDirectory() {
+        return workingDirectory;
+    }
+
+    /**
+     * 相对当前进程环境变量的额外环境变量
+     * @return 不可修改的Map
+     */
+    public Map<String, String> getEnvironmentOverrides() {
+        return overrides;
+    }
+
+    /**
+     * 合并后的完整环境变量，没有额外的环境变量时返回null表示继承当前进程的环境变量
+     * @return 不可修改的Map，第一次调用时创建
+     */
+    public Map<String, String> getEnvironment() {
+        if (overrides.isEmpty()) {
+            return null;
+        }
+        Map<String, String> current = environment;
+        if (current == null) {
+            Map<String, String> merged = new HashMap<>(System.getenv());
+            merged.putAll(overrides);
+            current = Collections.unmodifiableMap(merged);
+            environment = current;
+        }
+        return current;
+    }
+
+    /**
+     * 按模板的PATH查找命令的绝对路径，包含路径分隔符或找不到时原样返回
+     * @param executable
+     * @return
+     * @throws IOException 缓存过期后重新校验时工作目录已经不存在
+     */
+    public String resolve(String executable) throws IOException {
+        revalidate();
+        if (!RESOLVE_PATH || executable.indexOf(File.separatorChar) >= 0) {
+            return executable;
+        }
+        String resolved = cache.executables.get(executable);
+        if (resolved == null) {
+            resolved = search(executable);
+            if (resolved == null) {
+                return executable;
+            }
+            cache.executables.put(executable, resolved);
+        }
+        return resolved;
+    }
+
+    /**
+     * 创建启动命令的ProcessBuilder，已经设置好工作目录、环境变量及命令的绝对路径，调用方可以继续设置重定向
+     * @param command
+     * @return
+     * @throws IOException 缓存过期后重新校验时工作目录已经不存在
+     */
+    public ProcessBuilder newProcessBuilder(CommandLine command) throws IOException {
+        String[] arguments = command.toStrings();
+        arguments[0] = resolve(arguments[0]);
+        ProcessBuilder builder = new ProcessBuilder(arguments).directory(workingDirectory);
+        if (!overrides.isEmpty()) {
+            builder.environment().putAll(overrides);
+        }
+        return builder;
+    }
+
+    /**
+     * 使缓存立即失效，下一次启动时重新校验工作目录并重新查找命令，共享缓存的模板同时失效
+     */
+    public void invalidate() {
+        cache.expiresAtNanos = System.nanoTime();
+    }
+
+    private void revalidate() throws IOException {
+        long now = System.nanoTime();
+        if (now - cache.expiresAtNanos < 0) {
+            return;
+        }
+        checkDirectory(workingDirectory);
+        cache.executables.clear();
+        cache.expiresAtNanos = now + revalidateNanos;
+    }
+
+    /**
+     * @return 找不到时返回命令本身；遇到空的或相对路径的PATH项时返回null，表示不能缓存
+     */
+    private String search(String executable) {
+        for (String directory : cache.path.split(File.pathSeparator, -1)) {
+            // 空的PATH项表示工作目录，相对路径相对于子进程的工作目录，结果与工作目录有关，交给操作系统查找
+            if (!new File(directory).isAbsolute()) {
+                return null;
+            }
+            File file = new File(directory, executable);
+            if (file.isFile() && file.canExecute()) {
+                return file.getAbsolutePath();
+            }
+        }
+        return executable;
+    }
+
+    private static String pathOf(Map<String, String> overrides) {
+        String path = overrides.get(PATH);
+        if (path == null) {
+            path = System.getenv(PATH);
+        }
+        return path == null ? "" : path;
+    }
+
+    private static void checkDirectory(File directory) throws IOException {
+        if (directory == null) {
+            return;
+        }
+        if (!directory.exists()) {
+            throw new IOException(directory + " doesn't exist.");
+        }
+        if (!directory.isDirectory()) {
+            throw new IOException(directory + " is not a directory.");
+        }
+    }
+
+    /**
+     * 同一工作目录及PATH下的模板共享的缓存
+     */
+    private static final class Cache {
+
+        private final String path;
+
+        /** 命令名称到绝对路径，找不到的命令映射为自身 */
+        private final Map<String, String> executables = new ConcurrentHashMap<>();
+
+        private volatile long expiresAtNanos;
+
+        private Cache(String path, long revalidateNanos) {
+            this.path = path;
+            this.expiresAtNanos = System.nanoTime() + revalidateNanos;
+        }
+    }
+}
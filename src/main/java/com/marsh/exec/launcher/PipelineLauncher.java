@@ -0,0 +1,237 @@
+package com.marsh.exec.launcher;
+
+import lombok.Getter;
+import org.apache.commons.exec.CommandLine;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.ProcessBuilder.Redirect;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 以管道方式启动多个进程，前一个进程的标准输出直接连接到下一个进程的标准输入
+ *
+ * JDK21及以上通过ProcessBuilder.startPipeline由操作系统管道连接，数据不经过JVM；
+ * 更早版本的startPipeline启动后不关闭当前进程持有的中间管道读端，下游进程提前退出时上游进程收不到SIGPIPE而一直阻塞，
+ * 因此与JDK8一样退化为每个连接一个转发线程。
+ * 下游进程提前退出时上游进程继续写入会收到SIGPIPE，与shell一样pipefail时整体的退出码为141。
+ * 只有最后一个阶段的输出交给流处理器，中间阶段的错误输出默认继承当前进程的错误输出。
+ * 每次执行需要使用新的对象，执行后可以通过{@link #getStageExitValues()}获取各阶段的退出码
+ * @author marsh
+ * @date 2022年05月11日 10:40
+ */
+public class PipelineLauncher implements ProcessLauncher {
+
+    private static final MethodHandle START_PIPELINE = findStartPipeline();
+
+    private static final int RELAY_BUFFER_SIZE = 64 * 1024;
+
+    private final List<Stage> stages;
+
+    private final boolean pipefail;
+
+    private volatile PipelineProcess process;
+
+    /**
+     * @param stages 管道的各个阶段，至少两个
+     * @param pipefail 为true时任一阶段失败则整体失败
+     */
+    public PipelineLauncher(List<Stage> stages, boolean pipefail) {
+        if (stages.size() < 2) {
+            throw new IllegalArgumentException("管道至少需要两个命令");
+        }
+        this.stages = new ArrayList<>(stages);
+        this.pipefail = pipefail;
+    }
+
+    private static MethodHandle findStartPipeline() {
+        String version = System.getProperty("java.specification.version");
+        if (version.startsWith("1.") || Integer.parseInt(version) < 21) {
+            return null;
+        }
+        try {
+            return MethodHandles.publicLookup().findStatic(ProcessBuilder.class, "startPipeline",
+                    MethodType.methodType(List.class, List.class));
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 是否由操作系统管道直接连接各阶段
+     * @return
+     */
+    public static boolean isNativePipeline() {
+        return START_PIPELINE != null;
+    }
+
+    @Override
+    public Process launch(CommandLine command, Map<String, String> environment, File workingDirectory) throws IOException {
+        return launch(command, environment, workingDirectory, null, null, null);
+    }
+
+    @Override
+    public boolean supportsRedirect() {
+        return true;
+    }
+
+    /**
+     * 启动所有阶段，标准输入重定向到第一个阶段，输出重定向到最后一个阶段，
+     * command不使用，environment及workingDirectory作为未单独设置的阶段的默认值
+     */
+    @Override
+    public Process launch(CommandLine command, Map<String, String> environment, File workingDirectory,
+                          Redirect stdin, Redirect stdout, Redirect stderr) throws IOException {
+        List<ProcessBuilder> builders = new ArrayList<>(stages.size());
+        for (int i = 0; i < stages.size(); i++) {
+            Stage stage = stages.get(i);
+            ProcessBuilder builder = new ProcessBuilder(stage.getCommand());
+            File dir = stage.getWorkingDirectory() != null ? stage.getWorkingDirectory() : workingDirectory;
+            if (dir != null && !dir.exists()) {
+                throw new IOException(dir + " doesn't exist.");
+            }
+            builder.directory(dir);
+            Map<String, String> env = stage.getEnvironment() != null ? stage.getEnvironment() : environment;
+            if (env != null) {
+                builder.environment().clear();
+                builder.environment().putAll(env);
+            }
+            if (i == 0 && stdin != null) {
+                builder.redirectInput(stdin);
+            }
+            boolean last = i == stages.size() - 1;
+            if (last) {
+                if (stdout != null) {
+                    builder.redirectOutput(stdout);
+                }
+                if (stderr != null) {
+                    builder.redirectError(stderr);
+                }
+            } else {
+                builder.redirectError(stage.getStderr() != null ? stage.getStderr() : Redirect.INHERIT);
+            }
+            builders.add(builder);
+        }
+        PipelineProcess pipeline = START_PIPELINE != null ? startNative(builders) : startRelayed(builders);
+        this.process = pipeline;
+        return pipeline;
+    }
+
+    /**
+     * 中间管道只由相邻的两个进程持有，下游进程提前退出后上游进程继续写入时会收到SIGPIPE
+     */
+    @SuppressWarnings("unchecked")
+    private PipelineProcess startNative(List<ProcessBuilder> builders) throws IOException {
+        List<Process> processes;
+        try {
+            processes = (List<Process>) START_PIPELINE.invoke(builders);
+        } catch (IOException | RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IOException(e);
+        }
+        return new PipelineProcess(processes.toArray(new Process[0]), Collections.emptyList(), pipefail);
+    }
+
+    private PipelineProcess startRelayed(List<ProcessBuilder> builders) throws IOException {
+        Process[] processes = new Process[builders.size()];
+        List<Thread> relays = new ArrayList<>(builders.size() - 1);
+        try {
+            for (int i = 0; i < processes.length; i++) {
+                processes[i] = builders.get(i).start();
+                if (i > 0) {
+                    Thread relay = relay(processes[i - 1].getInputStream(), processes[i].getOutputStream());
+                    relays.add(relay);
+                }
+            }
+        } catch (IOException e) {
+            for (Process started : processes) {
+                if (started != null) {
+                    started.destroyForcibly();
+                }
+            }
+            throw e;
+        }
+        return new PipelineProcess(processes, relays, pipefail);
+    }
+
+    /**
+     * 下游进程提前退出时关闭上游的输出管道，上游进程继续写入时会收到SIGPIPE
+     */
+    private static Thread relay(InputStream in, OutputStream out) {
+        Thread thread = new Thread(() -> {
+            byte[] buffer = new byte[RELAY_BUFFER_SIZE];
+            try {
+                int length;
+                while ((length = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, length);
+                }
+            } catch (IOException ignored) {
+                // 下游进程已经关闭标准输入
+            } finally {
+                closeQuietly(out);
+                closeQuietly(in);
+            }
+        }, "Exec Pipeline Relay");
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException ignored) {
+            // 已经关闭
+        }
+    }
+
+    /**
+     * 最近一次执行中各阶段的退出码，未执行时返回null
+     * @return
+     */
+    public int[] getStageExitValues() {
+        PipelineProcess pipeline = process;
+        return pipeline == null ? null : pipeline.getStageExitValues();
+    }
+
+    /**
+     * 管道中的一个阶段
+     */
+    @Getter
+    public static class Stage {
+
+        /**
+         * 命令及参数
+         */
+        private final List<String> command;
+        /**
+         * 完整的环境变量，为空时使用管道的环境变量
+         */
+        private final Map<String, String> environment;
+        /**
+         * 工作目录，为空时使用管道的工作目录
+         */
+        private final File workingDirectory;
+        /**
+         * 中间阶段的错误输出，为空时继承当前进程的错误输出，最后一个阶段不使用
+         */
+        private final Redirect stderr;
+
+        public Stage(List<String> command, Map<String, String> environment, File workingDirectory, Redirect stderr) {
+            this.command = command;
+            this.environment = environment;
+            this.workingDirectory = workingDirectory;
+            this.stderr = stderr;
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.marsh.exec.launcher;
+
+import org.apache.commons.exec.Executor;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 管道中所有进程组合成的一个进程，标准输入为第一个进程的输入，输出为最后一个进程的输出
+ *
+ * 所有阶段都结束后才视为结束，结束进程时结束所有阶段
+ * @author marsh
+ * @date 2022年05月11日 10:20
+ */
+public class PipelineProcess extends Process {
+
+    private final Process[] stages;
+
+    private final List<Thread> relays;
+
+    private final boolean pipefail;
+
+    PipelineProcess(Process[] stages, List<Thread> relays, boolean pipefail) {
+        this.stages = stages;
+        this.relays = relays;
+        this.pipefail = pipefail;
+    }
+
+    /**
+     * 各阶段的退出码，未结束的阶段为{@link Executor#INVALID_EXITVALUE}
+     * @return
+     */
+    public int[] getStageExitValues() {
+        int[] exitValues = new int[stages.length];
+        for (int i = 0; i < stages.length; i++) {
+            exitValues[i] = stages[i].isAlive() ? Executor.INVALID_EXITVALUE : stages[i].exitValue();
+        }
+        return exitValues;
+    }
+
+    /**
+     * 按顺序排列的各阶段进程
+     * @return
+     */
+    public List<Process> getStages() {
+        return Collections.unmodifiableList(Arrays.asList(stages));
+    }
+
+    /**
+     * 阶段数量
+     * @return
+     */
+    public int getStageCount() {
+        return stages.length;
+    }
+
+    @Override
+    public OutputStream getOutputStream() {
+        return stages[0].getOutputStream();
+    }
+
+    @Override
+    public InputStream getInputStream() {
+        return stages[stages.length - 1].getInputStream();
+    }
+
+    @Override
+    public InputStream getErrorStream() {
+        return stages[stages.length - 1].getErrorStream();
+    }
+
+    @Override
+    public int waitFor() throws InterruptedException {
+        for (Process stage : stages) {
+            stage.waitFor();
+        }
+        for (Thread relay : relays) {
+            relay.join();
+        }
+        return exitValue();
+    }
+
+    @Override
+    public boolean waitFor(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (Process stage : stages) {
+            if (!stage.waitFor(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * pipefail时为最后一个非0的退出码，否则为最后一个阶段的退出码
+     */
+    @Override
+    public int exitValue() {
+        int exitValue = stages[stages.length - 1].exitValue();
+        if (!pipefail) {
+            // 与shell一致，其他阶段未结束时也视为未结束
+            for (Process stage : stages) {
+                stage.exitValue();
+            }
+            return exitValue;
+        }
+        for (int i = stages.length - 1; i >= 0; i--) {
+            int stageExitValue = stages[i].exitValue();
+            if (stageExitValue != 0) {
+                return stageExitValue;
+            }
+        }
+        return 0;
+    }
+
+    @Override
+    public boolean isAlive() {
+        for (Process stage : stages) {
+            if (stage.isAlive()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void destroy() {
+        for (Process stage : stages) {
+            stage.destroy();
+        }
+    }
+
+    @Override
+    public Process destroyForcibly() {
+        for (Process stage : stages) {
+            stage.destroyForcibly();
+        }
+        return this;
+    }
+}
@@ -0,0 +1,85 @@
+package com.marsh.exec.launcher;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+
+/**
+ * 获取子进程的操作系统进程号
+ *
+ * JDK9及以上通过Process.pid()获取，JDK8通过反射读取UNIXProcess的pid字段；
+ * 管道返回所有阶段的进程号，启动服务创建的进程使用启动服务返回的进程号
+ * @author marsh
+ * @date 2022年05月13日 14:10
+ */
+public final class ProcessIds {
+
+    private static final MethodHandle PID = findPid();
+
+    private static final long[] NONE = new long[0];
+
+    private static volatile Field legacyPidField;
+
+    private ProcessIds() {
+    }
+
+    private static MethodHandle findPid() {
+        try {
+            return MethodHandles.publicLookup().findVirtual(Process.class, "pid", MethodType.methodType(long.class));
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 进程包含的所有操作系统进程号，无法获取的进程不包含在内
+     * @param process
+     * @return
+     */
+    public static long[] pidsOf(Process process) {
+        if (process instanceof PipelineProcess) {
+            long[] pids = new long[0];
+            for (Process stage : ((PipelineProcess) process).getStages()) {
+                long[] stagePids = pidsOf(stage);
+                long[] merged = new long[pids.length + stagePids.length];
+                System.arraycopy(pids, 0, merged, 0, pids.length);
+                System.arraycopy(stagePids, 0, merged, pids.length, stagePids.length);
+                pids = merged;
+            }
+            return pids;
+        }
+        long pid = pidOf(process);
+        return pid > 0 ? new long[]{pid} : NONE;
+    }
+
+    /**
+     * 单个进程的进程号，无法获取时返回-1
+     * @param process
+     * @return
+     */
+    public static long pidOf(Process process) {
+        if (process instanceof RemoteProcess) {
+            return ((RemoteProcess) process).remotePid();
+        }
+        if (PID != null) {
+            try {
+                return (long) PID.invoke(process);
+            } catch (Throwable e) {
+                // 自定义的Process没有实现pid()
+                return -1;
+            }
+        }
+        try {
+            Field field = legacyPidField;
+            if (field == null || field.getDeclaringClass() != process.getClass()) {
+                field = process.getClass().getDeclaredField("pid");
+                field.setAccessible(true);
+                legacyPidField = field;
+            }
+            return field.getInt(process);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return -1;
+        }
+    }
+}
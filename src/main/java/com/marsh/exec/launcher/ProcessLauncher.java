@@ -0,0 +1,53 @@
+package com.marsh.exec.launcher;
+
+import org.apache.commons.exec.CommandLine;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.ProcessBuilder.Redirect;
+import java.util.Map;
+
+/**
+ * 子进程启动策略，替换CommandLineExecutor中默认通过当前JVM直接fork/exec的方式
+ * @see SpawnServerLauncher
+ * @author marsh
+ * @date 2022年05月05日 9:30
+ */
+@FunctionalInterface
+public interface ProcessLauncher {
+
+    /**
+     * 启动一个子进程
+     * @param command 命令行
+     * @param environment 完整的环境变量，为空时继承当前进程的环境变量
+     * @param workingDirectory 工作目录，可以为空
+     * @return
+     * @throws IOException 启动失败
+     */
+    Process launch(CommandLine command, Map<String, String> environment, File workingDirectory) throws IOException;
+
+    /**
+     * 是否支持输入输出重定向，不支持时设置了输出重定向的任务由当前JVM直接启动，
+     * 标准输入改为由当前JVM写入
+     * @return
+     */
+    default boolean supportsRedirect() {
+        return false;
+    }
+
+    /**
+     * 启动一个输入或输出重定向到文件的子进程，{@link #supportsRedirect()}返回true时才会调用
+     * @param command 命令行
+     * @param environment 完整的环境变量，为空时继承当前进程的环境变量
+     * @param workingDirectory 工作目录，可以为空
+     * @param stdin 标准输入重定向，为空时不重定向
+     * @param stdout 标准输出重定向，为空时不重定向
+     * @param stderr 错误输出重定向，为空时不重定向
+     * @return
+     * @throws IOException 启动失败
+     */
+    default Process launch(CommandLine command, Map<String, String> environment, File workingDirectory,
+                           Redirect stdin, Redirect stdout, Redirect stderr) throws IOException {
+        throw new UnsupportedOperationException("不支持输入输出重定向");
+    }
+}
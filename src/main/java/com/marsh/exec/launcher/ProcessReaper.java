@@ -0,0 +1,201 @@
+package com.marsh.exec.launcher;
+
+import cn.hutool.core.thread.NamedThreadFactory;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 集中等待子进程结束的回收器，代替每个子进程一个阻塞在waitFor中的线程
+ *
+ * JDK9及以上由JDK直接创建的进程通过Process.onExit()得到通知(JDK内部本来就有一个小栈的线程等待每个子进程)；
+ * JDK8以及管道、启动服务等自定义的Process由一个轮询线程检查isAlive()，刚注册的进程以1毫秒的间隔检查，
+ * 之后间隔逐次翻倍直到maxPollMillis。进程结束后的处理在容量很小的完成线程池中执行，不能长时间阻塞：
+ * 执行器在这里停止超时计时，读完输出流交给弹性的停止线程池(子进程的后台进程继续持有输出管道时会一直阻塞，
+ * 按asyncStreamStopTimeout限制等待时间)，读完后再通过{@link #execute(Runnable)}回到完成线程池触发回调
+ * @author marsh
+ * @date 2022年05月16日 9:30
+ */
+public class ProcessReaper {
+
+    /**
+     * 默认的最大轮询间隔(毫秒)
+     */
+    public static final long DEFAULT_MAX_POLL_MILLIS = 50;
+
+    private static final long FIRST_DELAY_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private static final MethodHandle ON_EXIT = findOnExit();
+
+    private static volatile ProcessReaper defaultReaper;
+
+    private final long maxPollNanos;
+
+    private final ExecutorService completionExecutor;
+
+    /** 通过轮询等待的进程 */
+    private final List<Watch> polled = new ArrayList<>();
+
+    private final AtomicInteger watching = new AtomicInteger();
+
+    private Thread thread;
+
+    /**
+     * @param maxPollMillis 轮询的最大间隔(毫秒)
+     * @param completionThreads 完成线程池的线程数
+     */
+    public ProcessReaper(long maxPollMillis, int completionThreads) {
+        if (maxPollMillis <= 0 || completionThreads <= 0) {
+            throw new IllegalArgumentException("maxPollMillis及completionThreads必须大于0");
+        }
+        this.maxPollNanos = TimeUnit.MILLISECONDS.toNanos(maxPollMillis);
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(completionThreads, completionThreads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), new NamedThreadFactory("Exec Completion-", true));
+        executor.allowCoreThreadTimeOut(true);
+        this.completionExecutor = executor;
+    }
+
+    /**
+     * 进程内共享的回收器，完成线程池的线程数与CPU数相同(至少2个)
+     * @return
+     */
+    public static ProcessReaper getDefault() {
+        if (defaultReaper == null) {
+            synchronized (ProcessReaper.class) {
+                if (defaultReaper == null) {
+                    defaultReaper = new ProcessReaper(DEFAULT_MAX_POLL_MILLIS,
+                            Math.max(2, Runtime.getRuntime().availableProcessors()));
+                }
+            }
+        }
+        return defaultReaper;
+    }
+
+    private static MethodHandle findOnExit() {
+        try {
+            return MethodHandles.publicLookup().findVirtual(Process.class, "onExit",
+                    MethodType.methodType(CompletableFuture.class));
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 等待进程结束，结束后在完成线程池中执行onExit
+     * @param process
+     * @param onExit 不应阻塞，阻塞期间会占用完成线程池中的线程
+     */
+    public void watch(Process process, Runnable onExit) {
+        Watch watch = new Watch(process, onExit);
+        watching.incrementAndGet();
+        // 自定义Process的onExit()默认在公共线程池中阻塞调用waitFor，只对JDK自身的实现使用
+        if (ON_EXIT != null && process.getClass().getClassLoader() == null) {
+            try {
+                ((CompletableFuture<?>) ON_EXIT.invoke(process)).whenComplete((p, e) -> complete(watch));
+                return;
+            } catch (Throwable e) {
+                // 退回到轮询
+            }
+        }
+        synchronized (this) {
+            polled.add(watch);
+            if (thread == null) {
+                thread = new Thread(this::run, "Exec Process Reaper");
+                thread.setDaemon(true);
+                thread.start();
+            }
+            notifyAll();
+        }
+    }
+
+    /**
+     * 在完成线程池中执行进程结束后的后续处理，例如读完输出流之后的回调
+     * @param task 不应阻塞
+     */
+    public void execute(Runnable task) {
+        completionExecutor.execute(task);
+    }
+
+    /**
+     * 正在等待结束的进程数
+     * @return
+     */
+    public int getWatchingCount() {
+        return watching.get();
+    }
+
+    private void complete(Watch watch) {
+        completionExecutor.execute(() -> {
+            watching.decrementAndGet();
+            watch.onExit.run();
+        });
+    }
+
+    private void run() {
+        List<Watch> exited = new ArrayList<>();
+        while (true) {
+            synchronized (this) {
+                long waitNanos = Long.MAX_VALUE;
+                long now = System.nanoTime();
+                for (Iterator<Watch> iterator = polled.iterator(); iterator.hasNext(); ) {
+                    Watch watch = iterator.next();
+                    if (watch.nextPollNanos - now > 0) {
+                        waitNanos = Math.min(waitNanos, watch.nextPollNanos - now);
+                    } else if (!watch.process.isAlive()) {
+                        iterator.remove();
+                        exited.add(watch);
+                    } else {
+                        watch.delayNanos = Math.min(watch.delayNanos << 1, maxPollNanos);
+                        watch.nextPollNanos = now + watch.delayNanos;
+                        waitNanos = Math.min(waitNanos, watch.delayNanos);
+                    }
+                }
+                if (exited.isEmpty()) {
+                    try {
+                        if (waitNanos == Long.MAX_VALUE) {
+                            wait();
+                        } else {
+                            TimeUnit.NANOSECONDS.timedWait(this, waitNanos);
+                        }
+                    } catch (InterruptedException e) {
+                        // 回收线程不会被中断，继续下一轮
+                    }
+                    continue;
+                }
+            }
+            for (Watch watch : exited) {
+                complete(watch);
+            }
+            exited.clear();
+        }
+    }
+
+    /**
+     * 一个正在等待结束的进程
+     */
+    private static final class Watch {
+
+        private final Process process;
+
+        private final Runnable onExit;
+
+        private long nextPollNanos = System.nanoTime() + FIRST_DELAY_NANOS;
+
+        private long delayNanos = FIRST_DELAY_NANOS;
+
+        private Watch(Process process, Runnable onExit) {
+            this.process = process;
+            this.onExit = onExit;
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.marsh.exec.launcher;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * 启动服务转发过来的子进程输出，读取端为流处理器的泵线程
+ *
+ * 转发线程不能被单个进程阻塞，因此缓冲不设上限，读取端需要及时消费
+ * @author marsh
+ * @date 2022年05月05日 10:40
+ */
+class RelayInputStream extends InputStream {
+
+    private final Deque<byte[]> chunks = new ArrayDeque<>();
+
+    private int offset;
+
+    private int available;
+
+    private boolean eof;
+
+    private boolean closed;
+
+    synchronized void offer(byte[] chunk) {
+        if (closed) {
+            return;
+        }
+        chunks.addLast(chunk);
+        available += chunk.length;
+        notifyAll();
+    }
+
+    synchronized void finish() {
+        eof = true;
+        notifyAll();
+    }
+
+    @Override
+    public synchronized int read() throws IOException {
+        byte[] one = new byte[1];
+        return read(one, 0, 1) == -1 ? -1 : one[0] & 0xFF;
+    }
+
+    @Override
+    public synchronized int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        while (available == 0) {
+            if (eof || closed) {
+                return -1;
+            }
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new java.io.InterruptedIOException();
+            }
+        }
+        int read = 0;
+        while (read < len && !chunks.isEmpty()) {
+            byte[] head = chunks.peekFirst();
+            int count = Math.min(len - read, head.length - offset);
+            System.arraycopy(head, offset, b, off + read, count);
+            read += count;
+            offset += count;
+            if (offset == head.length) {
+                chunks.pollFirst();
+                offset = 0;
+            }
+        }
+        available -= read;
+        return read;
+    }
+
+    @Override
+    public synchronized int available() {
+        return available;
+    }
+
+    @Override
+    public synchronized void close() {
+        closed = true;
+        chunks.clear();
+        available = 0;
+        notifyAll();
+    }
+}
@@ -0,0 +1,218 @@
+package com.marsh.exec.launcher;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 由启动服务创建的子进程在当前JVM中的代理
+ * @author marsh
+ * @date 2022年05月05日 10:55
+ */
+class RemoteProcess extends Process {
+
+    private final SpawnServerLauncher.Connection connection;
+
+    private final int id;
+
+    private final RelayInputStream stdout = new RelayInputStream();
+
+    private final RelayInputStream stderr = new RelayInputStream();
+
+    private final OutputStream stdin;
+
+    private final CountDownLatch exited = new CountDownLatch(1);
+
+    private volatile int exitValue;
+
+    private volatile long pid = -1;
+
+    /** 已发送但启动服务尚未确认写入的标准输入字节数 */
+    private int unacknowledged;
+
+    /** 启动服务写入标准输入失败的原因 */
+    private String stdinFailure;
+
+    /** 尚未收到的EXIT、STDOUT_EOF、STDERR_EOF帧数 */
+    private int pendingFrames = 3;
+
+    RemoteProcess(SpawnServerLauncher.Connection connection, int id) {
+        this.connection = connection;
+        this.id = id;
+        this.stdin = new OutputStream() {
+
+            private boolean closed;
+
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[]{(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                if (closed) {
+                    throw new IOException("Stream closed");
+                }
+                while (len > 0) {
+                    int chunk = Math.min(len, SpawnProtocol.STDIN_FRAME);
+                    acquireStdin(chunk);
+                    connection.sendStdin(id, b, off, chunk);
+                    off += chunk;
+                    len -= chunk;
+                }
+            }
+
+            @Override
+            public void close() throws IOException {
+                if (!closed) {
+                    closed = true;
+                    connection.send(SpawnProtocol.CLOSE_STDIN, id);
+                }
+            }
+        };
+    }
+
+    /**
+     * 启动服务中对应子进程的进程号，启动前为-1
+     */
+    long remotePid() {
+        return pid;
+    }
+
+    void started(long pid) {
+        this.pid = pid;
+    }
+
+    RelayInputStream stdout() {
+        return stdout;
+    }
+
+    RelayInputStream stderr() {
+        return stderr;
+    }
+
+    /**
+     * 子进程退出时调用，输出流由各自的EOF帧结束，
+     * 孙进程继承并持有输出管道时输出流可能晚于退出码结束
+     */
+    void exit(int exitValue) {
+        this.exitValue = exitValue;
+        exited.countDown();
+        synchronized (this) {
+            notifyAll();
+        }
+    }
+
+    /**
+     * 启动服务断开时调用，结束输出流并以-1作为退出码
+     */
+    void disconnect() {
+        stdout.finish();
+        stderr.finish();
+        exit(-1);
+    }
+
+    /**
+     * 记录收到一个EXIT、STDOUT_EOF或STDERR_EOF帧
+     * @return 三种帧是否都已收到，此后启动服务不会再发送该子进程的帧
+     */
+    synchronized boolean frameReceived() {
+        return --pendingFrames == 0;
+    }
+
+    /**
+     * 启动服务确认已经写入(或丢弃)标准输入数据
+     */
+    synchronized void acknowledgeStdin(int length) {
+        unacknowledged -= length;
+        notifyAll();
+    }
+
+    /**
+     * 启动服务写入子进程标准输入失败，之后的写入抛出异常
+     */
+    synchronized void stdinFailed(String message) {
+        stdinFailure = message;
+        notifyAll();
+    }
+
+    /**
+     * 等待未确认的数据降到窗口以内，效果与本地子进程不读取标准输入时写入管道阻塞相同
+     */
+    private synchronized void acquireStdin(int length) throws IOException {
+        try {
+            while (stdinFailure == null && isAlive() && unacknowledged + length > SpawnProtocol.STDIN_WINDOW) {
+                wait();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("等待写入标准输入时被中断");
+        }
+        if (stdinFailure != null) {
+            throw new IOException(stdinFailure);
+        }
+        if (!isAlive()) {
+            throw new IOException("Broken pipe");
+        }
+        unacknowledged += length;
+    }
+
+    @Override
+    public OutputStream getOutputStream() {
+        return stdin;
+    }
+
+    @Override
+    public InputStream getInputStream() {
+        return stdout;
+    }
+
+    @Override
+    public InputStream getErrorStream() {
+        return stderr;
+    }
+
+    @Override
+    public int waitFor() throws InterruptedException {
+        exited.await();
+        return exitValue;
+    }
+
+    @Override
+    public boolean waitFor(long timeout, TimeUnit unit) throws InterruptedException {
+        return exited.await(timeout, unit);
+    }
+
+    @Override
+    public int exitValue() {
+        if (exited.getCount() > 0) {
+            throw new IllegalThreadStateException("process hasn't exited");
+        }
+        return exitValue;
+    }
+
+    @Override
+    public boolean isAlive() {
+        return exited.getCount() > 0;
+    }
+
+    @Override
+    public void destroy() {
+        kill(false);
+    }
+
+    @Override
+    public Process destroyForcibly() {
+        kill(true);
+        return this;
+    }
+
+    private void kill(boolean force) {
+        if (isAlive()) {
+            connection.kill(id, force);
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.marsh.exec.launcher;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 启动服务与客户端之间的通信协议，每一帧以一个字节的类型及int类型的进程编号开头
+ * @author marsh
+ * @date 2022年05月05日 9:40
+ */
+final class SpawnProtocol {
+
+    /** 客户端 -> 服务：启动进程，参数、环境变量、工作目录 */
+    static final int LAUNCH = 1;
+    /** 客户端 -> 服务：写入子进程标准输入 */
+    static final int STDIN = 2;
+    /** 客户端 -> 服务：关闭子进程标准输入 */
+    static final int CLOSE_STDIN = 3;
+    /** 客户端 -> 服务：结束子进程，参数为是否强制结束 */
+    static final int KILL = 4;
+
+    /** 服务 -> 客户端：进程已启动，参数为long类型的进程号，无法获取时为-1 */
+    static final int STARTED = 11;
+    /** 服务 -> 客户端：进程启动失败，参数为异常信息 */
+    static final int LAUNCH_FAILED = 12;
+    /** 服务 -> 客户端：标准输出数据 */
+    static final int STDOUT = 13;
+    /** 服务 -> 客户端：错误输出数据 */
+    static final int STDERR = 14;
+    /** 服务 -> 客户端：标准输出结束 */
+    static final int STDOUT_EOF = 15;
+    /** 服务 -> 客户端：错误输出结束 */
+    static final int STDERR_EOF = 16;
+    /** 服务 -> 客户端：进程退出，参数为退出码 */
+    static final int EXIT = 17;
+    /** 服务 -> 客户端：已写入子进程标准输入(或子进程已关闭标准输入而丢弃)的字节数 */
+    static final int STDIN_ACK = 18;
+    /** 服务 -> 客户端：错误信息，进程编号为0时表示协议错误，服务随后退出，否则表示写入子进程标准输入失败 */
+    static final int ERROR = 19;
+
+    /** 客户端最多发送STDIN_WINDOW个未确认的标准输入字节，服务端每个子进程排队的数据不会超过这个大小 */
+    static final int STDIN_WINDOW = 256 * 1024;
+    /** 一个STDIN帧最多携带的字节数 */
+    static final int STDIN_FRAME = 64 * 1024;
+
+    private SpawnProtocol() {
+    }
+
+    /**
+     * writeUTF限制64KB，参数及环境变量可能更长
+     */
+    static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
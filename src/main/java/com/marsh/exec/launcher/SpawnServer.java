@@ -0,0 +1,327 @@
+package com.marsh.exec.launcher;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import static com.marsh.exec.launcher.SpawnProtocol.*;
+
+/**
+ * 启动服务进程的入口，由{@link SpawnServerLauncher}以很小的堆内存启动
+ *
+ * 从标准输入读取启动请求，由本进程fork/exec子进程，子进程的输出及退出码通过标准输出转发回客户端。
+ * 子进程的标准输入由每个子进程各自的写入线程写入，客户端按{@link SpawnProtocol#STDIN_WINDOW}等待确认，
+ * 协议错误以ERROR帧报告给客户端。
+ * 本进程只依赖JDK，标准输入关闭(客户端JVM退出)时结束所有子进程并退出
+ * @author marsh
+ * @date 2022年05月05日 10:05
+ */
+public class SpawnServer {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    /** 写入线程的结束标记 */
+    private static final byte[] CLOSE = new byte[0];
+
+    private final DataInputStream in;
+
+    private final DataOutputStream out;
+
+    private final Map<Integer, Child> children = new ConcurrentHashMap<>();
+
+    SpawnServer(InputStream in, OutputStream out) {
+        this.in = new DataInputStream(new BufferedInputStream(in));
+        this.out = new DataOutputStream(new BufferedOutputStream(out));
+    }
+
+    public static void main(String[] args) {
+        // 标准输出用于协议通信，避免其他输出混入
+        PrintStream protocolOut = System.out;
+        System.setOut(System.err);
+        new SpawnServer(System.in, protocolOut).serve();
+    }
+
+    void serve() {
+        try {
+            while (true) {
+                int type = in.read();
+                if (type < 0) {
+                    break;
+                }
+                int id = in.readInt();
+                switch (type) {
+                    case LAUNCH:
+                        launch(id);
+                        break;
+                    case STDIN:
+                        int length = in.readInt();
+                        if (length < 0 || length > STDIN_FRAME) {
+                            throw new IOException("invalid stdin frame length " + length);
+                        }
+                        byte[] data = new byte[length];
+                        in.readFully(data);
+                        Child child = children.get(id);
+                        if (child != null) {
+                            child.write(data);
+                        } else {
+                            // 子进程已经退出，客户端的窗口同样需要归还
+                            acknowledge(id, length);
+                        }
+                        break;
+                    case CLOSE_STDIN:
+                        Child closing = children.get(id);
+                        if (closing != null) {
+                            closing.closeStdin();
+                        }
+                        break;
+                    case KILL:
+                        boolean force = in.readBoolean();
+                        Child target = children.get(id);
+                        if (target != null) {
+                            if (force) {
+                                target.process.destroyForcibly();
+                            } else {
+                                target.process.destroy();
+                            }
+                        }
+                        break;
+                    default:
+                        throw new IOException("unknown frame type " + type);
+                }
+            }
+        } catch (IOException e) {
+            // 协议错误或读取失败，尽量把原因告诉客户端，客户端随后按启动服务退出处理
+            sendError(0, e.toString());
+        } finally {
+            children.values().forEach(child -> child.process.destroyForcibly());
+            System.exit(0);
+        }
+    }
+
+    private void launch(int id) throws IOException {
+        int argc = in.readInt();
+        List<String> command = new ArrayList<>(argc);
+        for (int i = 0; i < argc; i++) {
+            command.add(readString(in));
+        }
+        int envCount = in.readInt();
+        ProcessBuilder builder = new ProcessBuilder(command);
+        if (envCount >= 0) {
+            builder.environment().clear();
+            for (int i = 0; i < envCount; i++) {
+                builder.environment().put(readString(in), readString(in));
+            }
+        }
+        String dir = readString(in);
+        if (!dir.isEmpty()) {
+            builder.directory(new File(dir));
+        }
+        final Process process;
+        try {
+            process = builder.start();
+        } catch (IOException | RuntimeException e) {
+            synchronized (out) {
+                out.write(LAUNCH_FAILED);
+                out.writeInt(id);
+                writeString(out, String.valueOf(e.getMessage()));
+                out.flush();
+            }
+            return;
+        }
+        Child child = new Child(id, process);
+        children.put(id, child);
+        synchronized (out) {
+            out.write(STARTED);
+            out.writeInt(id);
+            out.writeLong(ProcessIds.pidOf(process));
+            out.flush();
+        }
+        pump(id, process.getInputStream(), STDOUT, STDOUT_EOF);
+        pump(id, process.getErrorStream(), STDERR, STDERR_EOF);
+        // 退出码不等待输出流结束，孙进程持有输出管道时客户端的waitFor()不会被阻塞
+        Thread waiter = new Thread(() -> {
+            int exitValue;
+            try {
+                exitValue = process.waitFor();
+            } catch (InterruptedException e) {
+                exitValue = -1;
+            }
+            children.remove(id);
+            child.closeStdin();
+            try {
+                synchronized (out) {
+                    out.write(EXIT);
+                    out.writeInt(id);
+                    out.writeInt(exitValue);
+                    out.flush();
+                }
+            } catch (IOException ignored) {
+                // 客户端已经断开
+            }
+        }, "Spawn Server Waiter-" + id);
+        waiter.setDaemon(true);
+        waiter.start();
+    }
+
+    private void pump(int id, InputStream stream, int dataType, int eofType) {
+        Thread thread = new Thread(() -> {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            try {
+                int length;
+                while ((length = stream.read(buffer)) != -1) {
+                    synchronized (out) {
+                        out.write(dataType);
+                        out.writeInt(id);
+                        out.writeInt(length);
+                        out.write(buffer, 0, length);
+                        out.flush();
+                    }
+                }
+            } catch (IOException ignored) {
+                // 流被关闭
+            }
+            try {
+                send(eofType, id);
+            } catch (IOException ignored) {
+                // 客户端已经断开
+            }
+        }, "Spawn Server Pump-" + id);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void send(int type, int id) throws IOException {
+        synchronized (out) {
+            out.write(type);
+            out.writeInt(id);
+            out.flush();
+        }
+    }
+
+    private void acknowledge(int id, int length) {
+        try {
+            synchronized (out) {
+                out.write(STDIN_ACK);
+                out.writeInt(id);
+                out.writeInt(length);
+                out.flush();
+            }
+        } catch (IOException ignored) {
+            // 客户端已经断开
+        }
+    }
+
+    private void sendError(int id, String message) {
+        try {
+            synchronized (out) {
+                out.write(ERROR);
+                out.writeInt(id);
+                writeString(out, message);
+                out.flush();
+            }
+        } catch (IOException ignored) {
+            // 客户端已经断开，没有可以报告的地方
+        }
+    }
+
+    private static void closeQuietly(Process process) {
+        try {
+            process.getOutputStream().close();
+        } catch (IOException ignored) {
+            // 已经关闭
+        }
+    }
+
+    /**
+     * 一个子进程，标准输入由单独的写入线程写入，命令循环只负责排队，不会因为子进程不读取标准输入而阻塞。
+     * 写入线程在第一次收到标准输入数据时创建，排队的数据由客户端的确认窗口限制在STDIN_WINDOW以内
+     */
+    private final class Child {
+
+        private final int id;
+
+        private final Process process;
+
+        private final LinkedBlockingQueue<byte[]> stdin = new LinkedBlockingQueue<>();
+
+        private int queuedBytes;
+
+        private boolean stdinClosed;
+
+        private Thread writer;
+
+        private Child(int id, Process process) {
+            this.id = id;
+            this.process = process;
+        }
+
+        void write(byte[] data) throws IOException {
+            synchronized (this) {
+                if (stdinClosed) {
+                    acknowledge(id, data.length);
+                    return;
+                }
+                queuedBytes += data.length;
+                if (queuedBytes > STDIN_WINDOW) {
+                    throw new IOException("stdin window exceeded for process " + id);
+                }
+                if (writer == null) {
+                    writer = new Thread(this::drain, "Spawn Server Stdin-" + id);
+                    writer.setDaemon(true);
+                    writer.start();
+                }
+            }
+            stdin.add(data);
+        }
+
+        /**
+         * 排在已经收到的数据之后关闭标准输入
+         */
+        void closeStdin() {
+            synchronized (this) {
+                if (stdinClosed) {
+                    return;
+                }
+                stdinClosed = true;
+                if (writer != null) {
+                    stdin.add(CLOSE);
+                    return;
+                }
+            }
+            closeQuietly(process);
+        }
+
+        private void drain() {
+            OutputStream stream = process.getOutputStream();
+            boolean broken = false;
+            try {
+                while (true) {
+                    byte[] data = stdin.take();
+                    if (data == CLOSE) {
+                        break;
+                    }
+                    if (!broken) {
+                        try {
+                            stream.write(data);
+                            stream.flush();
+                        } catch (IOException e) {
+                            // 子进程已经关闭标准输入，之后的数据直接丢弃，客户端的下一次写入会失败
+                            broken = true;
+                            sendError(id, e.toString());
+                        }
+                    }
+                    synchronized (this) {
+                        queuedBytes -= data.length;
+                    }
+                    acknowledge(id, data.length);
+                }
+            } catch (InterruptedException ignored) {
+                // 守护线程不会被中断
+            }
+            closeQuietly(process);
+        }
+    }
+}
@@ -0,0 +1,337 @@
+package com.marsh.exec.launcher;
+
+import org.apache.commons.exec.CommandLine;
+
+import java.io.*;
+import java.net.URISyntaxException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.marsh.exec.launcher.SpawnProtocol.*;
+
+/**
+ * 通过常驻的小堆启动服务进程fork/exec子进程，避免在堆内存很大的JVM中直接创建进程
+ *
+ * 子进程由启动服务创建，输出通过启动服务的标准输出转发回当前JVM，并以{@link Process}的形式交给流处理器，
+ * 因此流处理器、超时及取消的用法与直接启动相同。JDK8没有传递文件描述符的接口，输出需要多经过一次转发，
+ * 适合启动频繁、输出量不大的命令；输出重定向到文件的任务仍由当前JVM直接启动。
+ * 启动服务异常退出时，正在运行的子进程按退出码-1结束，下一次启动时自动重新创建启动服务
+ *
+ * CommandLineThreadBuild.commandLine(...).launcher(SpawnServerLauncher.getDefault()).build();
+ * @author marsh
+ * @date 2022年05月05日 11:20
+ */
+public class SpawnServerLauncher implements ProcessLauncher, Closeable {
+
+    private static volatile SpawnServerLauncher defaultLauncher;
+
+    /**
+     * 启动服务的JVM参数
+     */
+    private final List<String> jvmOptions;
+
+    private Connection connection;
+
+    private boolean closed;
+
+    public SpawnServerLauncher() {
+        this("-Xms8m", "-Xmx32m", "-XX:+UseSerialGC", "-XX:TieredStopAtLevel=1", "-Xshare:auto");
+    }
+
+    public SpawnServerLauncher(String... jvmOptions) {
+        this.jvmOptions = new ArrayList<>();
+        for (String option : jvmOptions) {
+            this.jvmOptions.add(option);
+        }
+    }
+
+    /**
+     * 进程内共享的启动服务，第一次启动子进程时才会创建
+     * @return
+     */
+    public static SpawnServerLauncher getDefault() {
+        if (defaultLauncher == null) {
+            synchronized (SpawnServerLauncher.class) {
+                if (defaultLauncher == null) {
+                    defaultLauncher = new SpawnServerLauncher();
+                }
+            }
+        }
+        return defaultLauncher;
+    }
+
+    @Override
+    public Process launch(CommandLine command, Map<String, String> environment, File workingDirectory) throws IOException {
+        if (workingDirectory != null && !workingDirectory.exists()) {
+            throw new IOException(workingDirectory + " doesn't exist.");
+        }
+        return connection().launch(command.toStrings(), environment, workingDirectory);
+    }
+
+    private synchronized Connection connection() throws IOException {
+        if (closed) {
+            throw new IOException("启动服务已关闭");
+        }
+        if (connection == null || !connection.isAlive()) {
+            connection = new Connection(startServer());
+        }
+        return connection;
+    }
+
+    private Process startServer() throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(jvmOptions);
+        command.add("-cp");
+        command.add(classPath());
+        command.add(SpawnServer.class.getName());
+        return new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+    }
+
+    /**
+     * 优先使用SpawnServer所在的jar或目录，启动服务只依赖JDK
+     */
+    private static String classPath() {
+        try {
+            return Paths.get(SpawnServer.class.getProtectionDomain().getCodeSource().getLocation().toURI()).toString();
+        } catch (URISyntaxException | RuntimeException e) {
+            return System.getProperty("java.class.path");
+        }
+    }
+
+    /**
+     * 结束启动服务，启动服务会结束所有由它创建的子进程
+     */
+    @Override
+    public synchronized void close() {
+        closed = true;
+        if (connection != null) {
+            connection.close();
+        }
+    }
+
+    /**
+     * 与一个启动服务进程的连接
+     */
+    static class Connection {
+
+        private final Process server;
+
+        private final DataOutputStream out;
+
+        private final DataInputStream in;
+
+        private final AtomicInteger ids = new AtomicInteger();
+
+        private final Map<Integer, RemoteProcess> processes = new ConcurrentHashMap<>();
+
+        private final Map<Integer, CompletableFuture<Void>> pendingLaunches = new ConcurrentHashMap<>();
+
+        private volatile boolean alive = true;
+
+        /** 启动服务报告的协议错误 */
+        private volatile String failure;
+
+        Connection(Process server) {
+            this.server = server;
+            this.out = new DataOutputStream(new BufferedOutputStream(server.getOutputStream()));
+            this.in = new DataInputStream(new BufferedInputStream(server.getInputStream()));
+            Thread reader = new Thread(this::readLoop, "Spawn Server Reader");
+            reader.setDaemon(true);
+            reader.start();
+        }
+
+        boolean isAlive() {
+            return alive && server.isAlive();
+        }
+
+        Process launch(String[] command, Map<String, String> environment, File workingDirectory) throws IOException {
+            int id = ids.incrementAndGet();
+            RemoteProcess process = new RemoteProcess(this, id);
+            CompletableFuture<Void> started = new CompletableFuture<>();
+            processes.put(id, process);
+            pendingLaunches.put(id, started);
+            try {
+                synchronized (out) {
+                    out.write(LAUNCH);
+                    out.writeInt(id);
+                    out.writeInt(command.length);
+                    for (String argument : command) {
+                        writeString(out, argument);
+                    }
+                    if (environment == null) {
+                        out.writeInt(-1);
+                    } else {
+                        out.writeInt(environment.size());
+                        for (Map.Entry<String, String> entry : environment.entrySet()) {
+                            writeString(out, entry.getKey());
+                            writeString(out, entry.getValue());
+                        }
+                    }
+                    writeString(out, workingDirectory == null ? "" : workingDirectory.getPath());
+                    out.flush();
+                }
+                if (!alive) {
+                    // 读取线程可能在注册之前就已经结束
+                    throw new IOException("启动服务已退出");
+                }
+                started.get();
+                return process;
+            } catch (IOException e) {
+                disconnect();
+                throw e;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("等待进程启动时被中断");
+            } catch (ExecutionException e) {
+                processes.remove(id);
+                throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+            } finally {
+                pendingLaunches.remove(id);
+            }
+        }
+
+        void send(int type, int id) throws IOException {
+            synchronized (out) {
+                out.write(type);
+                out.writeInt(id);
+                out.flush();
+            }
+        }
+
+        void sendStdin(int id, byte[] b, int off, int len) throws IOException {
+            synchronized (out) {
+                out.write(STDIN);
+                out.writeInt(id);
+                out.writeInt(len);
+                out.write(b, off, len);
+                out.flush();
+            }
+        }
+
+        void kill(int id, boolean force) {
+            try {
+                synchronized (out) {
+                    out.write(KILL);
+                    out.writeInt(id);
+                    out.writeBoolean(force);
+                    out.flush();
+                }
+            } catch (IOException e) {
+                // 启动服务已经退出，子进程会随之结束
+                disconnect();
+            }
+        }
+
+        private void readLoop() {
+            try {
+                while (true) {
+                    int type = in.read();
+                    if (type < 0) {
+                        break;
+                    }
+                    int id = in.readInt();
+                    RemoteProcess process = processes.get(id);
+                    switch (type) {
+                        case STARTED:
+                            long pid = in.readLong();
+                            if (process != null) {
+                                process.started(pid);
+                            }
+                            complete(id, null);
+                            break;
+                        case LAUNCH_FAILED:
+                            complete(id, new IOException(readString(in)));
+                            break;
+                        case STDOUT:
+                        case STDERR:
+                            byte[] data = new byte[in.readInt()];
+                            in.readFully(data);
+                            if (process != null) {
+                                (type == STDOUT ? process.stdout() : process.stderr()).offer(data);
+                            }
+                            break;
+                        case STDOUT_EOF:
+                            if (process != null) {
+                                process.stdout().finish();
+                                finished(id, process);
+                            }
+                            break;
+                        case STDERR_EOF:
+                            if (process != null) {
+                                process.stderr().finish();
+                                finished(id, process);
+                            }
+                            break;
+                        case EXIT:
+                            int exitValue = in.readInt();
+                            if (process != null) {
+                                process.exit(exitValue);
+                                finished(id, process);
+                            }
+                            break;
+                        case STDIN_ACK:
+                            int length = in.readInt();
+                            if (process != null) {
+                                process.acknowledgeStdin(length);
+                            }
+                            break;
+                        case ERROR:
+                            String message = readString(in);
+                            if (id == 0) {
+                                failure = "启动服务协议错误: " + message;
+                                break;
+                            }
+                            if (process != null) {
+                                process.stdinFailed(message);
+                            }
+                            break;
+                        default:
+                            throw new IOException("unknown frame type " + type);
+                    }
+                }
+            } catch (IOException ignored) {
+                // 启动服务退出
+            } finally {
+                disconnect();
+            }
+        }
+
+        private void complete(int id, IOException failure) {
+            CompletableFuture<Void> started = pendingLaunches.get(id);
+            if (started == null) {
+                return;
+            }
+            if (failure == null) {
+                started.complete(null);
+            } else {
+                started.completeExceptionally(failure);
+            }
+        }
+
+        private void finished(int id, RemoteProcess process) {
+            if (process.frameReceived()) {
+                processes.remove(id);
+            }
+        }
+
+        private void disconnect() {
+            alive = false;
+            IOException failure = new IOException(this.failure == null ? "启动服务已退出" : this.failure);
+            pendingLaunches.values().forEach(started -> started.completeExceptionally(failure));
+            processes.values().forEach(RemoteProcess::disconnect);
+            processes.clear();
+        }
+
+        void close() {
+            disconnect();
+            server.destroy();
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package com.marsh.exec.limit;
+
+import org.apache.commons.exec.CommandLine;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 按命令名称自适应调整并发上限的准入控制器，配合{@link com.marsh.exec.scheduler.CommandLineScheduler}使用
+ *
+ * 每个命令根据自身的运行时间、超时情况及系统负载(/proc/loadavg)调整并发上限，
+ * CPU密集的命令在机器繁忙时自动收缩，轻量的命令可以逐步放大到maxLimit。
+ * 调度器的maxConcurrency仍然是所有命令的总上限
+ *
+ * CommandLineScheduler scheduler = new CommandLineScheduler(32);
+ * scheduler.setConcurrencyLimiter(new AdaptiveConcurrencyLimiter(ConcurrencyLimitConfig.builder()
+ *         .maxQueueWaitMillis(30000).rejectionListener((cmd, name, reason) -> log.warn(...)).build()));
+ * @author marsh
+ * @date 2022年05月14日 10:50
+ */
+public class AdaptiveConcurrencyLimiter {
+
+    private final ConcurrencyLimitConfig config;
+
+    private final ConcurrentMap<String, CommandLimit> limits = new ConcurrentHashMap<>();
+
+    public AdaptiveConcurrencyLimiter() {
+        this(ConcurrencyLimitConfig.builder().build());
+    }
+
+    public AdaptiveConcurrencyLimiter(ConcurrencyLimitConfig config) {
+        if (config.getMinLimit() <= 0 || config.getMaxLimit() < config.getMinLimit()) {
+            throw new IllegalArgumentException("并发上限范围不正确");
+        }
+        this.config = config;
+    }
+
+    public ConcurrencyLimitConfig getConfig() {
+        return config;
+    }
+
+    private CommandLimit limitOf(String command) {
+        CommandLimit limit = limits.get(command);
+        if (limit == null) {
+            int initial = Math.max(config.getMinLimit(), Math.min(config.getMaxLimit(), config.getInitialLimit()));
+            limit = limits.computeIfAbsent(command, c -> new CommandLimit(c, initial));
+        }
+        return limit;
+    }
+
+    /**
+     * 任务进入排队，该命令排队数已满时返回false
+     * @param command
+     * @return
+     */
+    public boolean tryEnqueue(String command) {
+        return limitOf(command).tryEnqueue(config.getMaxQueueSize());
+    }
+
+    /**
+     * 任务离开排队(开始执行、取消或超时)
+     * @param command
+     */
+    public void dequeued(String command) {
+        limitOf(command).dequeued();
+    }
+
+    /**
+     * 该命令当前是否还能再运行一个任务
+     * @param command
+     * @return
+     */
+    public boolean canAcquire(String command) {
+        return limitOf(command).canAcquire();
+    }
+
+    /**
+     * 占用一个并发，需要先通过{@link #canAcquire(String)}检查
+     * @param command
+     */
+    public void acquire(String command) {
+        limitOf(command).acquire();
+    }
+
+    /**
+     * 释放并发并按照本次执行结果调整上限
+     * @param command 命令名称
+     * @param runNanos 运行时间，小于等于0时(例如任务未启动)只释放不调整
+     * @param dropped 是否执行超时
+     */
+    public void release(String command, long runNanos, boolean dropped) {
+        boolean overloaded = runNanos > 0 && SystemLoad.isOverloaded(config.getMaxLoadPerCpu(), config.getMaxRunnablePerCpu());
+        limitOf(command).release(runNanos, dropped, overloaded, config);
+    }
+
+    /**
+     * 记录一次拒绝并回调rejectionListener
+     * @param commandLine
+     * @param command
+     * @param reason
+     */
+    public void reject(CommandLine commandLine, String command, RejectReason reason) {
+        if (reason != RejectReason.QUEUE_FULL) {
+            // 排队已满的拒绝在tryEnqueue中已经计数
+            limitOf(command).rejected();
+        }
+        RejectionListener listener = config.getRejectionListener();
+        if (listener != null) {
+            listener.onRejected(commandLine, command, reason);
+        }
+    }
+
+    /**
+     * 某个命令当前的并发上限及统计，没有提交过任务时返回null
+     * @param command
+     * @return
+     */
+    public CommandLimit get(String command) {
+        return limits.get(command);
+    }
+
+    public Collection<CommandLimit> getAll() {
+        return Collections.unmodifiableCollection(limits.values());
+    }
+}
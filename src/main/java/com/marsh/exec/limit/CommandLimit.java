@@ -0,0 +1,171 @@
+package com.marsh.exec.limit;
+
+/**
+ * 一个命令的并发上限及其统计，由{@link AdaptiveConcurrencyLimiter}加锁访问
+ * @author marsh
+ * @date 2022年05月14日 10:20
+ */
+public class CommandLimit {
+
+    private final String command;
+
+    private double limit;
+
+    private int inflight;
+
+    private int queued;
+
+    /** 长期平均延迟(纳秒)，指数移动平均 */
+    private double longRttNanos;
+
+    private long lastRttNanos;
+
+    private long samples;
+
+    private long rejected;
+
+    CommandLimit(String command, int initialLimit) {
+        this.command = command;
+        this.limit = initialLimit;
+    }
+
+    synchronized boolean canAcquire() {
+        return inflight < (int) limit;
+    }
+
+    synchronized void acquire() {
+        inflight++;
+    }
+
+    /**
+     * 按照本次执行结果调整上限
+     * @param rttNanos 本次执行的运行时间
+     * @param dropped 执行超时
+     * @param overloaded 系统过载
+     */
+    synchronized void release(long rttNanos, boolean dropped, boolean overloaded, ConcurrencyLimitConfig config) {
+        // 调整前的并发数，用于判断上限是否真正被用到
+        int used = inflight;
+        inflight--;
+        if (rttNanos <= 0) {
+            return;
+        }
+        samples++;
+        lastRttNanos = rttNanos;
+        if (longRttNanos == 0) {
+            longRttNanos = rttNanos;
+        }
+        double newLimit;
+        boolean congested = dropped || overloaded || rttNanos > longRttNanos * config.getLatencyTolerance();
+        if (config.getAlgorithm() == LimitAlgorithm.AIMD) {
+            if (congested) {
+                newLimit = limit * config.getBackoffRatio();
+            } else if (used * 2 >= limit) {
+                newLimit = limit + 1;
+            } else {
+                newLimit = limit;
+            }
+        } else {
+            double gradient = Math.max(0.5, Math.min(1.0, config.getLatencyTolerance() * longRttNanos / rttNanos));
+            if (dropped) {
+                gradient = Math.min(gradient, config.getBackoffRatio());
+            }
+            if (overloaded) {
+                gradient = Math.min(gradient, loadGradient(config));
+            }
+            double target = limit * gradient + Math.sqrt(limit);
+            if (!congested && used * 2 < limit) {
+                // 并发没有用到一半时不放大上限
+                target = Math.min(target, limit);
+            }
+            newLimit = limit * (1 - config.getSmoothing()) + target * config.getSmoothing();
+            if (congested) {
+                newLimit = Math.min(newLimit, limit * gradient);
+            }
+        }
+        limit = Math.max(config.getMinLimit(), Math.min(config.getMaxLimit(), newLimit));
+        // 延迟明显下降时让长期平均延迟更快恢复，避免一直按照过去的高延迟放大上限
+        double weight = longRttNanos / rttNanos > 2 ? 0.5 : 0.1;
+        longRttNanos = longRttNanos * (1 - weight) + rttNanos * weight;
+    }
+
+    private static double loadGradient(ConcurrencyLimitConfig config) {
+        double load = SystemLoad.getLoadPerCpu();
+        double runnable = SystemLoad.getRunnablePerCpu();
+        double gradient = 1.0;
+        if (config.getMaxLoadPerCpu() > 0 && load > 0) {
+            gradient = Math.min(gradient, config.getMaxLoadPerCpu() / load);
+        }
+        if (config.getMaxRunnablePerCpu() > 0 && runnable > 0) {
+            gradient = Math.min(gradient, config.getMaxRunnablePerCpu() / runnable);
+        }
+        return Math.max(0.5, gradient);
+    }
+
+    synchronized boolean tryEnqueue(int maxQueueSize) {
+        if (maxQueueSize > 0 && queued >= maxQueueSize) {
+            rejected++;
+            return false;
+        }
+        queued++;
+        return true;
+    }
+
+    synchronized void dequeued() {
+        queued--;
+    }
+
+    synchronized void rejected() {
+        rejected++;
+    }
+
+    public String getCommand() {
+        return command;
+    }
+
+    /**
+     * 当前的并发上限
+     * @return
+     */
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    public synchronized int getInflight() {
+        return inflight;
+    }
+
+    public synchronized int getQueued() {
+        return queued;
+    }
+
+    /**
+     * 长期平均运行时间(毫秒)
+     * @return
+     */
+    public synchronized double getAverageRunMillis() {
+        return longRttNanos / 1_000_000;
+    }
+
+    public synchronized long getLastRunNanos() {
+        return lastRttNanos;
+    }
+
+    public synchronized long getSamples() {
+        return samples;
+    }
+
+    /**
+     * 被拒绝的任务数
+     * @return
+     */
+    public synchronized long getRejected() {
+        return rejected;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "CommandLimit(command=" + command + ", limit=" + (int) limit + ", inflight=" + inflight
+                + ", queued=" + queued + ", averageRunMillis=" + getAverageRunMillis() + ", rejected=" + rejected + ")";
+    }
+}
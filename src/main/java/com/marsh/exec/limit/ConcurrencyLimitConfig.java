@@ -0,0 +1,79 @@
+package com.marsh.exec.limit;
+
+import lombok.Builder;
+import lombok.Getter;
+
+/**
+ * 自适应并发限制配置，每个命令各自维护一个并发上限
+ * @see AdaptiveConcurrencyLimiter
+ * @author marsh
+ * @date 2022年05月14日 9:45
+ */
+@Getter
+@Builder
+public class ConcurrencyLimitConfig {
+
+    /**
+     * 调整算法
+     */
+    @Builder.Default
+    private final LimitAlgorithm algorithm = LimitAlgorithm.GRADIENT;
+
+    /**
+     * 每个命令的初始并发上限
+     */
+    @Builder.Default
+    private final int initialLimit = Runtime.getRuntime().availableProcessors();
+
+    @Builder.Default
+    private final int minLimit = 1;
+
+    @Builder.Default
+    private final int maxLimit = 64;
+
+    /**
+     * 本次延迟超过长期平均延迟的倍数时视为拥塞
+     */
+    @Builder.Default
+    private final double latencyTolerance = 2.0;
+
+    /**
+     * AIMD拥塞时上限缩小的比例
+     */
+    @Builder.Default
+    private final double backoffRatio = 0.9;
+
+    /**
+     * GRADIENT每次向新上限靠拢的比例
+     */
+    @Builder.Default
+    private final double smoothing = 0.2;
+
+    /**
+     * 每个CPU的1分钟平均负载超过该值时视为系统过载，小于等于0时不检查
+     */
+    @Builder.Default
+    private final double maxLoadPerCpu = 1.5;
+
+    /**
+     * 每个CPU的可运行任务数(/proc/loadavg第4列)超过该值时视为系统过载，小于等于0时不检查
+     */
+    @Builder.Default
+    private final double maxRunnablePerCpu = 2.0;
+
+    /**
+     * 每个命令最多排队的任务数，超过后直接拒绝，小于等于0时不限制
+     */
+    @Builder.Default
+    private final int maxQueueSize = 1000;
+
+    /**
+     * 最长排队时间(毫秒)，超过后拒绝，小于等于0时一直等待
+     */
+    private final long maxQueueWaitMillis;
+
+    /**
+     * 任务被拒绝时的回调
+     */
+    private final RejectionListener rejectionListener;
+}
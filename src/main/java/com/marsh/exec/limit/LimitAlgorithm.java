@@ -0,0 +1,19 @@
+package com.marsh.exec.limit;
+
+/**
+ * 并发上限的调整算法
+ * @author marsh
+ * @date 2022年05月14日 9:30
+ */
+public enum LimitAlgorithm {
+
+    /**
+     * 加性增、乘性减：正常完成且并发已用满一半时上限加1，超时、延迟超出容忍范围或系统过载时按比例缩小
+     */
+    AIMD,
+
+    /**
+     * 梯度：按照长期平均延迟与本次延迟的比值缩放上限，并预留sqrt(limit)的排队余量，变化更平滑
+     */
+    GRADIENT
+}
@@ -0,0 +1,19 @@
+package com.marsh.exec.limit;
+
+/**
+ * 任务被拒绝的原因
+ * @author marsh
+ * @date 2022年05月14日 9:35
+ */
+public enum RejectReason {
+
+    /**
+     * 该命令排队中的任务数已经达到上限
+     */
+    QUEUE_FULL,
+
+    /**
+     * 排队时间超过了最长等待时间
+     */
+    QUEUE_TIMEOUT
+}
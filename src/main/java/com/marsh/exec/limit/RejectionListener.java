@@ -0,0 +1,19 @@
+package com.marsh.exec.limit;
+
+import org.apache.commons.exec.CommandLine;
+
+/**
+ * 任务被并发限制器拒绝时的回调，在提交任务或排队超时的线程中调用
+ * @author marsh
+ * @date 2022年05月14日 9:40
+ */
+@FunctionalInterface
+public interface RejectionListener {
+
+    /**
+     * @param commandLine 被拒绝的命令行
+     * @param command 命令名称
+     * @param reason 拒绝原因
+     */
+    void onRejected(CommandLine commandLine, String command, RejectReason reason);
+}
@@ -0,0 +1,81 @@
+package com.marsh.exec.limit;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 读取/proc/loadavg的系统负载，最多每100毫秒读取一次，非Linux系统返回-1
+ * @author marsh
+ * @date 2022年05月14日 10:00
+ */
+public final class SystemLoad {
+
+    private static final Path LOADAVG = Paths.get("/proc/loadavg");
+
+    private static final long REFRESH_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private static final int CPUS = Runtime.getRuntime().availableProcessors();
+
+    private static final boolean SUPPORTED = Files.isReadable(LOADAVG);
+
+    private static long refreshedAt;
+
+    private static double loadPerCpu = -1;
+
+    private static double runnablePerCpu = -1;
+
+    private SystemLoad() {
+    }
+
+    /**
+     * 每个CPU的1分钟平均负载
+     * @return
+     */
+    public static synchronized double getLoadPerCpu() {
+        refresh();
+        return loadPerCpu;
+    }
+
+    /**
+     * 每个CPU当前可运行的任务数，不包含读取负载的线程自身
+     * @return
+     */
+    public static synchronized double getRunnablePerCpu() {
+        refresh();
+        return runnablePerCpu;
+    }
+
+    /**
+     * 负载或可运行任务数是否超过阈值，阈值小于等于0时不检查对应项
+     * @param maxLoadPerCpu
+     * @param maxRunnablePerCpu
+     * @return
+     */
+    public static synchronized boolean isOverloaded(double maxLoadPerCpu, double maxRunnablePerCpu) {
+        refresh();
+        return (maxLoadPerCpu > 0 && loadPerCpu > maxLoadPerCpu)
+                || (maxRunnablePerCpu > 0 && runnablePerCpu > maxRunnablePerCpu);
+    }
+
+    private static void refresh() {
+        long now = System.nanoTime();
+        if (!SUPPORTED || (refreshedAt != 0 && now - refreshedAt < REFRESH_NANOS)) {
+            return;
+        }
+        refreshedAt = now;
+        try {
+            // 格式：0.52 0.58 0.59 2/1234 5678
+            String[] fields = new String(Files.readAllBytes(LOADAVG), StandardCharsets.US_ASCII).trim().split(" ");
+            loadPerCpu = Double.parseDouble(fields[0]) / CPUS;
+            int slash = fields[3].indexOf('/');
+            runnablePerCpu = Math.max(0, Integer.parseInt(fields[3].substring(0, slash)) - 1) / (double) CPUS;
+        } catch (IOException | RuntimeException e) {
+            loadPerCpu = -1;
+            runnablePerCpu = -1;
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.marsh.exec.metrics;
+
+import lombok.Getter;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 同一个命令名称的聚合指标
+ * @author marsh
+ * @date 2022年04月26日 14:40
+ */
+@Getter
+public class CommandMetrics {
+
+    private final String command;
+
+    private final LatencyHistogram queue = new LatencyHistogram();
+
+    private final LatencyHistogram launch = new LatencyHistogram();
+
+    private final LatencyHistogram firstOutput = new LatencyHistogram();
+
+    private final LatencyHistogram run = new LatencyHistogram();
+
+    private final LatencyHistogram drain = new LatencyHistogram();
+
+    private final LatencyHistogram listener = new LatencyHistogram();
+
+    private final LatencyHistogram total = new LatencyHistogram();
+
+    private final LongAdder failures = new LongAdder();
+
+    private final LongAdder stdoutBytes = new LongAdder();
+
+    private final LongAdder stdoutLines = new LongAdder();
+
+    private final LongAdder stderrBytes = new LongAdder();
+
+    private final LongAdder stderrLines = new LongAdder();
+
+    CommandMetrics(String command) {
+        this.command = command;
+    }
+
+    void record(ExecutionMetrics metrics) {
+        queue.record(metrics.getQueueNanos());
+        launch.record(metrics.getLaunchNanos());
+        if (metrics.getFirstOutputNanos() >= 0) {
+            firstOutput.record(metrics.getFirstOutputNanos());
+        }
+        run.record(metrics.getRunNanos());
+        drain.record(metrics.getDrainNanos());
+        listener.record(metrics.getListenerNanos());
+        total.record(metrics.getTotalNanos());
+        if (metrics.isFailed()) {
+            failures.increment();
+        }
+        stdoutBytes.add(metrics.getStdoutBytes());
+        stdoutLines.add(metrics.getStdoutLines());
+        stderrBytes.add(metrics.getStderrBytes());
+        stderrLines.add(metrics.getStderrLines());
+    }
+
+    /**
+     * 执行次数
+     * @return
+     */
+    public long getExecutions() {
+        return total.getCount();
+    }
+
+    @Override
+    public String toString() {
+        return command + ": executions=" + getExecutions() + ", failures=" + failures.sum()
+                + "\n  queue: " + queue
+                + "\n  launch: " + launch
+                + "\n  firstOutput: " + firstOutput
+                + "\n  run: " + run
+                + "\n  drain: " + drain
+                + "\n  listener: " + listener
+                + "\n  stdout: " + stdoutBytes.sum() + " bytes, " + stdoutLines.sum() + " lines"
+                + "\n  stderr: " + stderrBytes.sum() + " bytes, " + stderrLines.sum() + " lines";
+    }
+}
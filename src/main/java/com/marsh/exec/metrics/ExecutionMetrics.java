@@ -0,0 +1,77 @@
+package com.marsh.exec.metrics;
+
+import lombok.Builder;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * 单次执行各阶段的耗时及输出量，时间单位均为纳秒
+ * @author marsh
+ * @date 2022年04月26日 14:05
+ */
+@Getter
+@Builder
+@ToString
+public class ExecutionMetrics {
+
+    /**
+     * 命令名称，即CommandArguments.command()
+     */
+    private final String command;
+
+    /**
+     * 进程退出码
+     */
+    private final int exitValue;
+
+    /**
+     * 是否执行失败(包括超时及错误的退出码)
+     */
+    private final boolean failed;
+
+    /**
+     * 创建任务到开始执行(onProcessBefore之前)的等待时间
+     */
+    private final long queueNanos;
+
+    /**
+     * 启动进程(fork/exec)耗时
+     */
+    private final long launchNanos;
+
+    /**
+     * 进程启动后到第一个输出字节的时间，没有输出时为-1
+     */
+    private final long firstOutputNanos;
+
+    /**
+     * 进程启动后到进程结束的时间
+     */
+    private final long runNanos;
+
+    /**
+     * 进程结束后等待输出流处理完毕(streams.stop())的时间
+     */
+    private final long drainNanos;
+
+    /**
+     * LineOutputListener累计耗时
+     */
+    private final long listenerNanos;
+
+    private final long stdoutBytes;
+
+    private final long stdoutLines;
+
+    private final long stderrBytes;
+
+    private final long stderrLines;
+
+    /**
+     * 开始执行到执行结束的总耗时，不包含等待时间
+     * @return
+     */
+    public long getTotalNanos() {
+        return launchNanos + runNanos + drainNanos;
+    }
+}
@@ -0,0 +1,42 @@
+package com.marsh.exec.metrics;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 按命令名称聚合执行指标的直方图注册表
+ *
+ * HistogramRegistry registry = new HistogramRegistry();
+ * CommandLineThreadBuild.commandLine(ping).metricsListener(registry).exec();
+ * System.out.println(registry.get("ping"));
+ * @author marsh
+ * @date 2022年04月26日 14:55
+ */
+public class HistogramRegistry implements MetricsListener {
+
+    private final ConcurrentMap<String, CommandMetrics> commands = new ConcurrentHashMap<>();
+
+    @Override
+    public void onExecution(ExecutionMetrics metrics) {
+        CommandMetrics commandMetrics = commands.get(metrics.getCommand());
+        if (commandMetrics == null) {
+            commandMetrics = commands.computeIfAbsent(metrics.getCommand(), CommandMetrics::new);
+        }
+        commandMetrics.record(metrics);
+    }
+
+    /**
+     * 获取某个命令的聚合指标，没有执行记录时返回null
+     * @param command
+     * @return
+     */
+    public CommandMetrics get(String command) {
+        return commands.get(command);
+    }
+
+    public Collection<CommandMetrics> getAll() {
+        return Collections.unmodifiableCollection(commands.values());
+    }
+}
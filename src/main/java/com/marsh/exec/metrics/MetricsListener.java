@@ -0,0 +1,17 @@
+package com.marsh.exec.metrics;
+
+/**
+ * 执行指标监听器，每次进程执行结束后、StateCallback回调之前触发
+ * @see HistogramRegistry 内置的直方图统计实现
+ * @author marsh
+ * @date 2022年04月26日 14:12
+ */
+@FunctionalInterface
+public interface MetricsListener {
+
+    /**
+     * 一次执行结束
+     * @param metrics
+     */
+    void onExecution(ExecutionMetrics metrics);
+}
@@ -0,0 +1,371 @@
+package com.marsh.exec.metrics;
+
+import com.marsh.exec.launcher.ProcessIds;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 通过/proc采样子进程资源占用的采样器，所有子进程共用一个采样线程，只支持Linux
+ *
+ * 进程启动后先以1毫秒的间隔采样，之后间隔逐次翻倍直到设定的采样间隔，运行时间很短的进程也能采到数据。
+ * 每次采样每个进程读取stat、status及io三个文件，采样开销只与存活的子进程数及采样间隔有关
+ * @author marsh
+ * @date 2022年05月13日 14:40
+ */
+public class ResourceSampler {
+
+    /**
+     * 默认的采样间隔(毫秒)
+     */
+    public static final long DEFAULT_INTERVAL = 50;
+
+    /**
+     * /proc/&lt;pid&gt;/stat中CPU时间的单位，即USER_HZ，Linux各架构均为100
+     */
+    private static final long CLOCK_TICKS_PER_SECOND = 100;
+
+    private static final long FIRST_DELAY_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private static final boolean SUPPORTED = new File("/proc/self/stat").canRead();
+
+    /** utime, stime, 峰值内存, 主动切换, 被动切换, rchar, wchar, read_bytes, write_bytes */
+    private static final int FIELDS = 9;
+
+    private static final byte[] VM_HWM = key("VmHWM:");
+    private static final byte[] VOLUNTARY_SWITCHES = key("voluntary_ctxt_switches:");
+    private static final byte[] INVOLUNTARY_SWITCHES = key("nonvoluntary_ctxt_switches:");
+    private static final byte[] RCHAR = key("rchar:");
+    private static final byte[] WCHAR = key("wchar:");
+    private static final byte[] READ_BYTES = key("read_bytes:");
+    private static final byte[] WRITE_BYTES = key("write_bytes:");
+
+    private static volatile ResourceSampler defaultSampler;
+
+    private final long intervalNanos;
+
+    private final List<Tracker> trackers = new ArrayList<>();
+
+    /** 只在采样线程中使用 */
+    private final byte[] buffer = new byte[8192];
+
+    /** 只在采样线程中使用 */
+    private final long[] sample = new long[FIELDS];
+
+    private Thread thread;
+
+    /**
+     * @param intervalMillis 采样间隔(毫秒)
+     */
+    public ResourceSampler(long intervalMillis) {
+        if (intervalMillis <= 0) {
+            throw new IllegalArgumentException("intervalMillis必须大于0");
+        }
+        this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(intervalMillis);
+    }
+
+    /**
+     * 进程内共享的采样器，采样间隔为{@link #DEFAULT_INTERVAL}毫秒
+     * @return
+     */
+    public static ResourceSampler getDefault() {
+        if (defaultSampler == null) {
+            synchronized (ResourceSampler.class) {
+                if (defaultSampler == null) {
+                    defaultSampler = new ResourceSampler(DEFAULT_INTERVAL);
+                }
+            }
+        }
+        return defaultSampler;
+    }
+
+    /**
+     * 当前系统是否支持通过/proc采样
+     * @return
+     */
+    public static boolean isSupported() {
+        return SUPPORTED;
+    }
+
+    /**
+     * 开始采样进程及其所有阶段，进程结束后调用{@link Tracker#stop()}获取结果。
+     * 不支持采样或无法获取进程号时返回的对象采样次数为0
+     * @param process
+     * @return
+     */
+    public Tracker track(Process process) {
+        Tracker tracker = new Tracker(SUPPORTED ? ProcessIds.pidsOf(process) : new long[0]);
+        if (tracker.pids.length == 0) {
+            tracker.stopped = true;
+            return tracker;
+        }
+        synchronized (this) {
+            trackers.add(tracker);
+            if (thread == null) {
+                thread = new Thread(this::run, "Exec Resource Sampler");
+                thread.setDaemon(true);
+                thread.start();
+            }
+            notifyAll();
+        }
+        return tracker;
+    }
+
+    /**
+     * 正在采样的进程数
+     * @return
+     */
+    public synchronized int getTrackedCount() {
+        return trackers.size();
+    }
+
+    private void run() {
+        List<Tracker> due = new ArrayList<>();
+        while (true) {
+            synchronized (this) {
+                long waitNanos = Long.MAX_VALUE;
+                long now = System.nanoTime();
+                for (Iterator<Tracker> iterator = trackers.iterator(); iterator.hasNext(); ) {
+                    Tracker tracker = iterator.next();
+                    if (tracker.stopped) {
+                        iterator.remove();
+                    } else if (tracker.nextSampleNanos - now <= 0) {
+                        due.add(tracker);
+                    } else {
+                        waitNanos = Math.min(waitNanos, tracker.nextSampleNanos - now);
+                    }
+                }
+                if (due.isEmpty()) {
+                    try {
+                        if (waitNanos == Long.MAX_VALUE) {
+                            wait();
+                        } else {
+                            TimeUnit.NANOSECONDS.timedWait(this, waitNanos);
+                        }
+                    } catch (InterruptedException e) {
+                        // 采样线程不会被中断，继续下一轮
+                    }
+                    continue;
+                }
+            }
+            for (Tracker tracker : due) {
+                sample(tracker);
+                tracker.delayNanos = Math.min(tracker.delayNanos << 1, intervalNanos);
+                tracker.nextSampleNanos = System.nanoTime() + tracker.delayNanos;
+            }
+            due.clear();
+        }
+    }
+
+    private void sample(Tracker tracker) {
+        boolean sampled = false;
+        for (int i = 0; i < tracker.pids.length; i++) {
+            if (tracker.gone[i]) {
+                continue;
+            }
+            long[] values = tracker.values[i];
+            int length = read(tracker.paths[i][0]);
+            long startTime = length < 0 ? -1 : statField(length, 22);
+            if (startTime < 0 || (tracker.startTimes[i] != 0 && tracker.startTimes[i] != startTime)) {
+                // 进程已经被回收，或者进程号已经被其他进程复用
+                tracker.gone[i] = true;
+                continue;
+            }
+            tracker.startTimes[i] = startTime;
+            long utime = statField(length, 14);
+            long stime = statField(length, 15);
+            Arrays.fill(sample, -1);
+            sample[0] = utime;
+            sample[1] = stime;
+            length = read(tracker.paths[i][1]);
+            if (length > 0) {
+                long hwm = valueOf(length, VM_HWM);
+                sample[2] = hwm < 0 ? -1 : hwm * 1024;
+                sample[3] = valueOf(length, VOLUNTARY_SWITCHES);
+                sample[4] = valueOf(length, INVOLUNTARY_SWITCHES);
+            }
+            length = read(tracker.paths[i][2]);
+            if (length > 0) {
+                sample[5] = valueOf(length, RCHAR);
+                sample[6] = valueOf(length, WCHAR);
+                sample[7] = valueOf(length, READ_BYTES);
+                sample[8] = valueOf(length, WRITE_BYTES);
+            }
+            synchronized (tracker) {
+                // 各项都是单调递增的，僵尸进程没有内存信息时保留上一次的值
+                for (int j = 0; j < FIELDS; j++) {
+                    values[j] = Math.max(values[j], sample[j]);
+                }
+            }
+            sampled = true;
+        }
+        if (sampled) {
+            synchronized (tracker) {
+                tracker.samples++;
+            }
+        }
+    }
+
+    /**
+     * 读取整个文件到缓冲区，文件不存在或无权限时返回-1
+     */
+    private int read(String path) {
+        try (FileInputStream in = new FileInputStream(path)) {
+            int length = 0;
+            int n;
+            while (length < buffer.length && (n = in.read(buffer, length, buffer.length - length)) > 0) {
+                length += n;
+            }
+            return length;
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * stat中的第index个字段(从1开始)，进程名可能包含空格，从最后一个')'之后开始计数
+     */
+    private long statField(int length, int index) {
+        int position = length - 1;
+        while (position >= 0 && buffer[position] != ')') {
+            position--;
+        }
+        if (position < 0) {
+            return -1;
+        }
+        // ')'之后是第3个字段
+        int field = 2;
+        position++;
+        while (position < length) {
+            if (buffer[position] == ' ') {
+                field++;
+                position++;
+                if (field == index) {
+                    return parseNumber(position, length);
+                }
+            } else {
+                position++;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * "key: value"格式中某一行的数值，key必须位于行首，不存在时返回-1
+     */
+    private long valueOf(int length, byte[] key) {
+        int lineStart = 0;
+        while (lineStart < length) {
+            if (startsWith(lineStart, length, key)) {
+                int position = lineStart + key.length;
+                while (position < length && (buffer[position] == ' ' || buffer[position] == '\t')) {
+                    position++;
+                }
+                return parseNumber(position, length);
+            }
+            while (lineStart < length && buffer[lineStart] != '\n') {
+                lineStart++;
+            }
+            lineStart++;
+        }
+        return -1;
+    }
+
+    private boolean startsWith(int position, int length, byte[] key) {
+        if (position + key.length > length) {
+            return false;
+        }
+        for (int i = 0; i < key.length; i++) {
+            if (buffer[position + i] != key[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private long parseNumber(int position, int length) {
+        long value = 0;
+        boolean found = false;
+        while (position < length && buffer[position] >= '0' && buffer[position] <= '9') {
+            value = value * 10 + (buffer[position] - '0');
+            position++;
+            found = true;
+        }
+        return found ? value : -1;
+    }
+
+    private static byte[] key(String key) {
+        return key.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * 一次执行的采样状态
+     */
+    public final class Tracker {
+
+        private final long[] pids;
+
+        /** 每个进程的stat、status及io文件路径 */
+        private final String[][] paths;
+
+        private final long[][] values;
+
+        private final long[] startTimes;
+
+        private final boolean[] gone;
+
+        private int samples;
+
+        private volatile boolean stopped;
+
+        private long nextSampleNanos = System.nanoTime();
+
+        private long delayNanos = FIRST_DELAY_NANOS;
+
+        private Tracker(long[] pids) {
+            this.pids = pids;
+            this.paths = new String[pids.length][];
+            this.values = new long[pids.length][FIELDS];
+            this.startTimes = new long[pids.length];
+            this.gone = new boolean[pids.length];
+            for (int i = 0; i < pids.length; i++) {
+                String dir = "/proc/" + pids[i] + "/";
+                paths[i] = new String[]{dir + "stat", dir + "status", dir + "io"};
+            }
+        }
+
+        /**
+         * 停止采样并返回最后一次采样的结果
+         * @return
+         */
+        public synchronized ResourceUsage stop() {
+            stopped = true;
+            long[] sum = new long[FIELDS];
+            for (long[] value : values) {
+                for (int j = 0; j < FIELDS; j++) {
+                    sum[j] += value[j];
+                }
+            }
+            return ResourceUsage.builder()
+                    .processes(pids.length)
+                    .samples(samples)
+                    .userCpuMillis(sum[0] * 1000 / CLOCK_TICKS_PER_SECOND)
+                    .systemCpuMillis(sum[1] * 1000 / CLOCK_TICKS_PER_SECOND)
+                    .peakRssBytes(sum[2])
+                    .voluntaryContextSwitches(sum[3])
+                    .involuntaryContextSwitches(sum[4])
+                    .readChars(sum[5])
+                    .writeChars(sum[6])
+                    .readBytes(sum[7])
+                    .writeBytes(sum[8])
+                    .build();
+        }
+    }
+}
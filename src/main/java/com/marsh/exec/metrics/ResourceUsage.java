@@ -0,0 +1,83 @@
+package com.marsh.exec.metrics;
+
+import lombok.Builder;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * 子进程运行期间的资源占用，来自/proc/&lt;pid&gt;/stat、status及io的最后一次采样
+ *
+ * 进程退出后/proc中的数据随即消失，因此数值最多落后一个采样间隔；
+ * 管道等包含多个进程时为各进程之和，峰值内存为各进程峰值之和。
+ * 只统计直接启动的进程，不包含这些进程再创建的子进程(例如sh -c中的命令)
+ * @author marsh
+ * @date 2022年05月13日 14:30
+ */
+@Getter
+@Builder
+@ToString
+public class ResourceUsage {
+
+    /**
+     * 采样的进程数
+     */
+    private final int processes;
+
+    /**
+     * 成功采样的次数，为0时进程在第一次采样前已经结束，其他数值不可用
+     */
+    private final int samples;
+
+    /**
+     * 用户态CPU时间(毫秒)
+     */
+    private final long userCpuMillis;
+
+    /**
+     * 内核态CPU时间(毫秒)
+     */
+    private final long systemCpuMillis;
+
+    /**
+     * 峰值常驻内存(字节)，即VmHWM
+     */
+    private final long peakRssBytes;
+
+    /**
+     * 从存储设备读取的字节数，即read_bytes
+     */
+    private final long readBytes;
+
+    /**
+     * 写入存储设备的字节数，即write_bytes
+     */
+    private final long writeBytes;
+
+    /**
+     * 通过read等系统调用读取的字节数(包括管道及页缓存)，即rchar
+     */
+    private final long readChars;
+
+    /**
+     * 通过write等系统调用写入的字节数，即wchar
+     */
+    private final long writeChars;
+
+    /**
+     * 主动上下文切换次数
+     */
+    private final long voluntaryContextSwitches;
+
+    /**
+     * 被动上下文切换次数
+     */
+    private final long involuntaryContextSwitches;
+
+    /**
+     * 用户态及内核态CPU时间之和(毫秒)
+     * @return
+     */
+    public long getCpuMillis() {
+        return userCpuMillis + systemCpuMillis;
+    }
+}
@@ -0,0 +1,181 @@
+package com.marsh.exec.parse;
+
+import com.marsh.exec.annotations.Arguments;
+import com.marsh.exec.annotations.ValueConstants;
+import com.marsh.exec.interfaces.CommandArguments;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 某个CommandArguments实现类编译后的参数绑定器，第一次解析该类时创建并缓存
+ *
+ * 创建时将每个标记了@Arguments注解的字段转换为MethodHandle读取器，并预先计算好注解中的参数、默认值及布尔类型的判断，
+ * 解析时不再使用反射读取字段和注解
+ * @author marsh
+ * @date 2022年04月22日 10:15
+ */
+final class CommandArgumentsBinder {
+
+    private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+
+    private final FieldBinder[] fieldBinders;
+
+    /**
+     * 所有字段最多能产生的参数个数，用于预分配参数数组
+     */
+    private final int maxArgumentCount;
+
+    private CommandArgumentsBinder(FieldBinder[] fieldBinders) {
+        this.fieldBinders = fieldBinders;
+        int count = 0;
+        for (FieldBinder fieldBinder : fieldBinders) {
+            count += fieldBinder.maxArgumentCount();
+        }
+        this.maxArgumentCount = count;
+    }
+
+    /**
+     * 编译一个CommandArguments实现类
+     * @param c
+     * @return
+     */
+    static CommandArgumentsBinder compile(Class<?> c) {
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        List<FieldBinder> binders = new ArrayList<>();
+        for (Field field : c.getDeclaredFields()) {
+            Arguments arguments = field.getAnnotation(Arguments.class);
+            if (arguments == null) {
+                continue;
+            }
+            field.setAccessible(true);
+            MethodHandle getter;
+            try {
+                getter = lookup.unreflectGetter(field).asType(GETTER_TYPE);
+            } catch (IllegalAccessException e) {
+                throw new RuntimeException(e);
+            }
+            binders.add(new FieldBinder(c.toString() + "." + field.getName(), getter, arguments,
+                    field.getType().isAssignableFrom(Boolean.class) || field.getType().isAssignableFrom(boolean.class)));
+        }
+        return new CommandArgumentsBinder(binders.toArray(new FieldBinder[0]));
+    }
+
+    /**
+     * 按照字段声明顺序生成命令参数
+     * @param commandArguments
+     * @return
+     */
+    String[] bind(CommandArguments commandArguments) {
+        String[] tokens = new String[maxArgumentCount];
+        int size = 0;
+        for (FieldBinder fieldBinder : fieldBinders) {
+            size = fieldBinder.bind(commandArguments, tokens, size);
+        }
+        return size == tokens.length ? tokens : Arrays.copyOf(tokens, size);
+    }
+
+    /**
+     * 批量执行时生成命令参数，最后一个@Arguments字段作为变化的参数，其余字段按声明顺序生成固定参数
+     * @param commandArguments
+     * @return 最后一个元素为变化的参数
+     */
+    String[] bindBatch(CommandArguments commandArguments) {
+        if (fieldBinders.length == 0) {
+            throw new IllegalStateException(commandArguments.getClass() + "没有可以合并的参数");
+        }
+        FieldBinder varying = fieldBinders[fieldBinders.length - 1];
+        if (varying.booleanType || varying.args.length > 0) {
+            throw new IllegalStateException(varying.name + "不能作为批量执行变化的参数，最后一个@Arguments字段不能是布尔类型或设置args");
+        }
+        Object value = varying.value(commandArguments);
+        if (value == null) {
+            throw new IllegalStateException(varying.name + "为null，不能批量执行");
+        }
+        String[] tokens = new String[maxArgumentCount];
+        int size = 0;
+        for (int i = 0; i < fieldBinders.length - 1; i++) {
+            size = fieldBinders[i].bind(commandArguments, tokens, size);
+        }
+        tokens[size++] = value.toString();
+        return size == tokens.length ? tokens : Arrays.copyOf(tokens, size);
+    }
+
+    private static final class FieldBinder {
+
+        /**
+         * 用于异常信息的字段名称
+         */
+        private final String name;
+
+        private final MethodHandle getter;
+
+        private final boolean required;
+
+        /**
+         * 注解中的默认值，未设置时为null
+         */
+        private final String defaultValue;
+
+        /**
+         * 注解中绑定的参数，只复制一次
+         */
+        private final String[] args;
+
+        private final boolean booleanType;
+
+        private FieldBinder(String name, MethodHandle getter, Arguments arguments, boolean booleanType) {
+            this.name = name;
+            this.getter = getter;
+            this.required = arguments.required();
+            this.defaultValue = ValueConstants.DEFAULT_NONE.equals(arguments.defaultValue()) ? null : arguments.defaultValue();
+            this.args = arguments.args();
+            this.booleanType = booleanType;
+        }
+
+        private int maxArgumentCount() {
+            return booleanType ? args.length : args.length + 1;
+        }
+
+        /**
+         * 字段的值，为null时使用默认值
+         */
+        private Object value(CommandArguments commandArguments) {
+            Object fieldValue;
+            try {
+                fieldValue = getter.invokeExact((Object) commandArguments);
+            } catch (Throwable e) {
+                throw new RuntimeException(e);
+            }
+            return fieldValue == null ? defaultValue : fieldValue;
+        }
+
+        private int bind(CommandArguments commandArguments, String[] tokens, int size) {
+            Object fieldValue = value(commandArguments);
+            if (fieldValue == null) {
+                if (required) {
+                    throw new RuntimeException(name + "不能为null! 可以将required = false来避免异常");
+                }
+                return size;
+            }
+            if (booleanType) {
+                // 对布尔类型的数据进行特殊处理
+                boolean flag = fieldValue instanceof Boolean ? (Boolean) fieldValue : Boolean.parseBoolean(fieldValue.toString());
+                if (flag) {
+                    System.arraycopy(args, 0, tokens, size, args.length);
+                    size += args.length;
+                }
+                return size;
+            }
+            System.arraycopy(args, 0, tokens, size, args.length);
+            size += args.length;
+            tokens[size++] = fieldValue.toString();
+            return size;
+        }
+    }
+}
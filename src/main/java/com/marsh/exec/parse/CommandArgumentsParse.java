@@ -1,13 +1,8 @@
 package com.marsh.exec.parse;
 
-import com.marsh.exec.annotations.Arguments;
-import com.marsh.exec.annotations.ValueConstants;
 import com.marsh.exec.interfaces.CommandArguments;
 import org.apache.commons.exec.CommandLine;
 
-import java.lang.reflect.Field;
-import java.util.Arrays;
-import java.util.LinkedHashMap;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 
@@ -19,70 +14,47 @@ import java.util.concurrent.ConcurrentMap;
 public class CommandArgumentsParse {
 
     /**
-     * 缓存对应的class类中所有标记了@Arguments注解的字段
+     * 缓存对应的class类编译后的参数绑定器
      */
-    private static final ConcurrentMap<Class, LinkedHashMap<Field, Arguments>> classFieldCache = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<Class, CommandArgumentsBinder> classBinderCache = new ConcurrentHashMap<>();
 
     public static CommandLine parse(CommandArguments commandArguments){
-        if (commandArguments == null || commandArguments.command() == null) {
+        String cmdName = commandArguments == null ? null : commandArguments.command();
+        if (cmdName == null) {
             throw new IllegalStateException("命令参数或命令名称不能为null");
         }
-        LinkedHashMap<Field, Arguments> fieldCache = classFieldCache.get(commandArguments.getClass());
-        if (fieldCache == null){
-            fieldCache = classFieldCache.computeIfAbsent(commandArguments.getClass(),(c) ->{
-                LinkedHashMap<Field,Arguments> linkedHashMap = new LinkedHashMap<>();
-                Field[] declaredFields = c.getDeclaredFields();
-                Arrays.stream(declaredFields).forEach(field -> {
-                    Arguments arguments = field.getAnnotation(Arguments.class);
-                    if (arguments != null){
-                        field.setAccessible(true);
-                        linkedHashMap.put(field,arguments);
-                    }
-                });
-                return linkedHashMap;
-            });
+        return new CommandLine(cmdName).addArguments(binder(commandArguments).bind(commandArguments));
+    }
+
+    /**
+     * 只解析参数部分，不包含命令名称，返回的参数未经过CommandLine的引号处理
+     * @param commandArguments
+     * @return
+     */
+    public static String[] arguments(CommandArguments commandArguments){
+        if (commandArguments == null) {
+            throw new IllegalStateException("命令参数或命令名称不能为null");
+        }
+        return binder(commandArguments).bind(commandArguments);
+    }
+
+    /**
+     * 批量执行时解析参数部分，最后一个@Arguments字段作为变化的参数，该字段不能是布尔类型、不能设置args且值不能为null
+     * @param commandArguments
+     * @return 最后一个元素为变化的参数，之前为其余字段生成的固定参数
+     */
+    public static String[] batchArguments(CommandArguments commandArguments){
+        if (commandArguments == null) {
+            throw new IllegalStateException("命令参数或命令名称不能为null");
         }
-        return buildCommandLine(fieldCache,commandArguments);
+        return binder(commandArguments).bindBatch(commandArguments);
     }
 
-    private static CommandLine buildCommandLine(LinkedHashMap<Field, Arguments> cache,CommandArguments commandArguments){
-        String cmdName = commandArguments.command();
-        final CommandLine commandLine = new CommandLine(cmdName);
-        cache.forEach((field, arguments) -> {
-            Object fieldValue = null;
-            try {
-                fieldValue = field.get(commandArguments);
-            } catch (IllegalAccessException e) {
-                throw new RuntimeException(e);
-            }
-            if (fieldValue == null && !ValueConstants.DEFAULT_NONE.equals(arguments.defaultValue())){
-                fieldValue = arguments.defaultValue();
-            }
-            if (fieldValue == null){
-                if (arguments.required()){
-                    throw new RuntimeException(commandArguments.getClass() + "." + field.getName()
-                            + "不能为null! 可以将required = false来避免异常");
-                }
-                return;
-            }
-            if (field.getType().isAssignableFrom(Boolean.class) || field.getType().isAssignableFrom(boolean.class)){
-                // 对布尔类型的数据进行特殊处理
-                if (Boolean.TRUE.equals(new Boolean(fieldValue.toString()))){
-                    String[] args = arguments.args();
-                    if (args == null && args.length == 0){
-                        throw new RuntimeException(commandArguments.getClass() + "." + field.getName()
-                                + "字段为布尔类型binder属性不能为空!");
-                    }
-                    commandLine.addArguments(args);
-                }
-            } else {
-                String[] args = arguments.args();
-                if (args != null && args.length > 0){
-                    commandLine.addArguments(args);
-                }
-                commandLine.addArgument(fieldValue.toString());
-            }
-        });
-        return commandLine;
+    private static CommandArgumentsBinder binder(CommandArguments commandArguments){
+        CommandArgumentsBinder binder = classBinderCache.get(commandArguments.getClass());
+        if (binder == null){
+            binder = classBinderCache.computeIfAbsent(commandArguments.getClass(), CommandArgumentsBinder::compile);
+        }
+        return binder;
     }
 }
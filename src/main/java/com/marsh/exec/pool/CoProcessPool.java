@@ -0,0 +1,258 @@
+package com.marsh.exec.pool;
+
+import cn.hutool.core.thread.NamedThreadFactory;
+import com.marsh.exec.build.CommandLineThreadBuild;
+import com.marsh.exec.callback.SimpleStateCallback;
+import com.marsh.exec.callback.StateCallback;
+import org.apache.commons.exec.ExecuteException;
+import org.apache.commons.exec.Executor;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 常驻进程池，适用于启动耗时远大于实际处理耗时的解释器或交互式工具，例如bash、python、sqlite3、exiftool -stay_open
+ *
+ * 子进程通过CommandLineExecutor启动后常驻，请求写入子进程的标准输入，响应按行读取直到遇到结束标记。
+ * 每个逻辑请求依旧按照StateCallback的顺序回调：onProcessBefore -> onProcessComplete/onProcessFailed/onProcessTimeout
+ *
+ * CoProcessPool pool = new CoProcessPool(CoProcessPoolConfig.builder()
+ *         .build(CommandLineThreadBuild.commandLine(new CommandLine("bash")))
+ *         .requestTerminator("echo __END__")
+ *         .responseDelimiter("__END__")
+ *         .maxWorkers(4)
+ *         .build());
+ * List<String> lines = pool.execute("ls /tmp");
+ * @author marsh
+ * @date 2022年04月29日 11:00
+ */
+public class CoProcessPool implements Closeable {
+
+    private final CoProcessPoolConfig config;
+
+    /**
+     * 空闲进程，最近使用的在队首
+     */
+    private final LinkedBlockingDeque<CoProcessWorker> idle = new LinkedBlockingDeque<>();
+
+    /**
+     * 限制同时使用中的进程数量
+     */
+    private final Semaphore permits;
+
+    private final AtomicInteger workers = new AtomicInteger();
+
+    private final ScheduledExecutorService maintenance;
+
+    private volatile boolean closed;
+
+    public CoProcessPool(CoProcessPoolConfig config) {
+        if (config.getBuild() == null || config.getResponseDelimiter() == null) {
+            throw new IllegalArgumentException("build及responseDelimiter不能为空");
+        }
+        if (config.getMaxWorkers() <= 0 || config.getMinIdle() > config.getMaxWorkers()) {
+            throw new IllegalArgumentException("maxWorkers必须大于0且不小于minIdle");
+        }
+        // 标准输入及输出由常驻进程池自己连接，请求在调用线程中同步等待响应
+        CommandLineThreadBuild build = config.getBuild();
+        if (build.getStdinSource() != null || build.getStdoutRedirect() != null || build.getStderrRedirect() != null) {
+            throw new IllegalArgumentException("常驻进程不支持设置标准输入及输出重定向");
+        }
+        if (build.getHedgeConfig() != null || build.getProcessReaper() != null) {
+            throw new IllegalArgumentException("常驻进程不支持对冲执行及asyncCompletion()");
+        }
+        this.config = config;
+        this.permits = new Semaphore(config.getMaxWorkers(), true);
+        this.maintenance = Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("Exec CoProcess Pool-", true));
+        long period = Math.max(100, Math.min(config.getIdleTimeoutMillis(), config.getHealthCheckIntervalMillis()) / 2);
+        this.maintenance.scheduleWithFixedDelay(this::maintain, period, period, TimeUnit.MILLISECONDS);
+        this.maintenance.execute(this::maintain);
+    }
+
+    /**
+     * 使用默认回调执行一个请求，失败时抛出RuntimeException
+     * @param request
+     * @return 响应内容，超时时返回null
+     */
+    public List<String> execute(String request) {
+        return execute(request, new SimpleStateCallback());
+    }
+
+    /**
+     * 执行一个请求
+     * @param request 写入子进程标准输入的内容
+     * @param callback 请求的状态回调
+     * @return 响应内容，onProcessBefore返回false、超时或失败时返回null
+     */
+    public List<String> execute(String request, StateCallback callback) {
+        if (!callback.onProcessBefore()) {
+            return null;
+        }
+        CoProcessWorker worker;
+        try {
+            worker = acquire();
+        } catch (IOException e) {
+            callback.onProcessFailed(new ExecuteException(e.getMessage(), Executor.INVALID_EXITVALUE, e));
+            return null;
+        }
+        boolean healthy = false;
+        try {
+            List<String> lines = worker.request(request, config.getRequestTimeoutMillis());
+            healthy = true;
+            callback.onProcessComplete(0);
+            return lines;
+        } catch (TimeoutException e) {
+            callback.onProcessTimeout(new ExecuteException("请求超时", Executor.INVALID_EXITVALUE, e));
+            return null;
+        } catch (IOException e) {
+            callback.onProcessFailed(new ExecuteException(e.getMessage(), Executor.INVALID_EXITVALUE, e));
+            return null;
+        } finally {
+            // 超时或失败的进程状态不确定，直接结束
+            release(worker, healthy);
+        }
+    }
+
+    private CoProcessWorker acquire() throws IOException {
+        if (closed) {
+            throw new IOException("常驻进程池已经关闭");
+        }
+        try {
+            if (!permits.tryAcquire(config.getAcquireTimeoutMillis(), TimeUnit.MILLISECONDS)) {
+                throw new IOException("获取常驻进程超时");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("获取常驻进程时被中断", e);
+        }
+        try {
+            CoProcessWorker worker;
+            while ((worker = idle.pollFirst()) != null) {
+                if (worker.isAlive()) {
+                    return worker;
+                }
+                retire(worker);
+            }
+            return spawn();
+        } catch (IOException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    private void release(CoProcessWorker worker, boolean healthy) {
+        try {
+            if (!healthy || closed || !worker.isAlive() || worker.getRequests() >= config.getMaxRequestsPerWorker()) {
+                retire(worker);
+            } else {
+                idle.offerFirst(worker);
+            }
+        } finally {
+            permits.release();
+        }
+    }
+
+    private CoProcessWorker spawn() throws IOException {
+        CoProcessWorker worker = new CoProcessWorker(config);
+        workers.incrementAndGet();
+        try {
+            worker.start();
+        } catch (IOException e) {
+            workers.decrementAndGet();
+            throw e;
+        }
+        return worker;
+    }
+
+    private void retire(CoProcessWorker worker) {
+        workers.decrementAndGet();
+        worker.destroy();
+    }
+
+    /**
+     * 定期执行：移除已退出的进程、淘汰空闲过久的进程、健康检查、补足最少空闲进程
+     */
+    private void maintain() {
+        if (closed) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        List<CoProcessWorker> checks = new ArrayList<>();
+        // 从队尾(最久未使用)开始检查
+        Iterator<CoProcessWorker> iterator = idle.descendingIterator();
+        while (iterator.hasNext()) {
+            CoProcessWorker worker = iterator.next();
+            if (!worker.isAlive()) {
+                if (idle.remove(worker)) {
+                    retire(worker);
+                }
+            } else if (now - worker.getLastUsed() > config.getIdleTimeoutMillis() && idle.size() > config.getMinIdle()) {
+                if (idle.remove(worker)) {
+                    retire(worker);
+                }
+            } else if (now - worker.getLastHealthCheck() > config.getHealthCheckIntervalMillis()) {
+                checks.add(worker);
+            }
+        }
+        checks.forEach(this::healthCheck);
+        while (!closed && idle.size() < config.getMinIdle() && permits.tryAcquire()) {
+            try {
+                idle.offerLast(spawn());
+            } catch (IOException e) {
+                break;
+            } finally {
+                permits.release();
+            }
+        }
+    }
+
+    private void healthCheck(CoProcessWorker worker) {
+        if (!permits.tryAcquire()) {
+            return;
+        }
+        if (!idle.remove(worker)) {
+            // 已经被其他请求取走
+            permits.release();
+            return;
+        }
+        worker.setLastHealthCheck(System.currentTimeMillis());
+        boolean healthy = worker.isAlive();
+        if (healthy && config.getHealthCheckRequest() != null) {
+            try {
+                worker.request(config.getHealthCheckRequest(), config.getRequestTimeoutMillis());
+            } catch (IOException | TimeoutException e) {
+                healthy = false;
+            }
+        }
+        release(worker, healthy);
+    }
+
+    /**
+     * 当前进程数量，包括使用中及空闲的进程
+     */
+    public int getWorkerCount() {
+        return workers.get();
+    }
+
+    public int getIdleCount() {
+        return idle.size();
+    }
+
+    /**
+     * 关闭进程池并结束所有空闲进程，使用中的进程在请求结束后结束
+     */
+    @Override
+    public void close() {
+        closed = true;
+        maintenance.shutdownNow();
+        CoProcessWorker worker;
+        while ((worker = idle.pollFirst()) != null) {
+            retire(worker);
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.marsh.exec.pool;
+
+import com.marsh.exec.build.CommandLineThreadBuild;
+import lombok.Builder;
+import lombok.Getter;
+
+/**
+ * 常驻进程池配置
+ *
+ * 每个请求写入子进程的标准输入后再写入requestTerminator，子进程输出responseDelimiter这一行时视为响应结束，例如：
+ * bash: requestTerminator = "echo __END__", responseDelimiter = "__END__"
+ * exiftool -stay_open True -@ -: requestTerminator = "-execute", responseDelimiter = "{ready}"
+ * @author marsh
+ * @date 2022年04月29日 10:05
+ */
+@Getter
+@Builder
+public class CoProcessPoolConfig {
+
+    /**
+     * 启动常驻进程的命令，可以设置工作目录及环境变量，超时时间及输入输出流处理器不会生效，
+     * 不能设置标准输入、输出重定向、对冲执行及asyncCompletion()
+     */
+    private final CommandLineThreadBuild build;
+
+    /**
+     * 每个请求之后写入的结束命令，为空时不写入
+     */
+    @Builder.Default
+    private final String requestTerminator = "";
+
+    /**
+     * 标记响应结束的行
+     */
+    private final String responseDelimiter;
+
+    /**
+     * 最大进程数量
+     */
+    @Builder.Default
+    private final int maxWorkers = 4;
+
+    /**
+     * 最少保留的空闲进程数量
+     */
+    @Builder.Default
+    private final int minIdle = 0;
+
+    /**
+     * 每个进程最多处理的请求数量，超过后结束该进程并重新启动
+     */
+    @Builder.Default
+    private final int maxRequestsPerWorker = 1000;
+
+    /**
+     * 空闲进程的最长保留时间(毫秒)
+     */
+    @Builder.Default
+    private final long idleTimeoutMillis = 60000;
+
+    /**
+     * 单个请求的超时时间(毫秒)，超时的进程会被结束
+     */
+    @Builder.Default
+    private final long requestTimeoutMillis = 30000;
+
+    /**
+     * 获取空闲进程的最长等待时间(毫秒)
+     */
+    @Builder.Default
+    private final long acquireTimeoutMillis = 30000;
+
+    /**
+     * 健康检查请求，为空时只检查进程是否存活
+     */
+    private final String healthCheckRequest;
+
+    /**
+     * 健康检查间隔(毫秒)
+     */
+    @Builder.Default
+    private final long healthCheckIntervalMillis = 30000;
+
+    /**
+     * 输入输出的字符集，为空时使用系统字符集
+     */
+    private final String charset;
+}
@@ -0,0 +1,211 @@
+package com.marsh.exec.pool;
+
+import com.marsh.exec.callback.StateCallback;
+import com.marsh.exec.executor.CommandLineExecutor;
+import com.marsh.exec.stream.DiscardLineRetention;
+import com.marsh.exec.stream.LineOutputStream;
+import org.apache.commons.exec.ExecuteException;
+import org.apache.commons.exec.PumpStreamHandler;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 常驻进程池中的一个子进程，通过标准输入写入请求，按行读取标准输出直到遇到结束标记
+ * @author marsh
+ * @date 2022年04月29日 10:30
+ */
+class CoProcessWorker {
+
+    private final CoProcessPoolConfig config;
+
+    private final Charset charset;
+
+    private final CommandLineExecutor executor;
+
+    private final CountDownLatch started = new CountDownLatch(1);
+
+    private volatile OutputStream stdin;
+
+    private volatile PendingRequest pending;
+
+    private volatile boolean alive = true;
+
+    private volatile int requests;
+
+    private volatile long lastUsed = System.currentTimeMillis();
+
+    private volatile long lastHealthCheck = System.currentTimeMillis();
+
+    CoProcessWorker(CoProcessPoolConfig config) {
+        this.config = config;
+        this.charset = config.getCharset() == null ? Charset.defaultCharset() : Charset.forName(config.getCharset());
+        this.executor = config.getBuild().buildExecutor();
+        LineOutputStream stdout = new LineOutputStream(config.getCharset(), this::onLine, new DiscardLineRetention());
+        LineOutputStream stderr = new LineOutputStream(config.getCharset(), line -> { }, new DiscardLineRetention());
+        this.executor.setTimeout(null);
+        this.executor.setStreamHandler(new PumpStreamHandler(stdout, stderr) {
+            @Override
+            public void setProcessInputStream(OutputStream os) {
+                stdin = os;
+            }
+
+            @Override
+            public void start() {
+                super.start();
+                started.countDown();
+            }
+        });
+        this.executor.setCallback(new WorkerCallback());
+    }
+
+    /**
+     * 启动子进程并等待标准输入可用
+     */
+    void start() throws IOException {
+        Thread thread = executor.createThread(config.getBuild().getCommandLine());
+        thread.setName("Exec CoProcess Worker");
+        thread.setDaemon(true);
+        thread.start();
+        try {
+            if (!started.await(config.getAcquireTimeoutMillis(), TimeUnit.MILLISECONDS) || !alive) {
+                destroy();
+                throw new IOException("常驻进程启动失败: " + config.getBuild().getCommandLine());
+            }
+        } catch (InterruptedException e) {
+            destroy();
+            Thread.currentThread().interrupt();
+            throw new IOException("等待常驻进程启动时被中断", e);
+        }
+    }
+
+    /**
+     * 发送一个请求并等待响应
+     * @return 响应结束标记之前的所有行
+     */
+    List<String> request(String request, long timeoutMillis) throws IOException, TimeoutException {
+        PendingRequest current = new PendingRequest();
+        pending = current;
+        requests++;
+        lastUsed = System.currentTimeMillis();
+        try {
+            OutputStream os = stdin;
+            os.write(withNewLine(request).getBytes(charset));
+            if (!config.getRequestTerminator().isEmpty()) {
+                os.write(withNewLine(config.getRequestTerminator()).getBytes(charset));
+            }
+            os.flush();
+            return current.future.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("等待响应时被中断", e);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+        } finally {
+            pending = null;
+            lastUsed = System.currentTimeMillis();
+        }
+    }
+
+    private static String withNewLine(String value) {
+        return value.endsWith("\n") ? value : value + "\n";
+    }
+
+    private void onLine(String line) {
+        PendingRequest current = pending;
+        if (current == null) {
+            return;
+        }
+        if (line.equals(config.getResponseDelimiter())) {
+            current.future.complete(current.lines);
+        } else {
+            current.lines.add(line);
+        }
+    }
+
+    /**
+     * 关闭标准输入并强制结束子进程
+     */
+    void destroy() {
+        alive = false;
+        OutputStream os = stdin;
+        if (os != null) {
+            try {
+                os.close();
+            } catch (IOException ignored) {
+                // 进程可能已经退出
+            }
+        }
+        executor.destroyProcess();
+    }
+
+    boolean isAlive() {
+        return alive;
+    }
+
+    int getRequests() {
+        return requests;
+    }
+
+    long getLastUsed() {
+        return lastUsed;
+    }
+
+    long getLastHealthCheck() {
+        return lastHealthCheck;
+    }
+
+    void setLastHealthCheck(long lastHealthCheck) {
+        this.lastHealthCheck = lastHealthCheck;
+    }
+
+    private static class PendingRequest {
+
+        private final CompletableFuture<List<String>> future = new CompletableFuture<>();
+
+        private final List<String> lines = new ArrayList<>();
+    }
+
+    /**
+     * 子进程退出时让等待中的请求立即失败
+     */
+    private class WorkerCallback implements StateCallback {
+
+        @Override
+        public boolean onProcessBefore() {
+            return true;
+        }
+
+        @Override
+        public void onProcessComplete(int exitValue) {
+            exited(new ExecuteException("常驻进程已退出", exitValue));
+        }
+
+        @Override
+        public void onProcessFailed(ExecuteException e) {
+            exited(e);
+        }
+
+        @Override
+        public void onProcessTimeout(ExecuteException e) {
+            exited(e);
+        }
+
+        private void exited(ExecuteException e) {
+            alive = false;
+            started.countDown();
+            PendingRequest current = pending;
+            if (current != null) {
+                current.future.completeExceptionally(new IOException(e.getMessage(), e));
+            }
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.marsh.exec.scheduler;
+
+import lombok.Getter;
+import lombok.ToString;
+
+import java.util.List;
+
+/**
+ * 批量执行中单个输入的结果
+ * @author marsh
+ * @date 2022年04月28日 15:20
+ */
+@Getter
+@ToString(exclude = "batchResult")
+public class BatchItemResult<T> {
+
+    /**
+     * 输入对象
+     */
+    private final T input;
+
+    /**
+     * 该输入在批次中对应的参数
+     */
+    private final String argument;
+
+    /**
+     * 通过BatchOutputMapper拆分出的输出行
+     */
+    private final List<String> lines;
+
+    /**
+     * 所在批次的执行结果，退出码等信息以批次为准
+     */
+    private final ExecutionResult batchResult;
+
+    BatchItemResult(T input, String argument, List<String> lines, ExecutionResult batchResult) {
+        this.input = input;
+        this.argument = argument;
+        this.lines = lines;
+        this.batchResult = batchResult;
+    }
+
+    public int getExitValue() {
+        return batchResult.getExitValue();
+    }
+
+    public ExecutionState getState() {
+        return batchResult.getState();
+    }
+}
@@ -0,0 +1,77 @@
+package com.marsh.exec.scheduler;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiPredicate;
+
+/**
+ * 将一次批量执行的输出拆分给批次中的每个输入
+ *
+ * 大部分工具会在输出中带上输入参数，例如md5sum、wc -l、file，可以通过匹配行内容将输出还原到每个输入上
+ * @author marsh
+ * @date 2022年04月28日 15:10
+ */
+@FunctionalInterface
+public interface BatchOutputMapper {
+
+    /**
+     * 从批量执行结果中找出某个输入对应的输出行
+     * @param argument 该输入在批次中对应的参数
+     * @param batchResult 整个批次的执行结果
+     * @return
+     */
+    List<String> map(String argument, ExecutionResult batchResult);
+
+    /**
+     * 每个输入都返回整个批次的标准输出，默认策略
+     */
+    static BatchOutputMapper whole() {
+        return (argument, batchResult) -> batchResult.getStdout();
+    }
+
+    /**
+     * 以参数加分隔符开头的行，例如file命令的输出使用linePrefix(":")
+     * @param separator 参数后面紧跟的分隔符，避免参数互为前缀时匹配错误
+     */
+    static BatchOutputMapper linePrefix(String separator) {
+        return matching((line, argument) -> line.startsWith(argument)
+                && line.startsWith(separator, argument.length()));
+    }
+
+    /**
+     * 以空白字符加参数结尾(或整行就是参数)的行，例如md5sum、wc -l的输出
+     */
+    static BatchOutputMapper lineSuffix() {
+        return matching((line, argument) -> {
+            int start = line.length() - argument.length();
+            return line.endsWith(argument) && (start == 0 || Character.isWhitespace(line.charAt(start - 1)));
+        });
+    }
+
+    /**
+     * 以分隔符加参数结尾(或整行就是参数)的行
+     * @param separator 参数前面紧挨着的分隔符，避免参数互为后缀时匹配错误，例如a.txt与data.txt
+     */
+    static BatchOutputMapper lineSuffix(String separator) {
+        return matching((line, argument) -> {
+            int start = line.length() - argument.length();
+            return line.endsWith(argument) && (start == 0 || line.startsWith(separator, start - separator.length()));
+        });
+    }
+
+    /**
+     * 自定义匹配规则
+     * @param matcher 参数分别为输出行及输入参数
+     */
+    static BatchOutputMapper matching(BiPredicate<String, String> matcher) {
+        return (argument, batchResult) -> {
+            List<String> lines = new ArrayList<>();
+            for (String line : batchResult.getStdout()) {
+                if (matcher.test(line, argument)) {
+                    lines.add(line);
+                }
+            }
+            return lines;
+        };
+    }
+}
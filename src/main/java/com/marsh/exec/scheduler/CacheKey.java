@@ -0,0 +1,58 @@
+package com.marsh.exec.scheduler;
+
+import com.marsh.exec.build.CommandLineThreadBuild;
+import com.marsh.exec.launcher.LaunchTemplate;
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 结果缓存的键，由解析后的命令行参数、额外的环境变量及工作目录组成，不包含标准输入、输出重定向等执行配置，
+ * 设置了这些配置的任务不会使用缓存
+ * @see CommandLineThreadBuild#isCacheable()
+ * @author marsh
+ * @date 2022年04月27日 10:45
+ */
+@EqualsAndHashCode
+@ToString
+final class CacheKey {
+
+    private final List<String> arguments;
+
+    private final Map<String, String> environment;
+
+    private final String workingDirectory;
+
+    private CacheKey(List<String> arguments, Map<String, String> environment, String workingDirectory) {
+        this.arguments = arguments;
+        this.environment = environment;
+        this.workingDirectory = workingDirectory;
+    }
+
+    static CacheKey of(CommandLineThreadBuild build) {
+        LaunchTemplate template = build.getLaunchTemplate();
+        Map<String, String> environment = template == null ? build.getEnvironment()
+                : template.withEnvironment(build.getEnvironment()).getEnvironmentOverrides();
+        File workingDirectory = template == null ? build.getWorkingDirectory() : template.getWorkingDirectory();
+        return new CacheKey(Arrays.asList(build.getCommandLine().toStrings()), environment,
+                workingDirectory == null ? null : workingDirectory.getAbsolutePath());
+    }
+
+    /**
+     * 估算键占用的内存
+     */
+    long estimateSize() {
+        long size = 64;
+        for (String argument : arguments) {
+            size += ResultCache.estimateSize(argument);
+        }
+        for (Map.Entry<String, String> entry : environment.entrySet()) {
+            size += ResultCache.estimateSize(entry.getKey()) + ResultCache.estimateSize(entry.getValue());
+        }
+        return size;
+    }
+}
@@ -0,0 +1,203 @@
+package com.marsh.exec.scheduler;
+
+import com.marsh.exec.build.CommandLineThreadBuild;
+import com.marsh.exec.interfaces.CommandArguments;
+import com.marsh.exec.parse.CommandArgumentsParse;
+import org.apache.commons.exec.CommandLine;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+/**
+ * 类似xargs的批量执行，将大量同一类型的CommandArguments合并为尽量少的进程执行
+ *
+ * 最后一个@Arguments字段视为变化的参数，其余字段生成的参数相同的输入合并到同一批次。
+ * 该字段必须是不带args的普通参数(不能是布尔类型)且值不能为null，否则无法拆分为xargs形式，拆分时抛出IllegalStateException；
+ * 每个批次的参数总长度不超过maxBytes(默认128KB，与xargs一致，远小于Linux的ARG_MAX)，参数个数不超过maxArguments，
+ * 批次通过调度器并行执行，执行结果再通过BatchOutputMapper拆分给每个输入
+ *
+ * List<Md5Sum> inputs = ...; // 每个对象对应一个文件
+ * List<BatchItemResult<Md5Sum>> results = CommandBatch.of(inputs)
+ *         .outputMapper(BatchOutputMapper.lineSuffix())
+ *         .execute(scheduler).get();
+ * @author marsh
+ * @date 2022年04月28日 15:35
+ */
+public class CommandBatch<T extends CommandArguments> {
+
+    /**
+     * 默认每个批次参数的总字节数
+     */
+    public static final long DEFAULT_MAX_BYTES = 128 * 1024;
+
+    /**
+     * 每个参数在argv中额外占用的字节数(指针及结尾的\0)
+     */
+    private static final int ARGUMENT_OVERHEAD = 9;
+
+    private final List<T> inputs;
+
+    private long maxBytes = DEFAULT_MAX_BYTES;
+
+    private int maxArguments = Integer.MAX_VALUE;
+
+    private BatchOutputMapper outputMapper = BatchOutputMapper.whole();
+
+    private Consumer<CommandLineThreadBuild> customizer = build -> { };
+
+    private CommandBatch(List<T> inputs) {
+        this.inputs = inputs;
+    }
+
+    public static <T extends CommandArguments> CommandBatch<T> of(Collection<T> inputs) {
+        if (inputs == null || inputs.isEmpty()) {
+            throw new IllegalArgumentException("inputs不能为空");
+        }
+        Class<?> type = inputs.iterator().next().getClass();
+        for (T input : inputs) {
+            if (input.getClass() != type) {
+                throw new IllegalArgumentException("批量执行的输入必须是同一个类型: " + type + ", " + input.getClass());
+            }
+        }
+        return new CommandBatch<>(new ArrayList<>(inputs));
+    }
+
+    /**
+     * 每个批次参数的最大字节数(包括命令名称及固定参数)
+     */
+    public CommandBatch<T> maxBytes(long maxBytes) {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("maxBytes必须大于0");
+        }
+        this.maxBytes = maxBytes;
+        return this;
+    }
+
+    /**
+     * 每个批次最多合并的输入数量
+     */
+    public CommandBatch<T> maxArguments(int maxArguments) {
+        if (maxArguments <= 0) {
+            throw new IllegalArgumentException("maxArguments必须大于0");
+        }
+        this.maxArguments = maxArguments;
+        return this;
+    }
+
+    public CommandBatch<T> outputMapper(BatchOutputMapper outputMapper) {
+        this.outputMapper = outputMapper;
+        return this;
+    }
+
+    /**
+     * 对每个批次的构建对象进行额外设置，例如超时时间、行保留策略
+     */
+    public CommandBatch<T> customize(Consumer<CommandLineThreadBuild> customizer) {
+        this.customizer = customizer;
+        return this;
+    }
+
+    /**
+     * 拆分批次后提交到调度器并行执行
+     * @param scheduler
+     * @return 按照输入顺序排列的结果
+     */
+    public CompletableFuture<List<BatchItemResult<T>>> execute(CommandLineScheduler scheduler) {
+        List<Batch> batches = split();
+        List<CompletableFuture<Void>> futures = new ArrayList<>(batches.size());
+        for (Batch batch : batches) {
+            CommandLineThreadBuild build = CommandLineThreadBuild.commandLine(batch.commandLine());
+            customizer.accept(build);
+            futures.add(scheduler.submit(build).thenAccept(result -> batch.result = result));
+        }
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).thenApply(v -> {
+            List<BatchItemResult<T>> results = new ArrayList<>(Collections.nCopies(inputs.size(), null));
+            for (Batch batch : batches) {
+                for (int i = 0; i < batch.indexes.size(); i++) {
+                    String argument = batch.arguments.get(i);
+                    results.set(batch.indexes.get(i), new BatchItemResult<>(inputs.get(batch.indexes.get(i)), argument,
+                            outputMapper.map(argument, batch.result), batch.result));
+                }
+            }
+            return results;
+        });
+    }
+
+    /**
+     * 按照固定参数分组后再按照长度限制拆分批次
+     */
+    List<Batch> split() {
+        Map<List<String>, List<Batch>> groups = new LinkedHashMap<>();
+        List<Batch> batches = new ArrayList<>();
+        for (int index = 0; index < inputs.size(); index++) {
+            T input = inputs.get(index);
+            String[] tokens = CommandArgumentsParse.batchArguments(input);
+            List<String> prefix = new ArrayList<>(tokens.length);
+            prefix.add(input.command());
+            prefix.addAll(Arrays.asList(tokens).subList(0, tokens.length - 1));
+            String argument = tokens[tokens.length - 1];
+            long argumentBytes = argumentBytes(argument);
+
+            List<Batch> group = groups.computeIfAbsent(prefix, p -> new ArrayList<>());
+            Batch batch = group.isEmpty() ? null : group.get(group.size() - 1);
+            if (batch == null || batch.arguments.size() >= maxArguments || batch.bytes + argumentBytes > maxBytes) {
+                long prefixBytes = 0;
+                for (String token : prefix) {
+                    prefixBytes += argumentBytes(token);
+                }
+                if (prefixBytes + argumentBytes > maxBytes) {
+                    throw new IllegalStateException("单个输入的参数长度超过了maxBytes: " + argument);
+                }
+                batch = new Batch(prefix, prefixBytes);
+                group.add(batch);
+                batches.add(batch);
+            }
+            batch.add(index, argument, argumentBytes);
+        }
+        return batches;
+    }
+
+    private static long argumentBytes(String argument) {
+        return argument.getBytes(StandardCharsets.UTF_8).length + ARGUMENT_OVERHEAD;
+    }
+
+    /**
+     * 一个批次
+     */
+    static class Batch {
+
+        private final List<String> prefix;
+
+        private final List<Integer> indexes = new ArrayList<>();
+
+        private final List<String> arguments = new ArrayList<>();
+
+        private long bytes;
+
+        private volatile ExecutionResult result;
+
+        private Batch(List<String> prefix, long prefixBytes) {
+            this.prefix = prefix;
+            this.bytes = prefixBytes;
+        }
+
+        private void add(int index, String argument, long argumentBytes) {
+            indexes.add(index);
+            arguments.add(argument);
+            bytes += argumentBytes;
+        }
+
+        CommandLine commandLine() {
+            CommandLine commandLine = new CommandLine(prefix.get(0));
+            for (int i = 1; i < prefix.size(); i++) {
+                commandLine.addArgument(prefix.get(i));
+            }
+            for (String argument : arguments) {
+                commandLine.addArgument(argument);
+            }
+            return commandLine;
+        }
+    }
+}
@@ -0,0 +1,317 @@
+package com.marsh.exec.scheduler;
+
+import cn.hutool.core.thread.NamedThreadFactory;
+import com.marsh.exec.build.CommandLineThreadBuild;
+import com.marsh.exec.interfaces.CommandArguments;
+import com.marsh.exec.limit.AdaptiveConcurrencyLimiter;
+import com.marsh.exec.limit.RejectReason;
+import com.marsh.exec.timeout.Timeout;
+import com.marsh.exec.timeout.TimingWheel;
+import org.apache.commons.exec.CommandLine;
+
+import java.util.*;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 命令行任务调度器，用于替代直接将{@link CommandLineThreadBuild#build()}返回的线程放入线程池的方式
+ *
+ * 1.同时运行的进程数量不超过maxConcurrency
+ * 2.优先级高的任务先执行，优先级相同时不同分组(默认按照命令名称分组)之间轮流执行，避免某一类命令占满所有并发
+ * 3.通过返回的{@link ExecutionFuture}获取执行结果，取消任务时会结束正在运行的子进程
+ * 4.原有的{@link com.marsh.exec.callback.StateCallback}回调依旧会触发，命中结果缓存时按缓存的结果重放回调
+ * 5.设置了{@link AdaptiveConcurrencyLimiter}时每个命令的并发数还受各自的自适应上限约束，超出排队限制的任务被拒绝
+ *
+ * CommandLineScheduler scheduler = new CommandLineScheduler(3);
+ * ExecutionFuture future = scheduler.submit(CommandLineThreadBuild.commandLine(ping).timeout(6000L));
+ * ExecutionResult result = future.get();
+ * System.out.println(result.getExitValue() + " " + result.getStdout());
+ * @author marsh
+ * @date 2022年04月18日 11:02
+ */
+public class CommandLineScheduler {
+
+    /**
+     * 默认优先级
+     */
+    public static final int DEFAULT_PRIORITY = 0;
+
+    private final int maxConcurrency;
+
+    private final ThreadPoolExecutor workers;
+
+    /**
+     * 每个分组的等待队列
+     */
+    private final Map<String, PriorityQueue<ScheduledTask>> queues = new HashMap<>();
+
+    /**
+     * 存在等待任务的分组，按照轮转顺序排列
+     */
+    private final Deque<String> rotation = new ArrayDeque<>();
+
+    private final Set<ScheduledTask> running = new HashSet<>();
+
+    private long sequence;
+
+    private int queued;
+
+    private boolean shutdown;
+
+    /**
+     * 执行结果缓存，为空时不使用缓存
+     */
+    private volatile ResultCache resultCache;
+
+    /**
+     * 按命令自适应调整并发上限的准入控制器，为空时只受maxConcurrency限制
+     */
+    private volatile AdaptiveConcurrencyLimiter concurrencyLimiter;
+
+    public CommandLineScheduler(int maxConcurrency) {
+        if (maxConcurrency <= 0) {
+            throw new IllegalArgumentException("maxConcurrency必须大于0");
+        }
+        this.maxConcurrency = maxConcurrency;
+        this.workers = new ThreadPoolExecutor(maxConcurrency, maxConcurrency, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), new NamedThreadFactory("Exec Scheduler-", true));
+        this.workers.allowCoreThreadTimeOut(true);
+    }
+
+    public ExecutionFuture submit(CommandArguments commandArguments) {
+        return submit(CommandLineThreadBuild.commandLine(commandArguments));
+    }
+
+    public ExecutionFuture submit(CommandLine commandLine) {
+        return submit(CommandLineThreadBuild.commandLine(commandLine));
+    }
+
+    public ExecutionFuture submit(CommandLineThreadBuild build) {
+        return submit(build, DEFAULT_PRIORITY);
+    }
+
+    public ExecutionFuture submit(CommandLineThreadBuild build, int priority) {
+        return submit(build, build.getCommandLine().getExecutable(), priority);
+    }
+
+    /**
+     * 提交一个命令行任务
+     * @param build 命令行构建对象
+     * @param group 公平调度的分组，默认为命令名称
+     * @param priority 优先级，数值越大越先执行
+     * @return
+     */
+    public ExecutionFuture submit(CommandLineThreadBuild build, String group, int priority) {
+        ResultCache cache = resultCache;
+        // 缓存的键不包含标准输入、输出重定向等配置，设置了这些配置的任务直接执行
+        if (cache != null && build.getCacheTtlMillis() > 0 && build.isCacheable()) {
+            return cache.submit(build, () -> enqueue(build, group, priority));
+        }
+        return enqueue(build, group, priority);
+    }
+
+    private ExecutionFuture enqueue(CommandLineThreadBuild build, String group, int priority) {
+        ScheduledTask task;
+        AdaptiveConcurrencyLimiter limiter = concurrencyLimiter;
+        synchronized (this) {
+            if (shutdown) {
+                throw new IllegalStateException("调度器已经关闭");
+            }
+            task = new ScheduledTask(this, build.buildExecutor(), build.getCommandLine(), group, priority, sequence++);
+            task.limiter = limiter;
+            if (limiter == null || limiter.tryEnqueue(task.command)) {
+                queues.computeIfAbsent(group, g -> {
+                    rotation.addLast(g);
+                    return new PriorityQueue<>();
+                }).add(task);
+                queued++;
+            } else {
+                task.limiter = null;
+            }
+        }
+        if (limiter != null && task.limiter == null) {
+            reject(task, limiter, RejectReason.QUEUE_FULL);
+            return task.getFuture();
+        }
+        if (limiter != null && limiter.getConfig().getMaxQueueWaitMillis() > 0) {
+            Timeout timeout = TimingWheel.getDefault().schedule(() -> expire(task),
+                    limiter.getConfig().getMaxQueueWaitMillis(), TimeUnit.MILLISECONDS);
+            synchronized (this) {
+                task.queueTimeout = timeout;
+            }
+        }
+        dispatch();
+        return task.getFuture();
+    }
+
+    /**
+     * 排队超时的任务如果还在排队则拒绝
+     */
+    private void expire(ScheduledTask task) {
+        AdaptiveConcurrencyLimiter limiter = task.limiter;
+        if (remove(task)) {
+            reject(task, limiter, RejectReason.QUEUE_TIMEOUT);
+        }
+    }
+
+    private void reject(ScheduledTask task, AdaptiveConcurrencyLimiter limiter, RejectReason reason) {
+        task.reject();
+        limiter.reject(task.getCommandLine(), task.command, reason);
+    }
+
+    /**
+     * 在并发数允许的情况下将等待中的任务交给工作线程
+     */
+    private void dispatch() {
+        List<ScheduledTask> tasks = new ArrayList<>();
+        synchronized (this) {
+            while (running.size() < maxConcurrency && queued > 0) {
+                ScheduledTask task = pollNext();
+                if (task == null) {
+                    // 排队中的命令都已达到各自的并发上限
+                    break;
+                }
+                running.add(task);
+                tasks.add(task);
+            }
+        }
+        tasks.forEach(workers::execute);
+    }
+
+    /**
+     * 取出所有分组队首中优先级最高的任务，优先级相同时取轮转顺序中靠前的分组，被取出任务的分组移到轮转末尾。
+     * 队首任务的命令已经达到自适应并发上限的分组本轮跳过，所有分组都被跳过时返回null
+     */
+    private ScheduledTask pollNext() {
+        String selected = null;
+        ScheduledTask head = null;
+        for (String group : rotation) {
+            ScheduledTask candidate = queues.get(group).peek();
+            if (candidate.limiter != null && !candidate.limiter.canAcquire(candidate.command)) {
+                continue;
+            }
+            if (head == null || candidate.priority > head.priority) {
+                head = candidate;
+                selected = group;
+            }
+        }
+        if (head == null) {
+            return null;
+        }
+        if (head.limiter != null) {
+            head.limiter.dequeued(head.command);
+            head.limiter.acquire(head.command);
+            if (head.queueTimeout != null) {
+                head.queueTimeout.cancel();
+            }
+        }
+        PriorityQueue<ScheduledTask> queue = queues.get(selected);
+        queue.poll();
+        queued--;
+        rotation.remove(selected);
+        if (queue.isEmpty()) {
+            queues.remove(selected);
+        } else {
+            rotation.addLast(selected);
+        }
+        return head;
+    }
+
+    /**
+     * 将排队中的任务移出队列
+     * @return 任务是否还在排队
+     */
+    synchronized boolean remove(ScheduledTask task) {
+        PriorityQueue<ScheduledTask> queue = queues.get(task.group);
+        if (queue == null || !queue.remove(task)) {
+            return false;
+        }
+        queued--;
+        if (queue.isEmpty()) {
+            queues.remove(task.group);
+            rotation.remove(task.group);
+        }
+        if (task.limiter != null) {
+            task.limiter.dequeued(task.command);
+            if (task.queueTimeout != null) {
+                task.queueTimeout.cancel();
+            }
+        }
+        return true;
+    }
+
+    void taskDone(ScheduledTask task) {
+        synchronized (this) {
+            running.remove(task);
+            if (task.limiter != null) {
+                task.limiter.release(task.command, task.getRunNanos(), task.getState() == ExecutionState.TIMEOUT);
+            }
+        }
+        dispatch();
+    }
+
+    /**
+     * 正在运行的任务数量
+     */
+    public synchronized int getRunningCount() {
+        return running.size();
+    }
+
+    /**
+     * 排队中的任务数量
+     */
+    public synchronized int getQueuedCount() {
+        return queued;
+    }
+
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    public ResultCache getResultCache() {
+        return resultCache;
+    }
+
+    /**
+     * 设置执行结果缓存，只对设置了缓存有效期的任务生效
+     * @param resultCache
+     * @see CommandLineThreadBuild#cacheTtl(long, TimeUnit)
+     */
+    public void setResultCache(ResultCache resultCache) {
+        this.resultCache = resultCache;
+    }
+
+    public AdaptiveConcurrencyLimiter getConcurrencyLimiter() {
+        return concurrencyLimiter;
+    }
+
+    /**
+     * 设置按命令自适应调整并发上限的准入控制器，只对之后提交的任务生效
+     * @param concurrencyLimiter
+     */
+    public void setConcurrencyLimiter(AdaptiveConcurrencyLimiter concurrencyLimiter) {
+        this.concurrencyLimiter = concurrencyLimiter;
+    }
+
+    /**
+     * 关闭调度器，不再接收新任务，已提交的任务继续执行
+     */
+    public synchronized void shutdown() {
+        shutdown = true;
+    }
+
+    /**
+     * 关闭调度器，取消所有排队中的任务并结束所有正在运行的子进程
+     */
+    public void shutdownNow() {
+        List<ScheduledTask> tasks = new ArrayList<>();
+        synchronized (this) {
+            shutdown = true;
+            queues.values().forEach(tasks::addAll);
+            tasks.addAll(running);
+        }
+        tasks.forEach(task -> task.getFuture().cancel(true));
+        workers.shutdown();
+    }
+}
@@ -0,0 +1,34 @@
+package com.marsh.exec.scheduler;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 命令行任务的异步结果，取消任务时如果进程已经启动则会强制结束子进程
+ * @author marsh
+ * @date 2022年04月18日 10:40
+ */
+public class ExecutionFuture extends CompletableFuture<ExecutionResult> {
+
+    /**
+     * 取消时执行的操作，为空时只取消该对象
+     */
+    private final Runnable canceller;
+
+    ExecutionFuture(Runnable canceller) {
+        this.canceller = canceller;
+    }
+
+    /**
+     * 取消任务，排队中的任务直接移出队列，运行中的任务结束子进程
+     * @param mayInterruptIfRunning 该参数无效，运行中的任务始终会结束子进程
+     * @return
+     */
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        boolean cancelled = super.cancel(mayInterruptIfRunning);
+        if (cancelled && canceller != null) {
+            canceller.run();
+        }
+        return cancelled;
+    }
+}
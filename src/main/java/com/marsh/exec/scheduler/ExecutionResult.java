@@ -0,0 +1,116 @@
+package com.marsh.exec.scheduler;
+
+import com.marsh.exec.metrics.ExecutionMetrics;
+import com.marsh.exec.metrics.ResourceUsage;
+import lombok.Getter;
+import lombok.ToString;
+import org.apache.commons.exec.CommandLine;
+import org.apache.commons.exec.ExecuteException;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 命令行任务的执行结果
+ * @author marsh
+ * @date 2022年04月18日 10:32
+ */
+@Getter
+@ToString(exclude = {"stdout", "stderr"})
+public class ExecutionResult {
+
+    /**
+     * 执行的命令行
+     */
+    private final CommandLine commandLine;
+
+    /**
+     * 任务最终状态
+     */
+    private final ExecutionState state;
+
+    /**
+     * 进程退出码，进程未启动时为{@link org.apache.commons.exec.Executor#INVALID_EXITVALUE}
+     */
+    private final int exitValue;
+
+    /**
+     * 执行失败或超时对应的异常
+     */
+    private final ExecuteException exception;
+
+    /**
+     * 任务提交时间(毫秒)
+     */
+    private final long submitTime;
+
+    /**
+     * 任务开始执行时间(毫秒)，未开始执行时为0
+     */
+    private final long startTime;
+
+    /**
+     * 任务结束时间(毫秒)
+     */
+    private final long endTime;
+
+    /**
+     * 标准输出内容
+     */
+    private final List<String> stdout;
+
+    /**
+     * 错误输出内容
+     */
+    private final List<String> stderr;
+
+    /**
+     * 各阶段耗时及输出量，进程未启动时为null
+     */
+    private final ExecutionMetrics metrics;
+
+    /**
+     * 子进程的CPU、内存及IO占用，未开启资源统计或进程未启动时为null
+     */
+    private final ResourceUsage resourceUsage;
+
+    ExecutionResult(CommandLine commandLine, ExecutionState state, int exitValue, ExecuteException exception,
+                    long submitTime, long startTime, long endTime, List<String> stdout, List<String> stderr,
+                    ExecutionMetrics metrics, ResourceUsage resourceUsage) {
+        this.commandLine = commandLine;
+        this.state = state;
+        this.exitValue = exitValue;
+        this.exception = exception;
+        this.submitTime = submitTime;
+        this.startTime = startTime;
+        this.endTime = endTime;
+        this.stdout = stdout == null ? Collections.emptyList() : stdout;
+        this.stderr = stderr == null ? Collections.emptyList() : stderr;
+        this.metrics = metrics;
+        this.resourceUsage = resourceUsage;
+    }
+
+    /**
+     * 任务在队列中等待的时间(毫秒)
+     * @return
+     */
+    public long getQueueMillis() {
+        return startTime == 0 ? endTime - submitTime : startTime - submitTime;
+    }
+
+    /**
+     * 任务运行的时间(毫秒)
+     * @return
+     */
+    public long getRunMillis() {
+        return startTime == 0 ? 0 : endTime - startTime;
+    }
+
+    /**
+     * 进程是否正常结束
+     * @return
+     */
+    public boolean isSuccess() {
+        return state == ExecutionState.COMPLETED;
+    }
+}
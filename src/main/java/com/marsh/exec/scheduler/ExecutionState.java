@@ -0,0 +1,39 @@
+package com.marsh.exec.scheduler;
+
+/**
+ * 命令行任务的最终状态
+ * @author marsh
+ * @date 2022年04月18日 10:30
+ */
+public enum ExecutionState {
+
+    /**
+     * 进程正常结束
+     */
+    COMPLETED,
+
+    /**
+     * 进程执行失败，包括进程返回了错误的退出码
+     */
+    FAILED,
+
+    /**
+     * 进程执行超时被结束
+     */
+    TIMEOUT,
+
+    /**
+     * StateCallback.onProcessBefore()返回了false，进程未启动
+     */
+    SKIPPED,
+
+    /**
+     * 任务被取消
+     */
+    CANCELLED,
+
+    /**
+     * 任务被并发限制器拒绝(排队已满或排队超时)，进程未启动
+     */
+    REJECTED
+}
@@ -0,0 +1,349 @@
+package com.marsh.exec.scheduler;
+
+import com.marsh.exec.build.CommandLineThreadBuild;
+import com.marsh.exec.callback.SimpleStateCallback;
+import com.marsh.exec.callback.StateCallback;
+import com.marsh.exec.stream.LineOutputListener;
+import org.apache.commons.exec.ExecuteException;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * 幂等命令的执行结果缓存，需要设置到{@link CommandLineScheduler}上使用
+ *
+ * 1.只缓存正常结束的结果，按照最近最少使用淘汰，同时限制条目数量及估算的内存占用
+ * 2.每个条目的有效期来自CommandLineThreadBuild.cacheTtl()或者@CacheableCommand注解
+ * 3.相同的任务同时提交时只启动一个进程，所有提交者共享同一个结果，
+ *   取消时只有当所有提交者都取消了才会结束子进程
+ * 4.设置了标准输入、输出重定向、自定义streamHandler、非默认的行保留策略、输出整形或对冲执行的任务不经过缓存，
+ *   见{@link CommandLineThreadBuild#isCacheable()}
+ * 5.命中缓存或加入执行中的相同任务时，提交者自己的StateCallback及行监听器按结果重放，
+ *   行监听器只收到执行时按保留策略保存的行
+ *
+ * CommandLineScheduler scheduler = new CommandLineScheduler(8);
+ * scheduler.setResultCache(new ResultCache(10000, 64 * 1024 * 1024));
+ * @see com.marsh.exec.annotations.CacheableCommand
+ * @author marsh
+ * @date 2022年04月27日 11:02
+ */
+public class ResultCache {
+
+    private final int maxEntries;
+
+    private final long maxBytes;
+
+    /**
+     * 按访问顺序排列的缓存条目
+     */
+    private final LinkedHashMap<CacheKey, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long bytes;
+
+    /**
+     * 正在执行中的任务
+     */
+    private final ConcurrentMap<CacheKey, Flight> flights = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    private final LongAdder shared = new LongAdder();
+
+    /**
+     * @param maxEntries 最大条目数量
+     * @param maxBytes 估算的最大内存占用
+     */
+    public ResultCache(int maxEntries, long maxBytes) {
+        if (maxEntries <= 0 || maxBytes <= 0) {
+            throw new IllegalArgumentException("maxEntries及maxBytes必须大于0");
+        }
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * 优先返回缓存的结果，其次加入执行中的相同任务，都没有时通过launcher提交任务
+     */
+    ExecutionFuture submit(CommandLineThreadBuild build, Supplier<ExecutionFuture> launcher) {
+        CacheKey key = CacheKey.of(build);
+        ExecutionResult cached = get(key);
+        if (cached != null) {
+            hits.increment();
+            ExecutionFuture future = new ExecutionFuture(null);
+            replay(build, cached);
+            future.complete(cached);
+            return future;
+        }
+        while (true) {
+            Flight flight = flights.get(key);
+            if (flight != null) {
+                ExecutionFuture future = flight.subscribe(build);
+                if (future != null) {
+                    shared.increment();
+                    return future;
+                }
+                // 所有提交者都已经取消，重新提交
+                flights.remove(key, flight);
+                continue;
+            }
+            flight = new Flight();
+            if (flights.putIfAbsent(key, flight) != null) {
+                continue;
+            }
+            misses.increment();
+            // 实际执行的提交者由执行器触发回调
+            ExecutionFuture future = flight.subscribe(null);
+            start(key, flight, build.getCacheTtlMillis(), launcher);
+            return future;
+        }
+    }
+
+    private void start(CacheKey key, Flight flight, long ttlMillis, Supplier<ExecutionFuture> launcher) {
+        ExecutionFuture source;
+        try {
+            source = launcher.get();
+        } catch (RuntimeException e) {
+            flights.remove(key, flight);
+            flight.result.completeExceptionally(e);
+            throw e;
+        }
+        flight.attach(source);
+        source.whenComplete((result, e) -> {
+            if (result != null && result.isSuccess()) {
+                put(key, result, ttlMillis);
+            }
+            flights.remove(key, flight);
+            if (e != null) {
+                flight.result.completeExceptionally(e);
+            } else {
+                flight.result.complete(result);
+            }
+        });
+    }
+
+    private synchronized ExecutionResult get(CacheKey key) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.expiresAt < System.currentTimeMillis()) {
+            remove(key);
+            return null;
+        }
+        return entry.result;
+    }
+
+    private synchronized void put(CacheKey key, ExecutionResult result, long ttlMillis) {
+        long size = key.estimateSize() + estimateSize(result);
+        if (size > maxBytes) {
+            return;
+        }
+        remove(key);
+        entries.put(key, new Entry(result, System.currentTimeMillis() + ttlMillis, size));
+        bytes += size;
+        Iterator<Map.Entry<CacheKey, Entry>> iterator = entries.entrySet().iterator();
+        while ((entries.size() > maxEntries || bytes > maxBytes) && iterator.hasNext()) {
+            bytes -= iterator.next().getValue().size;
+            iterator.remove();
+        }
+    }
+
+    private void remove(CacheKey key) {
+        Entry entry = entries.remove(key);
+        if (entry != null) {
+            bytes -= entry.size;
+        }
+    }
+
+    /**
+     * 清空缓存，不影响执行中的任务
+     */
+    public synchronized void clear() {
+        entries.clear();
+        bytes = 0;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * 估算的内存占用
+     */
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * 命中缓存的次数
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * 未命中缓存而启动进程的次数
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * 加入执行中的相同任务的次数
+     */
+    public long getShared() {
+        return shared.sum();
+    }
+
+    /**
+     * 把缓存或共享的结果按照正常执行的顺序交给提交者自己的回调及行监听器：onProcessBefore、保留的输出行、
+     * onProcessComplete/onProcessFailed/onProcessTimeout。输出只包含执行时按保留策略保存的行，视图监听器不会收到输出；
+     * onProcessBefore返回false时不再继续回调，但future仍然返回该结果。
+     * 回调及行监听器直接从构建对象中取得，不会为重放构建执行器(及其行保留存储)
+     */
+    static void replay(CommandLineThreadBuild build, ExecutionResult result) {
+        ExecutionState state = result.getState();
+        if (state != ExecutionState.COMPLETED && state != ExecutionState.FAILED && state != ExecutionState.TIMEOUT) {
+            return;
+        }
+        try {
+            StateCallback callback = build.getStateCallback() != null ? build.getStateCallback() : new SimpleStateCallback();
+            if (!callback.onProcessBefore()) {
+                return;
+            }
+            replayLines(build.resolveStdoutLineListener(), result.getStdout());
+            replayLines(build.resolveStderrLineListener(), result.getStderr());
+            if (state == ExecutionState.COMPLETED) {
+                if (result.getResourceUsage() != null) {
+                    callback.onProcessComplete(result.getExitValue(), result.getResourceUsage());
+                } else {
+                    callback.onProcessComplete(result.getExitValue());
+                }
+                return;
+            }
+            ExecuteException e = result.getException() != null ? result.getException()
+                    : new ExecuteException("Execution failed", result.getExitValue());
+            if (state == ExecutionState.TIMEOUT) {
+                callback.onProcessTimeout(e);
+            } else {
+                callback.onProcessFailed(e);
+            }
+        } catch (RuntimeException e) {
+            // 与执行线程中回调抛出异常时一样交给当前线程处理，不影响返回结果
+            Thread thread = Thread.currentThread();
+            thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+        }
+    }
+
+    private static void replayLines(LineOutputListener listener, List<String> lines) {
+        if (listener == null || lines.isEmpty()) {
+            return;
+        }
+        listener.processLines(lines);
+        listener.flush();
+    }
+
+    static long estimateSize(ExecutionResult result) {
+        long size = 256;
+        for (String line : result.getStdout()) {
+            size += estimateSize(line);
+        }
+        for (String line : result.getStderr()) {
+            size += estimateSize(line);
+        }
+        return size;
+    }
+
+    static long estimateSize(String value) {
+        return value == null ? 0 : 40 + 2L * value.length();
+    }
+
+    private static class Entry {
+
+        private final ExecutionResult result;
+
+        private final long expiresAt;
+
+        private final long size;
+
+        private Entry(ExecutionResult result, long expiresAt, long size) {
+            this.result = result;
+            this.expiresAt = expiresAt;
+            this.size = size;
+        }
+    }
+
+    /**
+     * 一个执行中的任务及其所有提交者
+     */
+    private static class Flight {
+
+        private final CompletableFuture<ExecutionResult> result = new CompletableFuture<>();
+
+        private ExecutionFuture source;
+
+        private int subscribers;
+
+        /**
+         * 所有提交者都已取消
+         */
+        private boolean cancelled;
+
+        /**
+         * 增加一个提交者
+         * @param replayTo 结果完成后重放回调的提交者，为空时不重放
+         * @return 所有提交者都已取消时返回null
+         */
+        private synchronized ExecutionFuture subscribe(CommandLineThreadBuild replayTo) {
+            if (cancelled) {
+                return null;
+            }
+            subscribers++;
+            ExecutionFuture future = new ExecutionFuture(this::unsubscribe);
+            result.whenComplete((r, e) -> {
+                if (e != null) {
+                    future.completeExceptionally(e);
+                    return;
+                }
+                if (replayTo != null && !future.isDone()) {
+                    replay(replayTo, r);
+                }
+                future.complete(r);
+            });
+            return future;
+        }
+
+        private void attach(ExecutionFuture source) {
+            boolean cancel;
+            synchronized (this) {
+                this.source = source;
+                cancel = cancelled;
+            }
+            if (cancel) {
+                source.cancel(true);
+            }
+        }
+
+        private void unsubscribe() {
+            ExecutionFuture toCancel = null;
+            synchronized (this) {
+                if (--subscribers == 0 && !result.isDone()) {
+                    cancelled = true;
+                    toCancel = source;
+                }
+            }
+            if (toCancel != null) {
+                toCancel.cancel(true);
+            }
+        }
+    }
+}
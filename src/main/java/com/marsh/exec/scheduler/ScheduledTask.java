@@ -0,0 +1,241 @@
+package com.marsh.exec.scheduler;
+
+import com.marsh.exec.callback.StateCallback;
+import com.marsh.exec.executor.CommandLineExecutor;
+import com.marsh.exec.limit.AdaptiveConcurrencyLimiter;
+import com.marsh.exec.metrics.ResourceUsage;
+import com.marsh.exec.stream.LineOutputProvider;
+import com.marsh.exec.timeout.Timeout;
+import org.apache.commons.exec.CommandLine;
+import org.apache.commons.exec.ExecuteException;
+import org.apache.commons.exec.Executor;
+
+import java.util.List;
+
+/**
+ * 调度器中的一个任务，同时作为执行器的回调对象，在转发原有回调之后完成对应的{@link ExecutionFuture}
+ * @author marsh
+ * @date 2022年04月18日 10:45
+ */
+class ScheduledTask implements Runnable, StateCallback, Comparable<ScheduledTask> {
+
+    private final CommandLineScheduler scheduler;
+    private final CommandLineExecutor executor;
+    private final CommandLine commandLine;
+    private final StateCallback delegate;
+    private final ExecutionFuture future;
+
+    final String group;
+    final int priority;
+    final long sequence;
+    final long submitTime;
+    /** 并发限制的维度，即命令名称 */
+    final String command;
+    /** 提交时调度器使用的并发限制器，为空时不限制 */
+    AdaptiveConcurrencyLimiter limiter;
+    /** 排队超时的定时任务 */
+    Timeout queueTimeout;
+
+    private volatile long startTime;
+    private volatile long startNanos;
+    private volatile long endNanos;
+    private volatile ExecutionState state;
+    private volatile boolean finished;
+    private volatile boolean cancelled;
+    private Thread runner;
+    /** 异步执行的进程在run()返回后仍在运行，结束时再通知调度器 */
+    private boolean deferred;
+
+    ScheduledTask(CommandLineScheduler scheduler, CommandLineExecutor executor, CommandLine commandLine,
+                  String group, int priority, long sequence) {
+        this.scheduler = scheduler;
+        this.executor = executor;
+        this.commandLine = commandLine;
+        this.delegate = executor.getCallback();
+        this.group = group;
+        this.priority = priority;
+        this.sequence = sequence;
+        this.submitTime = System.currentTimeMillis();
+        this.command = commandLine.getExecutable();
+        this.future = new ExecutionFuture(this::cancel);
+        executor.setCallback(this);
+        executor.setQueuedAtNanos(System.nanoTime());
+    }
+
+    ExecutionFuture getFuture() {
+        return future;
+    }
+
+    CommandLine getCommandLine() {
+        return commandLine;
+    }
+
+    @Override
+    public void run() {
+        synchronized (this) {
+            if (cancelled) {
+                scheduler.taskDone(this);
+                return;
+            }
+            runner = Thread.currentThread();
+        }
+        startNanos = System.nanoTime();
+        try {
+            executor.createRunnable(commandLine).run();
+        } catch (Throwable e) {
+            finish(ExecutionState.FAILED, Executor.INVALID_EXITVALUE,
+                    e instanceof ExecuteException ? (ExecuteException) e : new ExecuteException("Execution failed", Executor.INVALID_EXITVALUE, asException(e)));
+        } finally {
+            boolean pending;
+            synchronized (this) {
+                runner = null;
+                deferred = !finished && executor.isCompletionPending();
+                pending = deferred;
+            }
+            // 清除取消任务时可能残留的中断标记，避免影响线程池中的下一个任务
+            Thread.interrupted();
+            if (!pending) {
+                if (!finished) {
+                    finish(ExecutionState.FAILED, Executor.INVALID_EXITVALUE, null);
+                }
+                endNanos = System.nanoTime();
+                scheduler.taskDone(this);
+            }
+        }
+    }
+
+    /**
+     * 取消任务
+     */
+    void cancel() {
+        cancelled = true;
+        if (scheduler.remove(this)) {
+            finish(ExecutionState.CANCELLED, Executor.INVALID_EXITVALUE, null);
+            return;
+        }
+        synchronized (this) {
+            if (runner != null) {
+                executor.destroyProcess();
+                // 进程尚未启动时通过中断让执行器在waitFor时结束进程
+                runner.interrupt();
+            } else if (deferred) {
+                executor.destroyProcess();
+            }
+        }
+    }
+
+    /**
+     * 被并发限制器拒绝，任务没有运行过
+     */
+    void reject() {
+        finish(ExecutionState.REJECTED, Executor.INVALID_EXITVALUE, null);
+    }
+
+    /**
+     * 任务的运行时间，未运行时为0
+     */
+    long getRunNanos() {
+        return startNanos == 0 || endNanos == 0 ? 0 : endNanos - startNanos;
+    }
+
+    /**
+     * 任务的最终状态，未结束时为null
+     */
+    ExecutionState getState() {
+        return state;
+    }
+
+    @Override
+    public boolean onProcessBefore() {
+        startTime = System.currentTimeMillis();
+        if (cancelled) {
+            finish(ExecutionState.CANCELLED, Executor.INVALID_EXITVALUE, null);
+            return false;
+        }
+        boolean flag = delegate.onProcessBefore();
+        if (!flag) {
+            finish(ExecutionState.SKIPPED, Executor.INVALID_EXITVALUE, null);
+        }
+        return flag;
+    }
+
+    @Override
+    public void onProcessComplete(int exitValue) {
+        try {
+            delegate.onProcessComplete(exitValue);
+        } finally {
+            finish(ExecutionState.COMPLETED, exitValue, null);
+        }
+    }
+
+    @Override
+    public void onProcessComplete(int exitValue, ResourceUsage resourceUsage) {
+        try {
+            delegate.onProcessComplete(exitValue, resourceUsage);
+        } finally {
+            finish(ExecutionState.COMPLETED, exitValue, null);
+        }
+    }
+
+    @Override
+    public void onProcessFailed(ExecuteException e) {
+        try {
+            delegate.onProcessFailed(e);
+        } finally {
+            finish(cancelled ? ExecutionState.CANCELLED : ExecutionState.FAILED, e.getExitValue(), e);
+        }
+    }
+
+    @Override
+    public void onProcessTimeout(ExecuteException e) {
+        try {
+            delegate.onProcessTimeout(e);
+        } finally {
+            finish(ExecutionState.TIMEOUT, e.getExitValue(), e);
+        }
+    }
+
+    private void finish(ExecutionState state, int exitValue, ExecuteException e) {
+        boolean done;
+        synchronized (this) {
+            if (finished) {
+                return;
+            }
+            finished = true;
+            done = deferred;
+        }
+        this.state = state;
+        List<String> stdout = null;
+        List<String> stderr = null;
+        // 对冲进程胜出时结果来自对冲进程的执行器
+        CommandLineExecutor source = executor.getHedgeWinner() != null ? executor.getHedgeWinner() : executor;
+        if (source.getStreamHandler() instanceof LineOutputProvider) {
+            LineOutputProvider provider = (LineOutputProvider) source.getStreamHandler();
+            stdout = provider.getStdout().getLines();
+            stderr = provider.getStderr().getLines();
+        }
+        future.complete(new ExecutionResult(commandLine, state, exitValue, e,
+                submitTime, startTime, System.currentTimeMillis(), stdout, stderr, source.getMetrics(),
+                source.getResourceUsage()));
+        if (done) {
+            // 异步执行在完成线程池中回调，此时才释放并发数
+            endNanos = System.nanoTime();
+            scheduler.taskDone(this);
+        }
+    }
+
+    private static Exception asException(Throwable e) {
+        return e instanceof Exception ? (Exception) e : new RuntimeException(e);
+    }
+
+    /**
+     * 优先级高的排在前面，优先级相同时先提交的排在前面
+     */
+    @Override
+    public int compareTo(ScheduledTask o) {
+        if (priority != o.priority) {
+            return priority > o.priority ? -1 : 1;
+        }
+        return Long.compare(sequence, o.sequence);
+    }
+}
@@ -0,0 +1,335 @@
+package com.marsh.exec.stream;
+
+import cn.hutool.core.thread.NamedThreadFactory;
+import com.marsh.exec.timeout.TimingWheel;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * 异步批量投递的行监听器，输出流搬运线程只负责入队，由投递线程批量回调被包装的监听器
+ *
+ * 队列中积累到batchSize行或第一行入队后超过maxDelayMillis时投递一批，同一时刻只有一个线程投递，
+ * 行的顺序与输出顺序一致。LineOutputStream在flush/close时会等待队列中的行全部投递完成，
+ * 因此命令结束回调之前已经收到全部输出(等待超过flushTimeoutMillis时不再等待)。
+ * 被包装的监听器抛出的异常计入失败批次，并交给errorHandler
+ *
+ * LineOutputStream stdout = new LineOutputStream(new AsyncLineOutputListener(line -> insert(line), LineDeliveryConfig.builder().build()));
+ * @author marsh
+ * @date 2022年05月10日 10:20
+ */
+public class AsyncLineOutputListener implements LineOutputListener {
+
+    private static final long MIN_BACKOFF_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+    private static final long MAX_BACKOFF_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
+
+    private static volatile Executor defaultExecutor;
+
+    private final LineOutputListener delegate;
+
+    private final BoundedRingQueue<String> queue;
+
+    private final OverflowPolicy overflowPolicy;
+
+    private final int batchSize;
+
+    private final long maxDelayMillis;
+
+    private final long flushTimeoutNanos;
+
+    private final Executor executor;
+
+    private final Consumer<Throwable> errorHandler;
+
+    /** 是否已经提交了投递任务 */
+    private final AtomicBoolean draining = new AtomicBoolean();
+
+    /** 是否已经设置了延迟投递 */
+    private final AtomicBoolean timerArmed = new AtomicBoolean();
+
+    private final Runnable drainTask = this::drain;
+
+    private final AtomicLong enqueuedLines = new AtomicLong();
+
+    private final AtomicLong deliveredLines = new AtomicLong();
+
+    private final AtomicLong droppedOldest = new AtomicLong();
+
+    private final AtomicLong droppedNewest = new AtomicLong();
+
+    private final AtomicLong blockedNanos = new AtomicLong();
+
+    private final AtomicLong failedBatches = new AtomicLong();
+
+    private final AtomicLong flushTimeouts = new AtomicLong();
+
+    private volatile int maxQueueDepth;
+
+    public AsyncLineOutputListener(LineOutputListener delegate) {
+        this(delegate, LineDeliveryConfig.builder().build());
+    }
+
+    public AsyncLineOutputListener(LineOutputListener delegate, LineDeliveryConfig config) {
+        if (config.getBatchSize() <= 0) {
+            throw new IllegalArgumentException("batchSize必须大于0");
+        }
+        if (config.getFlushTimeoutMillis() < 0) {
+            throw new IllegalArgumentException("flushTimeoutMillis不能小于0");
+        }
+        this.delegate = delegate;
+        this.queue = new BoundedRingQueue<>(config.getCapacity());
+        this.overflowPolicy = config.getOverflowPolicy();
+        this.batchSize = Math.min(config.getBatchSize(), queue.capacity());
+        this.maxDelayMillis = config.getMaxDelayMillis();
+        this.flushTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(config.getFlushTimeoutMillis());
+        this.executor = config.getExecutor() == null ? getDefaultExecutor() : config.getExecutor();
+        this.errorHandler = config.getErrorHandler();
+    }
+
+    /**
+     * 进程内共享的投递线程池，空闲线程60秒后退出
+     * @return
+     */
+    public static Executor getDefaultExecutor() {
+        if (defaultExecutor == null) {
+            synchronized (AsyncLineOutputListener.class) {
+                if (defaultExecutor == null) {
+                    int threads = Math.max(2, Runtime.getRuntime().availableProcessors());
+                    ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                            new LinkedBlockingQueue<>(), new NamedThreadFactory("Exec Line Delivery-", true));
+                    pool.allowCoreThreadTimeOut(true);
+                    defaultExecutor = pool;
+                }
+            }
+        }
+        return defaultExecutor;
+    }
+
+    @Override
+    public void processLine(String line) {
+        enqueue(line);
+        int depth = queue.size();
+        if (depth > maxQueueDepth) {
+            maxQueueDepth = depth;
+        }
+        if (depth >= batchSize) {
+            scheduleDrain();
+        } else {
+            armTimer();
+        }
+    }
+
+    @Override
+    public void processLines(List<String> lines) {
+        for (String line : lines) {
+            processLine(line);
+        }
+    }
+
+    /**
+     * 等待队列中已有的行全部投递完成，超过flushTimeoutMillis时不再等待，
+     * 此时被包装的监听器仍在投递线程中，不会调用它的flush
+     */
+    @Override
+    public void flush() {
+        long start = System.nanoTime();
+        long backoff = MIN_BACKOFF_NANOS;
+        while (!queue.isEmpty() || draining.get()) {
+            if (flushTimeoutNanos > 0 && System.nanoTime() - start >= flushTimeoutNanos) {
+                flushTimeouts.incrementAndGet();
+                reportError(new TimeoutException("等待行投递完成超时，剩余" + queue.size() + "行"));
+                return;
+            }
+            scheduleDrain();
+            LockSupport.parkNanos(this, backoff);
+            backoff = Math.min(backoff * 2, MAX_BACKOFF_NANOS);
+        }
+        delegate.flush();
+    }
+
+    private void enqueue(String line) {
+        if (queue.offer(line)) {
+            enqueuedLines.incrementAndGet();
+            return;
+        }
+        switch (overflowPolicy) {
+            case DROP_NEWEST:
+                droppedNewest.incrementAndGet();
+                return;
+            case DROP_OLDEST:
+                while (!queue.offer(line)) {
+                    if (queue.poll() != null) {
+                        droppedOldest.incrementAndGet();
+                    }
+                }
+                enqueuedLines.incrementAndGet();
+                return;
+            default:
+                long start = System.nanoTime();
+                long backoff = MIN_BACKOFF_NANOS;
+                while (!queue.offer(line)) {
+                    scheduleDrain();
+                    LockSupport.parkNanos(this, backoff);
+                    backoff = Math.min(backoff * 2, MAX_BACKOFF_NANOS);
+                }
+                blockedNanos.addAndGet(System.nanoTime() - start);
+                enqueuedLines.incrementAndGet();
+        }
+    }
+
+    private void armTimer() {
+        if (timerArmed.compareAndSet(false, true)) {
+            TimingWheel.getDefault().schedule(() -> {
+                timerArmed.set(false);
+                scheduleDrain();
+            }, maxDelayMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void scheduleDrain() {
+        if (draining.compareAndSet(false, true)) {
+            try {
+                executor.execute(drainTask);
+            } catch (RuntimeException e) {
+                draining.set(false);
+                throw e;
+            }
+        }
+    }
+
+    private void drain() {
+        List<String> batch = new ArrayList<>(batchSize);
+        try {
+            while (true) {
+                String line;
+                while (batch.size() < batchSize && (line = queue.poll()) != null) {
+                    batch.add(line);
+                }
+                if (batch.isEmpty()) {
+                    break;
+                }
+                try {
+                    delegate.processLines(batch);
+                } catch (RuntimeException e) {
+                    failedBatches.incrementAndGet();
+                    reportError(e);
+                }
+                deliveredLines.addAndGet(batch.size());
+                batch.clear();
+            }
+        } finally {
+            draining.set(false);
+        }
+        // 投递过程中入队的行
+        int depth = queue.size();
+        if (depth >= batchSize) {
+            scheduleDrain();
+        } else if (depth > 0) {
+            armTimer();
+        }
+    }
+
+    private void reportError(Throwable e) {
+        if (errorHandler == null) {
+            Thread thread = Thread.currentThread();
+            thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+            return;
+        }
+        try {
+            errorHandler.accept(e);
+        } catch (RuntimeException handlerError) {
+            Thread thread = Thread.currentThread();
+            thread.getUncaughtExceptionHandler().uncaughtException(thread, handlerError);
+        }
+    }
+
+    /**
+     * 成功入队的行数
+     * @return
+     */
+    public long getEnqueuedLines() {
+        return enqueuedLines.get();
+    }
+
+    /**
+     * 已投递给被包装监听器的行数
+     * @return
+     */
+    public long getDeliveredLines() {
+        return deliveredLines.get();
+    }
+
+    /**
+     * DROP_OLDEST策略下丢弃的行数
+     * @return
+     */
+    public long getDroppedOldest() {
+        return droppedOldest.get();
+    }
+
+    /**
+     * DROP_NEWEST策略下丢弃的行数
+     * @return
+     */
+    public long getDroppedNewest() {
+        return droppedNewest.get();
+    }
+
+    /**
+     * 丢弃的总行数
+     * @return
+     */
+    public long getDroppedLines() {
+        return droppedOldest.get() + droppedNewest.get();
+    }
+
+    /**
+     * BLOCK策略下搬运线程累计的等待时间(纳秒)
+     * @return
+     */
+    public long getBlockedNanos() {
+        return blockedNanos.get();
+    }
+
+    /**
+     * 被包装监听器抛出异常的批次数，异常的批次不会重试
+     * @return
+     */
+    public long getFailedBatches() {
+        return failedBatches.get();
+    }
+
+    /**
+     * flush等待超时的次数
+     * @return
+     */
+    public long getFlushTimeouts() {
+        return flushTimeouts.get();
+    }
+
+    /**
+     * 队列曾经达到的最大深度，用于评估队列容量
+     * @return
+     */
+    public int getMaxQueueDepth() {
+        return maxQueueDepth;
+    }
+
+    /**
+     * 当前队列中等待投递的行数
+     * @return
+     */
+    public int getQueueDepth() {
+        return queue.size();
+    }
+}
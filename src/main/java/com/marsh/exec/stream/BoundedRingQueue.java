@@ -0,0 +1,102 @@
+package com.marsh.exec.stream;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 有界无锁环形队列，支持多个生产者及多个消费者
+ *
+ * 每个槽位带有序号，生产者和消费者通过CAS各自的位置领取槽位，
+ * DROP_OLDEST策略下生产者也会作为消费者丢弃队首元素
+ * @author marsh
+ * @date 2022年05月10日 9:40
+ */
+final class BoundedRingQueue<E> {
+
+    private final AtomicReferenceArray<E> buffer;
+
+    private final AtomicLongArray sequences;
+
+    private final int mask;
+
+    private final AtomicLong enqueuePosition = new AtomicLong();
+
+    private final AtomicLong dequeuePosition = new AtomicLong();
+
+    /**
+     * @param capacity 向上取整为2的幂
+     */
+    BoundedRingQueue(int capacity) {
+        if (capacity < 2) {
+            throw new IllegalArgumentException("capacity必须大于1");
+        }
+        int size = Integer.highestOneBit(capacity - 1) << 1;
+        this.buffer = new AtomicReferenceArray<>(size);
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+        this.mask = size - 1;
+    }
+
+    int capacity() {
+        return mask + 1;
+    }
+
+    /**
+     * @return 队列已满时返回false
+     */
+    boolean offer(E element) {
+        long position = enqueuePosition.get();
+        while (true) {
+            int index = (int) (position & mask);
+            long difference = sequences.get(index) - position;
+            if (difference == 0) {
+                if (enqueuePosition.compareAndSet(position, position + 1)) {
+                    buffer.lazySet(index, element);
+                    sequences.set(index, position + 1);
+                    return true;
+                }
+                position = enqueuePosition.get();
+            } else if (difference < 0) {
+                return false;
+            } else {
+                position = enqueuePosition.get();
+            }
+        }
+    }
+
+    /**
+     * @return 队列为空时返回null
+     */
+    E poll() {
+        long position = dequeuePosition.get();
+        while (true) {
+            int index = (int) (position & mask);
+            long difference = sequences.get(index) - (position + 1);
+            if (difference == 0) {
+                if (dequeuePosition.compareAndSet(position, position + 1)) {
+                    E element = buffer.get(index);
+                    buffer.lazySet(index, null);
+                    sequences.set(index, position + mask + 1);
+                    return element;
+                }
+                position = dequeuePosition.get();
+            } else if (difference < 0) {
+                return null;
+            } else {
+                position = dequeuePosition.get();
+            }
+        }
+    }
+
+    int size() {
+        long size = enqueuePosition.get() - dequeuePosition.get();
+        return (int) Math.max(0, Math.min(size, mask + 1));
+    }
+
+    boolean isEmpty() {
+        return size() == 0;
+    }
+}
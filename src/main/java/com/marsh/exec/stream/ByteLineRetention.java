@@ -0,0 +1,19 @@
+package com.marsh.exec.stream;
+
+/**
+ * 直接保存行原始字节的保留策略，LineOutputStream调用{@link #addBytes(byte[], int, int)}代替{@link #add(String, int)}，
+ * {@link #isRetaining()}返回false且没有行监听器时不需要解码
+ * @see MappedCaptureStore
+ * @author marsh
+ * @date 2022年05月15日 14:10
+ */
+public interface ByteLineRetention extends LineRetention {
+
+    /**
+     * 保存一行的原始字节，不包括换行符
+     * @param b 只在本次调用期间有效
+     * @param off
+     * @param len
+     */
+    void addBytes(byte[] b, int off, int len);
+}
@@ -0,0 +1,34 @@
+package com.marsh.exec.stream;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 不保留任何行
+ * @author marsh
+ * @date 2022年04月20日 10:05
+ */
+public class DiscardLineRetention implements LineRetention {
+
+    private volatile long dropped;
+
+    @Override
+    public void add(String line, int byteLength) {
+        dropped++;
+    }
+
+    @Override
+    public boolean isRetaining() {
+        return false;
+    }
+
+    @Override
+    public List<String> snapshot() {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public long getDroppedLines() {
+        return dropped;
+    }
+}
@@ -0,0 +1,144 @@
+package com.marsh.exec.stream;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 保留最前面的若干行以及最后的若干行，尾部使用环形数组存储，同时可以限制尾部行的总字节数
+ *
+ * headLines为0时即为只保留最后若干行。单行超过tailBytes时尾部只保留这一行，并且按字节比例截取该行的末尾部分
+ * @author marsh
+ * @date 2022年04月20日 10:20
+ */
+public class HeadTailLineRetention implements LineRetention {
+
+    private final int headLines;
+
+    private final int tailLines;
+
+    private final long tailBytes;
+
+    private final List<String> head;
+
+    private String[] ring;
+
+    private int[] ringBytes;
+
+    /**
+     * 环形数组中最早一行的位置
+     */
+    private int start;
+
+    private int count;
+
+    private long bytes;
+
+    private long dropped;
+
+    /**
+     * @param headLines 保留最前面的行数
+     * @param tailLines 保留最后的行数
+     * @param tailBytes 保留最后的行的总字节数
+     */
+    public HeadTailLineRetention(int headLines, int tailLines, long tailBytes) {
+        this.headLines = headLines;
+        this.tailLines = tailLines;
+        this.tailBytes = tailBytes;
+        this.head = new ArrayList<>(Math.min(headLines, 1024));
+        int capacity = Math.min(tailLines, 16);
+        this.ring = new String[capacity];
+        this.ringBytes = new int[capacity];
+    }
+
+    @Override
+    public synchronized void add(String line, int byteLength) {
+        if (head.size() < headLines) {
+            head.add(line);
+            return;
+        }
+        if (byteLength > tailBytes) {
+            // 单行超过字节限制，尾部只保留该行的末尾部分
+            dropped += count;
+            clearRing();
+            line = truncate(line, byteLength);
+            byteLength = (int) tailBytes;
+        }
+        if (count == tailLines) {
+            removeFirst();
+        }
+        while (bytes + byteLength > tailBytes) {
+            removeFirst();
+        }
+        if (count == ring.length) {
+            grow();
+        }
+        int index = (start + count) % ring.length;
+        ring[index] = line;
+        ringBytes[index] = byteLength;
+        count++;
+        bytes += byteLength;
+    }
+
+    /**
+     * 按字节比例截取行的末尾部分，使其大致不超过tailBytes
+     */
+    private String truncate(String line, int byteLength) {
+        if (line == null) {
+            return null;
+        }
+        int keep = (int) (line.length() * (double) tailBytes / byteLength);
+        int begin = line.length() - keep;
+        if (begin > 0 && begin < line.length() && Character.isLowSurrogate(line.charAt(begin))) {
+            begin++;
+        }
+        return line.substring(begin);
+    }
+
+    private void removeFirst() {
+        bytes -= ringBytes[start];
+        ring[start] = null;
+        start = (start + 1) % ring.length;
+        count--;
+        dropped++;
+    }
+
+    private void clearRing() {
+        Arrays.fill(ring, null);
+        start = 0;
+        count = 0;
+        bytes = 0;
+    }
+
+    private void grow() {
+        int capacity = (int) Math.min((long) ring.length << 1, tailLines);
+        String[] newRing = new String[capacity];
+        int[] newBytes = new int[capacity];
+        for (int i = 0; i < count; i++) {
+            int index = (start + i) % ring.length;
+            newRing[i] = ring[index];
+            newBytes[i] = ringBytes[index];
+        }
+        ring = newRing;
+        ringBytes = newBytes;
+        start = 0;
+    }
+
+    @Override
+    public synchronized List<String> snapshot() {
+        String[] lines = new String[head.size() + count];
+        for (int i = 0; i < head.size(); i++) {
+            lines[i] = head.get(i);
+        }
+        for (int i = 0; i < count; i++) {
+            lines[head.size() + i] = ring[(start + i) % ring.length];
+        }
+        return Collections.unmodifiableList(Arrays.asList(lines));
+    }
+
+    @Override
+    public synchronized long getDroppedLines() {
+        return dropped;
+    }
+}
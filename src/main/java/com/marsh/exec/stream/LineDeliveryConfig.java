@@ -0,0 +1,60 @@
+package com.marsh.exec.stream;
+
+import lombok.Builder;
+import lombok.Getter;
+
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+
+/**
+ * 异步投递配置
+ * @see AsyncLineOutputListener
+ * @author marsh
+ * @date 2022年05月10日 10:00
+ */
+@Getter
+@Builder
+public class LineDeliveryConfig {
+
+    /**
+     * 队列容量(行)，向上取整为2的幂
+     */
+    @Builder.Default
+    private final int capacity = 8192;
+
+    /**
+     * 队列已满时的处理方式
+     */
+    @Builder.Default
+    private final OverflowPolicy overflowPolicy = OverflowPolicy.BLOCK;
+
+    /**
+     * 每批最多投递的行数，队列中积累到该数量时立即投递
+     */
+    @Builder.Default
+    private final int batchSize = 256;
+
+    /**
+     * 不足一批时最长等待时间(毫秒)
+     */
+    @Builder.Default
+    private final long maxDelayMillis = 100;
+
+    /**
+     * flush时等待队列中的行投递完成的最长时间(毫秒)，0表示一直等待。
+     * 被包装的监听器卡住时超时返回，避免命令结束回调一直等待，剩余的行仍在后台继续投递
+     */
+    @Builder.Default
+    private final long flushTimeoutMillis = 30000;
+
+    /**
+     * 执行投递的线程池，为空时使用进程内共享的投递线程池
+     */
+    private final Executor executor;
+
+    /**
+     * 被包装的监听器抛出的异常及flush超时(TimeoutException)的处理，
+     * 为空时交给当前线程的未捕获异常处理器
+     */
+    private final Consumer<Throwable> errorHandler;
+}
@@ -1,5 +1,7 @@
 package com.marsh.exec.stream;
 
+import java.util.List;
+
 /**
  * @author marsh
  * @date 2022年04月13日 11:55
@@ -11,4 +13,20 @@ public interface LineOutputListener {
      * @param line
      */
     void processLine(String line);
+
+    /**
+     * 批量接收多行数据，由{@link AsyncLineOutputListener}等批量投递的场景调用，默认逐行调用processLine
+     * @param lines 只在本次调用期间有效
+     */
+    default void processLines(List<String> lines) {
+        for (String line : lines) {
+            processLine(line);
+        }
+    }
+
+    /**
+     * 输出流flush或close时调用，需要等待缓冲的数据处理完成时重写该方法
+     */
+    default void flush() {
+    }
 }
@@ -0,0 +1,21 @@
+package com.marsh.exec.stream;
+
+/**
+ * 提供标准输出及错误输出对应的行输出对象，用于任务结束后读取控制台输出内容
+ * @author marsh
+ * @date 2022年04月18日 10:12
+ */
+public interface LineOutputProvider {
+
+    /**
+     * 标准输出
+     * @return
+     */
+    LineOutputStream getStdout();
+
+    /**
+     * 错误输出
+     * @return
+     */
+    LineOutputStream getStderr();
+}
@@ -1,15 +1,27 @@
 package com.marsh.exec.stream;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
-import java.util.ArrayList;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
-import java.util.stream.Collectors;
 
 /**
  * 行输出对象
+ *
+ * 行数据保存在自身持有的可扩容字节数组中，字符集只在创建时解析一次，每行通过可复用的CharsetDecoder解码，
+ * 纯ASCII的行(ASCII兼容的字符集下)直接按单字节创建字符串。换行符只会是单字节的CR/LF，
+ * 多字节字符及跨多次write的CRLF都按字节累积后再解码，不会被拆开
  * @author Marsh
  * @date 2022-04-07日 13:43
  */
@@ -24,19 +36,82 @@ public class LineOutputStream extends OutputStream {
     /** Linefeed */
     private static final int LF = 0x0a;
 
-    /** the internal buffer */
-    protected final ByteArrayOutputStream buffer = new ByteArrayOutputStream(
-            INTIAL_SIZE);
-    /** 数据按照行存储在这个对象中 */
-    protected final List<String> lines = new ArrayList<>();
+    /** 按8字节一组查找换行符，JDK8的ByteBuffer.getLong逐字节拼接，不比逐字节查找快 */
+    private static final boolean WORD_SCAN = !System.getProperty("java.specification.version").startsWith("1.");
+
+    private static final long ONES = 0x0101010101010101L;
+
+    private static final long HIGHS = 0x8080808080808080L;
+
+    private static final long LFS = ONES * LF;
+
+    private static final long CRS = ONES * CR;
+
+    /** 当前行尚未处理的字节，有效数据为[0, size) */
+    private byte[] bytes = new byte[INTIAL_SIZE];
+
+    private int size;
+    /** 数据按照行保留策略存储在这个对象中 */
+    private LineRetention retention = new UnboundedLineRetention();
+    /**
+     * 兼容原有子类的行列表，读取时为保留策略的快照，add时写入保留策略
+     * @deprecated 使用{@link #getLines()}或{@link #getLineRetention()}
+     */
+    @Deprecated
+    protected final List<String> lines = new RetainedLines();
     private LineOutputListener lineOutputListener = new DefaultLineOutputListener();
 
+    /** 以视图方式接收行的监听器，为空时不创建视图 */
+    private LineViewListener lineViewListener;
+
+    private LineView lineView;
+
+    /** 上一个字节是CR，紧接着的LF不再作为新的一行 */
     private boolean skip = false;
 
+    /** 输出整形，为空时所有行都直接交给监听器及保留策略 */
+    private OutputShaper shaper;
+
+    /** 整形需要区分进度行时，以CR结束的行等到下一个字节再处理 */
+    private boolean deferCr;
+
+    /** 行缓冲区中是一个以CR结束的完整行，下一个字节是LF时为普通的行，否则为进度行 */
+    private boolean pendingCr;
+
+    /** 写入的字节数 */
+    private long byteCount;
+
+    /** 输出的行数 */
+    private long lineCount;
+
+    /** 第一次写入数据的时间(System.nanoTime())，未写入时为0 */
+    private long firstWriteNanos;
+
+    /** 是否统计监听器耗时 */
+    private boolean listenerTiming;
+
+    /** 监听器累计耗时(纳秒) */
+    private long listenerNanos;
+
     protected static final String SYSTEM_CHARSET = System.getProperty("sun.jnu.encoding");
 
     protected final String charset;
 
+    private final Charset resolvedCharset;
+
+    /** 字符集是否明确兼容ASCII，兼容时纯ASCII的行不需要解码，见{@link LineView#isAsciiCompatible(Charset)} */
+    private final boolean asciiCompatible;
+
+    private final CharsetDecoder decoder;
+
+    private CharBuffer chars = CharBuffer.allocate(INTIAL_SIZE);
+
+    /** 最近一次write(byte[])的数组及其按小端读取的视图，搬运线程通常复用同一个数组 */
+    private byte[] scanArray;
+
+    private ByteBuffer scanView;
+
+    private ByteBuffer bytesView;
 
     /**
      * Creates a new instance of this class.
@@ -56,11 +131,22 @@ public class LineOutputStream extends OutputStream {
      */
     public LineOutputStream(final String charset) {
         this.charset = charset;
+        this.resolvedCharset = charset == null || "".equals(charset) ? Charset.defaultCharset() : Charset.forName(charset);
+        this.asciiCompatible = LineView.isAsciiCompatible(resolvedCharset);
+        this.decoder = resolvedCharset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
     }
 
     public LineOutputStream(final String charset,LineOutputListener lineOutputListener) {
-        this.charset = charset;
+        this(charset);
+        this.lineOutputListener = lineOutputListener;
+    }
+
+    public LineOutputStream(final String charset,LineOutputListener lineOutputListener,LineRetention lines) {
+        this(charset);
         this.lineOutputListener = lineOutputListener;
+        this.retention = lines;
     }
     /**
      * Write the data to the buffer and flush the buffer, if a line separator is
@@ -71,15 +157,52 @@ public class LineOutputStream extends OutputStream {
      */
     @Override
     public void write(final int cc) throws IOException {
+        markWrite(1);
+        processByte(cc);
+    }
+
+    private void markWrite(final int length) {
+        if (firstWriteNanos == 0) {
+            firstWriteNanos = System.nanoTime();
+        }
+        byteCount += length;
+    }
+
+    private void processByte(final int cc) throws IOException {
         final byte c = (byte) cc;
-        if (c == '\n' || c == '\r') {
-            if (!skip) {
+        if (pendingCr) {
+            pendingCr = false;
+            processBuffer(c != LF);
+            if (c == LF) {
+                skip = false;
+                return;
+            }
+        }
+        if (c == LF || c == CR) {
+            if (deferCr && c == CR) {
+                pendingCr = true;
+            } else if (!(skip && c == LF)) {
                 processBuffer();
             }
         } else {
-            buffer.write(cc);
+            append(c);
+        }
+        skip = c == CR;
+    }
+
+    private void append(final byte c) {
+        if (size == bytes.length) {
+            bytes = Arrays.copyOf(bytes, bytes.length << 1);
+        }
+        bytes[size++] = c;
+    }
+
+    private void append(final byte[] b, final int off, final int len) {
+        if (size + len > bytes.length) {
+            bytes = Arrays.copyOf(bytes, Math.max(bytes.length << 1, size + len));
         }
-        skip = c == '\r';
+        System.arraycopy(b, off, bytes, size, len);
+        size += len;
     }
 
     /**
@@ -89,9 +212,20 @@ public class LineOutputStream extends OutputStream {
      */
     @Override
     public void flush() throws UnsupportedEncodingException {
-        if (buffer.size() > 0) {
+        if (pendingCr) {
+            pendingCr = false;
+            processBuffer(true);
+            skip = true;
+        }
+        if (size > 0) {
             processBuffer();
         }
+        if (shaper != null) {
+            shaper.flush();
+        }
+        if (lineOutputListener != null) {
+            lineOutputListener.flush();
+        }
     }
 
     /**
@@ -101,9 +235,7 @@ public class LineOutputStream extends OutputStream {
      */
     @Override
     public void close() throws IOException {
-        if (buffer.size() > 0) {
-            processBuffer();
-        }
+        flush();
         super.close();
     }
 
@@ -119,37 +251,199 @@ public class LineOutputStream extends OutputStream {
     @Override
     public void write(final byte[] b, final int off, final int len)
             throws IOException {
-        // find the line breaks and pass other chars through in blocks
+        if (len > 0) {
+            markWrite(len);
+        }
+        final int end = off + len;
         int offset = off;
-        int blockStartOffset = offset;
-        int remaining = len;
-        while (remaining > 0) {
-            while (remaining > 0 && b[offset] != LF && b[offset] != CR) {
-                offset++;
-                remaining--;
+        while (offset < end) {
+            if (pendingCr) {
+                pendingCr = false;
+                final boolean lf = b[offset] == LF;
+                processBuffer(!lf);
+                if (lf) {
+                    offset++;
+                    continue;
+                }
+            }
+            if (skip) {
+                // 上一次write以CR结束时这里可能是CRLF的LF
+                skip = false;
+                if (b[offset] == LF) {
+                    offset++;
+                    continue;
+                }
+            }
+            final int lineEnd = indexOfLineEnd(b, offset, end);
+            if (lineEnd == end) {
+                append(b, offset, end - offset);
+                break;
+            }
+            if (deferCr && b[lineEnd] == CR) {
+                append(b, offset, lineEnd - offset);
+                pendingCr = true;
+                offset = lineEnd + 1;
+                continue;
+            }
+            if (size == 0 && lineViewListener == null) {
+                // 整行都在当前数组中，直接从这里解码，不复制到行缓冲区
+                processLine(b, offset, lineEnd - offset);
+            } else {
+                append(b, offset, lineEnd - offset);
+                processBuffer();
             }
-            // either end of buffer or a line separator char
-            final int blockLength = offset - blockStartOffset;
-            if (blockLength > 0) {
-                buffer.write(b, blockStartOffset, blockLength);
+            skip = b[lineEnd] == CR;
+            offset = lineEnd + 1;
+        }
+    }
+
+    /**
+     * 查找第一个CR或LF的位置，没有时返回end。JDK9及以上每次比较8个字节
+     */
+    private int indexOfLineEnd(final byte[] b, final int from, final int end) {
+        int i = from;
+        if (WORD_SCAN && end - from >= 16) {
+            final ByteBuffer view = wordView(b);
+            for (; i <= end - 8; i += 8) {
+                final long word = view.getLong(i);
+                final long lf = word ^ LFS;
+                final long cr = word ^ CRS;
+                final long found = ((lf - ONES) & ~lf | (cr - ONES) & ~cr) & HIGHS;
+                if (found != 0) {
+                    // 最低位的标记一定是真实匹配，更高位的标记可能是借位造成的
+                    return i + (Long.numberOfTrailingZeros(found) >>> 3);
+                }
             }
-            while (remaining > 0 && (b[offset] == LF || b[offset] == CR)) {
-                write(b[offset]);
-                offset++;
-                remaining--;
+        }
+        for (; i < end; i++) {
+            final byte c = b[i];
+            if (c == LF || c == CR) {
+                return i;
             }
-            blockStartOffset = offset;
         }
+        return end;
     }
 
     /**
      * Converts the buffer to a string and sends it to {@code processLine}.
+     * 只设置了视图监听器且保留策略不保留行时不会创建String对象
      */
     protected void processBuffer() throws UnsupportedEncodingException {
-        String content = charset == null || "".equals(charset) ? buffer.toString() : buffer.toString(charset);
-        processLine(content);
-        lines.add(content);
-        buffer.reset();
+        processBuffer(false);
+    }
+
+    /**
+     * @param progress 是否是只以CR结束的进度行，只在整形需要区分进度行时为true
+     */
+    private void processBuffer(final boolean progress) {
+        long start = listenerTiming ? System.nanoTime() : 0;
+        if (lineViewListener != null && shaper == null) {
+            lineView.reset(bytes, size);
+            lineViewListener.processLine(lineView);
+        }
+        completeLine(bytes, 0, size, start, progress);
+        size = 0;
+    }
+
+    /**
+     * 处理不在行缓冲区中的一整行，没有视图监听器时才会调用
+     */
+    private void processLine(final byte[] b, final int off, final int len) {
+        completeLine(b, off, len, listenerTiming ? System.nanoTime() : 0, false);
+    }
+
+    private void completeLine(final byte[] b, final int off, final int len, final long start, final boolean progress) {
+        if (shaper == null) {
+            deliverLine(b, off, len);
+        } else {
+            shaper.offer(b, off, len, progress);
+        }
+        if (listenerTiming) {
+            listenerNanos += System.nanoTime() - start;
+        }
+        lineCount++;
+    }
+
+    /**
+     * 把一行交给监听器及保留策略，开启整形时由整形器回调，此时视图监听器也在这里调用
+     * (有视图监听器时行总是在偏移为0的数组中)
+     */
+    private void deliverLine(final byte[] b, final int off, final int len) {
+        if (lineViewListener != null && shaper != null) {
+            lineView.reset(b, len);
+            lineViewListener.processLine(lineView);
+        }
+        String content = null;
+        if (lineOutputListener != null || retention.isRetaining()) {
+            content = decode(b, off, len);
+        }
+        if (lineOutputListener != null) {
+            processLine(content);
+        }
+        if (retention instanceof ByteLineRetention) {
+            ((ByteLineRetention) retention).addBytes(b, off, len);
+        } else {
+            retention.add(content, len);
+        }
+    }
+
+    /**
+     * 纯ASCII的行按单字节直接创建字符串，其他行通过可复用的解码器解码到可复用的字符缓冲区
+     */
+    private String decode(final byte[] b, final int off, final int len) {
+        if (len == 0) {
+            return "";
+        }
+        if (asciiCompatible && isAscii(b, off, len)) {
+            return new String(b, off, len, StandardCharsets.ISO_8859_1);
+        }
+        int capacity = (int) (len * (double) decoder.maxCharsPerByte()) + 1;
+        if (chars.capacity() < capacity) {
+            chars = CharBuffer.allocate(Math.max(capacity, chars.capacity() << 1));
+        }
+        chars.clear();
+        decoder.reset();
+        CoderResult result = decoder.decode(ByteBuffer.wrap(b, off, len), chars, true);
+        if (!result.isUnderflow()) {
+            throw new IllegalStateException("解码失败：" + result);
+        }
+        decoder.flush(chars);
+        return new String(chars.array(), 0, chars.position());
+    }
+
+    private ByteBuffer wordView(final byte[] b) {
+        if (b == bytes) {
+            if (bytesView == null || bytesView.array() != bytes) {
+                bytesView = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+            }
+            return bytesView;
+        }
+        if (b != scanArray) {
+            scanArray = b;
+            scanView = ByteBuffer.wrap(b).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        return scanView;
+    }
+
+    private boolean isAscii(final byte[] b, final int off, final int len) {
+        final int end = off + len;
+        int i = off;
+        if (WORD_SCAN && len >= 16) {
+            final ByteBuffer view = wordView(b);
+            long bits = 0;
+            for (; i <= end - 8; i += 8) {
+                bits |= view.getLong(i);
+            }
+            if ((bits & HIGHS) != 0) {
+                return false;
+            }
+        }
+        for (; i < end; i++) {
+            if (b[i] < 0) {
+                return false;
+            }
+        }
+        return true;
     }
 
     /**
@@ -163,18 +457,140 @@ public class LineOutputStream extends OutputStream {
     }
 
     /**
-     * 复制一个新的list对象
+     * 获取按照保留策略保存的行的只读快照
      * @return
      */
     public List<String> getLines() {
-        return lines.stream().collect(Collectors.toList());
+        return retention.snapshot();
+    }
+
+    public LineRetention getLineRetention() {
+        return retention;
+    }
+
+    /**
+     * 设置行保留策略，需要在开始写入数据之前设置
+     * @param lines
+     */
+    public void setLineRetention(LineRetention lines) {
+        this.retention = lines;
+    }
+
+    /**
+     * 写入的字节数
+     * @return
+     */
+    public long getByteCount() {
+        return byteCount;
+    }
+
+    /**
+     * 输出的行数
+     * @return
+     */
+    public long getLineCount() {
+        return lineCount;
+    }
+
+    /**
+     * 开启输出整形后被合并、折叠或限流而没有投递的行数，这些行仍计入getLineCount()
+     * @return
+     */
+    public long getSuppressedLineCount() {
+        return shaper == null ? 0 : shaper.getSuppressed();
+    }
+
+    /**
+     * 设置输出整形，为空时关闭，需要在写入数据之前设置
+     * @param config
+     * @see OutputShapingConfig
+     */
+    public void setOutputShaping(OutputShapingConfig config) {
+        this.shaper = config == null ? null : new OutputShaper(config, this::deliverLine);
+        this.deferCr = shaper != null && shaper.isCoalescingProgress();
+    }
+
+    /**
+     * 第一次写入数据的时间(System.nanoTime())，未写入时为0
+     * @return
+     */
+    public long getFirstWriteNanos() {
+        return firstWriteNanos;
+    }
+
+    /**
+     * 监听器累计耗时(纳秒)，需要先开启listenerTiming
+     * @return
+     */
+    public long getListenerNanos() {
+        return listenerNanos;
+    }
+
+    /**
+     * 是否统计监听器耗时，开启后每行多两次System.nanoTime()调用
+     * @param listenerTiming
+     */
+    public void setListenerTiming(boolean listenerTiming) {
+        this.listenerTiming = listenerTiming;
     }
 
     public LineOutputListener getLineOutputListener() {
         return lineOutputListener;
     }
 
+    /**
+     * 设置字符串行监听器，为空时不再为监听器创建String对象
+     * @param lineOutputListener
+     */
     public void setLineOutputListener(LineOutputListener lineOutputListener) {
         this.lineOutputListener = lineOutputListener;
     }
+
+    public LineViewListener getLineViewListener() {
+        return lineViewListener;
+    }
+
+    /**
+     * 设置视图行监听器，与字符串行监听器同时存在时先回调视图监听器。
+     * 只需要视图时可以将字符串行监听器设置为空，并配合不保留行的保留策略
+     * @param lineViewListener
+     */
+    public void setLineViewListener(LineViewListener lineViewListener) {
+        if (lineViewListener != null && lineView == null) {
+            lineView = new LineView(resolvedCharset);
+        }
+        this.lineViewListener = lineViewListener;
+    }
+
+    /**
+     * 以List的形式访问保留策略，只为兼容直接使用lines字段的子类
+     */
+    private final class RetainedLines extends AbstractList<String> {
+
+        @Override
+        public String get(int index) {
+            return retention.snapshot().get(index);
+        }
+
+        @Override
+        public int size() {
+            return retention.snapshot().size();
+        }
+
+        @Override
+        public Iterator<String> iterator() {
+            return retention.snapshot().iterator();
+        }
+
+        @Override
+        public boolean add(String line) {
+            byte[] b = line.getBytes(resolvedCharset);
+            if (retention instanceof ByteLineRetention) {
+                ((ByteLineRetention) retention).addBytes(b, 0, b.length);
+            } else {
+                retention.add(line, b.length);
+            }
+            return true;
+        }
+    }
 }
@@ -0,0 +1,42 @@
+package com.marsh.exec.stream;
+
+import java.util.List;
+
+/**
+ * LineOutputStream中已输出行的保留策略，决定哪些行会保留在内存中供{@link LineOutputStream#getLines()}读取
+ *
+ * 写入由输出流搬运线程完成，读取可能来自任意线程，实现类需要保证两者并发时的安全；
+ * 需要直接保存原始字节的策略实现{@link ByteLineRetention}
+ * @see LineRetentionPolicy 内置的保留策略
+ * @author marsh
+ * @date 2022年04月20日 9:40
+ */
+public interface LineRetention {
+
+    /**
+     * 保存一行数据
+     * @param line 解码后的行，{@link #isRetaining()}返回false时可能为空
+     * @param byteLength 该行解码前的字节数
+     */
+    void add(String line, int byteLength);
+
+    /**
+     * 获取当前保留行的只读快照，后续写入的数据不会影响已返回的快照
+     * @return
+     */
+    List<String> snapshot();
+
+    /**
+     * 是否需要保存行内容，返回false时输出流可以不为该策略解码
+     * @return
+     */
+    default boolean isRetaining() {
+        return true;
+    }
+
+    /**
+     * 因保留策略而被丢弃的行数
+     * @return
+     */
+    long getDroppedLines();
+}
@@ -0,0 +1,86 @@
+package com.marsh.exec.stream;
+
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+
+/**
+ * 行保留策略，每个LineOutputStream通过{@link #create()}获取各自独立的{@link LineRetention}
+ *
+ * CommandLineThreadBuild.commandLine(ping).lineRetention(LineRetentionPolicy.lastLines(100)).exec();
+ * @author marsh
+ * @date 2022年04月20日 9:52
+ */
+@FunctionalInterface
+public interface LineRetentionPolicy {
+
+    /**
+     * 创建一个新的行保留对象
+     * @return
+     */
+    LineRetention create();
+
+    /**
+     * 保留所有行，默认策略
+     */
+    static LineRetentionPolicy all() {
+        return UnboundedLineRetention::new;
+    }
+
+    /**
+     * 不保留任何行，只通过LineOutputListener处理输出
+     */
+    static LineRetentionPolicy none() {
+        return DiscardLineRetention::new;
+    }
+
+    /**
+     * 保留最后maxLines行
+     */
+    static LineRetentionPolicy lastLines(int maxLines) {
+        checkPositive(maxLines, "maxLines");
+        return () -> new HeadTailLineRetention(0, maxLines, Long.MAX_VALUE);
+    }
+
+    /**
+     * 保留最后若干行，这些行解码前的总字节数不超过maxBytes
+     */
+    static LineRetentionPolicy lastBytes(long maxBytes) {
+        checkPositive(maxBytes, "maxBytes");
+        return () -> new HeadTailLineRetention(0, Integer.MAX_VALUE, maxBytes);
+    }
+
+    /**
+     * 保留最前面的headLines行和最后的tailLines行
+     */
+    static LineRetentionPolicy headTail(int headLines, int tailLines) {
+        checkPositive(headLines, "headLines");
+        checkPositive(tailLines, "tailLines");
+        return () -> new HeadTailLineRetention(headLines, tailLines, Long.MAX_VALUE);
+    }
+
+    /**
+     * 将所有行的原始字节保存到directory下内存映射的分段文件中，行内容不占用堆内存，
+     * 创建的存储需要在读取完成后关闭
+     * @see MappedCaptureStore
+     */
+    static LineRetentionPolicy mapped(Path directory) {
+        return () -> new MappedCaptureStore(directory);
+    }
+
+    /**
+     * 将所有行保存到内存映射的分段文件中
+     * @param directory 分段文件所在目录
+     * @param segmentSize 每个分段的字节数
+     * @param charset 按字符串读取时使用的字符集
+     */
+    static LineRetentionPolicy mapped(Path directory, long segmentSize, Charset charset) {
+        checkPositive(segmentSize, "segmentSize");
+        return () -> new MappedCaptureStore(directory, segmentSize, charset);
+    }
+
+    static void checkPositive(long value, String name) {
+        if (value <= 0) {
+            throw new IllegalArgumentException(name + "必须大于0");
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.marsh.exec.stream;
+
+import com.marsh.exec.executor.VirtualThreads;
+import org.apache.commons.exec.PumpStreamHandler;
+import org.apache.commons.exec.StreamPumper;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * 将标准输出及错误输出按行处理的输入输出流处理器，并且保留两个行输出对象的引用
+ * @author marsh
+ * @date 2022年04月18日 10:15
+ */
+public class LineStreamHandler extends PumpStreamHandler implements LineOutputProvider {
+
+    private final LineOutputStream stdout;
+
+    private final LineOutputStream stderr;
+
+    /**
+     * 是否在虚拟线程中搬运输出流
+     */
+    private boolean virtualThreads;
+
+    public LineStreamHandler(LineOutputStream stdout, LineOutputStream stderr) {
+        super(stdout, stderr);
+        this.stdout = stdout;
+        this.stderr = stderr;
+    }
+
+    /**
+     * 在虚拟线程中搬运输出流，需要JDK21及以上。
+     * 阻塞读取管道时虚拟线程仍会占用载体线程(JDK会临时增加载体线程，最多jdk.virtualThreadScheduler.maxPoolSize个)，
+     * 同时运行成千上万个子进程时应使用SharedPumpStreamHandler
+     * @param virtualThreads
+     */
+    public void setVirtualThreads(boolean virtualThreads) {
+        this.virtualThreads = virtualThreads;
+    }
+
+    @Override
+    protected Thread createPump(final InputStream is, final OutputStream os, final boolean closeWhenExhausted) {
+        if (!virtualThreads) {
+            return super.createPump(is, os, closeWhenExhausted);
+        }
+        return VirtualThreads.newThread(new StreamPumper(is, os, closeWhenExhausted), "Exec Stream Pumper");
+    }
+
+    @Override
+    public LineOutputStream getStdout() {
+        return stdout;
+    }
+
+    @Override
+    public LineOutputStream getStderr() {
+        return stderr;
+    }
+}
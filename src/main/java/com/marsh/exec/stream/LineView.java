@@ -0,0 +1,198 @@
+package com.marsh.exec.stream;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 一行输出的可复用视图，同时提供原始字节及解码后的字符
+ *
+ * 字节直接引用LineOutputStream的内部缓冲区，字符在第一次按字符访问时才解码到可复用的缓冲区中，
+ * 纯ASCII的行不需要解码。视图只在{@link LineViewListener#processLine(LineView)}回调期间有效
+ * @author marsh
+ * @date 2022年05月09日 9:40
+ */
+public final class LineView implements CharSequence {
+
+    private final Charset charset;
+
+    private final CharsetDecoder decoder;
+
+    private byte[] bytes;
+
+    private int byteLength;
+
+    /** 0:未检查 1:ASCII 2:非ASCII */
+    private int asciiState;
+
+    private CharBuffer chars = CharBuffer.allocate(128);
+
+    private boolean decoded;
+
+    public LineView(Charset charset) {
+        this.charset = charset;
+        this.decoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    }
+
+    /**
+     * 指向新的一行数据
+     * @param bytes
+     * @param byteLength
+     */
+    public void reset(byte[] bytes, int byteLength) {
+        this.bytes = bytes;
+        this.byteLength = byteLength;
+        this.asciiState = 0;
+        this.decoded = false;
+    }
+
+    public Charset charset() {
+        return charset;
+    }
+
+    /**
+     * 行数据所在的字节数组，有效数据为[0, byteLength())，不能修改
+     * @return
+     */
+    public byte[] array() {
+        return bytes;
+    }
+
+    /**
+     * 该行解码前的字节数
+     * @return
+     */
+    public int byteLength() {
+        return byteLength;
+    }
+
+    public byte byteAt(int index) {
+        if (index < 0 || index >= byteLength) {
+            throw new IndexOutOfBoundsException(String.valueOf(index));
+        }
+        return bytes[index];
+    }
+
+    /**
+     * 该行是否只包含ASCII字符，ASCII兼容的字符集下此时字节下标与字符下标一致
+     * @return
+     */
+    public boolean isAscii() {
+        if (asciiState == 0) {
+            asciiState = 1;
+            for (int i = 0; i < byteLength; i++) {
+                if (bytes[i] < 0) {
+                    asciiState = 2;
+                    break;
+                }
+            }
+        }
+        return asciiState == 1 && isAsciiCompatible();
+    }
+
+    @Override
+    public int length() {
+        return isAscii() ? byteLength : decode().limit();
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (isAscii()) {
+            return (char) byteAt(index);
+        }
+        return decode().get(index);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        if (isAscii()) {
+            if (start < 0 || end > byteLength || start > end) {
+                throw new IndexOutOfBoundsException(start + "," + end);
+            }
+            return new String(bytes, start, end - start, StandardCharsets.ISO_8859_1);
+        }
+        return decode().subSequence(start, end).toString();
+    }
+
+    /**
+     * 按字节范围解码为字符串
+     * @param offset
+     * @param length
+     * @return
+     */
+    public String toString(int offset, int length) {
+        if (offset < 0 || length < 0 || offset + length > byteLength) {
+            throw new IndexOutOfBoundsException(offset + "," + length);
+        }
+        return new String(bytes, offset, length, charset);
+    }
+
+    /**
+     * 复制为字符串，需要在回调结束后保留数据时使用
+     */
+    @Override
+    public String toString() {
+        return new String(bytes, 0, byteLength, charset);
+    }
+
+    /**
+     * 与字符串内容比较，不创建对象
+     * @param value
+     * @return
+     */
+    public boolean contentEquals(CharSequence value) {
+        int length = length();
+        if (length != value.length()) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (charAt(i) != value.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean isAsciiCompatible() {
+        return isAsciiCompatible(charset);
+    }
+
+    /**
+     * 字节都小于0x80时是否一定按ASCII解码，只认可明确的字符集，其余的(UTF-16/32，ISO-2022-*、UTF-7等有状态的编码)总是解码
+     * @param charset
+     * @return
+     */
+    static boolean isAsciiCompatible(Charset charset) {
+        String name = charset.name();
+        return name.equals("UTF-8") || name.equals("US-ASCII") || name.startsWith("ISO-8859-")
+                || name.equals("GBK") || name.equals("GB18030") || name.equals("GB2312")
+                || name.startsWith("Big5") || name.startsWith("EUC-") || name.startsWith("windows-125");
+    }
+
+    private CharBuffer decode() {
+        if (decoded) {
+            return chars;
+        }
+        int capacity = (int) (byteLength * (double) decoder.maxCharsPerByte()) + 1;
+        if (chars.capacity() < capacity) {
+            chars = CharBuffer.allocate(Math.max(capacity, chars.capacity() * 2));
+        }
+        chars.clear();
+        decoder.reset();
+        ByteBuffer in = ByteBuffer.wrap(bytes, 0, byteLength);
+        CoderResult result = decoder.decode(in, chars, true);
+        if (!result.isUnderflow()) {
+            throw new IllegalStateException("解码失败：" + result);
+        }
+        decoder.flush(chars);
+        chars.flip();
+        decoded = true;
+        return chars;
+    }
+}
@@ -0,0 +1,19 @@
+package com.marsh.exec.stream;
+
+/**
+ * 以视图方式接收输出行，避免每行创建一个String对象
+ *
+ * 传入的{@link LineView}会被复用，只在本次回调期间有效，需要保留时调用toString()复制
+ * @see com.marsh.exec.extract 基于视图的字段提取器
+ * @author marsh
+ * @date 2022年05月09日 9:30
+ */
+@FunctionalInterface
+public interface LineViewListener {
+
+    /**
+     * 当接收到一行数据时触发该方法
+     * @param line 不包含换行符的行视图
+     */
+    void processLine(LineView line);
+}
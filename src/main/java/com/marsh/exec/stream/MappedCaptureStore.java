@@ -0,0 +1,417 @@
+package com.marsh.exec.stream;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * 将输出行的原始字节追加到内存映射的分段文件中，行内容不占用堆内存，堆中只有每行8字节的索引
+ *
+ * 每个分段是目录下的一个临时文件，写满后滚动到下一个分段，一行不会跨越两个分段，超过分段大小的行单独占用一个分段。
+ * 索引为long[]，每行记录所在分段(高32位)及行在分段中的结束位置(低32位)，行首为上一行的结束位置或分段起点，
+ * 不保存换行符。分段文件映射后立即删除(Unix下映射仍然有效，磁盘空间在映射被回收后释放)，
+ * 无法删除时在{@link #close()}或JVM退出时删除。
+ *
+ * 写入由输出流搬运线程完成，读取可以在任意线程中进行：索引及分段数组只会被替换为更大的副本，
+ * 已写入的位置不会再被修改，先读取行数再读取数组即可得到一致的数据。
+ *
+ * 存储由创建者负责关闭：通过{@link LineRetentionPolicy#mapped(Path)}或captureTo()使用时每次执行的标准输出及错误输出各创建一个，
+ * 读取完成后应通过LineOutputStream.getLineRetention()取得并调用{@link #close()}，之后getLines()及ExecutionResult中的输出不能再读取。
+ * 分段在第一次写入时才映射，没有输出的执行不占用映射；未关闭的存储在被GC回收时释放映射，
+ * 但回收之前仍然占用地址空间(以及Windows下的分段文件)，大量执行时不应依赖GC
+ * @author marsh
+ * @date 2022年05月15日 14:20
+ */
+public class MappedCaptureStore implements ByteLineRetention, Closeable {
+
+    /**
+     * 默认的分段大小
+     */
+    public static final long DEFAULT_SEGMENT_SIZE = 64L * 1024 * 1024;
+
+    private static final int SEGMENT_SHIFT = 32;
+
+    private static final long OFFSET_MASK = (1L << SEGMENT_SHIFT) - 1;
+
+    private static final int MAX_SEGMENTS = Integer.MAX_VALUE;
+
+    private static final int MAX_LINES = Integer.MAX_VALUE - 8;
+
+    private final Path directory;
+
+    private final long segmentSize;
+
+    private final Charset charset;
+
+    /** 只会被替换为更大的副本，读取时只使用前count个元素 */
+    private volatile long[] index = new long[1024];
+
+    /** 各分段的映射，读取时使用duplicate()，不修改原对象的position */
+    private volatile MappedByteBuffer[] segments = new MappedByteBuffer[4];
+
+    private volatile int count;
+
+    /** 未能在映射后立即删除的分段文件 */
+    private final List<Path> undeleted = new ArrayList<>();
+
+    /** 写入当前分段使用的副本，只在写入线程中使用 */
+    private ByteBuffer writeBuffer;
+
+    private int segmentCount;
+
+    private long byteCount;
+
+    private volatile boolean closed;
+
+    /**
+     * 使用默认的分段大小及系统字符集
+     * @param directory 分段文件所在目录
+     */
+    public MappedCaptureStore(Path directory) {
+        this(directory, DEFAULT_SEGMENT_SIZE, LineOutputStream.SYSTEM_CHARSET == null || LineOutputStream.SYSTEM_CHARSET.isEmpty()
+                ? Charset.defaultCharset() : Charset.forName(LineOutputStream.SYSTEM_CHARSET));
+    }
+
+    /**
+     * @param directory 分段文件所在目录
+     * @param segmentSize 每个分段的字节数
+     * @param charset 按字符串读取时使用的字符集，应与LineOutputStream的字符集一致
+     */
+    public MappedCaptureStore(Path directory, long segmentSize, Charset charset) {
+        if (segmentSize <= 0 || segmentSize > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("segmentSize必须大于0且不超过" + Integer.MAX_VALUE);
+        }
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.charset = charset;
+    }
+
+    @Override
+    public void add(String line, int byteLength) {
+        byte[] bytes = line.getBytes(charset);
+        addBytes(bytes, 0, bytes.length);
+    }
+
+    @Override
+    public synchronized void addBytes(byte[] b, int off, int len) {
+        if (closed) {
+            throw new IllegalStateException("输出存储已经关闭");
+        }
+        if (count == MAX_LINES) {
+            throw new IllegalStateException("行数超过上限" + MAX_LINES);
+        }
+        if (writeBuffer == null || writeBuffer.remaining() < len) {
+            roll(len);
+        }
+        writeBuffer.put(b, off, len);
+        byteCount += len;
+        long[] current = index;
+        if (count == current.length) {
+            current = Arrays.copyOf(current, (int) Math.min((long) current.length << 1, MAX_LINES));
+            index = current;
+        }
+        current[count] = ((long) (segmentCount - 1) << SEGMENT_SHIFT) | writeBuffer.position();
+        // 最后写入count，保证读取线程看到count时对应的索引及数据已经可见
+        count = count + 1;
+    }
+
+    /**
+     * 创建新的分段，长度超过分段大小的行单独占用一个分段
+     */
+    private void roll(int len) {
+        if (segmentCount == MAX_SEGMENTS) {
+            throw new IllegalStateException("分段数超过上限" + MAX_SEGMENTS);
+        }
+        long size = Math.max(segmentSize, len);
+        MappedByteBuffer mapped;
+        try {
+            Files.createDirectories(directory);
+            Path file = Files.createTempFile(directory, "capture-", ".seg");
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            }
+            try {
+                Files.delete(file);
+            } catch (IOException e) {
+                // Windows下映射中的文件无法删除
+                undeleted.add(file);
+                file.toFile().deleteOnExit();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("创建输出分段失败", e);
+        }
+        MappedByteBuffer[] current = segments;
+        if (segmentCount == current.length) {
+            current = Arrays.copyOf(current, current.length << 1);
+        }
+        current[segmentCount] = mapped;
+        segments = current;
+        segmentCount++;
+        writeBuffer = mapped.duplicate();
+    }
+
+    /**
+     * 不保存解码后的行，输出流只需要提供原始字节
+     */
+    @Override
+    public boolean isRetaining() {
+        return false;
+    }
+
+    /**
+     * 当前行数的只读列表视图，按下标访问时才从映射中读取并解码，不会把所有行放入堆中
+     */
+    @Override
+    public List<String> snapshot() {
+        return new Snapshot(count);
+    }
+
+    @Override
+    public long getDroppedLines() {
+        return 0;
+    }
+
+    /**
+     * 已保存的行数
+     * @return
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * 已保存的字节数，不包括换行符
+     * @return
+     */
+    public synchronized long getByteCount() {
+        return byteCount;
+    }
+
+    /**
+     * 读取并解码第i行
+     * @param i
+     * @return
+     */
+    public String line(int i) {
+        ByteBuffer bytes = lineBytes(i);
+        byte[] array = new byte[bytes.remaining()];
+        bytes.get(array);
+        return new String(array, charset);
+    }
+
+    /**
+     * 第i行原始字节的只读视图，直接引用映射的内存，不复制数据
+     * @param i
+     * @return
+     */
+    public ByteBuffer lineBytes(int i) {
+        int size = count;
+        checkIndex(i, size);
+        long[] current = index;
+        long entry = current[i];
+        int segment = (int) (entry >>> SEGMENT_SHIFT);
+        ByteBuffer buffer = segments[segment].duplicate();
+        buffer.limit((int) (entry & OFFSET_MASK));
+        buffer.position(startOf(current, i, segment));
+        return buffer.slice().asReadOnlyBuffer();
+    }
+
+    /**
+     * 依次以视图方式读取[from, to)范围内的行，视图复用同一个字节数组，不创建String对象
+     * @param from
+     * @param to
+     * @param listener
+     */
+    public void forEach(int from, int to, LineViewListener listener) {
+        checkRange(from, to, count);
+        long[] current = index;
+        MappedByteBuffer[] mapped = segments;
+        LineView view = new LineView(charset);
+        byte[] bytes = new byte[128];
+        for (int i = from; i < to; i++) {
+            int segment = (int) (current[i] >>> SEGMENT_SHIFT);
+            int start = startOf(current, i, segment);
+            int length = (int) (current[i] & OFFSET_MASK) - start;
+            if (bytes.length < length) {
+                bytes = new byte[Math.max(length, bytes.length << 1)];
+            }
+            ByteBuffer buffer = mapped[segment].duplicate();
+            buffer.position(start);
+            buffer.get(bytes, 0, length);
+            view.reset(bytes, length);
+            listener.processLine(view);
+        }
+    }
+
+    /**
+     * 按顺序解码所有行的流，每行在被消费时才读取
+     * @return
+     */
+    public Stream<String> lines() {
+        return lines(0, count);
+    }
+
+    /**
+     * 按顺序解码[from, to)范围内的行的流
+     * @param from
+     * @param to
+     * @return
+     */
+    public Stream<String> lines(int from, int to) {
+        checkRange(from, to, count);
+        return IntStream.range(from, to).mapToObj(this::line);
+    }
+
+    /**
+     * 以输入流读取当前已保存的全部输出，每行以'\n'结束
+     * @return
+     */
+    public InputStream newInputStream() {
+        return newInputStream(0, count);
+    }
+
+    /**
+     * 以输入流读取[from, to)范围内的行，每行以'\n'结束
+     * @param from
+     * @param to
+     * @return
+     */
+    public InputStream newInputStream(int from, int to) {
+        checkRange(from, to, count);
+        return new CaptureInputStream(from, to);
+    }
+
+    /**
+     * 释放所有分段，未能提前删除的分段文件在这里删除，之后不能再读写
+     */
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        count = 0;
+        index = new long[0];
+        segments = new MappedByteBuffer[0];
+        writeBuffer = null;
+        for (Path file : undeleted) {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                // 映射被回收前仍然无法删除，交给deleteOnExit
+            }
+        }
+        undeleted.clear();
+    }
+
+    private static int startOf(long[] index, int i, int segment) {
+        if (i == 0) {
+            return 0;
+        }
+        long previous = index[i - 1];
+        return (int) (previous >>> SEGMENT_SHIFT) == segment ? (int) (previous & OFFSET_MASK) : 0;
+    }
+
+    private void checkIndex(int i, int size) {
+        if (closed) {
+            throw new IllegalStateException("输出存储已经关闭");
+        }
+        if (i < 0 || i >= size) {
+            throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + size);
+        }
+    }
+
+    private void checkRange(int from, int to, int size) {
+        if (closed) {
+            throw new IllegalStateException("输出存储已经关闭");
+        }
+        if (from < 0 || to > size || from > to) {
+            throw new IndexOutOfBoundsException("from: " + from + ", to: " + to + ", Size: " + size);
+        }
+    }
+
+    private class Snapshot extends AbstractList<String> implements RandomAccess {
+
+        private final int size;
+
+        private Snapshot(int size) {
+            this.size = size;
+        }
+
+        @Override
+        public String get(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+            }
+            return line(index);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+
+    /**
+     * 逐行读取映射内存的输入流，在每行之后补充换行符
+     */
+    private class CaptureInputStream extends InputStream {
+
+        private final int to;
+
+        private int line;
+
+        /** 当前行剩余的数据，为null时需要读取下一行 */
+        private ByteBuffer current;
+
+        private CaptureInputStream(int from, int to) {
+            this.line = from;
+            this.to = to;
+        }
+
+        @Override
+        public int read() {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) == -1 ? -1 : one[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            int read = 0;
+            while (read < len) {
+                if (current == null) {
+                    if (line == to) {
+                        break;
+                    }
+                    current = lineBytes(line++);
+                }
+                int length = Math.min(current.remaining(), len - read);
+                current.get(b, off + read, length);
+                read += length;
+                if (!current.hasRemaining() && read < len) {
+                    b[off + read++] = '\n';
+                    current = null;
+                }
+            }
+            return read == 0 ? -1 : read;
+        }
+    }
+}
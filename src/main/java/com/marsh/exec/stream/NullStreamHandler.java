@@ -0,0 +1,36 @@
+package com.marsh.exec.stream;
+
+import org.apache.commons.exec.ExecuteStreamHandler;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * 不搬运任何输出的输入输出流处理器，用于标准输出及错误输出都已经重定向到文件的情况，只关闭子进程的标准输入
+ * @author marsh
+ * @date 2022年04月21日 15:02
+ */
+public class NullStreamHandler implements ExecuteStreamHandler {
+
+    @Override
+    public void setProcessInputStream(OutputStream os) throws IOException {
+        os.close();
+    }
+
+    @Override
+    public void setProcessErrorStream(InputStream is) {
+    }
+
+    @Override
+    public void setProcessOutputStream(InputStream is) {
+    }
+
+    @Override
+    public void start() {
+    }
+
+    @Override
+    public void stop() {
+    }
+}
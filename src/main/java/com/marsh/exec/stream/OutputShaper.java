@@ -0,0 +1,274 @@
+package com.marsh.exec.stream;
+
+import com.marsh.exec.timeout.TimingWheel;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 一个输出流的整形状态，按字节比较及保存，不需要解码
+ *
+ * 进度行每个间隔投递一次，期间只保留最新的一行，遇到普通的行时丢弃保留的进度行(普通的行就是最新的状态)，
+ * 间隔到期或flush时投递；与上一次投递的行相同的行只计数，出现不同的行、计数超过间隔或flush时投递汇总行；
+ * 限流按令牌桶计算，恢复投递时先投递被丢弃的行数。汇总行不受限流影响。
+ *
+ * 有保留的进度行或重复计数时在共享的时间轮上定时，输出停止后也会按间隔投递，不需要等下一行到来。
+ * 所有方法在对象锁中执行，投递可能发生在搬运线程或时间轮的任务线程中，但不会并发
+ * @author marsh
+ * @date 2022年05月19日 10:50
+ */
+final class OutputShaper {
+
+    private static final byte[] EMPTY = new byte[0];
+
+    /**
+     * 投递整形后的行
+     */
+    interface Sink {
+
+        void deliver(byte[] b, int off, int len);
+    }
+
+    private final Sink sink;
+
+    private final boolean collapseRepeats;
+
+    private final boolean coalesceProgress;
+
+    private final long intervalNanos;
+
+    /** 每纳秒产生的令牌数，0表示不限流 */
+    private final double permitsPerNano;
+
+    private final double burst;
+
+    private double tokens;
+
+    private long refillNanos;
+
+    /** 上一次投递的行，没有可比较的行时lastLength为-1 */
+    private byte[] last = EMPTY;
+
+    private int lastLength = -1;
+
+    private long repeats;
+
+    private long firstRepeatNanos;
+
+    /** 尚未投递的最新进度行，没有时progressLength为-1 */
+    private byte[] progress = EMPTY;
+
+    private int progressLength = -1;
+
+    private long nextProgressNanos;
+
+    /** 限流丢弃且尚未汇总的行数 */
+    private long rateLimited;
+
+    private long suppressed;
+
+    /** 是否已经在时间轮上定时 */
+    private boolean timerArmed;
+
+    private final Runnable tick = this::tick;
+
+    OutputShaper(OutputShapingConfig config, Sink sink) {
+        if (config.getMaxLinesPerSecond() < 0 || config.getBurst() < 0 || config.getIntervalMillis() < 0) {
+            throw new IllegalArgumentException("maxLinesPerSecond、burst及intervalMillis不能小于0");
+        }
+        this.sink = sink;
+        this.collapseRepeats = config.isCollapseRepeats();
+        this.coalesceProgress = config.isCoalesceProgress() && config.getIntervalMillis() > 0;
+        this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(config.getIntervalMillis());
+        this.permitsPerNano = config.getMaxLinesPerSecond() / (double) TimeUnit.SECONDS.toNanos(1);
+        this.burst = config.getBurst() > 0 ? config.getBurst() : config.getMaxLinesPerSecond();
+        this.tokens = burst;
+        this.refillNanos = System.nanoTime();
+        this.nextProgressNanos = refillNanos;
+    }
+
+    /**
+     * 是否需要区分只以CR结束的进度行
+     */
+    boolean isCoalescingProgress() {
+        return coalesceProgress;
+    }
+
+    /**
+     * 接收一行
+     * @param progress 是否是只以CR结束的进度行
+     */
+    synchronized void offer(byte[] b, int off, int len, boolean progress) {
+        if (progress && coalesceProgress) {
+            offerProgress(b, off, len);
+            armTimer();
+            return;
+        }
+        if (progressLength >= 0) {
+            progressLength = -1;
+            suppressed++;
+        }
+        if (collapseRepeats && len == lastLength && equals(last, b, off, len)) {
+            if (repeats++ == 0) {
+                firstRepeatNanos = System.nanoTime();
+                armTimer();
+            } else if (intervalNanos > 0 && System.nanoTime() - firstRepeatNanos >= intervalNanos) {
+                flushRepeats();
+            }
+            suppressed++;
+            return;
+        }
+        flushRepeats();
+        if (limit(b, off, len) && collapseRepeats) {
+            remember(b, off, len);
+        }
+    }
+
+    /**
+     * 投递保留的进度行及汇总行，输出流flush或关闭时调用
+     */
+    synchronized void flush() {
+        flushRepeats();
+        flushProgress();
+        if (rateLimited > 0) {
+            summary(suppressedSummary());
+            rateLimited = 0;
+        }
+    }
+
+    /**
+     * 没有投递给监听器的行数
+     */
+    synchronized long getSuppressed() {
+        return suppressed;
+    }
+
+    private void offerProgress(byte[] b, int off, int len) {
+        if (len == 0) {
+            // 进度行通常以CR开头，开头的空行没有内容
+            return;
+        }
+        flushRepeats();
+        long now = System.nanoTime();
+        if (now - nextProgressNanos >= 0) {
+            if (progressLength >= 0) {
+                suppressed++;
+                progressLength = -1;
+            }
+            nextProgressNanos = now + intervalNanos;
+            limit(b, off, len);
+        } else {
+            if (progressLength >= 0) {
+                suppressed++;
+            }
+            if (progress.length < len) {
+                progress = new byte[Math.max(len, progress.length << 1)];
+            }
+            System.arraycopy(b, off, progress, 0, len);
+            progressLength = len;
+        }
+        // 进度行之后的行不与进度行之前的行比较
+        lastLength = -1;
+    }
+
+    /**
+     * 时间轮到期，投递到期的进度行及重复行汇总，仍有保留的状态时重新定时
+     */
+    private synchronized void tick() {
+        timerArmed = false;
+        long now = System.nanoTime();
+        if (progressLength >= 0 && now - nextProgressNanos >= 0) {
+            nextProgressNanos = now + intervalNanos;
+            flushProgress();
+        }
+        if (repeats > 0 && now - firstRepeatNanos >= intervalNanos) {
+            flushRepeats();
+        }
+        armTimer();
+    }
+
+    private void armTimer() {
+        if (timerArmed || intervalNanos <= 0) {
+            return;
+        }
+        long due = Long.MAX_VALUE;
+        long now = System.nanoTime();
+        if (progressLength >= 0) {
+            due = nextProgressNanos - now;
+        }
+        if (repeats > 0) {
+            due = Math.min(due, firstRepeatNanos + intervalNanos - now);
+        }
+        if (due == Long.MAX_VALUE) {
+            return;
+        }
+        timerArmed = true;
+        TimingWheel.getDefault().schedule(tick, Math.max(due, 0), TimeUnit.NANOSECONDS);
+    }
+
+    private void flushProgress() {
+        if (progressLength >= 0) {
+            int len = progressLength;
+            progressLength = -1;
+            limit(progress, 0, len);
+        }
+    }
+
+    private void flushRepeats() {
+        if (repeats > 0) {
+            long count = repeats;
+            repeats = 0;
+            summary("last line repeated " + count + (count == 1 ? " time" : " times"));
+        }
+    }
+
+    /**
+     * 按令牌桶限流
+     * @return 是否投递
+     */
+    private boolean limit(byte[] b, int off, int len) {
+        if (permitsPerNano > 0) {
+            long now = System.nanoTime();
+            tokens = Math.min(burst, tokens + (now - refillNanos) * permitsPerNano);
+            refillNanos = now;
+            if (tokens < 1) {
+                rateLimited++;
+                suppressed++;
+                return false;
+            }
+            tokens--;
+            if (rateLimited > 0) {
+                summary(suppressedSummary());
+                rateLimited = 0;
+            }
+        }
+        sink.deliver(b, off, len);
+        return true;
+    }
+
+    private String suppressedSummary() {
+        return rateLimited + (rateLimited == 1 ? " line" : " lines") + " suppressed by rate limit";
+    }
+
+    private void summary(String line) {
+        byte[] bytes = line.getBytes(StandardCharsets.US_ASCII);
+        sink.deliver(bytes, 0, bytes.length);
+    }
+
+    private void remember(byte[] b, int off, int len) {
+        if (last.length < len) {
+            last = new byte[Math.max(len, last.length << 1)];
+        }
+        System.arraycopy(b, off, last, 0, len);
+        lastLength = len;
+    }
+
+    private static boolean equals(byte[] a, byte[] b, int off, int len) {
+        for (int i = 0; i < len; i++) {
+            if (a[i] != b[off + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
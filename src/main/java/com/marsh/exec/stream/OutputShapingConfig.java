@@ -0,0 +1,49 @@
+package com.marsh.exec.stream;
+
+import lombok.Builder;
+import lombok.Getter;
+
+/**
+ * 输出整形配置，标准输出及错误输出各自独立整形
+ *
+ * 依次合并回车(CR)结束的进度行、折叠连续重复的行、按每秒行数限流，被丢弃的行不会解码，
+ * 也不会交给行监听器及行保留策略，只计入LineOutputStream的getSuppressedLineCount()。
+ * 开启整形后行监听器可能在时间轮的任务线程中被调用(与搬运线程中的调用不会并发)
+ * @see LineOutputStream#setOutputShaping(OutputShapingConfig)
+ * @author marsh
+ * @date 2022年05月19日 10:30
+ */
+@Getter
+@Builder
+public class OutputShapingConfig {
+
+    /**
+     * 每秒最多投递的行数，0表示不限流
+     */
+    @Builder.Default
+    private final int maxLinesPerSecond = 0;
+
+    /**
+     * 限流时允许连续投递的行数，0表示与maxLinesPerSecond相同
+     */
+    @Builder.Default
+    private final int burst = 0;
+
+    /**
+     * 是否把连续重复的行折叠为"last line repeated N times"
+     */
+    @Builder.Default
+    private final boolean collapseRepeats = true;
+
+    /**
+     * 是否合并只以CR结束的进度行，每个间隔只投递最新的一行，CRLF仍然作为普通的行
+     */
+    @Builder.Default
+    private final boolean coalesceProgress = true;
+
+    /**
+     * 进度行的投递间隔，也是重复行汇总的最长间隔(毫秒)，由共享的时间轮定时，输出停止时也会按间隔投递
+     */
+    @Builder.Default
+    private final long intervalMillis = 1000;
+}
@@ -0,0 +1,24 @@
+package com.marsh.exec.stream;
+
+/**
+ * 异步投递队列已满时的处理方式
+ * @author marsh
+ * @date 2022年05月10日 9:30
+ */
+public enum OverflowPolicy {
+
+    /**
+     * 阻塞输出流搬运线程直到队列有空位，不丢失数据，监听器过慢时子进程最终会阻塞在管道写入上
+     */
+    BLOCK,
+
+    /**
+     * 丢弃队列中最早的行，保留最新的输出
+     */
+    DROP_OLDEST,
+
+    /**
+     * 丢弃新到达的行，保留最早的输出
+     */
+    DROP_NEWEST
+}
@@ -0,0 +1,95 @@
+package com.marsh.exec.stream;
+
+import org.apache.commons.exec.ExecuteStreamHandler;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * 使用共享搬运引擎的输入输出流处理器，不会为每个子进程单独创建搬运线程
+ *
+ * 与未设置输入流的PumpStreamHandler一致，子进程的标准输入会被直接关闭
+ * @see StreamPumpEngine
+ * @author marsh
+ * @date 2022年04月19日 15:02
+ */
+public class SharedPumpStreamHandler implements ExecuteStreamHandler, LineOutputProvider {
+
+    private final StreamPumpEngine engine;
+
+    private final LineOutputStream stdout;
+
+    private final LineOutputStream stderr;
+
+    private InputStream processOutput;
+
+    private InputStream processError;
+
+    private StreamPumpEngine.PumpChannel outChannel;
+
+    private StreamPumpEngine.PumpChannel errChannel;
+
+    public SharedPumpStreamHandler(LineOutputStream stdout, LineOutputStream stderr) {
+        this(StreamPumpEngine.getDefault(), stdout, stderr);
+    }
+
+    public SharedPumpStreamHandler(StreamPumpEngine engine, LineOutputStream stdout, LineOutputStream stderr) {
+        this.engine = engine;
+        this.stdout = stdout;
+        this.stderr = stderr;
+    }
+
+    @Override
+    public void setProcessInputStream(OutputStream os) throws IOException {
+        os.close();
+    }
+
+    @Override
+    public void setProcessErrorStream(InputStream is) {
+        this.processError = is;
+    }
+
+    @Override
+    public void setProcessOutputStream(InputStream is) {
+        this.processOutput = is;
+    }
+
+    @Override
+    public void start() {
+        outChannel = engine.register(processOutput, stdout);
+        errChannel = engine.register(processError, stderr);
+    }
+
+    @Override
+    public void stop() throws IOException {
+        IOException caught = null;
+        try {
+            outChannel.drain();
+        } catch (IOException e) {
+            caught = e;
+        }
+        try {
+            errChannel.drain();
+        } catch (IOException e) {
+            if (caught == null) {
+                caught = e;
+            }
+        }
+        stderr.flush();
+        stdout.flush();
+        if (caught != null) {
+            throw caught;
+        }
+    }
+
+    @Override
+    public LineOutputStream getStdout() {
+        return stdout;
+    }
+
+    @Override
+    public LineOutputStream getStderr() {
+        return stderr;
+    }
+}
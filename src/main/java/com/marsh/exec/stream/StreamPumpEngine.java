@@ -0,0 +1,259 @@
+package com.marsh.exec.stream;
+
+import cn.hutool.core.thread.NamedThreadFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 共享的输出流搬运引擎，使用少量固定的搬运线程轮询所有子进程的输出管道
+ *
+ * PumpStreamHandler会为每个子进程的标准输出和错误输出各创建一个线程，并发数较大时会产生大量阻塞的线程。
+ * 子进程的管道在Java 8中只能以阻塞的InputStream形式获取，无法注册到Selector上，
+ * 所以这里通过available()判断管道中是否有数据，只读取不会阻塞的部分，没有数据时搬运线程逐步退避休眠。
+ * 子进程结束后由{@link PumpChannel#drain()}在调用线程中读取剩余的数据。
+ * 自行创建的引擎不再使用时需要调用{@link #close()}结束搬运线程，全局共享的引擎随JVM退出
+ * @author marsh
+ * @date 2022年04月19日 14:20
+ */
+public class StreamPumpEngine implements Closeable {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    /**
+     * 空闲时最短休眠时间
+     */
+    private static final long MIN_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+    /**
+     * 空闲时最长休眠时间
+     */
+    private static final long MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private static volatile StreamPumpEngine defaultEngine;
+
+    private final Pump[] pumps;
+
+    private final AtomicInteger next = new AtomicInteger();
+
+    private volatile boolean closed;
+
+    /**
+     * 创建一个搬运引擎，立即启动搬运线程，不再使用时调用{@link #close()}
+     * @param threads 搬运线程数量
+     */
+    public StreamPumpEngine(int threads) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("threads必须大于0");
+        }
+        ThreadFactory threadFactory = new NamedThreadFactory("Exec Stream Pump-", true);
+        this.pumps = new Pump[threads];
+        for (int i = 0; i < threads; i++) {
+            pumps[i] = new Pump();
+            Thread thread = threadFactory.newThread(pumps[i]);
+            pumps[i].thread = thread;
+            thread.start();
+        }
+    }
+
+    /**
+     * 获取全局共享的搬运引擎，搬运线程数量为min(4, CPU核数)
+     * @return
+     */
+    public static StreamPumpEngine getDefault() {
+        if (defaultEngine == null) {
+            synchronized (StreamPumpEngine.class) {
+                if (defaultEngine == null) {
+                    defaultEngine = new StreamPumpEngine(Math.min(4, Runtime.getRuntime().availableProcessors()));
+                }
+            }
+        }
+        return defaultEngine;
+    }
+
+    /**
+     * 注册一个需要搬运的管道
+     * @param in 子进程的输出流
+     * @param out 数据写入的目标
+     * @return
+     */
+    public PumpChannel register(InputStream in, OutputStream out) {
+        if (closed) {
+            throw new IllegalStateException("搬运引擎已经关闭");
+        }
+        Pump pump = pumps[Math.floorMod(next.getAndIncrement(), pumps.length)];
+        PumpChannel channel = new PumpChannel(pump, in, out);
+        pump.channels.add(channel);
+        LockSupport.unpark(pump.thread);
+        return channel;
+    }
+
+    /**
+     * 已注册且尚未结束的管道数量
+     * @return
+     */
+    public int getChannelCount() {
+        int count = 0;
+        for (Pump pump : pumps) {
+            count += pump.channels.size();
+        }
+        return count;
+    }
+
+    /**
+     * 结束所有搬运线程，之后不能再注册管道。已注册的管道不再轮询，
+     * 剩余的数据仍由{@link PumpChannel#drain()}在调用线程中读取
+     * @throws IllegalStateException 关闭全局共享的引擎
+     */
+    @Override
+    public void close() {
+        if (this == defaultEngine) {
+            throw new IllegalStateException("不能关闭全局共享的搬运引擎");
+        }
+        closed = true;
+        for (Pump pump : pumps) {
+            pump.closed = true;
+            LockSupport.unpark(pump.thread);
+        }
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * 单个搬运线程，负责轮询分配给它的所有管道
+     */
+    private static class Pump implements Runnable {
+
+        private final ConcurrentLinkedQueue<PumpChannel> channels = new ConcurrentLinkedQueue<>();
+
+        private final byte[] buffer = new byte[BUFFER_SIZE];
+
+        private Thread thread;
+
+        private volatile boolean closed;
+
+        @Override
+        public void run() {
+            long parkNanos = MIN_PARK_NANOS;
+            while (!closed) {
+                boolean transferred = false;
+                for (PumpChannel channel : channels) {
+                    if (channel.pumpAvailable(buffer)) {
+                        transferred = true;
+                    }
+                }
+                if (transferred) {
+                    parkNanos = MIN_PARK_NANOS;
+                } else {
+                    LockSupport.parkNanos(this, parkNanos);
+                    parkNanos = Math.min(parkNanos << 1, MAX_PARK_NANOS);
+                }
+            }
+        }
+    }
+
+    /**
+     * 一个已注册的管道
+     */
+    public static class PumpChannel {
+
+        private final Pump pump;
+
+        private final InputStream in;
+
+        private final OutputStream out;
+
+        /**
+         * 保证同一时间只有一个线程在读取该管道
+         */
+        private final ReentrantLock lock = new ReentrantLock();
+
+        private volatile boolean closed;
+
+        /** 搬运线程中出现的异常(包括写入目标抛出的RuntimeException)，之后读到的数据被丢弃，drain时抛出 */
+        private IOException exception;
+
+        private PumpChannel(Pump pump, InputStream in, OutputStream out) {
+            this.pump = pump;
+            this.in = in;
+            this.out = out;
+        }
+
+        /**
+         * 搬运线程调用，只读取当前已经可读的数据
+         * @return 是否搬运了数据
+         */
+        private boolean pumpAvailable(byte[] buffer) {
+            if (closed || !lock.tryLock()) {
+                return false;
+            }
+            try {
+                if (closed) {
+                    return false;
+                }
+                int available = in.available();
+                if (available <= 0) {
+                    return false;
+                }
+                int length = in.read(buffer, 0, Math.min(available, buffer.length));
+                if (length > 0) {
+                    // 失败后继续读取并丢弃，避免子进程写满管道后阻塞
+                    if (exception == null) {
+                        out.write(buffer, 0, length);
+                    }
+                    return true;
+                }
+                return false;
+            } catch (IOException e) {
+                if (exception == null) {
+                    exception = e;
+                }
+                return false;
+            } catch (RuntimeException e) {
+                // 行监听器等抛出的异常只使该管道失败，不能结束共享的搬运线程
+                if (exception == null) {
+                    exception = new IOException("搬运输出失败", e);
+                }
+                return false;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * 子进程结束后调用，停止轮询并在当前线程中读取剩余的数据直到流结束
+         * @throws IOException 搬运过程中出现的异常
+         */
+        public void drain() throws IOException {
+            closed = true;
+            lock.lock();
+            try {
+                pump.channels.remove(this);
+                byte[] buffer = new byte[BUFFER_SIZE];
+                int length;
+                while (exception == null && (length = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, length);
+                }
+                if (exception != null) {
+                    // 读完剩余的数据再抛出，与未失败时一样等到流结束
+                    while (in.read(buffer) != -1) {
+                        // 丢弃
+                    }
+                    throw exception;
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
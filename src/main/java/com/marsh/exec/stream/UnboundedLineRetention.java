@@ -0,0 +1,71 @@
+package com.marsh.exec.stream;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * 保留所有行，只会追加的数组，快照只记录数组引用及当前长度，不复制数据
+ *
+ * 扩容时写入新的数组，旧快照仍然引用旧数组，已写入的位置不会再被修改，因此快照始终保持不变
+ * @author marsh
+ * @date 2022年04月20日 10:08
+ */
+public class UnboundedLineRetention implements LineRetention {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private volatile String[] elements = new String[INITIAL_CAPACITY];
+
+    private volatile int size;
+
+    @Override
+    public synchronized void add(String line, int byteLength) {
+        String[] current = elements;
+        if (size == current.length) {
+            current = Arrays.copyOf(current, current.length << 1);
+            elements = current;
+        }
+        current[size] = line;
+        // 最后写入size，保证读取线程看到size时对应位置的数据已经可见
+        size = size + 1;
+    }
+
+    @Override
+    public List<String> snapshot() {
+        // 先读size再读数组，数组只会被替换为更大的副本，一定包含前size个元素
+        int length = size;
+        return new Snapshot(elements, length);
+    }
+
+    @Override
+    public long getDroppedLines() {
+        return 0;
+    }
+
+    private static class Snapshot extends AbstractList<String> implements RandomAccess {
+
+        private final String[] elements;
+
+        private final int size;
+
+        private Snapshot(String[] elements, int size) {
+            this.elements = elements;
+            this.size = size;
+        }
+
+        @Override
+        public String get(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+            }
+            return elements[index];
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+}
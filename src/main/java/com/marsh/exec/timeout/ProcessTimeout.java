@@ -0,0 +1,136 @@
+package com.marsh.exec.timeout;
+
+import lombok.Getter;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 单次执行的超时控制，替代每个进程一个计时线程的ExecuteWatchdog
+ *
+ * 到达超时时间后先通过destroy()结束进程(Unix下为SIGTERM)，进程在killAfter时间内仍未退出时
+ * 再通过destroyForcibly()强制结束(SIGKILL)。计时由共享的{@link TimingWheel}完成，
+ * 每次执行需要使用新的对象
+ * @author marsh
+ * @date 2022年05月07日 10:30
+ */
+public class ProcessTimeout {
+
+    /**
+     * 默认的强制结束等待时间
+     */
+    public static final long DEFAULT_KILL_AFTER = 5000L;
+
+    /**
+     * 超时时间(毫秒)
+     */
+    @Getter
+    private final long timeout;
+    /**
+     * 超时后等待进程自行退出的时间(毫秒)，小于等于0时直接强制结束
+     */
+    @Getter
+    private final long killAfter;
+
+    private final TimingWheel wheel;
+
+    private Process process;
+
+    private Timeout softTimeout;
+
+    private Timeout hardTimeout;
+
+    private volatile boolean killed;
+
+    private volatile boolean forciblyKilled;
+
+    public ProcessTimeout(long timeout) {
+        this(timeout, DEFAULT_KILL_AFTER);
+    }
+
+    public ProcessTimeout(long timeout, long killAfter) {
+        this(timeout, killAfter, TimingWheel.getDefault());
+    }
+
+    public ProcessTimeout(long timeout, long killAfter, TimingWheel wheel) {
+        if (timeout <= 0) {
+            throw new IllegalArgumentException("timeout必须大于0");
+        }
+        this.timeout = timeout;
+        this.killAfter = killAfter;
+        this.wheel = wheel;
+    }
+
+    /**
+     * 进程启动后开始计时
+     * @param process
+     */
+    public synchronized void start(Process process) {
+        this.process = process;
+        this.killed = false;
+        this.forciblyKilled = false;
+        this.softTimeout = wheel.schedule(this::onTimeout, timeout, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 进程结束后停止计时
+     */
+    public synchronized void stop() {
+        if (softTimeout != null) {
+            softTimeout.cancel();
+        }
+        if (hardTimeout != null) {
+            hardTimeout.cancel();
+        }
+        process = null;
+    }
+
+    /**
+     * @return 进程是否因为超时被结束
+     */
+    public boolean killedProcess() {
+        return killed;
+    }
+
+    /**
+     * @return 进程是否在超时后未能自行退出而被强制结束
+     */
+    public boolean forciblyKilledProcess() {
+        return forciblyKilled;
+    }
+
+    /**
+     * 结束进程可能阻塞(例如通过启动服务结束)，在锁外调用，不影响执行线程调用stop()
+     */
+    private void onTimeout() {
+        Process target;
+        synchronized (this) {
+            target = process;
+            if (target == null || !target.isAlive()) {
+                return;
+            }
+            killed = true;
+            if (killAfter <= 0) {
+                forciblyKilled = true;
+            } else {
+                hardTimeout = wheel.schedule(this::onKillDeadline, killAfter, TimeUnit.MILLISECONDS);
+            }
+        }
+        if (killAfter <= 0) {
+            target.destroyForcibly();
+        } else {
+            target.destroy();
+        }
+    }
+
+    private void onKillDeadline() {
+        Process target;
+        synchronized (this) {
+            target = process;
+            if (target == null || !target.isAlive()) {
+                return;
+            }
+            forciblyKilled = true;
+        }
+        target.destroyForcibly();
+    }
+}
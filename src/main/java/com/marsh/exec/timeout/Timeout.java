@@ -0,0 +1,25 @@
+package com.marsh.exec.timeout;
+
+/**
+ * 时间轮中一个定时任务的句柄
+ * @author marsh
+ * @date 2022年05月07日 9:30
+ */
+public interface Timeout {
+
+    /**
+     * 取消定时任务
+     * @return 任务已经执行或已经取消时返回false
+     */
+    boolean cancel();
+
+    /**
+     * @return 定时任务是否已经执行
+     */
+    boolean isExpired();
+
+    /**
+     * @return 定时任务是否已经取消
+     */
+    boolean isCancelled();
+}
@@ -0,0 +1,352 @@
+package com.marsh.exec.timeout;
+
+import cn.hutool.core.thread.NamedThreadFactory;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 哈希时间轮，所有运行中进程的超时由一个后台线程统一管理
+ *
+ * 时间按tick划分到环形的槽位中，超过一圈的任务记录剩余圈数，每个tick只处理一个槽位。
+ * 添加和取消操作只写入无锁队列，由时间轮线程在下一个tick时处理，因此任务的误差在一个tick以内。
+ * 到期任务交给任务线程池执行，时间轮线程只负责计时，某个任务阻塞(例如通过启动服务结束进程)不会推迟其他任务；
+ * 任务抛出的异常交给执行线程的UncaughtExceptionHandler
+ * @author marsh
+ * @date 2022年05月07日 9:40
+ */
+public class TimingWheel {
+
+    private static final int INIT = 0;
+    private static final int STARTED = 1;
+    private static final int STOPPED = 2;
+
+    private static volatile TimingWheel defaultWheel;
+
+    private final long tickNanos;
+
+    private final Bucket[] wheel;
+
+    private final int mask;
+
+    private final Queue<WheelTimeout> pendingTimeouts = new ConcurrentLinkedQueue<>();
+
+    private final Queue<WheelTimeout> cancelledTimeouts = new ConcurrentLinkedQueue<>();
+
+    private final AtomicInteger state = new AtomicInteger(INIT);
+
+    private final AtomicLong pendingCount = new AtomicLong();
+
+    private final CountDownLatch startLatch = new CountDownLatch(1);
+
+    private final String name;
+
+    private final Executor taskExecutor;
+
+    private volatile long startNanos;
+
+    private long tick;
+
+    public TimingWheel() {
+        this(10, TimeUnit.MILLISECONDS, 512, "Exec Timing Wheel");
+    }
+
+    /**
+     * 到期任务在按需创建的守护线程中执行，空闲60秒后回收
+     * @param tickDuration 每个槽位的时间跨度，即超时的精度
+     * @param unit
+     * @param ticksPerWheel 槽位数量，向上取整为2的幂
+     * @param name 时间轮线程名称，任务线程以此为前缀
+     */
+    public TimingWheel(long tickDuration, TimeUnit unit, int ticksPerWheel, String name) {
+        this(tickDuration, unit, ticksPerWheel, name, new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60, TimeUnit.SECONDS,
+                new SynchronousQueue<>(), new NamedThreadFactory(name + " Task-", true)));
+    }
+
+    /**
+     * @param tickDuration 每个槽位的时间跨度，即超时的精度
+     * @param unit
+     * @param ticksPerWheel 槽位数量，向上取整为2的幂
+     * @param name 时间轮线程名称
+     * @param taskExecutor 执行到期任务的线程池，任务可能阻塞，线程池满时应能继续接收任务
+     */
+    public TimingWheel(long tickDuration, TimeUnit unit, int ticksPerWheel, String name, Executor taskExecutor) {
+        if (tickDuration <= 0 || ticksPerWheel <= 0) {
+            throw new IllegalArgumentException("tickDuration及ticksPerWheel必须大于0");
+        }
+        this.tickNanos = unit.toNanos(tickDuration);
+        int size = 1;
+        while (size < ticksPerWheel) {
+            size <<= 1;
+        }
+        this.wheel = new Bucket[size];
+        for (int i = 0; i < size; i++) {
+            wheel[i] = new Bucket();
+        }
+        this.mask = size - 1;
+        this.name = name;
+        this.taskExecutor = taskExecutor;
+    }
+
+    /**
+     * 进程内共享的时间轮，第一次添加任务时启动后台线程
+     * @return
+     */
+    public static TimingWheel getDefault() {
+        if (defaultWheel == null) {
+            synchronized (TimingWheel.class) {
+                if (defaultWheel == null) {
+                    defaultWheel = new TimingWheel();
+                }
+            }
+        }
+        return defaultWheel;
+    }
+
+    /**
+     * 添加一个定时任务
+     * @param task 到期时在任务线程池中执行
+     * @param delay
+     * @param unit
+     * @return
+     */
+    public Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+        start();
+        WheelTimeout timeout = new WheelTimeout(task, System.nanoTime() + unit.toNanos(delay) - startNanos);
+        pendingCount.incrementAndGet();
+        pendingTimeouts.add(timeout);
+        return timeout;
+    }
+
+    /**
+     * @return 尚未到期且未取消的任务数量
+     */
+    public long getPendingCount() {
+        return pendingCount.get();
+    }
+
+    /**
+     * 停止时间轮线程，未到期的任务不再执行
+     */
+    public void stop() {
+        state.set(STOPPED);
+    }
+
+    private void start() {
+        switch (state.get()) {
+            case INIT:
+                if (state.compareAndSet(INIT, STARTED)) {
+                    Thread worker = new Thread(this::run, name);
+                    worker.setDaemon(true);
+                    worker.start();
+                }
+                break;
+            case STARTED:
+                break;
+            default:
+                throw new IllegalStateException("时间轮已停止");
+        }
+        while (startNanos == 0) {
+            try {
+                startLatch.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void run() {
+        long now = System.nanoTime();
+        // 0表示尚未启动
+        startNanos = now == 0 ? 1 : now;
+        startLatch.countDown();
+        while (state.get() == STARTED) {
+            waitForNextTick();
+            processCancelled();
+            transferPending();
+            wheel[(int) (tick & mask)].expire();
+            tick++;
+        }
+    }
+
+    /**
+     * 等待到下一个tick
+     */
+    private void waitForNextTick() {
+        long deadline = tickNanos * (tick + 1);
+        while (true) {
+            long current = System.nanoTime() - startNanos;
+            long sleepNanos = deadline - current;
+            if (sleepNanos <= 0) {
+                return;
+            }
+            LockSupport.parkNanos(this, sleepNanos);
+        }
+    }
+
+    private void processCancelled() {
+        WheelTimeout timeout;
+        while ((timeout = cancelledTimeouts.poll()) != null) {
+            if (timeout.bucket != null) {
+                timeout.bucket.remove(timeout);
+            }
+        }
+    }
+
+    private void transferPending() {
+        // 限制单次处理的数量，避免大量添加时长时间占用一个tick
+        for (int i = 0; i < 100000; i++) {
+            WheelTimeout timeout = pendingTimeouts.poll();
+            if (timeout == null) {
+                return;
+            }
+            if (timeout.state.get() != WheelTimeout.ST_INIT) {
+                continue;
+            }
+            long calculated = timeout.deadline / tickNanos;
+            timeout.remainingRounds = (calculated - tick) / wheel.length;
+            // 已经过期的任务放到当前槽位
+            long ticks = Math.max(calculated, tick);
+            wheel[(int) (ticks & mask)].add(timeout);
+        }
+    }
+
+    private final class WheelTimeout implements Timeout {
+
+        private static final int ST_INIT = 0;
+        private static final int ST_CANCELLED = 1;
+        private static final int ST_EXPIRED = 2;
+
+        private final Runnable task;
+
+        private final long deadline;
+
+        private final AtomicInteger state = new AtomicInteger(ST_INIT);
+
+        private long remainingRounds;
+
+        private Bucket bucket;
+
+        private WheelTimeout prev;
+
+        private WheelTimeout next;
+
+        WheelTimeout(Runnable task, long deadline) {
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        @Override
+        public boolean cancel() {
+            if (!state.compareAndSet(ST_INIT, ST_CANCELLED)) {
+                return false;
+            }
+            pendingCount.decrementAndGet();
+            cancelledTimeouts.add(this);
+            return true;
+        }
+
+        @Override
+        public boolean isExpired() {
+            return state.get() == ST_EXPIRED;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return state.get() == ST_CANCELLED;
+        }
+
+        void expire() {
+            if (!state.compareAndSet(ST_INIT, ST_EXPIRED)) {
+                return;
+            }
+            pendingCount.decrementAndGet();
+            try {
+                taskExecutor.execute(this::runTask);
+            } catch (RejectedExecutionException e) {
+                uncaught(e);
+            }
+        }
+
+        private void runTask() {
+            try {
+                task.run();
+            } catch (Throwable e) {
+                uncaught(e);
+            }
+        }
+
+        private void uncaught(Throwable e) {
+            Thread thread = Thread.currentThread();
+            thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+        }
+    }
+
+    /**
+     * 槽位中的双向链表，只在时间轮线程中访问
+     */
+    private static final class Bucket {
+
+        private WheelTimeout head;
+
+        private WheelTimeout tail;
+
+        void add(WheelTimeout timeout) {
+            timeout.bucket = this;
+            if (head == null) {
+                head = tail = timeout;
+            } else {
+                tail.next = timeout;
+                timeout.prev = tail;
+                tail = timeout;
+            }
+        }
+
+        void expire() {
+            WheelTimeout timeout = head;
+            while (timeout != null) {
+                WheelTimeout next = timeout.next;
+                if (timeout.remainingRounds <= 0) {
+                    // 圈数为0的任务deadline一定在当前tick内
+                    remove(timeout);
+                    timeout.expire();
+                } else if (timeout.isCancelled()) {
+                    remove(timeout);
+                } else {
+                    timeout.remainingRounds--;
+                }
+                timeout = next;
+            }
+        }
+
+        void remove(WheelTimeout timeout) {
+            if (timeout.bucket != this) {
+                return;
+            }
+            if (timeout.prev != null) {
+                timeout.prev.next = timeout.next;
+            }
+            if (timeout.next != null) {
+                timeout.next.prev = timeout.prev;
+            }
+            if (timeout == head) {
+                head = timeout.next;
+            }
+            if (timeout == tail) {
+                tail = timeout.prev;
+            }
+            timeout.prev = null;
+            timeout.next = null;
+            timeout.bucket = null;
+        }
+    }
+}
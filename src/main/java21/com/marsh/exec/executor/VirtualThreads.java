@@ -0,0 +1,53 @@
+package com.marsh.exec.executor;
+
+import java.util.concurrent.ExecutionException;
+
+/**
+ * 虚拟线程的适配层，JDK21及以上的实现，编译到多版本jar的META-INF/versions/21中
+ *
+ * JDK21中Process.waitFor()在synchronized方法中调用Object.wait()，会在进程运行期间占住虚拟线程的载体线程，
+ * 所以虚拟线程通过Process.onExit()等待，等待期间只挂起虚拟线程。JDK内部仍为每个子进程保留一个小栈的回收线程
+ * @author marsh
+ * @date 2022年05月17日 10:20
+ */
+public final class VirtualThreads {
+
+    private VirtualThreads() {
+    }
+
+    /**
+     * 当前运行环境是否支持虚拟线程
+     * @return
+     */
+    public static boolean isSupported() {
+        return true;
+    }
+
+    /**
+     * 创建一个未启动的虚拟线程
+     * @param task
+     * @param name 线程名称
+     * @return
+     */
+    public static Thread newThread(Runnable task, String name) {
+        return Thread.ofVirtual().name(name).unstarted(task);
+    }
+
+    /**
+     * 等待进程结束，在虚拟线程中等待JDK自身创建的进程时不占用载体线程
+     * @param process
+     * @return 进程的退出码
+     * @throws InterruptedException
+     */
+    public static int waitFor(Process process) throws InterruptedException {
+        // 自定义Process的onExit()默认在公共线程池中阻塞调用waitFor，只对JDK自身的实现使用
+        if (!Thread.currentThread().isVirtual() || process.getClass().getClassLoader() != null) {
+            return process.waitFor();
+        }
+        try {
+            return process.onExit().get().exitValue();
+        } catch (final ExecutionException e) {
+            return process.waitFor();
+        }
+    }
+}